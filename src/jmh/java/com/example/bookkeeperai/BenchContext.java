@@ -0,0 +1,61 @@
+package com.example.bookkeeperai;
+
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Контекст приложения для бенчмарков: файловая H2 по указанному пути, без веб-сервера,
+ * без SQL в логе и с фиктивными токенами — бот к Telegram не подключается
+ * ({@code telegram.mode=none}), а HuggingFace либо не вызывается, либо подменён заглушкой.
+ */
+public final class BenchContext {
+
+    private BenchContext() {
+    }
+
+    /**
+     * Свойства передаются как аргументы командной строки: у default properties приоритет
+     * ниже application.yml, и тот молча перекрывал бы их. Из повторяющихся ключей
+     * действует последний — бенчмарк может перекрыть любое значение по умолчанию.
+     */
+    public static ConfigurableApplicationContext start(Path database, String... properties) {
+        List<String> all = new ArrayList<>(List.of(
+                "spring.datasource.url=jdbc:h2:file:" + database.toAbsolutePath(),
+                "spring.jpa.show-sql=false",
+                "spring.main.banner-mode=off",
+                "telegram.bot.token=bench",
+                "telegram.mode=none",
+                "huggingface.token=bench"));
+        all.addAll(Arrays.asList(properties));
+
+        Map<String, String> args = new LinkedHashMap<>();
+        for (String property : all) {
+            int eq = property.indexOf('=');
+            args.put(property.substring(0, eq), property.substring(eq + 1));
+        }
+        return new SpringApplicationBuilder(BookkeeperAiApplication.class)
+                .web(WebApplicationType.NONE)
+                .run(args.entrySet().stream()
+                        .map(e -> "--" + e.getKey() + "=" + e.getValue())
+                        .toArray(String[]::new));
+    }
+
+    /** Удаляет временный каталог базы после прогона. */
+    public static void deleteDirectory(Path dir) throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.bookkeeperai.ai;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Локальная заглушка HuggingFace для бенчмарков: Chat Completions и ASR
+ * с фиксированной задержкой ответа. Подставляется через {@code huggingface.urls.*}.
+ */
+public final class HuggingFaceStub implements AutoCloseable {
+
+    private static final String CHAT_PATH = "/v1/chat/completions";
+    private static final String ASR_PATH = "/models/";
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final long latencyMs;
+    private final byte[] chatResponse;
+    private final byte[] asrResponse;
+
+    /**
+     * @param llmContent что модель «ответила» (content первого choice)
+     * @param transcript что «распознал» STT
+     */
+    public HuggingFaceStub(long latencyMs, String llmContent, String transcript) throws IOException {
+        this.latencyMs = latencyMs;
+        ObjectMapper mapper = new ObjectMapper();
+        ObjectNode chat = mapper.createObjectNode();
+        chat.putArray("choices").addObject().putObject("message").put("content", llmContent);
+        this.chatResponse = mapper.writeValueAsBytes(chat);
+        this.asrResponse = mapper.writeValueAsBytes(mapper.createObjectNode().put("text", transcript));
+
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        // задержка — sleep в обработчике, поэтому потоков с запасом на все потоки бенчмарка
+        this.executor = Executors.newFixedThreadPool(64, new CustomizableThreadFactory("hf-stub-"));
+        server.setExecutor(executor);
+        server.createContext(CHAT_PATH, exchange -> respond(exchange, chatResponse));
+        server.createContext(ASR_PATH, exchange -> respond(exchange, asrResponse));
+        server.start();
+    }
+
+    public String chatUrl() {
+        return baseUrl() + CHAT_PATH;
+    }
+
+    /** К этому адресу клиент дописывает имя модели STT. */
+    public String asrBaseUrl() {
+        return baseUrl() + ASR_PATH;
+    }
+
+    private String baseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    private void respond(HttpExchange exchange, byte[] body) throws IOException {
+        try (exchange) {
+            // тело запроса дочитываем, как настоящий сервер
+            try (InputStream in = exchange.getRequestBody()) {
+                in.transferTo(OutputStream.nullOutputStream());
+            }
+            if (latencyMs > 0) {
+                try {
+                    Thread.sleep(latencyMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.bookkeeperai.ai;
+
+import com.example.bookkeeperai.dto.ParsedExpense;
+import com.example.bookkeeperai.metrics.PipelineMetrics;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.time.Duration;
+import java.time.ZoneId;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Разбор ответа LLM без сети: поиск JSON-объекта в тексте, поток токенов Jackson,
+ * BigDecimal и OffsetDateTime. Форма ответа — как реально отвечают модели.
+ * {@code decodeResponse} — весь путь от байтов конверта Chat Completions до траты.
+ *
+ * Аллокации на сообщение видны в {@code gc.alloc.rate.norm}:
+ * {@code ./gradlew jmh -Pbench=LlmOutputBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class LlmOutputBenchmark {
+
+    private static final String JSON = """
+            {"amount": 1234.50, "currency": "RUB", "category": "groceries",
+             "description": "продукты на неделю", "place": "Пятёрочка у дома",
+             "date": "2025-12-04T10:15:30+03:00"}""";
+
+    @Param({"clean", "prose", "fenced"})
+    public String shape;
+
+    private NlpParserService parser;
+    private HuggingFaceClient client;
+    private String output;
+    private byte[] envelope;
+
+    @Setup
+    public void setUp() {
+        RuleBasedExpenseParser ruleParser = new RuleBasedExpenseParser();
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        PipelineMetrics metrics = new PipelineMetrics(Duration.ofMinutes(1), registry);
+        ParseResultCache noCache = new ParseResultCache(false, 0, 0, Duration.ZERO, ruleParser, registry);
+        ObjectMapper mapper = new ObjectMapper();
+        LlmResponseReader reader = new LlmResponseReader(mapper, ZoneId.of("Europe/Moscow"), registry);
+        parser = new NlpParserService(null, ruleParser, noCache, reader, null, 0.8,
+                false, Duration.ZERO, 1, metrics, registry);
+        client = new HuggingFaceClient("http://localhost/", "http://localhost/", "bench", "stt", "nlp", 1,
+                Duration.ofSeconds(1), Duration.ofSeconds(1), Duration.ofSeconds(1), 1,
+                null, null, mapper);
+
+        output = switch (shape) {
+            case "clean" -> JSON;
+            case "prose" -> "Конечно! Вот разобранная трата:\n" + JSON + "\nЕсли нужно что-то ещё — спрашивайте.";
+            case "fenced" -> "```json\n" + JSON + "\n```";
+            default -> throw new IllegalArgumentException(shape);
+        };
+
+        ObjectNode root = mapper.createObjectNode();
+        root.put("id", "chatcmpl-bench");
+        root.put("object", "chat.completion");
+        ObjectNode message = root.putArray("choices").addObject()
+                .put("index", 0)
+                .put("finish_reason", "stop")
+                .putObject("message");
+        message.put("role", "assistant");
+        message.put("content", output);
+        root.putObject("usage").put("prompt_tokens", 310).put("completion_tokens", 64);
+        try {
+            envelope = mapper.writeValueAsBytes(root);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        client.shutdown();
+    }
+
+    @Benchmark
+    public ParsedExpense parseLlmOutput() {
+        return parser.parseLlmOutput(output);
+    }
+
+    @Benchmark
+    public ParsedExpense decodeResponse() {
+        return parser.parseLlmOutput(client.decodeCompletion(envelope).text());
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.bookkeeperai.ai;
+
+import com.example.bookkeeperai.dto.ParsedExpense;
+import com.example.bookkeeperai.metrics.PipelineMetrics;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.time.Duration;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сравнение задержки локального разбора и LLM-пути на одной и той же фразе.
+ * LLM заменён заглушкой с фиксированной задержкой, чтобы видеть накладные расходы самого пути.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ParsePathBenchmark {
+
+    private static final String LLM_JSON = """
+            {"amount": 250, "currency": "RUB", "category": "cafe",
+             "description": "кофе", "place": null, "date": "2025-12-04T10:15:30+03:00"}
+            """;
+
+    @Param({"кофе 250", "taxi 12 usd", "вчера в магните потратил 500 руб на продукты"})
+    public String text;
+
+    @Param({"0", "300"})
+    public long llmLatencyMs;
+
+    private NlpParserService rulePath;
+    private NlpParserService llmPath;
+
+    @Setup
+    public void setUp() {
+        RuleBasedExpenseParser ruleParser = new RuleBasedExpenseParser();
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        PipelineMetrics metrics = new PipelineMetrics(Duration.ofMinutes(1), registry);
+        InferenceRouter stub = new InferenceRouter(List.of(new StubBackend(llmLatencyMs)), 0.2, 0,
+                metrics, registry);
+        ParseResultCache noCache = new ParseResultCache(false, 0, 0, Duration.ZERO, ruleParser, registry);
+        LlmResponseReader reader = new LlmResponseReader(new ObjectMapper(), ZoneId.of("Europe/Moscow"), registry);
+        PromptBuilder prompts = new PromptBuilder(ZoneId.of("Europe/Moscow"), 96, 2048, 500, 4000, registry);
+        rulePath = new NlpParserService(stub, ruleParser, noCache, reader, prompts, 0.8,
+                false, Duration.ZERO, 1, metrics, registry);
+        // порог выше 1 — локальный парсер никогда не принимается, всегда LLM
+        llmPath = new NlpParserService(stub, ruleParser, noCache, reader, prompts, 1.1,
+                false, Duration.ZERO, 1, metrics, registry);
+    }
+
+    @Benchmark
+    public ParsedExpense rulePath() throws Exception {
+        return rulePath.parse(text);
+    }
+
+    @Benchmark
+    public ParsedExpense llmPath() throws Exception {
+        return llmPath.parse(text);
+    }
+
+    private record StubBackend(long latencyMs) implements InferenceBackend {
+
+        @Override
+        public String name() {
+            return "stub";
+        }
+
+        @Override
+        public int weight() {
+            return 1;
+        }
+
+        @Override
+        public boolean supports(Task task) {
+            return task == Task.LLM;
+        }
+
+        @Override
+        public boolean isAvailable(Task task) {
+            return true;
+        }
+
+        @Override
+        public CompletableFuture<String> speechToTextAsync(byte[] audioBytes) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public CompletableFuture<String> speechToTextAsync(AudioSource audio) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public CompletableFuture<Completion> generateTextAsync(Prompt prompt) {
+            return CompletableFuture.supplyAsync(() -> new Completion(LLM_JSON, -1, -1, -1),
+                    CompletableFuture.delayedExecutor(latencyMs, TimeUnit.MILLISECONDS));
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.bookkeeperai.repository;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.SplittableRandom;
+
+/**
+ * Заполняет {@code expenses} синтетическими тратами для бенчмарков: {@code users}
+ * пользователей, даты равномерно за последние три года. Пишет JDBC-батчами
+ * в обход JPA и досоздаёт только недостающие строки, поэтому повторный запуск
+ * на уже заполненной базе почти бесплатен.
+ */
+public final class ExpenseDataGenerator {
+
+    private static final Logger log = LoggerFactory.getLogger(ExpenseDataGenerator.class);
+
+    private static final int BATCH = 10_000;
+    private static final int ALLOCATION_SIZE = 50;
+    private static final String[] CATEGORIES = {
+            "groceries", "cafe", "transport", "entertainment", "health", "clothes", "home", "other"
+    };
+
+    private ExpenseDataGenerator() {
+    }
+
+    public static void fill(DataSource dataSource, long rows, int users) throws SQLException {
+        try (Connection conn = dataSource.getConnection()) {
+            long existing = queryLong(conn, "SELECT COUNT(*) FROM expenses");
+            if (existing >= rows) {
+                return;
+            }
+            long nextId = queryLong(conn, "SELECT COALESCE(MAX(id), 0) FROM expenses") + 1;
+            long toInsert = rows - existing;
+            log.info("Генерация {} расходов...", toInsert);
+
+            conn.setAutoCommit(false);
+            SplittableRandom random = new SplittableRandom(nextId);
+            OffsetDateTime now = OffsetDateTime.now(ZoneOffset.UTC);
+            long spanSeconds = 3L * 365 * 24 * 3600;
+
+            try (PreparedStatement ps = conn.prepareStatement("""
+                    INSERT INTO expenses (id, telegram_user_id, amount, currency, category,
+                                          description, place, expense_date, raw_text, source_type)
+                    VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+                    """)) {
+                for (long i = 0; i < toInsert; i++) {
+                    String category = CATEGORIES[random.nextInt(CATEGORIES.length)];
+                    BigDecimal amount = BigDecimal.valueOf(random.nextInt(10, 500_000), 2);
+
+                    ps.setLong(1, nextId + i);
+                    ps.setLong(2, random.nextInt(users) + 1L);
+                    ps.setBigDecimal(3, amount);
+                    ps.setString(4, "RUB");
+                    ps.setString(5, category);
+                    ps.setString(6, null);
+                    ps.setString(7, null);
+                    ps.setObject(8, now.minusSeconds(random.nextLong(spanSeconds)));
+                    ps.setString(9, category + " " + amount);
+                    ps.setString(10, "TEXT");
+                    ps.addBatch();
+
+                    if ((i + 1) % BATCH == 0) {
+                        ps.executeBatch();
+                        conn.commit();
+                    }
+                    if ((i + 1) % 1_000_000 == 0) {
+                        log.info("  {} / {}", i + 1, toInsert);
+                    }
+                }
+                ps.executeBatch();
+                conn.commit();
+            }
+
+            try (Statement st = conn.createStatement()) {
+                // как в V3__Align_expenses_sequence: приложение не должно получить занятые id
+                st.execute("ALTER SEQUENCE expenses_seq RESTART WITH " + (nextId + toInsert - 1 + ALLOCATION_SIZE));
+                st.execute("ANALYZE");
+            }
+            conn.commit();
+        }
+    }
+
+    private static long queryLong(Connection conn, String sql) throws SQLException {
+        try (Statement st = conn.createStatement(); ResultSet rs = st.executeQuery(sql)) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+}
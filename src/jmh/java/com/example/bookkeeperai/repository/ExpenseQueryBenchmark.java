@@ -0,0 +1,99 @@
+package com.example.bookkeeperai.repository;
+
+import com.example.bookkeeperai.BenchContext;
+import com.example.bookkeeperai.dto.ExpenseSummary;
+import com.example.bookkeeperai.entity.Expense;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.PageRequest;
+
+import javax.sql.DataSource;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Задержка запросов истории на большой таблице (по умолчанию 10M строк, ~1000 на пользователя).
+ *
+ * База лежит в {@code build/bench-data} и переиспользуется между запусками —
+ * генерация 10M строк занимает минуты.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ExpenseQueryBenchmark {
+
+    private static final int PAGE = 10;
+    /** Глубина листания для сравнения offset и keyset. */
+    private static final int DEEP_PAGE = 50;
+
+    @Param({"10000000"})
+    public long rows;
+
+    @Param({"10000"})
+    public int users;
+
+    private ConfigurableApplicationContext context;
+    private ExpenseRepository repo;
+    private ExpenseSummary[] deepCursors;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        Path db = Path.of("build", "bench-data", "expenses-" + rows).toAbsolutePath();
+        context = BenchContext.start(db, "reports.rollup-rebuild.backfill-on-startup=false");
+        repo = context.getBean(ExpenseRepository.class);
+        ExpenseDataGenerator.fill(context.getBean(DataSource.class), rows, users);
+
+        // курсоры на конец страницы DEEP_PAGE - 1 — keyset читает ту же страницу, что и offset
+        deepCursors = new ExpenseSummary[users];
+        for (int user = 1; user <= users; user++) {
+            List<ExpenseSummary> page = repo.findRecent((long) user, PageRequest.of(DEEP_PAGE - 1, PAGE));
+            deepCursors[user - 1] = page.isEmpty() ? null : page.get(page.size() - 1);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    /** Как работал /last раньше: сущности целиком, вместе с rawText. */
+    @Benchmark
+    public List<Expense> lastEntities() {
+        return repo.findTop10ByTelegramUserIdOrderByExpenseDateDesc(randomUser());
+    }
+
+    @Benchmark
+    public List<ExpenseSummary> lastProjection() {
+        return repo.findRecent(randomUser(), PageRequest.of(0, PAGE));
+    }
+
+    @Benchmark
+    public List<ExpenseSummary> deepPageOffset() {
+        return repo.findRecent(randomUser(), PageRequest.of(DEEP_PAGE, PAGE));
+    }
+
+    @Benchmark
+    public List<ExpenseSummary> deepPageKeyset() {
+        long user = randomUser();
+        ExpenseSummary cursor = deepCursors[(int) user - 1];
+        if (cursor == null) {
+            return List.of();
+        }
+        return repo.findRecentBefore(user, cursor.getExpenseDate(), cursor.getId(), PageRequest.of(0, PAGE));
+    }
+
+    private long randomUser() {
+        return ThreadLocalRandom.current().nextInt(users) + 1L;
+    }
+}
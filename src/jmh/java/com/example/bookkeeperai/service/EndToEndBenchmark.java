@@ -0,0 +1,83 @@
+package com.example.bookkeeperai.service;
+
+import com.example.bookkeeperai.BenchContext;
+import com.example.bookkeeperai.ai.AudioSource;
+import com.example.bookkeeperai.ai.HuggingFaceStub;
+import com.example.bookkeeperai.dto.IngestOutcome;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.ByteArrayInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сообщение целиком без сети: разбор через LLM (всегда, локальный парсер отключён
+ * порогом), для голосового ещё STT, затем запись в файловую H2. HuggingFace
+ * заменён {@link HuggingFaceStub} с задержкой {@code hfLatencyMs}, лимит запросов
+ * поднят, кэш разборов выключен — каждый вызов доходит до заглушки.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Threads(8)
+public class EndToEndBenchmark {
+
+    private static final String LLM_JSON = """
+            {"amount": 250, "currency": "RUB", "category": "cafe",
+             "description": "кофе", "place": null, "date": "2025-12-04T10:15:30+03:00"}""";
+    /** STT заглушки не декодирует звук — содержимое не важно, важен размер тела. */
+    private static final byte[] VOICE = new byte[16 * 1024];
+
+    @Param({"0", "100", "300"})
+    public long hfLatencyMs;
+
+    private HuggingFaceStub stub;
+    private Path dataDir;
+    private ConfigurableApplicationContext context;
+    private ExpenseService expenseService;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        stub = new HuggingFaceStub(hfLatencyMs, LLM_JSON, "кофе двести пятьдесят рублей");
+        dataDir = Files.createTempDirectory("e2e-bench");
+        context = BenchContext.start(dataDir.resolve("bench"),
+                "huggingface.urls.chat=" + stub.chatUrl(),
+                "huggingface.urls.asr-base=" + stub.asrBaseUrl(),
+                "huggingface.resilience.rate-limit.permits-per-second=1000000",
+                "huggingface.resilience.rate-limit.burst=1000000",
+                "nlp.fast-path.threshold=1.1",
+                "nlp.cache.enabled=false",
+                "stt.cache.enabled=false");
+        expenseService = context.getBean(ExpenseService.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        context.close();
+        stub.close();
+        BenchContext.deleteDirectory(dataDir);
+    }
+
+    @Benchmark
+    public IngestOutcome textMessage() throws Exception {
+        return expenseService.processText(42L, "кофе 250");
+    }
+
+    @Benchmark
+    public IngestOutcome shortVoice() throws Exception {
+        AudioSource audio = new AudioSource(() -> new ByteArrayInputStream(VOICE), VOICE.length);
+        return expenseService.processVoice(42L, null, () -> audio, 5);
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.bookkeeperai.service;
+
+import com.example.bookkeeperai.BenchContext;
+import com.example.bookkeeperai.dto.ParsedExpense;
+import com.example.bookkeeperai.entity.Expense;
+import com.example.bookkeeperai.repository.ExpenseRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.OffsetDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Устойчивая скорость вставки расходов (операций в секунду = вставок в секунду)
+ * в файловую H2: поштучный {@code repo.save} против пачек через {@link ExpenseWriteBuffer}
+ * и полный путь {@link ExpenseService#saveParsedExpense} (пересчёт валюты, суммы, метрики).
+ * Потоков несколько — как у пула ingest-воркеров.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(8)
+public class ExpenseWriteBenchmark {
+
+    private Path dataDir;
+    private ConfigurableApplicationContext context;
+    private ExpenseRepository repo;
+    private ExpenseWriteBuffer writeBuffer;
+    private ExpenseService expenseService;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dataDir = Files.createTempDirectory("expense-bench");
+        context = BenchContext.start(dataDir.resolve("bench"));
+        repo = context.getBean(ExpenseRepository.class);
+        writeBuffer = context.getBean(ExpenseWriteBuffer.class);
+        expenseService = context.getBean(ExpenseService.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        context.close();
+        BenchContext.deleteDirectory(dataDir);
+    }
+
+    @Benchmark
+    public Expense directSave() {
+        return repo.save(newExpense());
+    }
+
+    @Benchmark
+    public Expense bufferedSave() {
+        return writeBuffer.submit(newExpense()).join();
+    }
+
+    @Benchmark
+    public Expense saveParsedExpense() {
+        ParsedExpense parsed = ParsedExpense.builder()
+                .amount(new BigDecimal("250.00"))
+                .currency("руб")
+                .category("cafe")
+                .description("кофе")
+                .date(OffsetDateTime.now())
+                .build();
+        return expenseService.saveParsedExpense(parsed, 42L, "кофе 250", "TEXT", 0).join();
+    }
+
+    private static Expense newExpense() {
+        return Expense.builder()
+                .telegramUserId(42L)
+                .amount(new BigDecimal("250.00"))
+                .currency("RUB")
+                .category("cafe")
+                .description("кофе")
+                .expenseDate(OffsetDateTime.now())
+                .rawText("кофе 250")
+                .sourceType("TEXT")
+                .build();
+    }
+}
@@ -0,0 +1,118 @@
+package com.example.bookkeeperai.service;
+
+import com.example.bookkeeperai.BenchContext;
+import com.example.bookkeeperai.dto.CategoryTotal;
+import com.example.bookkeeperai.dto.ExpenseSummary;
+import com.example.bookkeeperai.dto.ParsedExpense;
+import com.example.bookkeeperai.entity.Expense;
+import com.example.bookkeeperai.repository.ExpenseDataGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Нагрузочный тест хранилища: настройки по умолчанию против профиля prod
+ * (пул Hikari фиксированного размера, кэш страниц MVStore и разобранных запросов,
+ * без переключений autocommit, чтение /last и отчётов через отдельный пул).
+ *
+ * Смешанная нагрузка одной группой: 4 потока пишут траты через буфер записи,
+ * 3 читают /last, 1 строит месячный отчёт. Операций в секунду — по каждому виду и в сумме.
+ * Лог SQL выключен в обоих случаях: его вывод JMH перенёс бы в консоль прогона.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class StorageProfileBenchmark {
+
+    /** Параметры H2 из application-prod.yml — URL задаёт BenchContext, поэтому повторяем их здесь. */
+    private static final String PROD_H2_OPTIONS = ";CACHE_SIZE=65536;QUERY_CACHE_SIZE=64";
+
+    @Param({"default", "prod"})
+    public String profile;
+
+    @Param({"1000000"})
+    public long rows;
+
+    @Param({"1000"})
+    public int users;
+
+    private Path dataDir;
+    private ConfigurableApplicationContext context;
+    private ExpenseService expenseService;
+    private RollupService rollups;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dataDir = Files.createTempDirectory("storage-bench");
+        Path db = dataDir.resolve("bench").toAbsolutePath();
+        context = "prod".equals(profile)
+                ? BenchContext.start(db,
+                        "spring.profiles.active=prod",
+                        "spring.datasource.url=jdbc:h2:file:" + db + PROD_H2_OPTIONS,
+                        "storage.read-split.enabled=true",
+                        "reports.rollup-rebuild.backfill-on-startup=false")
+                : BenchContext.start(db, "reports.rollup-rebuild.backfill-on-startup=false");
+        expenseService = context.getBean(ExpenseService.class);
+        rollups = context.getBean(RollupService.class);
+
+        ExpenseDataGenerator.fill(context.getBean(DataSource.class), rows, users);
+        rollups.rebuildAll();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        context.close();
+        BenchContext.deleteDirectory(dataDir);
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(4)
+    public Expense write() {
+        ParsedExpense parsed = ParsedExpense.builder()
+                .amount(new BigDecimal("250.00"))
+                .currency("RUB")
+                .category("cafe")
+                .description("кофе")
+                .date(OffsetDateTime.now())
+                .build();
+        return expenseService.saveParsedExpense(parsed, randomUser(), "кофе 250", "TEXT", 0).join();
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(3)
+    public List<ExpenseSummary> last() {
+        return expenseService.getLastExpenses(randomUser(), 10);
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public List<CategoryTotal> monthReport() {
+        return rollups.monthByCategory(randomUser(), rollups.currentMonth());
+    }
+
+    private long randomUser() {
+        return ThreadLocalRandom.current().nextInt(users) + 1L;
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.bookkeeperai.telegram;
+
+import com.example.bookkeeperai.dto.ExpenseSummary;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.math.BigDecimal;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Форматирование страницы {@code /last} (10 расходов) в текст сообщения.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ExpensePageFormatBenchmark {
+
+    private List<ExpenseSummary> page;
+
+    @Setup
+    public void setUp() {
+        OffsetDateTime now = OffsetDateTime.parse("2025-12-04T10:15:30+03:00");
+        page = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            page.add(new Row((long) i, new BigDecimal("1234.50").add(BigDecimal.valueOf(i)),
+                    i % 3 == 0 ? "USD" : "RUB", "groceries",
+                    i % 2 == 0 ? "продукты на неделю" : null, "Пятёрочка у дома",
+                    now.minusDays(i)));
+        }
+    }
+
+    @Benchmark
+    public String formatLast() {
+        return ExpenseBot.formatExpenses("Последние расходы:\n", page);
+    }
+
+    private static final class Row implements ExpenseSummary {
+
+        private final Long id;
+        private final BigDecimal amount;
+        private final String currency;
+        private final String category;
+        private final String description;
+        private final String place;
+        private final OffsetDateTime expenseDate;
+
+        Row(Long id, BigDecimal amount, String currency, String category,
+            String description, String place, OffsetDateTime expenseDate) {
+            this.id = id;
+            this.amount = amount;
+            this.currency = currency;
+            this.category = category;
+            this.description = description;
+            this.place = place;
+            this.expenseDate = expenseDate;
+        }
+
+        @Override
+        public Long getId() {
+            return id;
+        }
+
+        @Override
+        public BigDecimal getAmount() {
+            return amount;
+        }
+
+        @Override
+        public String getCurrency() {
+            return currency;
+        }
+
+        @Override
+        public BigDecimal getAmountInBaseCurrency() {
+            return amount;
+        }
+
+        @Override
+        public String getCategory() {
+            return category;
+        }
+
+        @Override
+        public String getDescription() {
+            return description;
+        }
+
+        @Override
+        public String getPlace() {
+            return place;
+        }
+
+        @Override
+        public OffsetDateTime getExpenseDate() {
+            return expenseDate;
+        }
+
+        @Override
+        public String getSourceType() {
+            return "TEXT";
+        }
+    }
+}
@@ -1,25 +1,17 @@
 package com.example.bookkeeperai;
 
-import com.example.bookkeeperai.telegram.ExpenseBot;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
-import org.springframework.context.ConfigurableApplicationContext;
-import org.telegram.telegrambots.meta.TelegramBotsApi;
-import org.telegram.telegrambots.updatesreceivers.DefaultBotSession;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
+/**
+ * Бот подключается к Telegram после старта — см. {@code telegram.BotRegistration}.
+ */
 @SpringBootApplication
+@EnableScheduling
 public class BookkeeperAiApplication {
 
     public static void main(String[] args) {
-        ConfigurableApplicationContext ctx =
-                SpringApplication.run(BookkeeperAiApplication.class, args);
-
-        try {
-            TelegramBotsApi botsApi = new TelegramBotsApi(DefaultBotSession.class);
-            ExpenseBot bot = ctx.getBean(ExpenseBot.class);
-            botsApi.registerBot(bot);
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+        SpringApplication.run(BookkeeperAiApplication.class, args);
     }
 }
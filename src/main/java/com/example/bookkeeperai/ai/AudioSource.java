@@ -0,0 +1,22 @@
+package com.example.bookkeeperai.ai;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Аудио, которое читается потоком и не держится в памяти целиком.
+ * {@link #open()} может вызываться повторно — например, при повторной отправке запроса.
+ *
+ * @param contentLength размер в байтах, если известен заранее, иначе -1
+ */
+public record AudioSource(Opener opener, long contentLength) {
+
+    public InputStream open() throws IOException {
+        return opener.open();
+    }
+
+    @FunctionalInterface
+    public interface Opener {
+        InputStream open() throws IOException;
+    }
+}
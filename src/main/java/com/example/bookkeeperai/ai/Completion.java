@@ -0,0 +1,9 @@
+package com.example.bookkeeperai.ai;
+
+/**
+ * Ответ LLM и расход токенов из {@code usage}; -1 — сервер эти числа не прислал.
+ *
+ * @param cachedTokens часть {@code promptTokens}, взятая из кэша префикса провайдера
+ */
+public record Completion(String text, int promptTokens, int completionTokens, int cachedTokens) {
+}
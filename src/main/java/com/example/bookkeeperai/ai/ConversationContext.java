@@ -0,0 +1,26 @@
+package com.example.bookkeeperai.ai;
+
+import com.example.bookkeeperai.entity.Expense;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Неизменяемый снимок разговора с пользователем: последние записанные траты
+ * (сначала самая свежая) и последние сообщения. Номер траты в списке —
+ * то, на что LLM ссылается в правке.
+ */
+public record ConversationContext(List<Entry> expenses, List<String> turns) {
+
+    /** Трата в том виде, в каком её видит LLM, плюс id строки для правки. */
+    public record Entry(Long id, BigDecimal amount, String currency, String category,
+                        String description, String place, LocalDate date) {
+
+        static Entry of(Expense e) {
+            return new Entry(e.getId(), e.getAmount(), e.getCurrency(), e.getCategory(),
+                    e.getDescription(), e.getPlace(),
+                    e.getExpenseDate() != null ? e.getExpenseDate().toLocalDate() : null);
+        }
+    }
+}
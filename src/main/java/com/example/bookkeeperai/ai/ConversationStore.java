@@ -0,0 +1,205 @@
+package com.example.bookkeeperai.ai;
+
+import com.example.bookkeeperai.entity.Expense;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Разговоры пользователей в памяти: что недавно записано и что пользователь писал.
+ * Нужно, чтобы "нет, это было 600" правило прошлую трату, а не создавало новую.
+ *
+ * На пользователя хранится не больше {@code max-expenses} трат и {@code max-turns}
+ * сообщений, каждое обрезано до {@code max-turn-chars} — контекст в промпте не растёт
+ * с длиной разговора. Сессии вытесняются LRU по числу и оценке памяти, а после
+ * {@code idle-ttl} без сообщений забываются. После рестарта разговор начинается заново.
+ */
+@Component
+public class ConversationStore {
+
+    /** Грубая оценка накладных расходов на сессию: узел LinkedHashMap, списки, записи. */
+    private static final int SESSION_OVERHEAD_BYTES = 256;
+    private static final int ENTRY_OVERHEAD_BYTES = 128;
+
+    private record Session(ConversationContext context, long expiresAt, long bytes) {
+    }
+
+    private final boolean enabled;
+    private final int maxSessions;
+    private final long maxBytes;
+    private final long idleTtlNanos;
+    private final int maxExpenses;
+    private final int maxTurns;
+    private final int maxTurnChars;
+
+    private final LinkedHashMap<Long, Session> sessions = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+
+    private final AtomicLong sizeEvictions = new AtomicLong();
+    private final AtomicLong expiredEvictions = new AtomicLong();
+
+    public ConversationStore(@Value("${conversation.enabled}") boolean enabled,
+                             @Value("${conversation.max-sessions}") int maxSessions,
+                             @Value("${conversation.max-bytes}") long maxBytes,
+                             @Value("${conversation.idle-ttl}") Duration idleTtl,
+                             @Value("${conversation.max-expenses}") int maxExpenses,
+                             @Value("${conversation.max-turns}") int maxTurns,
+                             @Value("${conversation.max-turn-chars}") int maxTurnChars,
+                             MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.maxSessions = maxSessions;
+        this.maxBytes = maxBytes;
+        this.idleTtlNanos = idleTtl.toNanos();
+        this.maxExpenses = maxExpenses;
+        this.maxTurns = maxTurns;
+        this.maxTurnChars = maxTurnChars;
+
+        FunctionCounter.builder("bookkeeper.conversation.evictions", sizeEvictions, AtomicLong::get)
+                .tag("reason", "size")
+                .register(meterRegistry);
+        FunctionCounter.builder("bookkeeper.conversation.evictions", expiredEvictions, AtomicLong::get)
+                .tag("reason", "expired")
+                .register(meterRegistry);
+        Gauge.builder("bookkeeper.conversation.sessions", this, ConversationStore::size)
+                .register(meterRegistry);
+        Gauge.builder("bookkeeper.conversation.bytes", this, ConversationStore::estimatedBytes)
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    /** Контекст пользователя или null, если разговора нет или он истёк. */
+    public synchronized ConversationContext get(Long userId) {
+        if (!enabled) {
+            return null;
+        }
+        Session session = sessions.get(userId);
+        if (session != null && session.expiresAt() - System.nanoTime() < 0) {
+            remove(userId);
+            expiredEvictions.incrementAndGet();
+            return null;
+        }
+        return session != null ? session.context() : null;
+    }
+
+    /**
+     * Добавляет сообщение и траты, записанные или исправленные по нему. Трата с тем же id
+     * (правка) переезжает в начало списка, а не дублируется.
+     */
+    public void record(Long userId, String text, List<Expense> expenses) {
+        if (!enabled) {
+            return;
+        }
+        synchronized (this) {
+            Session previous = sessions.get(userId);
+            ConversationContext context = previous != null && previous.expiresAt() - System.nanoTime() >= 0
+                    ? previous.context()
+                    : new ConversationContext(List.of(), List.of());
+
+            List<ConversationContext.Entry> entries = new ArrayList<>(maxExpenses);
+            for (int i = expenses.size() - 1; i >= 0 && entries.size() < maxExpenses; i--) {
+                entries.add(ConversationContext.Entry.of(expenses.get(i)));
+            }
+            for (ConversationContext.Entry e : context.expenses()) {
+                if (entries.size() >= maxExpenses) {
+                    break;
+                }
+                if (entries.stream().noneMatch(n -> Objects.equals(n.id(), e.id()))) {
+                    entries.add(e);
+                }
+            }
+
+            List<String> turns = new ArrayList<>(maxTurns);
+            turns.add(text.length() > maxTurnChars ? text.substring(0, maxTurnChars) : text);
+            for (int i = 0; i < context.turns().size() && turns.size() < maxTurns; i++) {
+                turns.add(context.turns().get(i));
+            }
+
+            ConversationContext updated = new ConversationContext(List.copyOf(entries), List.copyOf(turns));
+            long bytes = estimateBytes(updated);
+            remove(userId);
+            sessions.put(userId, new Session(updated, System.nanoTime() + idleTtlNanos, bytes));
+            totalBytes += bytes;
+            evictEldest();
+        }
+    }
+
+    /** Забывает разговор — например, после /start. */
+    public synchronized void clear(Long userId) {
+        remove(userId);
+    }
+
+    /**
+     * Сессии упорядочены по последнему обращению, поэтому истёкшие лежат в начале —
+     * обход останавливается на первой живой.
+     */
+    @Scheduled(fixedDelayString = "${conversation.idle-ttl}")
+    public synchronized void evictExpired() {
+        long now = System.nanoTime();
+        Iterator<Map.Entry<Long, Session>> it = sessions.entrySet().iterator();
+        while (it.hasNext()) {
+            Session session = it.next().getValue();
+            if (session.expiresAt() - now >= 0) {
+                break;
+            }
+            totalBytes -= session.bytes();
+            it.remove();
+            expiredEvictions.incrementAndGet();
+        }
+    }
+
+    public synchronized int size() {
+        return sessions.size();
+    }
+
+    public synchronized long estimatedBytes() {
+        return totalBytes;
+    }
+
+    private void remove(Long userId) {
+        Session removed = sessions.remove(userId);
+        if (removed != null) {
+            totalBytes -= removed.bytes();
+        }
+    }
+
+    private void evictEldest() {
+        Iterator<Map.Entry<Long, Session>> it = sessions.entrySet().iterator();
+        while ((sessions.size() > maxSessions || totalBytes > maxBytes) && it.hasNext()) {
+            Map.Entry<Long, Session> eldest = it.next();
+            totalBytes -= eldest.getValue().bytes();
+            it.remove();
+            sizeEvictions.incrementAndGet();
+        }
+    }
+
+    private static long estimateBytes(ConversationContext context) {
+        long bytes = SESSION_OVERHEAD_BYTES;
+        for (ConversationContext.Entry e : context.expenses()) {
+            bytes += ENTRY_OVERHEAD_BYTES
+                    + 2L * length(e.currency())
+                    + 2L * length(e.category())
+                    + 2L * length(e.description())
+                    + 2L * length(e.place());
+        }
+        for (String turn : context.turns()) {
+            bytes += ENTRY_OVERHEAD_BYTES + 2L * turn.length();
+        }
+        return bytes;
+    }
+
+    private static int length(String s) {
+        return s == null ? 0 : s.length();
+    }
+}
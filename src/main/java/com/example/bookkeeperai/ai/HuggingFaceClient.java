@@ -1,157 +1,198 @@
 package com.example.bookkeeperai.ai;
 
-import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ArrayNode;
-import com.fasterxml.jackson.databind.node.ObjectNode;
-import lombok.extern.slf4j.Slf4j;
+import com.example.bookkeeperai.resilience.ResilientExecutor;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Component;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
-
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Бэкенд HuggingFace Inference: Whisper через HF ASR и LLM через router.huggingface.co.
+ */
 @Component
-@Slf4j
-public class HuggingFaceClient {
+public class HuggingFaceClient implements InferenceBackend {
 
-    private static final String HF_ASR_BASE =
-            "https://router.huggingface.co/hf-inference/models/";
-    private static final String HF_CHAT_URL =
-            "https://router.huggingface.co/v1/chat/completions";
+    private static final String NAME = "huggingface";
 
+    private final String asrBaseUrl;
+    private final String chatUrl;
     private final String hfToken;
     private final String sttModel;
     private final String nlpModel;
+    private final int weight;
+    private final Duration sttTimeout;
+    private final Duration llmTimeout;
 
-    private final HttpClient httpClient = HttpClient.newHttpClient();
-    private final ObjectMapper mapper = new ObjectMapper();
+    /**
+     * Пул для обработки ответов. Запросы не держат поток на время ожидания:
+     * HTTP/2 мультиплексирует их поверх общих соединений с router.huggingface.co.
+     */
+    private final ExecutorService httpExecutor;
+    private final HttpClient httpClient;
+    private final JsonFactory jsonFactory;
+
+    private final ResilientExecutor sttResilience;
+    private final ResilientExecutor llmResilience;
 
     public HuggingFaceClient(
+            @Value("${huggingface.urls.asr-base}") String asrBaseUrl,
+            @Value("${huggingface.urls.chat}") String chatUrl,
             @Value("${huggingface.token}") String hfToken,
             @Value("${huggingface.sttModel}") String sttModel,
-            @Value("${huggingface.nlpModel}") String nlpModel
+            @Value("${huggingface.nlpModel}") String nlpModel,
+            @Value("${huggingface.weight}") int weight,
+            @Value("${huggingface.http.connect-timeout}") Duration connectTimeout,
+            @Value("${huggingface.http.stt-timeout}") Duration sttTimeout,
+            @Value("${huggingface.http.llm-timeout}") Duration llmTimeout,
+            @Value("${huggingface.http.executor-threads}") int executorThreads,
+            @Qualifier("sttResilience") ResilientExecutor sttResilience,
+            @Qualifier("llmResilience") ResilientExecutor llmResilience,
+            ObjectMapper objectMapper
     ) {
+        this.asrBaseUrl = asrBaseUrl;
+        this.chatUrl = chatUrl;
         this.hfToken = hfToken;
         this.sttModel = sttModel;
         this.nlpModel = nlpModel;
+        this.weight = weight;
+        this.sttTimeout = sttTimeout;
+        this.llmTimeout = llmTimeout;
+        this.sttResilience = sttResilience;
+        this.llmResilience = llmResilience;
+        this.jsonFactory = objectMapper.getFactory();
+        this.httpExecutor = Executors.newFixedThreadPool(
+                executorThreads, new CustomizableThreadFactory("hf-http-"));
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(connectTimeout)
+                .executor(httpExecutor)
+                .build();
     }
 
-    /** Общая проверка, что ответ действительно JSON, а не HTML. */
-    private void ensureJson(HttpResponse<String> response) {
-        String body = response.body() == null ? "" : response.body();
-        String contentType = response.headers()
-                .firstValue("content-type")
-                .orElse("");
-
-        // Если это не application/json ИЛИ тело начинается с '<' — считаем, что это не JSON.
-        if (!contentType.toLowerCase().startsWith("application/json")
-                || (!body.isBlank() && body.trim().charAt(0) == '<')) {
-
-            log.error(
-                    "HF вернул не JSON.\nstatus={} contentType={}\nbody:\n{}",
-                    response.statusCode(), contentType, body
-            );
-            throw new IllegalStateException(
-                    "HuggingFace вернул не JSON (content-type: " + contentType + ")"
-            );
-        }
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public int weight() {
+        return weight;
+    }
+
+    @Override
+    public boolean supports(Task task) {
+        return true;
+    }
+
+    @Override
+    public boolean isAvailable(Task task) {
+        return (task == Task.STT ? sttResilience : llmResilience).isAvailable();
     }
 
     /**
      * Speech-to-text через HF ASR (Whisper).
      */
-    public String speechToText(byte[] audioBytes) throws Exception {
+    @Override
+    public CompletableFuture<String> speechToTextAsync(byte[] audioBytes) {
+        return sendSpeechToText(HttpRequest.BodyPublishers.ofByteArray(audioBytes));
+    }
+
+    /**
+     * Тело запроса читается прямо из {@code audio} по мере отправки, без копии в памяти.
+     */
+    @Override
+    public CompletableFuture<String> speechToTextAsync(AudioSource audio) {
+        HttpRequest.BodyPublisher body = HttpRequest.BodyPublishers.ofInputStream(() -> {
+            try {
+                return audio.open();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        if (audio.contentLength() >= 0) {
+            body = HttpRequest.BodyPublishers.fromPublisher(body, audio.contentLength());
+        }
+        return sendSpeechToText(body);
+    }
+
+    private CompletableFuture<String> sendSpeechToText(HttpRequest.BodyPublisher body) {
         HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create(HF_ASR_BASE + sttModel))
+                .uri(URI.create(asrBaseUrl + sttModel))
+                .timeout(sttTimeout)
                 .header("Authorization", "Bearer " + hfToken)
                 // Telegram voice = .ogg (Opus)
                 .header("Content-Type", "audio/ogg")
                 .header("Accept", "application/json")
-                .POST(HttpRequest.BodyPublishers.ofByteArray(audioBytes))
+                .POST(body)
                 .build();
 
-        HttpResponse<String> response =
-                httpClient.send(request, HttpResponse.BodyHandlers.ofString());
-
-        int status = response.statusCode();
-
-        if (status >= 400) {
-            log.error("HF STT HTTP error: {} body: {}", status, response.body());
-            throw new IllegalStateException(
-                    "HF STT HTTP error: " + status + " body: " + response.body()
-            );
-        }
-
-        ensureJson(response);
+        // Тело из AudioSource открывается заново при каждой попытке
+        return sttResilience.execute(() ->
+                httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray())
+                        .thenApply(this::readSpeechToText));
+    }
 
-        JsonNode root = mapper.readTree(response.body());
-        if (root.has("text")) {
-            return root.get("text").asText();
+    private String readSpeechToText(HttpResponse<byte[]> response) {
+        if (response.statusCode() >= 400) {
+            throw InferenceHttp.httpError(NAME, "STT", response);
         }
 
-        log.warn("HF STT: unexpected response format: {}", response.body());
-        return response.body();
+        InferenceHttp.ensureJson(NAME, response);
+        return InferenceHttp.decodeTranscript(NAME, jsonFactory, response.body());
     }
 
 
     /**
      * LLM через OpenAI-совместимый Chat Completions.
      */
-    public String generateText(String prompt) throws Exception {
-        ObjectNode bodyNode = mapper.createObjectNode();
-        bodyNode.put("model", nlpModel);
-
-        ArrayNode messages = mapper.createArrayNode();
-        ObjectNode userMsg = mapper.createObjectNode();
-        userMsg.put("role", "user");
-        userMsg.put("content", prompt);
-        messages.add(userMsg);
-        bodyNode.set("messages", messages);
-
-        bodyNode.put("max_tokens", 512);
-        bodyNode.put("temperature", 0.1);
-
-        // 👇 добавляем требование вернуть JSON-объект
-        ObjectNode responseFormat = bodyNode.putObject("response_format");
-        responseFormat.put("type", "json_object");
-
-        String json = mapper.writeValueAsString(bodyNode);
+    @Override
+    public CompletableFuture<Completion> generateTextAsync(Prompt prompt) {
+        byte[] json = InferenceHttp.chatRequest(jsonFactory, nlpModel, prompt);
 
         HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create(HF_CHAT_URL))
+                .uri(URI.create(chatUrl))
+                .timeout(llmTimeout)
                 .header("Authorization", "Bearer " + hfToken)
                 .header("Content-Type", "application/json")
                 .header("Accept", "application/json")
-                .POST(HttpRequest.BodyPublishers.ofString(json))
+                .POST(HttpRequest.BodyPublishers.ofByteArray(json))
                 .build();
 
-        HttpResponse<String> response =
-                httpClient.send(request, HttpResponse.BodyHandlers.ofString());
-
-        int status = response.statusCode();
+        return llmResilience.execute(() ->
+                httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray())
+                        .thenApply(this::readGeneratedText));
+    }
 
-        if (status >= 400) {
-            log.error("HF LLM HTTP error: {} body: {}", status, response.body());
-            throw new IllegalStateException(
-                    "HF LLM HTTP error: " + status + " body: " + response.body()
-            );
+    private Completion readGeneratedText(HttpResponse<byte[]> response) {
+        if (response.statusCode() >= 400) {
+            throw InferenceHttp.httpError(NAME, "LLM", response);
         }
 
-        ensureJson(response);
+        InferenceHttp.ensureJson(NAME, response);
+        return decodeCompletion(response.body());
+    }
 
-        JsonNode root = mapper.readTree(response.body());
-        JsonNode choices = root.path("choices");
-        if (choices.isArray() && choices.size() > 0) {
-            JsonNode message = choices.get(0).path("message");
-            if (message.has("content")) {
-                return message.get("content").asText();
-            }
-        }
+    /** Пакетный доступ — для {@code LlmOutputBenchmark}. */
+    Completion decodeCompletion(byte[] body) {
+        return InferenceHttp.decodeCompletion(NAME, jsonFactory, body);
+    }
 
-        log.warn("Unexpected HF LLM response format: {}", response.body());
-        return response.body();
+    @PreDestroy
+    public void shutdown() {
+        httpExecutor.shutdown();
     }
 }
@@ -0,0 +1,111 @@
+package com.example.bookkeeperai.ai;
+
+import com.example.bookkeeperai.resilience.CircuitBreaker;
+import com.example.bookkeeperai.resilience.ResilientExecutor;
+import com.example.bookkeeperai.resilience.RetryPolicy;
+import com.example.bookkeeperai.resilience.TokenBucket;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+import java.time.Duration;
+
+/**
+ * Повторы, лимит запросов, circuit breaker и hedging для вызовов HuggingFace.
+ * Лимит общий для STT и LLM (квота у токена одна), breaker у каждого эндпоинта свой.
+ *
+ * Локальному серверу ({@link OpenAiCompatibleClient}) — свой лимит и свои breaker'ы
+ * с теми же порогами, но меньше повторов: при сбое быстрее переключиться на другой бэкенд.
+ */
+@Configuration
+public class HuggingFaceResilienceConfig {
+
+    @Value("${huggingface.resilience.retry.max-attempts}")
+    private int maxAttempts;
+    @Value("${huggingface.resilience.retry.base-delay}")
+    private Duration baseDelay;
+    @Value("${huggingface.resilience.retry.max-delay}")
+    private Duration maxDelay;
+
+    @Value("${huggingface.resilience.rate-limit.max-wait}")
+    private Duration rateLimitMaxWait;
+
+    @Value("${huggingface.resilience.circuit-breaker.window-size}")
+    private int windowSize;
+    @Value("${huggingface.resilience.circuit-breaker.minimum-calls}")
+    private int minimumCalls;
+    @Value("${huggingface.resilience.circuit-breaker.failure-rate-threshold}")
+    private double failureRateThreshold;
+    @Value("${huggingface.resilience.circuit-breaker.open-duration}")
+    private Duration openDuration;
+    @Value("${huggingface.resilience.circuit-breaker.half-open-calls}")
+    private int halfOpenCalls;
+
+    @Bean
+    public TokenBucket huggingFaceRateLimiter(
+            @Value("${huggingface.resilience.rate-limit.permits-per-second}") double permitsPerSecond,
+            @Value("${huggingface.resilience.rate-limit.burst}") int burst) {
+        return new TokenBucket(permitsPerSecond, burst);
+    }
+
+    @Bean
+    public ResilientExecutor sttResilience(
+            @Qualifier("huggingFaceRateLimiter") TokenBucket huggingFaceRateLimiter,
+            @Value("${huggingface.resilience.hedging.stt-delay}") Duration hedgeDelay,
+            MeterRegistry meterRegistry) {
+        return executor("stt", maxAttempts, huggingFaceRateLimiter, hedgeDelay, meterRegistry);
+    }
+
+    @Bean
+    public ResilientExecutor llmResilience(
+            @Qualifier("huggingFaceRateLimiter") TokenBucket huggingFaceRateLimiter,
+            @Value("${huggingface.resilience.hedging.llm-delay}") Duration hedgeDelay,
+            MeterRegistry meterRegistry) {
+        return executor("llm", maxAttempts, huggingFaceRateLimiter, hedgeDelay, meterRegistry);
+    }
+
+    @Bean
+    public TokenBucket localInferenceRateLimiter(
+            @Value("${inference.local.resilience.rate-limit.permits-per-second}") double permitsPerSecond,
+            @Value("${inference.local.resilience.rate-limit.burst}") int burst) {
+        return new TokenBucket(permitsPerSecond, burst);
+    }
+
+    @Bean
+    public ResilientExecutor localSttResilience(
+            @Qualifier("localInferenceRateLimiter") TokenBucket localInferenceRateLimiter,
+            @Value("${inference.local.resilience.max-attempts}") int localMaxAttempts,
+            MeterRegistry meterRegistry) {
+        return executor("local-stt", localMaxAttempts, localInferenceRateLimiter, Duration.ZERO, meterRegistry);
+    }
+
+    @Bean
+    public ResilientExecutor localLlmResilience(
+            @Qualifier("localInferenceRateLimiter") TokenBucket localInferenceRateLimiter,
+            @Value("${inference.local.resilience.max-attempts}") int localMaxAttempts,
+            MeterRegistry meterRegistry) {
+        return executor("local-llm", localMaxAttempts, localInferenceRateLimiter, Duration.ZERO, meterRegistry);
+    }
+
+    private ResilientExecutor executor(String name, int attempts, TokenBucket rateLimiter,
+                                       Duration hedgeDelay, MeterRegistry meterRegistry) {
+        RetryPolicy retryPolicy = new RetryPolicy(attempts, baseDelay, maxDelay,
+                HuggingFaceResilienceConfig::isRetryable,
+                error -> error instanceof InferenceException hf ? hf.getRetryAfter() : null);
+        CircuitBreaker circuitBreaker = new CircuitBreaker(
+                windowSize, minimumCalls, failureRateThreshold, openDuration, halfOpenCalls);
+        return new ResilientExecutor(name, retryPolicy, rateLimiter, rateLimitMaxWait,
+                circuitBreaker, hedgeDelay, meterRegistry);
+    }
+
+    /** Повторяем перегрузку/таймауты бэкенда и сетевые ошибки (включая HttpTimeoutException). */
+    private static boolean isRetryable(Throwable error) {
+        if (error instanceof InferenceException hf) {
+            return hf.isRetryable();
+        }
+        return error instanceof IOException;
+    }
+}
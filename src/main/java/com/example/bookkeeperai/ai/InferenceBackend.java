@@ -0,0 +1,30 @@
+package com.example.bookkeeperai.ai;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Источник распознавания речи и генерации текста. Какой бэкенд обслужит вызов,
+ * решает {@link InferenceRouter}; повторы и circuit breaker — внутри самого бэкенда.
+ */
+public interface InferenceBackend {
+
+    enum Task { STT, LLM }
+
+    /** Имя для логов и тега метрик. */
+    String name();
+
+    /** Доля бэкенда при маршрутизации; 0 — не использовать. */
+    int weight();
+
+    boolean supports(Task task);
+
+    /** false, пока circuit breaker задачи открыт — вызов всё равно будет отклонён. */
+    boolean isAvailable(Task task);
+
+    CompletableFuture<String> speechToTextAsync(byte[] audioBytes);
+
+    /** Тело может читаться повторно — при повторе или переключении на другой бэкенд. */
+    CompletableFuture<String> speechToTextAsync(AudioSource audio);
+
+    CompletableFuture<Completion> generateTextAsync(Prompt prompt);
+}
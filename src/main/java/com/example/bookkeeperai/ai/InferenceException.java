@@ -0,0 +1,29 @@
+package com.example.bookkeeperai.ai;
+
+import lombok.Getter;
+
+import java.time.Duration;
+
+/**
+ * Ошибочный ответ бэкенда инференса: HTTP-статус >= 400 или тело не в JSON.
+ * {@code retryable} — имеет ли смысл повторить запрос (перегрузка, таймаут шлюза, HTML-заглушка).
+ */
+@Getter
+public class InferenceException extends IllegalStateException {
+
+    private final int status;
+    private final boolean retryable;
+    /** Значение заголовка Retry-After, если сервер его прислал. */
+    private final Duration retryAfter;
+
+    public InferenceException(String message, int status, boolean retryable, Duration retryAfter) {
+        super(message);
+        this.status = status;
+        this.retryable = retryable;
+        this.retryAfter = retryAfter;
+    }
+
+    static boolean isRetryableStatus(int status) {
+        return status == 408 || status == 429 || status >= 500;
+    }
+}
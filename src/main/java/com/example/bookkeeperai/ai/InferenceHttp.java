@@ -0,0 +1,268 @@
+package com.example.bookkeeperai.ai;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Общее для HTTP-бэкендов: проверка ответа, ошибки с Retry-After и конверт
+ * OpenAI Chat Completions, который понимают и HuggingFace router, и локальные серверы.
+ */
+@Slf4j
+final class InferenceHttp {
+
+    private InferenceHttp() {
+    }
+
+    /** Общая проверка, что ответ действительно JSON, а не HTML. */
+    static void ensureJson(String backend, HttpResponse<byte[]> response) {
+        byte[] body = response.body() == null ? new byte[0] : response.body();
+        String contentType = response.headers()
+                .firstValue("content-type")
+                .orElse("");
+
+        // Если это не application/json ИЛИ тело начинается с '<' — считаем, что это не JSON.
+        if (!contentType.toLowerCase().startsWith("application/json") || firstNonWhitespace(body) == '<') {
+
+            log.error(
+                    "{} вернул не JSON.\nstatus={} contentType={}\nbody:\n{}",
+                    backend, response.statusCode(), contentType, text(body)
+            );
+            // Обычно это HTML-заглушка шлюза при перегрузке — имеет смысл повторить
+            throw new InferenceException(
+                    backend + " вернул не JSON (content-type: " + contentType + ")",
+                    response.statusCode(), true, null
+            );
+        }
+    }
+
+    private static int firstNonWhitespace(byte[] body) {
+        for (byte b : body) {
+            if (b != ' ' && b != '\n' && b != '\r' && b != '\t') {
+                return b;
+            }
+        }
+        return -1;
+    }
+
+    /** Тело в строку — только для логов и ошибок, на успешном пути не нужно. */
+    static String text(byte[] body) {
+        return body == null ? "" : new String(body, StandardCharsets.UTF_8);
+    }
+
+    static InferenceException httpError(String backend, String endpoint, HttpResponse<byte[]> response) {
+        int status = response.statusCode();
+        String body = text(response.body());
+        log.error("{} {} HTTP error: {} body: {}", backend, endpoint, status, body);
+        return new InferenceException(
+                backend + " " + endpoint + " HTTP error: " + status + " body: " + body,
+                status,
+                InferenceException.isRetryableStatus(status),
+                retryAfter(response)
+        );
+    }
+
+    /** Retry-After бывает в секундах или HTTP-датой. */
+    private static Duration retryAfter(HttpResponse<?> response) {
+        String value = response.headers().firstValue("retry-after").orElse(null);
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        try {
+            return Duration.ofSeconds(Long.parseLong(value.trim()));
+        } catch (NumberFormatException e) {
+            try {
+                ZonedDateTime at = ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+                Duration delay = Duration.between(ZonedDateTime.now(), at);
+                return delay.isNegative() ? Duration.ZERO : delay;
+            } catch (DateTimeParseException ignored) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Строковое значение по пути полей потоком токенов, без дерева; в массивах
+     * берётся первый элемент. null — если пути в ответе нет.
+     */
+    static String readPath(JsonFactory jsonFactory, byte[] body, String... path) {
+        try (JsonParser p = jsonFactory.createParser(body)) {
+            JsonToken token = p.nextToken();
+            int depth = 0;
+            while (token != null) {
+                if (token == JsonToken.START_ARRAY) {
+                    token = p.nextToken();
+                    continue;
+                }
+                if (token != JsonToken.START_OBJECT) {
+                    return null;
+                }
+                JsonToken value = null;
+                while (value == null && p.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = p.currentName();
+                    JsonToken next = p.nextToken();
+                    if (path[depth].equals(field)) {
+                        value = next;
+                    } else {
+                        p.skipChildren();
+                    }
+                }
+                if (value == null) {
+                    return null;
+                }
+                if (++depth == path.length) {
+                    return value.isScalarValue() ? p.getValueAsString() : null;
+                }
+                token = value;
+            }
+            return null;
+        } catch (IOException e) {
+            throw new IllegalStateException("Бэкенд инференса вернул некорректный JSON", e);
+        }
+    }
+
+    /**
+     * Тело запроса пишется генератором сразу в байты, без промежуточного дерева и строки.
+     * Инструкция идёт отдельным system-сообщением перед пользовательским — общий префикс
+     * всех запросов одного вида.
+     */
+    static byte[] chatRequest(JsonFactory jsonFactory, String model, Prompt prompt) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(
+                (prompt.system().length() + prompt.user().length()) * 2 + 256);
+        try (JsonGenerator g = jsonFactory.createGenerator(out)) {
+            g.writeStartObject();
+            g.writeStringField("model", model);
+            g.writeArrayFieldStart("messages");
+            g.writeStartObject();
+            g.writeStringField("role", "system");
+            g.writeStringField("content", prompt.system());
+            g.writeEndObject();
+            g.writeStartObject();
+            g.writeStringField("role", "user");
+            g.writeStringField("content", prompt.user());
+            g.writeEndObject();
+            g.writeEndArray();
+            g.writeNumberField("max_tokens", prompt.maxTokens());
+            g.writeNumberField("temperature", 0.1);
+            // 👇 добавляем требование вернуть JSON-объект
+            g.writeObjectFieldStart("response_format");
+            g.writeStringField("type", "json_object");
+            g.writeEndObject();
+            g.writeEndObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * choices[0].message.content и usage из конверта Chat Completions за один проход
+     * потоком токенов. Без content отдаётся всё тело — пусть разбирается дальше.
+     */
+    static Completion decodeCompletion(String backend, JsonFactory jsonFactory, byte[] body) {
+        String content = null;
+        int promptTokens = -1;
+        int completionTokens = -1;
+        int cachedTokens = -1;
+        try (JsonParser p = jsonFactory.createParser(body)) {
+            if (p.nextToken() == JsonToken.START_OBJECT) {
+                while (p.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = p.currentName();
+                    JsonToken value = p.nextToken();
+                    if ("choices".equals(field) && value == JsonToken.START_ARRAY) {
+                        content = firstChoiceContent(p);
+                    } else if ("usage".equals(field) && value == JsonToken.START_OBJECT) {
+                        while (p.nextToken() == JsonToken.FIELD_NAME) {
+                            String usageField = p.currentName();
+                            JsonToken usageValue = p.nextToken();
+                            switch (usageField) {
+                                case "prompt_tokens" -> promptTokens = p.getValueAsInt(-1);
+                                case "completion_tokens" -> completionTokens = p.getValueAsInt(-1);
+                                case "prompt_tokens_details" -> {
+                                    if (usageValue != JsonToken.START_OBJECT) {
+                                        p.skipChildren();
+                                        break;
+                                    }
+                                    while (p.nextToken() == JsonToken.FIELD_NAME) {
+                                        String detail = p.currentName();
+                                        p.nextToken();
+                                        if ("cached_tokens".equals(detail)) {
+                                            cachedTokens = p.getValueAsInt(-1);
+                                        } else {
+                                            p.skipChildren();
+                                        }
+                                    }
+                                }
+                                default -> p.skipChildren();
+                            }
+                        }
+                    } else {
+                        p.skipChildren();
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Бэкенд инференса вернул некорректный JSON", e);
+        }
+
+        if (content == null) {
+            log.warn("Unexpected {} LLM response format: {}", backend, text(body));
+            content = text(body);
+        }
+        return new Completion(content, promptTokens, completionTokens, cachedTokens);
+    }
+
+    /** Парсер стоит на начале массива choices; после вызова — на его конце. */
+    private static String firstChoiceContent(JsonParser p) throws IOException {
+        String content = null;
+        boolean first = true;
+        while (p.nextToken() != JsonToken.END_ARRAY) {
+            if (first && p.currentToken() == JsonToken.START_OBJECT) {
+                while (p.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = p.currentName();
+                    JsonToken value = p.nextToken();
+                    if ("message".equals(field) && value == JsonToken.START_OBJECT) {
+                        while (p.nextToken() == JsonToken.FIELD_NAME) {
+                            String messageField = p.currentName();
+                            JsonToken messageValue = p.nextToken();
+                            if ("content".equals(messageField) && messageValue == JsonToken.VALUE_STRING) {
+                                content = p.getText();
+                            } else {
+                                p.skipChildren();
+                            }
+                        }
+                    } else {
+                        p.skipChildren();
+                    }
+                }
+            } else {
+                p.skipChildren();
+            }
+            first = false;
+        }
+        return content;
+    }
+
+    /** {"text": ...} — ответ и HF ASR, и OpenAI-совместимой транскрипции. */
+    static String decodeTranscript(String backend, JsonFactory jsonFactory, byte[] body) {
+        String text = readPath(jsonFactory, body, "text");
+        if (text != null) {
+            return text;
+        }
+
+        log.warn("{} STT: unexpected response format: {}", backend, text(body));
+        return text(body);
+    }
+}
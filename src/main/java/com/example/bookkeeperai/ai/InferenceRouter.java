@@ -0,0 +1,216 @@
+package com.example.bookkeeperai.ai;
+
+import com.example.bookkeeperai.ai.InferenceBackend.Task;
+import com.example.bookkeeperai.metrics.PipelineMetrics;
+import com.example.bookkeeperai.metrics.Stage;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Выбор бэкенда инференса для каждого вызова {@link SttService} и {@link NlpParserService}.
+ *
+ * Первым пробуется доступный бэкенд с наименьшей сглаженной задержкой, делённой на вес:
+ * бэкенд с весом 2 предпочтётся, даже если он до двух раз медленнее. Бэкенды без замеров
+ * идут первыми, бэкенды с открытым circuit breaker — последними. Доля
+ * {@code explore-ratio} вызовов уходит случайному доступному бэкенду пропорционально весам —
+ * так задержка медленных продолжает измеряться и восстановившийся бэкенд снова выбирается.
+ *
+ * Если бэкенд ответил ошибкой (уже после своих повторов), вызов переходит к следующему.
+ * Расход токенов LLM пишется в {@code bookkeeper.llm.tokens} по бэкенду и виду промпта.
+ */
+@Component
+@Slf4j
+public class InferenceRouter {
+
+    private final Map<Task, List<Route>> routes = new EnumMap<>(Task.class);
+    private final Map<Task, Counter> failovers = new EnumMap<>(Task.class);
+    private final double smoothing;
+    private final double exploreRatio;
+    private final PipelineMetrics pipelineMetrics;
+    private final MeterRegistry meterRegistry;
+
+    public InferenceRouter(List<InferenceBackend> backends,
+                           @Value("${inference.routing.latency-smoothing}") double smoothing,
+                           @Value("${inference.routing.explore-ratio}") double exploreRatio,
+                           PipelineMetrics pipelineMetrics,
+                           MeterRegistry meterRegistry) {
+        this.smoothing = smoothing;
+        this.exploreRatio = exploreRatio;
+        this.pipelineMetrics = pipelineMetrics;
+        this.meterRegistry = meterRegistry;
+
+        for (Task task : Task.values()) {
+            String tag = task.name().toLowerCase();
+            List<Route> taskRoutes = new ArrayList<>();
+            for (InferenceBackend backend : backends) {
+                if (backend.weight() > 0 && backend.supports(task)) {
+                    taskRoutes.add(new Route(backend, Timer.builder("bookkeeper.inference.latency")
+                            .tag("backend", backend.name())
+                            .tag("task", tag)
+                            .description("Успешные вызовы бэкенда, с его повторами")
+                            .publishPercentileHistogram()
+                            .register(meterRegistry)));
+                }
+            }
+            routes.put(task, List.copyOf(taskRoutes));
+            failovers.put(task, Counter.builder("bookkeeper.inference.failovers")
+                    .tag("task", tag)
+                    .description("Переходы к следующему бэкенду после ошибки")
+                    .register(meterRegistry));
+
+            if (taskRoutes.isEmpty()) {
+                log.warn("Нет бэкенда для {}: у всех вес 0 или задача не настроена", task);
+            } else {
+                log.info("Бэкенды {}: {}", task, taskRoutes.stream()
+                        .map(r -> r.backend.name() + "(вес " + r.backend.weight() + ")")
+                        .toList());
+            }
+        }
+    }
+
+    public CompletableFuture<String> speechToTextAsync(byte[] audioBytes) {
+        return route(Task.STT, backend -> backend.speechToTextAsync(audioBytes));
+    }
+
+    public CompletableFuture<String> speechToTextAsync(AudioSource audio) {
+        return route(Task.STT, backend -> backend.speechToTextAsync(audio));
+    }
+
+    public CompletableFuture<String> generateTextAsync(Prompt prompt) {
+        return pipelineMetrics.timeAsync(Stage.LLM, () -> route(Task.LLM, backend ->
+                backend.generateTextAsync(prompt).thenApply(completion -> {
+                    recordTokens(backend, prompt, completion);
+                    return completion.text();
+                })));
+    }
+
+    private void recordTokens(InferenceBackend backend, Prompt prompt, Completion completion) {
+        recordTokens(backend, prompt, "prompt", completion.promptTokens());
+        recordTokens(backend, prompt, "completion", completion.completionTokens());
+        recordTokens(backend, prompt, "cached", completion.cachedTokens());
+    }
+
+    private void recordTokens(InferenceBackend backend, Prompt prompt, String type, int tokens) {
+        if (tokens < 0) {
+            return;
+        }
+        DistributionSummary.builder("bookkeeper.llm.tokens")
+                .tag("backend", backend.name())
+                .tag("prompt", prompt.kind())
+                .tag("type", type)
+                .description("Токены на запрос к LLM по данным usage из ответа")
+                .register(meterRegistry)
+                .record(tokens);
+    }
+
+    private <T> CompletableFuture<T> route(Task task, Function<InferenceBackend, CompletableFuture<T>> call) {
+        List<Route> order = order(task);
+        if (order.isEmpty()) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Нет бэкенда для " + task));
+        }
+        CompletableFuture<T> result = new CompletableFuture<>();
+        attempt(task, order, 0, call, result);
+        return result;
+    }
+
+    private <T> void attempt(Task task, List<Route> order, int index,
+                             Function<InferenceBackend, CompletableFuture<T>> call,
+                             CompletableFuture<T> result) {
+        Route route = order.get(index);
+        long start = System.nanoTime();
+        CompletableFuture<T> future;
+        try {
+            future = call.apply(route.backend);
+        } catch (RuntimeException e) {
+            future = CompletableFuture.failedFuture(e);
+        }
+        future.whenComplete((value, error) -> {
+            if (error == null) {
+                route.record(System.nanoTime() - start, smoothing);
+                result.complete(value);
+                return;
+            }
+            if (index + 1 >= order.size() || result.isDone()) {
+                result.completeExceptionally(error);
+                return;
+            }
+            failovers.get(task).increment();
+            Route next = order.get(index + 1);
+            log.warn("{} {} не ответил ({}), переключаюсь на {}",
+                    task, route.backend.name(), Futures.unwrap(error).getMessage(), next.backend.name());
+            attempt(task, order, index + 1, call, result);
+        });
+    }
+
+    /** Порядок попыток. Задержки и доступность снимаются один раз — сортировка по снимку. */
+    private List<Route> order(Task task) {
+        List<Route> taskRoutes = routes.get(task);
+        if (taskRoutes.size() < 2) {
+            return taskRoutes;
+        }
+
+        List<Candidate> candidates = new ArrayList<>(taskRoutes.size());
+        int availableWeight = 0;
+        for (Route route : taskRoutes) {
+            boolean available = route.backend.isAvailable(task);
+            candidates.add(new Candidate(route, available, route.score()));
+            if (available) {
+                availableWeight += route.backend.weight();
+            }
+        }
+        candidates.sort(Comparator.comparing((Candidate c) -> !c.available())
+                .thenComparingDouble(Candidate::score));
+
+        if (availableWeight > 0 && ThreadLocalRandom.current().nextDouble() < exploreRatio) {
+            int pick = ThreadLocalRandom.current().nextInt(availableWeight);
+            for (int i = 0; i < candidates.size(); i++) {
+                Candidate c = candidates.get(i);
+                if (c.available() && (pick -= c.route().backend.weight()) < 0) {
+                    candidates.add(0, candidates.remove(i));
+                    break;
+                }
+            }
+        }
+        return candidates.stream().map(Candidate::route).toList();
+    }
+
+    private record Candidate(Route route, boolean available, double score) {
+    }
+
+    private static final class Route {
+
+        private final InferenceBackend backend;
+        private final Timer latency;
+        /** Сглаженная задержка в наносекундах; меньше нуля — замеров ещё не было. */
+        private double smoothedNanos = -1;
+
+        Route(InferenceBackend backend, Timer latency) {
+            this.backend = backend;
+            this.latency = latency;
+        }
+
+        synchronized void record(long nanos, double smoothing) {
+            latency.record(nanos, TimeUnit.NANOSECONDS);
+            smoothedNanos = smoothedNanos < 0 ? nanos : smoothedNanos + smoothing * (nanos - smoothedNanos);
+        }
+
+        synchronized double score() {
+            return smoothedNanos < 0 ? 0 : smoothedNanos / backend.weight();
+        }
+    }
+}
@@ -0,0 +1,337 @@
+package com.example.bookkeeperai.ai;
+
+import com.example.bookkeeperai.dto.ParsedExpense;
+import com.example.bookkeeperai.dto.ParsedFollowUp;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.TemporalAccessor;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Разбор JSON из ответа LLM потоком токенов прямо в {@link ParsedExpense}.
+ *
+ * Дерево {@code JsonNode} не строится, текст ответа не копируется: парсер
+ * начинает с первой '{' и останавливается на конце объекта, так что пояснения
+ * модели до и после JSON просто не читаются. Используется общий
+ * {@link ObjectMapper} приложения — его кэши не дублируются.
+ */
+@Component
+@Slf4j
+public class LlmResponseReader {
+
+    /** Сколько ответа показывать в логе при ошибке. */
+    private static final int LOG_PREFIX = 500;
+
+    /** Объект траты вместе с признаками, по которым решаем, брать ли его. */
+    private record Item(int index, String action, int target, boolean hasAmount, ParsedExpense expense) {
+    }
+
+    private final JsonFactory jsonFactory;
+    private final ZoneId zone;
+
+    private final Counter nonJsonOutputs;
+    private final Counter badAmounts;
+    private final Counter badDates;
+    private final Counter noExpenses;
+
+    public LlmResponseReader(ObjectMapper objectMapper,
+                             @Value("${reports.zone}") ZoneId zone,
+                             MeterRegistry meterRegistry) {
+        this.jsonFactory = objectMapper.getFactory();
+        this.zone = zone;
+        this.nonJsonOutputs = parseFailures(meterRegistry, "non_json");
+        this.badAmounts = parseFailures(meterRegistry, "bad_amount");
+        this.badDates = parseFailures(meterRegistry, "bad_date");
+        this.noExpenses = parseFailures(meterRegistry, "no_expenses");
+    }
+
+    private static Counter parseFailures(MeterRegistry meterRegistry, String cause) {
+        return Counter.builder("bookkeeper.nlp.parse.failures")
+                .tag("cause", cause)
+                .description("Ответы LLM, которые не удалось разобрать полностью")
+                .register(meterRegistry);
+    }
+
+    /** Ответ на одиночный промпт: корневой объект — сама трата. */
+    public ParsedExpense readExpense(String llmOutput) {
+        Item item;
+        try (JsonParser p = open(llmOutput)) {
+            item = readItem(p, true);
+        } catch (IOException e) {
+            throw malformed(llmOutput, e);
+        }
+        if (!item.hasAmount()) {
+            badAmounts.increment();
+        }
+        return item.expense();
+    }
+
+    /**
+     * Ответ на промпт с контекстом разговора: {@code {"action": "edit", "target": N, ...}}
+     * с изменёнными полями или {@code {"action": "add", ...}} с новой тратой.
+     * У правки отсутствующие поля остаются null — в том числе дата.
+     *
+     * @param contextSize сколько трат было в контексте; target вне него — ошибка
+     */
+    public ParsedFollowUp readFollowUp(String llmOutput, int contextSize) {
+        Item item;
+        try (JsonParser p = open(llmOutput)) {
+            item = readItem(p, false);
+        } catch (IOException e) {
+            throw malformed(llmOutput, e);
+        }
+
+        if ("edit".equals(item.action())) {
+            if (item.target() < 0 || item.target() >= contextSize) {
+                log.warn("LLM сослался на трату вне контекста: {}", llmOutput);
+                throw new IllegalStateException("Не понял, какую трату исправить");
+            }
+            return ParsedFollowUp.edit(item.target(), item.expense());
+        }
+        if (!item.hasAmount()) {
+            badAmounts.increment();
+        }
+        ParsedExpense expense = item.expense();
+        return ParsedFollowUp.add(expense.getDate() != null
+                ? expense
+                : expense.toBuilder().date(OffsetDateTime.now()).build());
+    }
+
+    /**
+     * Ответ на батч-промпт: {@code {"items": [{"index": N, ...}]}}. Элементы без
+     * валидного объекта остаются null — {@link MicroBatcher} переотправит их поодиночке.
+     */
+    public List<ParsedExpense> readItems(String llmOutput, int size) {
+        List<ParsedExpense> results = new ArrayList<>(Collections.nCopies(size, null));
+        try (JsonParser p = open(llmOutput)) {
+            if (!seekArray(p, "items")) {
+                log.warn("Батч-ответ LLM без массива items: {}", llmOutput);
+                return results;
+            }
+            JsonToken token;
+            while ((token = p.nextToken()) != JsonToken.END_ARRAY) {
+                if (token != JsonToken.START_OBJECT) {
+                    p.skipChildren();
+                    log.warn("Некорректный элемент батч-ответа LLM: {}", token);
+                    continue;
+                }
+                Item item = readItem(p, true);
+                if (item.index() < 0 || item.index() >= size || !item.hasAmount()) {
+                    log.warn("Некорректный элемент батч-ответа LLM: {}", item);
+                    continue;
+                }
+                results.set(item.index(), item.expense());
+            }
+            return results;
+        } catch (IOException e) {
+            throw malformed(llmOutput, e);
+        }
+    }
+
+    /** Ответ на промпт с несколькими тратами: {@code {"expenses": [...]}}. */
+    public List<ParsedExpense> readExpenses(String llmOutput) {
+        List<ParsedExpense> results = new ArrayList<>();
+        try (JsonParser p = open(llmOutput)) {
+            if (seekArray(p, "expenses")) {
+                JsonToken token;
+                while ((token = p.nextToken()) != JsonToken.END_ARRAY) {
+                    if (token != JsonToken.START_OBJECT) {
+                        p.skipChildren();
+                        continue;
+                    }
+                    Item item = readItem(p, true);
+                    if (item.hasAmount()) {
+                        results.add(item.expense());
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw malformed(llmOutput, e);
+        }
+        if (results.isEmpty()) {
+            noExpenses.increment();
+            log.error("LLM не нашёл ни одной траты: {}", llmOutput);
+            throw new IllegalStateException("LLM не нашёл ни одной траты в тексте");
+        }
+        return results;
+    }
+
+    /**
+     * Парсер, стоящий на '{' корневого объекта. Модель иногда дописывает текст
+     * или markdown-ограждение вокруг JSON — всё до первой '{' пропускается.
+     */
+    private JsonParser open(String llmOutput) throws IOException {
+        log.debug("LLM raw output: {}", llmOutput);
+
+        int start = llmOutput == null ? -1 : llmOutput.indexOf('{');
+        if (start < 0) {
+            nonJsonOutputs.increment();
+            int first = firstNonWhitespace(llmOutput);
+            if (first < 0) {
+                log.error("LLM вернул пустой/некорректный ответ: '{}'", llmOutput);
+                throw new IllegalStateException("LLM вернул пустой ответ, JSON не найден");
+            }
+            char c = llmOutput.charAt(first);
+            log.error("Ожидал JSON-объект, но ответ начинается с '{}':\n{}", c, prefix(llmOutput));
+            throw new IllegalStateException("Ожидал JSON, но получил текст, начинающийся с '" + c + "'");
+        }
+
+        StringReader reader = new StringReader(llmOutput);
+        reader.skip(start);
+        JsonParser p = jsonFactory.createParser(reader);
+        p.nextToken();
+        return p;
+    }
+
+    private IllegalStateException malformed(String llmOutput, IOException e) {
+        nonJsonOutputs.increment();
+        log.error("Не удалось распарсить JSON из ответа LLM: {}", prefix(llmOutput), e);
+        return new IllegalStateException("LLM вернул некорректный JSON", e);
+    }
+
+    /** Проматывает корневой объект до поля-массива {@code name}; false, если его нет. */
+    private static boolean seekArray(JsonParser p, String name) throws IOException {
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String field = p.currentName();
+            JsonToken value = p.nextToken();
+            if (name.equals(field) && value == JsonToken.START_ARRAY) {
+                return true;
+            }
+            p.skipChildren();
+        }
+        return false;
+    }
+
+    /**
+     * Читает объект, на '{' которого стоит парсер, до его '}'. Без даты в ответе —
+     * текущий момент, если {@code defaultDate}, иначе null.
+     */
+    private Item readItem(JsonParser p, boolean defaultDate) throws IOException {
+        ParsedExpense.ParsedExpenseBuilder builder = ParsedExpense.builder();
+        int index = -1;
+        String action = null;
+        int target = -1;
+        boolean hasAmount = false;
+        OffsetDateTime date = null;
+
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String field = p.currentName();
+            JsonToken value = p.nextToken();
+            if (value.isStructStart()) {
+                p.skipChildren();
+                continue;
+            }
+            switch (field) {
+                case "amount" -> {
+                    hasAmount = true;
+                    builder.amount(readAmount(p, value));
+                }
+                case "index" -> index = p.getValueAsInt(-1);
+                case "action" -> action = p.getValueAsString();
+                case "target" -> target = p.getValueAsInt(-1);
+                case "currency" -> builder.currency(p.getValueAsString());
+                case "category" -> builder.category(p.getValueAsString());
+                case "description" -> builder.description(p.getValueAsString());
+                case "place" -> builder.place(p.getValueAsString());
+                case "date" -> date = value == JsonToken.VALUE_STRING ? parseDate(p.getText()) : null;
+                default -> {
+                    // лишние поля модели не интересны
+                }
+            }
+        }
+        if (date == null && defaultDate) {
+            date = OffsetDateTime.now();
+        }
+        builder.date(date);
+        return new Item(index, action, target, hasAmount, builder.build());
+    }
+
+    /** Число берётся из токена без промежуточной строки; строку "1 234,50" тоже принимаем. */
+    private BigDecimal readAmount(JsonParser p, JsonToken value) throws IOException {
+        if (value == JsonToken.VALUE_NUMBER_INT || value == JsonToken.VALUE_NUMBER_FLOAT) {
+            return p.getDecimalValue();
+        }
+        if (value == JsonToken.VALUE_STRING) {
+            BigDecimal amount = parseAmount(p.getText());
+            if (amount != null) {
+                return amount;
+            }
+        }
+        badAmounts.increment();
+        log.warn("Cannot parse amount from LLM output: {}", p.getText());
+        return null;
+    }
+
+    static BigDecimal parseAmount(String text) {
+        StringBuilder digits = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == ',') {
+                digits.append('.');
+            } else if (!Character.isWhitespace(c) && !Character.isSpaceChar(c)) {
+                digits.append(c);
+            }
+        }
+        try {
+            return digits.length() == 0 ? null : new BigDecimal(digits.toString());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * ISO-8601 со смещением, без смещения или одна дата. Без смещения время
+     * считается в {@code reports.zone}; null — если разобрать не удалось.
+     */
+    private OffsetDateTime parseDate(String text) {
+        try {
+            if (text.length() == 10) {
+                return LocalDate.parse(text).atStartOfDay(zone).toOffsetDateTime();
+            }
+            TemporalAccessor parsed = DateTimeFormatter.ISO_DATE_TIME
+                    .parseBest(text, OffsetDateTime::from, LocalDateTime::from);
+            return parsed instanceof OffsetDateTime odt
+                    ? odt
+                    : ((LocalDateTime) parsed).atZone(zone).toOffsetDateTime();
+        } catch (DateTimeException e) {
+            badDates.increment();
+            log.warn("Cannot parse date from LLM output: {}", text, e);
+            return null;
+        }
+    }
+
+    private static int firstNonWhitespace(String text) {
+        if (text == null) {
+            return -1;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            if (!Character.isWhitespace(text.charAt(i))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String prefix(String text) {
+        return text != null && text.length() > LOG_PREFIX ? text.substring(0, LOG_PREFIX) : text;
+    }
+}
@@ -0,0 +1,158 @@
+package com.example.bookkeeperai.ai;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Копит одновременные запросы в течение короткого окна (или до {@code maxBatchSize})
+ * и отправляет их одним вызовом {@code batchCall}.
+ *
+ * {@code batchCall} возвращает результаты в порядке входов; null на позиции означает,
+ * что элемент не распознан, и он переотправляется поодиночке через {@code singleCall}.
+ * Если упал весь батч — поодиночке переотправляются все элементы.
+ */
+@Slf4j
+public class MicroBatcher<I, O> implements AutoCloseable {
+
+    private record Pending<I, O>(I input, CompletableFuture<O> result) {
+    }
+
+    private final int maxBatchSize;
+    private final Duration window;
+    private final Function<List<I>, CompletableFuture<List<O>>> batchCall;
+    private final Function<I, CompletableFuture<O>> singleCall;
+    private final ScheduledExecutorService scheduler;
+
+    private final DistributionSummary batchSizes;
+    private final Counter retried;
+
+    private List<Pending<I, O>> pending = new ArrayList<>();
+    private ScheduledFuture<?> scheduledFlush;
+
+    public MicroBatcher(String metricPrefix,
+                        int maxBatchSize,
+                        Duration window,
+                        Function<List<I>, CompletableFuture<List<O>>> batchCall,
+                        Function<I, CompletableFuture<O>> singleCall,
+                        MeterRegistry meterRegistry) {
+        this.maxBatchSize = maxBatchSize;
+        this.window = window;
+        this.batchCall = batchCall;
+        this.singleCall = singleCall;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(
+                new CustomizableThreadFactory(metricPrefix + "-"));
+        this.batchSizes = DistributionSummary.builder(metricPrefix + ".size")
+                .description("Число элементов в отправленном батче")
+                .register(meterRegistry);
+        this.retried = Counter.builder(metricPrefix + ".retried")
+                .description("Элементы батча, переотправленные поодиночке")
+                .register(meterRegistry);
+    }
+
+    public CompletableFuture<O> submit(I input) {
+        CompletableFuture<O> result = new CompletableFuture<>();
+        List<Pending<I, O>> ready = null;
+
+        synchronized (this) {
+            pending.add(new Pending<>(input, result));
+            if (pending.size() >= maxBatchSize) {
+                ready = drain();
+            } else if (scheduledFlush == null) {
+                scheduledFlush = scheduler.schedule(this::flush, window.toMillis(), TimeUnit.MILLISECONDS);
+            }
+        }
+
+        if (ready != null) {
+            send(ready);
+        }
+        return result;
+    }
+
+    private void flush() {
+        List<Pending<I, O>> ready;
+        synchronized (this) {
+            ready = drain();
+        }
+        if (!ready.isEmpty()) {
+            send(ready);
+        }
+    }
+
+    private List<Pending<I, O>> drain() {
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+        List<Pending<I, O>> ready = pending;
+        pending = new ArrayList<>();
+        return ready;
+    }
+
+    private void send(List<Pending<I, O>> batch) {
+        batchSizes.record(batch.size());
+        if (batch.size() == 1) {
+            sendSingle(batch.get(0));
+            return;
+        }
+
+        List<I> inputs = new ArrayList<>(batch.size());
+        batch.forEach(p -> inputs.add(p.input()));
+
+        CompletableFuture<List<O>> call;
+        try {
+            call = batchCall.apply(inputs);
+        } catch (RuntimeException e) {
+            call = CompletableFuture.failedFuture(e);
+        }
+
+        call.whenComplete((outputs, error) -> {
+            if (error != null) {
+                log.warn("Батч из {} элементов не выполнен, переотправляю поодиночке", batch.size(), error);
+            }
+            for (int i = 0; i < batch.size(); i++) {
+                O output = error == null && outputs != null && i < outputs.size() ? outputs.get(i) : null;
+                if (output != null) {
+                    batch.get(i).result().complete(output);
+                } else {
+                    retried.increment();
+                    sendSingle(batch.get(i));
+                }
+            }
+        });
+    }
+
+    private void sendSingle(Pending<I, O> item) {
+        CompletableFuture<O> call;
+        try {
+            call = singleCall.apply(item.input());
+        } catch (RuntimeException e) {
+            call = CompletableFuture.failedFuture(e);
+        }
+        call.whenComplete((output, error) -> {
+            if (error != null) {
+                item.result().completeExceptionally(error);
+            } else {
+                item.result().complete(output);
+            }
+        });
+    }
+
+    @Override
+    public void close() {
+        flush();
+        scheduler.shutdown();
+    }
+}
@@ -1,135 +1,247 @@
 package com.example.bookkeeperai.ai;
 
 import com.example.bookkeeperai.dto.ParsedExpense;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import lombok.RequiredArgsConstructor;
+import com.example.bookkeeperai.dto.ParsedFollowUp;
+import com.example.bookkeeperai.metrics.PipelineMetrics;
+import com.example.bookkeeperai.metrics.Stage;
+import com.example.bookkeeperai.metrics.UpdateTrace;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.math.BigDecimal;
-import java.time.OffsetDateTime;
-import java.time.format.DateTimeParseException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 @Service
-@RequiredArgsConstructor
 @Slf4j
 public class NlpParserService {
 
-    private final HuggingFaceClient hfClient;
-    private final ObjectMapper mapper = new ObjectMapper();
+    private final InferenceRouter inference;
+    private final RuleBasedExpenseParser ruleParser;
+    private final ParseResultCache cache;
+    private final LlmResponseReader responseReader;
+    private final PromptBuilder prompts;
+    private final double fastPathThreshold;
+
+    private final Counter fastPathHits;
+    private final Counter fastPathMisses;
+    private final Timer rulePathTimer;
+    private final Timer llmPathTimer;
+    private final Counter fallbacks;
+    private final PipelineMetrics pipelineMetrics;
+
+    /** null, если батчинг выключен. */
+    private final MicroBatcher<String, ParsedExpense> batcher;
+
+    public NlpParserService(InferenceRouter inference,
+                            RuleBasedExpenseParser ruleParser,
+                            ParseResultCache cache,
+                            LlmResponseReader responseReader,
+                            PromptBuilder prompts,
+                            @Value("${nlp.fast-path.threshold}") double fastPathThreshold,
+                            @Value("${nlp.batching.enabled}") boolean batchingEnabled,
+                            @Value("${nlp.batching.window}") Duration batchWindow,
+                            @Value("${nlp.batching.max-size}") int maxBatchSize,
+                            PipelineMetrics pipelineMetrics,
+                            MeterRegistry meterRegistry) {
+        this.inference = inference;
+        this.ruleParser = ruleParser;
+        this.cache = cache;
+        this.responseReader = responseReader;
+        this.prompts = prompts;
+        this.fastPathThreshold = fastPathThreshold;
+        this.pipelineMetrics = pipelineMetrics;
+        this.fastPathHits = Counter.builder("bookkeeper.nlp.fastpath")
+                .tag("result", "hit")
+                .description("Фразы, разобранные без LLM")
+                .register(meterRegistry);
+        this.fastPathMisses = Counter.builder("bookkeeper.nlp.fastpath")
+                .tag("result", "miss")
+                .description("Фразы, ушедшие в LLM")
+                .register(meterRegistry);
+        this.rulePathTimer = Timer.builder("bookkeeper.nlp.parse")
+                .tag("path", "rule")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.llmPathTimer = Timer.builder("bookkeeper.nlp.parse")
+                .tag("path", "llm")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.fallbacks = Counter.builder("bookkeeper.nlp.fallback")
+                .description("Разборы локальным парсером из-за ошибки LLM")
+                .register(meterRegistry);
+        this.batcher = batchingEnabled
+                ? new MicroBatcher<>("bookkeeper.nlp.batch", maxBatchSize, batchWindow,
+                        this::callLlmBatch, this::callLlm, meterRegistry)
+                : null;
+    }
 
     public ParsedExpense parse(String userText) throws Exception {
-        String prompt = buildPrompt(userText);
-        String llmOutput = hfClient.generateText(prompt);
-
-        // Логируем сырой ответ для отладки
-        log.debug("LLM raw output: {}", llmOutput);
-
-        // На всякий случай вырезаем JSON-объект из текста, если модель что-то дописала
-        String cleaned = extractJsonObject(llmOutput);
-        String trimmed = cleaned == null ? "" : cleaned.trim();
+        return Futures.await(parseAsync(userText));
+    }
 
-        if (trimmed.isEmpty()) {
-            log.error("LLM вернул пустой/некорректный ответ: '{}'", llmOutput);
-            throw new IllegalStateException("LLM вернул пустой ответ, JSON не найден");
+    public CompletableFuture<ParsedExpense> parseAsync(String userText) {
+        // Сначала дешёвый локальный разбор, LLM — только если он не уверен
+        ParsedExpense fast = rulePathTimer.record(() -> ruleParser.parse(userText));
+        if (fast.getConfidence() >= fastPathThreshold) {
+            fastPathHits.increment();
+            log.debug("Fast-path parse (confidence={}): {}", fast.getConfidence(), fast);
+            return CompletableFuture.completedFuture(fast);
         }
+        fastPathMisses.increment();
 
-        // Ключевой момент: проверяем первый символ
-        char first = trimmed.charAt(0);
-        if (first != '{') {
-            // Здесь как раз и будет случай с '<'
-            log.error("Ожидал JSON-объект, но ответ начинается с '{}':\n{}",
-                    first,
-                    trimmed.length() > 500 ? trimmed.substring(0, 500) : trimmed);
-            throw new IllegalStateException(
-                    "Ожидал JSON, но получил текст, начинающийся с '" + first + "'");
+        ParsedExpense cached = cache.get(userText);
+        if (cached != null) {
+            log.debug("Parse cache hit: {}", cached);
+            return CompletableFuture.completedFuture(cached);
         }
 
-        JsonNode node;
-        try {
-            node = mapper.readTree(trimmed);
-        } catch (Exception e) {
-            log.error("Не удалось распарсить JSON из ответа LLM. cleaned={}", trimmed, e);
-            throw e; // или new IllegalStateException("LLM вернул некорректный JSON", e);
+        Timer.Sample sample = Timer.start();
+        CompletableFuture<ParsedExpense> llmCall = batcher != null
+                ? batcher.submit(userText)
+                : callLlm(userText);
+        return llmCall
+                .whenComplete((parsed, error) -> {
+                    sample.stop(llmPathTimer);
+                    if (parsed != null) {
+                        cache.put(userText, parsed);
+                    }
+                })
+                .exceptionally(error -> fallback(fast, error));
+    }
+
+    /**
+     * Когда LLM не ответил (открыт circuit breaker, исчерпан лимит запросов, кончились
+     * повторы или ответ не разобрался), лучше записать трату по локальному разбору,
+     * чем отказать пользователю.
+     */
+    private ParsedExpense fallback(ParsedExpense fast, Throwable error) {
+        Exception cause = Futures.unwrap(error);
+        if (fast.getAmount() != null) {
+            fallbacks.increment();
+            log.warn("LLM не ответил ({}), использую локальный разбор: {}", cause.getMessage(), fast);
+            return fast;
         }
+        throw error instanceof CompletionException ce ? ce : new CompletionException(cause);
+    }
 
-        ParsedExpense.ParsedExpenseBuilder builder = ParsedExpense.builder();
+    /**
+     * Разбор текста, в котором может быть несколько трат (например, длинное голосовое).
+     * Длинный текст разбирается кусками параллельно, траты идут в порядке кусков;
+     * кусок, на который LLM не ответил, разбирается локально.
+     */
+    public List<ParsedExpense> parseAll(String userText) throws Exception {
+        return Futures.await(parseAllAsync(userText));
+    }
 
-        // amount
-        try {
-            if (node.has("amount")) {
-                builder.amount(new BigDecimal(node.get("amount").asText()));
-            }
-        } catch (Exception e) {
-            log.warn("Cannot parse amount from LLM output: {}", node.get("amount"), e);
+    public CompletableFuture<List<ParsedExpense>> parseAllAsync(String userText) {
+        ParsedExpense fast = ruleParser.parse(userText);
+        if (fast.getConfidence() >= fastPathThreshold) {
+            fastPathHits.increment();
+            return CompletableFuture.completedFuture(List.of(fast));
         }
-
-        // currency
-        if (node.has("currency") && !node.get("currency").isNull()) {
-            builder.currency(node.get("currency").asText());
+        fastPathMisses.increment();
+
+        Timer.Sample sample = Timer.start();
+        List<String> chunks = prompts.transcriptChunks(userText);
+        List<CompletableFuture<List<ParsedExpense>>> parts = new ArrayList<>(chunks.size());
+        for (String chunk : chunks) {
+            ParsedExpense chunkFast = chunks.size() == 1 ? fast : ruleParser.parse(chunk);
+            parts.add(inference.generateTextAsync(prompts.multi(chunk))
+                    .thenApply(UpdateTrace.wrap(this::parseMultiOutput))
+                    .exceptionally(error -> List.of(fallback(chunkFast, error))));
         }
+        return CompletableFuture.allOf(parts.toArray(CompletableFuture[]::new))
+                .thenApply(ignored -> parts.stream()
+                        .flatMap(part -> part.join().stream())
+                        .toList())
+                .whenComplete((parsed, error) -> sample.stop(llmPathTimer));
+    }
 
-        // category
-        if (node.has("category") && !node.get("category").isNull()) {
-            builder.category(node.get("category").asText());
-        }
+    /** Фраза разбирается одним промптом; длиннее — бот её не принимает. */
+    public boolean fitsSingle(String userText) {
+        return prompts.fitsSingle(userText);
+    }
 
-        // description
-        if (node.has("description") && !node.get("description").isNull()) {
-            builder.description(node.get("description").asText());
-        }
+    /**
+     * Сообщение стоит разбирать с контекстом разговора: оно похоже на правку
+     * или на трату, ссылающуюся на предыдущие.
+     */
+    public boolean isFollowUp(String userText) {
+        return ruleParser.isCorrection(userText) || ruleParser.isAddition(userText);
+    }
 
-        // place
-        if (node.has("place") && !node.get("place").isNull()) {
-            builder.place(node.get("place").asText());
-        }
+    public ParsedFollowUp parseFollowUp(String userText, ConversationContext context) throws Exception {
+        return Futures.await(parseFollowUpAsync(userText, context));
+    }
 
-        // date
-        OffsetDateTime date = OffsetDateTime.now();
-        if (node.has("date") && !node.get("date").isNull()) {
-            try {
-                date = OffsetDateTime.parse(node.get("date").asText());
-            } catch (DateTimeParseException e) {
-                log.warn("Cannot parse date from LLM output: {}",
-                        node.get("date").asText(), e);
-            }
+    /**
+     * Разбор с контекстом: в промпт уходят только последние траты и сообщения
+     * из {@link ConversationStore}, размер промпта ограничен его настройками.
+     * Дописывание, которое локальный парсер уверенно разобрал сам, в LLM не идёт;
+     * кэш не используется — ответ зависит от контекста.
+     */
+    public CompletableFuture<ParsedFollowUp> parseFollowUpAsync(String userText, ConversationContext context) {
+        ParsedExpense fast = ruleParser.parse(userText);
+        boolean correction = ruleParser.isCorrection(userText);
+        if (!correction && fast.getConfidence() >= fastPathThreshold) {
+            fastPathHits.increment();
+            return CompletableFuture.completedFuture(ParsedFollowUp.add(fast));
         }
-        builder.date(date);
+        fastPathMisses.increment();
+
+        Timer.Sample sample = Timer.start();
+        return inference.generateTextAsync(prompts.followUp(userText, context))
+                .thenApply(UpdateTrace.wrap(output -> pipelineMetrics.time(Stage.JSON_EXTRACT,
+                        () -> responseReader.readFollowUp(output, context.expenses().size()))))
+                .whenComplete((parsed, error) -> sample.stop(llmPathTimer))
+                .exceptionally(error -> {
+                    // правку без LLM не понять, а новую трату можно записать по локальному разбору
+                    if (correction) {
+                        throw error instanceof CompletionException ce ? ce : new CompletionException(error);
+                    }
+                    return ParsedFollowUp.add(fallback(fast, error));
+                });
+    }
 
-        return builder.build();
+    private CompletableFuture<ParsedExpense> callLlm(String userText) {
+        return inference.generateTextAsync(prompts.single(userText))
+                .thenApply(UpdateTrace.wrap(this::parseLlmOutput));
     }
 
-    private String buildPrompt(String userText) {
-        return """
-            Ты парсер личных финансовых расходов. Пользователь пишет фразу на русском или английском
-            о своей трате (сумма, валюта, категория, дата, комментарий, место покупки).
+    private CompletableFuture<List<ParsedExpense>> callLlmBatch(List<String> userTexts) {
+        return inference.generateTextAsync(prompts.batch(userTexts))
+                .thenApply(output -> parseBatchOutput(output, userTexts.size()));
+    }
 
-            Твоя задача — вернуть ОДИН JSON-объект БЕЗ каких-либо пояснений, строго в формате:
+    /** Пакетный доступ — для {@code LlmOutputBenchmark}. */
+    ParsedExpense parseLlmOutput(String llmOutput) {
+        return pipelineMetrics.time(Stage.JSON_EXTRACT, () -> responseReader.readExpense(llmOutput));
+    }
 
-            {
-              "amount": <число, через точку>,
-              "currency": "<триграммный код валюты, например RUB, USD, EUR>",
-              "category": "<одна из: groceries, transport, cafe, entertainment, bills, other>",
-              "description": "<короткий комментарий>",
-              "place": "<место траты, например 'Пятерочка у дома' или 'KFC на Тверской'>",
-              "date": "<дата траты в ISO-8601, формат 2025-12-04T10:15:30+03:00>"
-            }
+    /**
+     * Разбирает ответ на батч-промпт. Элементы без валидного объекта остаются null —
+     * {@link MicroBatcher} переотправит их поодиночке.
+     */
+    private List<ParsedExpense> parseBatchOutput(String llmOutput, int size) {
+        return pipelineMetrics.time(Stage.JSON_EXTRACT, () -> responseReader.readItems(llmOutput, size));
+    }
 
-            Если дата явно не указана, используй сегодняшнюю дату пользователя без времени.
-            Текст пользователя: "%s"
-            Верни ТОЛЬКО JSON, без текста до или после.
-            """.formatted(userText);
+    private List<ParsedExpense> parseMultiOutput(String llmOutput) {
+        return pipelineMetrics.time(Stage.JSON_EXTRACT, () -> responseReader.readExpenses(llmOutput));
     }
 
-    private String extractJsonObject(String text) {
-        String trimmed = text.trim();
-        int first = trimmed.indexOf('{');
-        int last = trimmed.lastIndexOf('}');
-        if (first != -1 && last != -1 && last > first) {
-            return trimmed.substring(first, last + 1);
+    @PreDestroy
+    public void shutdown() {
+        if (batcher != null) {
+            batcher.close();
         }
-        return trimmed;
     }
 }
-
@@ -0,0 +1,206 @@
+package com.example.bookkeeperai.ai;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Режет Ogg/Opus (формат голосовых Telegram) на самостоятельные куски без перекодирования.
+ *
+ * Каждый кусок — заголовочные страницы исходного файла (OpusHead, OpusTags) плюс
+ * последовательность аудиостраниц с перенумерованными seq и пересчитанным CRC.
+ * Граница ищется после {@code target} длительности на "тихой" странице — где пакеты
+ * Opus маленькие (тишина/DTX), и принудительно ставится на {@code max}.
+ *
+ * Поток читается страница за страницей, в памяти держится только текущий кусок.
+ */
+public class OggOpusChunker {
+
+    /** Granule position в Opus всегда в отсчётах 48 кГц. */
+    private static final long GRANULES_PER_SECOND = 48_000;
+
+    private static final int HEADER_SIZE = 27;
+    private static final int FLAG_BOS = 0x02;
+    private static final int FLAG_EOS = 0x04;
+
+    private static final int[] CRC_TABLE = new int[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            int r = i << 24;
+            for (int j = 0; j < 8; j++) {
+                r = (r & 0x80000000) != 0 ? (r << 1) ^ 0x04c11db7 : r << 1;
+            }
+            CRC_TABLE[i] = r;
+        }
+    }
+
+    private final long targetGranules;
+    private final long maxGranules;
+    private final int silencePacketBytes;
+
+    public OggOpusChunker(Duration target, Duration max, int silencePacketBytes) {
+        this.targetGranules = target.toSeconds() * GRANULES_PER_SECOND;
+        this.maxGranules = max.toSeconds() * GRANULES_PER_SECOND;
+        this.silencePacketBytes = silencePacketBytes;
+    }
+
+    @FunctionalInterface
+    public interface ChunkSink {
+        void accept(byte[] chunk) throws InterruptedException;
+    }
+
+    /**
+     * Читает поток до конца и отдаёт куски в {@code sink} по мере готовности.
+     *
+     * @return число кусков
+     */
+    public int split(InputStream in, ChunkSink sink) throws IOException, InterruptedException {
+        List<Page> headers = new ArrayList<>();
+        List<Page> chunk = new ArrayList<>();
+        boolean audioStarted = false;
+        long chunkStart = 0;
+        long lastGranule = 0;
+        int chunks = 0;
+
+        Page page;
+        while ((page = Page.read(in)) != null) {
+            if (!audioStarted && page.granule() == 0) {
+                headers.add(page);
+                continue;
+            }
+            audioStarted = true;
+            chunk.add(page);
+
+            if (page.granule() < 0) {
+                // на странице не закончился ни один пакет — позиции нет
+                continue;
+            }
+            lastGranule = page.granule();
+            long elapsed = lastGranule - chunkStart;
+            boolean quiet = page.averagePacketBytes() <= silencePacketBytes;
+            if (elapsed >= maxGranules || (elapsed >= targetGranules && quiet)) {
+                sink.accept(assemble(headers, chunk));
+                chunks++;
+                chunk.clear();
+                chunkStart = lastGranule;
+            }
+        }
+
+        if (!chunk.isEmpty()) {
+            sink.accept(assemble(headers, chunk));
+            chunks++;
+        }
+        return chunks;
+    }
+
+    private static byte[] assemble(List<Page> headers, List<Page> pages) {
+        int size = 0;
+        for (Page p : headers) {
+            size += p.data().length;
+        }
+        for (Page p : pages) {
+            size += p.data().length;
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(size);
+        int seq = 0;
+        for (Page p : headers) {
+            out.writeBytes(p.rewrite(seq++, false));
+        }
+        for (int i = 0; i < pages.size(); i++) {
+            out.writeBytes(pages.get(i).rewrite(seq++, i == pages.size() - 1));
+        }
+        return out.toByteArray();
+    }
+
+    private record Page(byte[] data, int bodyLength, int packets) {
+
+        static Page read(InputStream in) throws IOException {
+            byte[] header = in.readNBytes(HEADER_SIZE);
+            if (header.length == 0) {
+                return null;
+            }
+            if (header.length < HEADER_SIZE) {
+                throw new EOFException("Обрезанная Ogg-страница");
+            }
+            if (header[0] != 'O' || header[1] != 'g' || header[2] != 'g' || header[3] != 'S') {
+                throw new IOException("Поток не в формате Ogg");
+            }
+
+            int segments = header[26] & 0xff;
+            byte[] lacing = readFully(in, segments);
+            int bodyLength = 0;
+            int packets = 0;
+            for (byte l : lacing) {
+                int v = l & 0xff;
+                bodyLength += v;
+                if (v < 255) {
+                    packets++;
+                }
+            }
+            byte[] body = readFully(in, bodyLength);
+
+            byte[] data = new byte[HEADER_SIZE + segments + bodyLength];
+            System.arraycopy(header, 0, data, 0, HEADER_SIZE);
+            System.arraycopy(lacing, 0, data, HEADER_SIZE, segments);
+            System.arraycopy(body, 0, data, HEADER_SIZE + segments, bodyLength);
+            return new Page(data, bodyLength, packets);
+        }
+
+        long granule() {
+            long g = 0;
+            for (int i = 13; i >= 6; i--) {
+                g = (g << 8) | (data[i] & 0xff);
+            }
+            return g;
+        }
+
+        int averagePacketBytes() {
+            return packets == 0 ? Integer.MAX_VALUE : bodyLength / packets;
+        }
+
+        byte[] rewrite(int sequence, boolean last) {
+            byte[] copy = data.clone();
+            int flags = copy[5] & ~FLAG_EOS;
+            if (sequence > 0) {
+                flags &= ~FLAG_BOS;
+            }
+            if (last) {
+                flags |= FLAG_EOS;
+            }
+            copy[5] = (byte) flags;
+            writeIntLe(copy, 18, sequence);
+            writeIntLe(copy, 22, 0);
+            writeIntLe(copy, 22, crc(copy));
+            return copy;
+        }
+
+        private static byte[] readFully(InputStream in, int length) throws IOException {
+            byte[] bytes = in.readNBytes(length);
+            if (bytes.length < length) {
+                throw new EOFException("Обрезанная Ogg-страница");
+            }
+            return bytes;
+        }
+    }
+
+    private static int crc(byte[] page) {
+        int crc = 0;
+        for (byte b : page) {
+            crc = (crc << 8) ^ CRC_TABLE[((crc >>> 24) ^ b) & 0xff];
+        }
+        return crc;
+    }
+
+    private static void writeIntLe(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) value;
+        bytes[offset + 1] = (byte) (value >>> 8);
+        bytes[offset + 2] = (byte) (value >>> 16);
+        bytes[offset + 3] = (byte) (value >>> 24);
+    }
+}
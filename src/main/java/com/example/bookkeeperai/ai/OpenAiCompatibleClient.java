@@ -0,0 +1,201 @@
+package com.example.bookkeeperai.ai;
+
+import com.example.bookkeeperai.resilience.ResilientExecutor;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Бэкенд на своём сервере с OpenAI-совместимым API: llama.cpp server, vLLM или Ollama
+ * для {@code /v1/chat/completions}, whisper.cpp server или faster-whisper-server
+ * для {@code /v1/audio/transcriptions}. Пустой URL — задачу этот бэкенд не обслуживает.
+ */
+@Component
+public class OpenAiCompatibleClient implements InferenceBackend {
+
+    private static final String NAME = "local";
+
+    private final String chatUrl;
+    private final String transcriptionsUrl;
+    private final String apiKey;
+    private final String sttModel;
+    private final String llmModel;
+    private final int weight;
+    private final Duration sttTimeout;
+    private final Duration llmTimeout;
+
+    private final ExecutorService httpExecutor;
+    private final HttpClient httpClient;
+    private final JsonFactory jsonFactory;
+
+    private final ResilientExecutor sttResilience;
+    private final ResilientExecutor llmResilience;
+
+    public OpenAiCompatibleClient(
+            @Value("${inference.local.chat-url}") String chatUrl,
+            @Value("${inference.local.transcriptions-url}") String transcriptionsUrl,
+            @Value("${inference.local.api-key}") String apiKey,
+            @Value("${inference.local.stt-model}") String sttModel,
+            @Value("${inference.local.llm-model}") String llmModel,
+            @Value("${inference.local.weight}") int weight,
+            @Value("${inference.local.http.connect-timeout}") Duration connectTimeout,
+            @Value("${inference.local.http.stt-timeout}") Duration sttTimeout,
+            @Value("${inference.local.http.llm-timeout}") Duration llmTimeout,
+            @Value("${inference.local.http.executor-threads}") int executorThreads,
+            @Qualifier("localSttResilience") ResilientExecutor sttResilience,
+            @Qualifier("localLlmResilience") ResilientExecutor llmResilience,
+            ObjectMapper objectMapper
+    ) {
+        this.chatUrl = chatUrl;
+        this.transcriptionsUrl = transcriptionsUrl;
+        this.apiKey = apiKey;
+        this.sttModel = sttModel;
+        this.llmModel = llmModel;
+        this.weight = weight;
+        this.sttTimeout = sttTimeout;
+        this.llmTimeout = llmTimeout;
+        this.sttResilience = sttResilience;
+        this.llmResilience = llmResilience;
+        this.jsonFactory = objectMapper.getFactory();
+        this.httpExecutor = Executors.newFixedThreadPool(
+                executorThreads, new CustomizableThreadFactory("local-http-"));
+        // локальные серверы обычно говорят только HTTP/1.1 без TLS
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(connectTimeout)
+                .executor(httpExecutor)
+                .build();
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public int weight() {
+        return weight;
+    }
+
+    @Override
+    public boolean supports(Task task) {
+        return !(task == Task.STT ? transcriptionsUrl : chatUrl).isBlank();
+    }
+
+    @Override
+    public boolean isAvailable(Task task) {
+        return (task == Task.STT ? sttResilience : llmResilience).isAvailable();
+    }
+
+    @Override
+    public CompletableFuture<String> speechToTextAsync(byte[] audioBytes) {
+        return speechToTextAsync(new AudioSource(
+                () -> new ByteArrayInputStream(audioBytes), audioBytes.length));
+    }
+
+    /**
+     * multipart/form-data: поля формы и заголовок файла пишутся вокруг аудио,
+     * которое читается из {@code audio} потоком по мере отправки.
+     */
+    @Override
+    public CompletableFuture<String> speechToTextAsync(AudioSource audio) {
+        String boundary = "----bookkeeper" + UUID.randomUUID().toString().replace("-", "");
+        byte[] head = ("--" + boundary + "\r\n"
+                + "Content-Disposition: form-data; name=\"model\"\r\n\r\n" + sttModel + "\r\n"
+                + "--" + boundary + "\r\n"
+                + "Content-Disposition: form-data; name=\"response_format\"\r\n\r\njson\r\n"
+                + "--" + boundary + "\r\n"
+                + "Content-Disposition: form-data; name=\"file\"; filename=\"voice.ogg\"\r\n"
+                // Telegram voice = .ogg (Opus)
+                + "Content-Type: audio/ogg\r\n\r\n").getBytes(StandardCharsets.UTF_8);
+        byte[] tail = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.UTF_8);
+
+        HttpRequest.BodyPublisher file = HttpRequest.BodyPublishers.ofInputStream(() -> {
+            try {
+                return audio.open();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        if (audio.contentLength() >= 0) {
+            file = HttpRequest.BodyPublishers.fromPublisher(file, audio.contentLength());
+        }
+        HttpRequest request = authorized(HttpRequest.newBuilder())
+                .uri(URI.create(transcriptionsUrl))
+                .timeout(sttTimeout)
+                .header("Content-Type", "multipart/form-data; boundary=" + boundary)
+                .header("Accept", "application/json")
+                .POST(HttpRequest.BodyPublishers.concat(
+                        HttpRequest.BodyPublishers.ofByteArray(head),
+                        file,
+                        HttpRequest.BodyPublishers.ofByteArray(tail)))
+                .build();
+
+        return sttResilience.execute(() ->
+                httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray())
+                        .thenApply(this::readSpeechToText));
+    }
+
+    private String readSpeechToText(HttpResponse<byte[]> response) {
+        if (response.statusCode() >= 400) {
+            throw InferenceHttp.httpError(NAME, "STT", response);
+        }
+
+        InferenceHttp.ensureJson(NAME, response);
+        return InferenceHttp.decodeTranscript(NAME, jsonFactory, response.body());
+    }
+
+    @Override
+    public CompletableFuture<Completion> generateTextAsync(Prompt prompt) {
+        byte[] json = InferenceHttp.chatRequest(jsonFactory, llmModel, prompt);
+
+        HttpRequest request = authorized(HttpRequest.newBuilder())
+                .uri(URI.create(chatUrl))
+                .timeout(llmTimeout)
+                .header("Content-Type", "application/json")
+                .header("Accept", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(json))
+                .build();
+
+        return llmResilience.execute(() ->
+                httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray())
+                        .thenApply(this::readGeneratedText));
+    }
+
+    private Completion readGeneratedText(HttpResponse<byte[]> response) {
+        if (response.statusCode() >= 400) {
+            throw InferenceHttp.httpError(NAME, "LLM", response);
+        }
+
+        InferenceHttp.ensureJson(NAME, response);
+        return InferenceHttp.decodeCompletion(NAME, jsonFactory, response.body());
+    }
+
+    /** Ключ нужен не всем серверам: llama.cpp без {@code --api-key} его не проверяет. */
+    private HttpRequest.Builder authorized(HttpRequest.Builder builder) {
+        return apiKey.isBlank() ? builder : builder.header("Authorization", "Bearer " + apiKey);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        httpExecutor.shutdown();
+    }
+}
@@ -0,0 +1,218 @@
+package com.example.bookkeeperai.ai;
+
+import com.example.bookkeeperai.dto.ParsedExpense;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Кэш ответов LLM по нормализованной фразе: "Обед 400" и "обед  520" дают один ключ "обед N".
+ *
+ * Хранится шаблон разбора (категория, место, валюта, описание без чисел), а сумма и дата
+ * при попадании берутся из текущего сообщения. Фразы с несколькими числами не кэшируются —
+ * непонятно, какое из них сумма. Не кэшируются и фразы с датой, которую правила не разрешают
+ * ("в пятницу", "3 мая", "на прошлой неделе"): дату в них знает только LLM.
+ *
+ * Вытеснение LRU по числу записей и оценке занимаемой памяти, плюс TTL.
+ */
+@Component
+public class ParseResultCache {
+
+    private static final Pattern NUMBER = Pattern.compile("\\d+(?:[.,]\\d+)?");
+    private static final Pattern RELATIVE_DAY = Pattern.compile("\\b(сегодня|вчера|позавчера|today|yesterday)\\b",
+            Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CHARACTER_CLASS);
+    /** Дни недели, месяцы и относительные сроки, которые {@link RuleBasedExpenseParser#resolveDate} не понимает. */
+    private static final Pattern UNRESOLVED_DATE = Pattern.compile(
+            "\\b(понедельник|вторник|сред[аыуе]|четверг|пятниц|суббот|воскресень"
+                    + "|январ|феврал|марта?\\b|апрел|ма[яй]\\b|июн|июл|август|сентябр|октябр|ноябр|декабр"
+                    + "|недел|назад|прошл|позапрошл"
+                    + "|monday|tuesday|wednesday|thursday|friday|saturday|sunday|week|ago|last\\b)",
+            Pattern.UNICODE_CHARACTER_CLASS);
+    private static final Pattern SEPARATORS = Pattern.compile("[\\s\\p{Punct}]+", Pattern.UNICODE_CHARACTER_CLASS);
+
+    /** Грубая оценка накладных расходов на запись: узел LinkedHashMap, объекты записи и шаблона. */
+    private static final int ENTRY_OVERHEAD_BYTES = 256;
+
+    private record Entry(ParsedExpense template, long expiresAt, long bytes) {
+    }
+
+    private final boolean enabled;
+    private final int maxEntries;
+    private final long maxBytes;
+    private final long ttlNanos;
+    private final RuleBasedExpenseParser ruleParser;
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong sizeEvictions = new AtomicLong();
+    private final AtomicLong expiredEvictions = new AtomicLong();
+
+    public ParseResultCache(@Value("${nlp.cache.enabled}") boolean enabled,
+                            @Value("${nlp.cache.max-entries}") int maxEntries,
+                            @Value("${nlp.cache.max-bytes}") long maxBytes,
+                            @Value("${nlp.cache.ttl}") Duration ttl,
+                            RuleBasedExpenseParser ruleParser,
+                            MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        this.ttlNanos = ttl.toNanos();
+        this.ruleParser = ruleParser;
+
+        FunctionCounter.builder("bookkeeper.nlp.cache.requests", hits, AtomicLong::get)
+                .tag("result", "hit")
+                .register(meterRegistry);
+        FunctionCounter.builder("bookkeeper.nlp.cache.requests", misses, AtomicLong::get)
+                .tag("result", "miss")
+                .register(meterRegistry);
+        FunctionCounter.builder("bookkeeper.nlp.cache.evictions", sizeEvictions, AtomicLong::get)
+                .tag("reason", "size")
+                .register(meterRegistry);
+        FunctionCounter.builder("bookkeeper.nlp.cache.evictions", expiredEvictions, AtomicLong::get)
+                .tag("reason", "expired")
+                .register(meterRegistry);
+        Gauge.builder("bookkeeper.nlp.cache.entries", this, ParseResultCache::size)
+                .register(meterRegistry);
+        Gauge.builder("bookkeeper.nlp.cache.bytes", this, ParseResultCache::estimatedBytes)
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Разбор из кэша с суммой и датой из {@code userText}, либо null.
+     */
+    public ParsedExpense get(String userText) {
+        if (!enabled) {
+            return null;
+        }
+        BigDecimal amount = ruleParser.extractAmount(userText);
+        if (amount == null || hasUnresolvedDate(userText)) {
+            return null;
+        }
+
+        String key = normalize(userText);
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(key);
+            if (entry != null && entry.expiresAt() - System.nanoTime() < 0) {
+                remove(key);
+                expiredEvictions.incrementAndGet();
+                entry = null;
+            }
+        }
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        hits.incrementAndGet();
+        return entry.template().toBuilder()
+                .amount(amount)
+                .date(ruleParser.resolveDate(userText))
+                .build();
+    }
+
+    public void put(String userText, ParsedExpense parsed) {
+        if (!enabled || parsed.getAmount() == null || hasUnresolvedDate(userText)) {
+            return;
+        }
+        // Если LLM прочитала сумму иначе, чем правила ("2 тыс" -> 2000 против "2"),
+        // при попадании подставилась бы неверная сумма — такой разбор не запоминаем
+        BigDecimal extracted = ruleParser.extractAmount(userText);
+        if (extracted == null || extracted.compareTo(parsed.getAmount()) != 0) {
+            return;
+        }
+
+        String key = normalize(userText);
+        // Сумму и дату не храним — при попадании они всё равно берутся из сообщения;
+        // из описания они тоже убираются, иначе "кофе 350" досталось бы и следующим тратам
+        ParsedExpense template = parsed.toBuilder()
+                .amount(null)
+                .date(null)
+                .description(stripAmountAndDate(parsed.getDescription()))
+                .build();
+        long bytes = estimateBytes(key, template);
+
+        synchronized (this) {
+            remove(key);
+            entries.put(key, new Entry(template, System.nanoTime() + ttlNanos, bytes));
+            totalBytes += bytes;
+            evictEldest();
+        }
+    }
+
+    public static String normalize(String text) {
+        String lower = text.toLowerCase(Locale.ROOT).replace('ё', 'е');
+        // после toLowerCase заглавных букв в тексте нет, поэтому "N" не пересечётся со словами
+        String masked = NUMBER.matcher(lower).replaceAll(" N ");
+        masked = RELATIVE_DAY.matcher(masked).replaceAll(" ");
+        return SEPARATORS.matcher(masked).replaceAll(" ").trim();
+    }
+
+    /** Описание без чисел и "сегодня/вчера"; пустое — null. */
+    static String stripAmountAndDate(String description) {
+        if (description == null) {
+            return null;
+        }
+        String stripped = NUMBER.matcher(description).replaceAll(" ");
+        stripped = RELATIVE_DAY.matcher(stripped).replaceAll(" ");
+        stripped = stripped.replaceAll("\\s+", " ").trim();
+        return stripped.isEmpty() ? null : stripped;
+    }
+
+    private static boolean hasUnresolvedDate(String text) {
+        return UNRESOLVED_DATE.matcher(text.toLowerCase(Locale.ROOT)).find();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long estimatedBytes() {
+        return totalBytes;
+    }
+
+    private void remove(String key) {
+        Entry removed = entries.remove(key);
+        if (removed != null) {
+            totalBytes -= removed.bytes();
+        }
+    }
+
+    private void evictEldest() {
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while ((entries.size() > maxEntries || totalBytes > maxBytes) && it.hasNext()) {
+            Map.Entry<String, Entry> eldest = it.next();
+            totalBytes -= eldest.getValue().bytes();
+            it.remove();
+            sizeEvictions.incrementAndGet();
+        }
+    }
+
+    private static long estimateBytes(String key, ParsedExpense template) {
+        return ENTRY_OVERHEAD_BYTES
+                + 2L * key.length()
+                + 2L * length(template.getCurrency())
+                + 2L * length(template.getCategory())
+                + 2L * length(template.getDescription())
+                + 2L * length(template.getPlace());
+    }
+
+    private static int length(String s) {
+        return s == null ? 0 : s.length();
+    }
+}
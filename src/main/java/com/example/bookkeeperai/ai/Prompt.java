@@ -0,0 +1,12 @@
+package com.example.bookkeeperai.ai;
+
+/**
+ * Запрос к LLM. {@code system} — неизменная инструкция со схемой ответа: она идёт
+ * первой и совпадает байт в байт между запросами, поэтому провайдер может
+ * закэшировать её префикс. Всё, что меняется, — в {@code user}.
+ *
+ * @param kind      вид промпта для тега метрик: single, multi, batch, follow_up
+ * @param maxTokens потолок ответа, рассчитанный под ожидаемый JSON
+ */
+public record Prompt(String kind, String system, String user, int maxTokens) {
+}
@@ -0,0 +1,233 @@
+package com.example.bookkeeperai.ai;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Промпты разбора трат. Инструкция и схема ответа — константы, одинаковые байт в байт
+ * для всех запросов одного вида: провайдер кэширует этот префикс, а мы не платим
+ * за него задержкой. В пользовательскую часть идут только сегодняшняя дата и текст.
+ *
+ * Фраза об одной трате не обрезается — обрезка могла бы отрезать сумму, слишком длинную
+ * бот не принимает. Длинная расшифровка режется на куски по границам предложений, как
+ * голосовое в {@link SttService}, и каждый кусок разбирается отдельным запросом. Потолок
+ * ответа считается по числу ожидаемых трат, а не берётся с запасом.
+ */
+@Component
+public class PromptBuilder {
+
+    /** Одна трата в ответе. Дата null — значит не названа, подставит {@link LlmResponseReader}. */
+    private static final String EXPENSE_SCHEMA = """
+            {"amount": число, "currency": "ISO 4217, например RUB", \
+            "category": "groceries|transport|cafe|entertainment|bills|other", \
+            "description": "кратко", "place": "место или null", "date": "ISO-8601 или null"}""";
+
+    private static final String RULES = """
+            Фразы на русском или английском. Дату ставь, только если она названа; \
+            "вчера", "в пятницу" считай от сегодняшней даты из сообщения. \
+            Ответ — только JSON, без текста до и после.""";
+
+    private static final String SINGLE_SYSTEM = """
+            Ты парсер личных трат. Извлеки из фразы одну трату в виде
+            """ + EXPENSE_SCHEMA + "\n" + RULES;
+
+    private static final String MULTI_SYSTEM = """
+            Ты парсер личных трат. В тексте может быть несколько трат, каждая — отдельный элемент:
+            {"expenses": [""" + EXPENSE_SCHEMA + ", ...]}\n" + RULES;
+
+    private static final String BATCH_SYSTEM = """
+            Ты парсер личных трат. Фразы пронумерованы и принадлежат разным людям, в каждой одна трата. \
+            Не смешивай фразы, верни ровно один элемент на фразу:
+            {"items": [{"index": номер фразы, ...поля траты}]}, поля траты:
+            """ + EXPENSE_SCHEMA + "\n" + RULES;
+
+    private static final String FOLLOW_UP_SYSTEM = """
+            Ты парсер личных трат. Пользователь продолжает разговор; в сообщении — его недавние траты \
+            (номер: сумма валюта, категория, комментарий, место, дата), прошлые реплики и новая.
+            Правка недавней траты — только изменённые поля: {"action": "edit", "target": номер, "amount": 600}
+            Новая трата — целиком: {"action": "add", ...поля траты}, поля траты:
+            """ + EXPENSE_SCHEMA + """
+
+            Недостающие поля новой траты ("туда же", "ещё такой же") бери из недавних.
+            """ + RULES;
+
+    /** Запас на скобки, ключи верхнего уровня и разметку, которую модели добавляют вокруг JSON. */
+    private static final int RESPONSE_OVERHEAD_TOKENS = 24;
+    /** Обрезка описания и места трат в контексте промпта. */
+    private static final int CONTEXT_FIELD_CHARS = 60;
+
+    private final ZoneId zone;
+    private final int tokensPerExpense;
+    private final int maxResponseTokens;
+    private final int maxInputChars;
+    private final int maxTranscriptChars;
+    private final Counter truncated;
+    private final DistributionSummary chunksPerTranscript;
+
+    public PromptBuilder(@Value("${reports.zone}") ZoneId zone,
+                         @Value("${nlp.prompt.tokens-per-expense}") int tokensPerExpense,
+                         @Value("${nlp.prompt.max-response-tokens}") int maxResponseTokens,
+                         @Value("${nlp.prompt.max-input-chars}") int maxInputChars,
+                         @Value("${nlp.prompt.max-transcript-chars}") int maxTranscriptChars,
+                         MeterRegistry meterRegistry) {
+        this.zone = zone;
+        this.tokensPerExpense = tokensPerExpense;
+        this.maxResponseTokens = maxResponseTokens;
+        this.maxInputChars = maxInputChars;
+        this.maxTranscriptChars = maxTranscriptChars;
+        this.truncated = Counter.builder("bookkeeper.nlp.prompt.truncated")
+                .description("Тексты, обрезанные перед отправкой в LLM")
+                .register(meterRegistry);
+        this.chunksPerTranscript = DistributionSummary.builder("bookkeeper.nlp.prompt.chunks")
+                .description("На сколько кусков разрезана расшифровка перед разбором")
+                .register(meterRegistry);
+    }
+
+    /** Фраза помещается в промпт {@link #single} целиком. */
+    public boolean fitsSingle(String userText) {
+        return userText.length() <= maxInputChars;
+    }
+
+    /** Фраза об одной трате. */
+    public Prompt single(String userText) {
+        if (!fitsSingle(userText)) {
+            throw new IllegalArgumentException("Фраза длиннее " + maxInputChars + " символов");
+        }
+        return new Prompt("single", SINGLE_SYSTEM, today() + "Фраза: " + userText, budget(1));
+    }
+
+    /** Куски расшифровки для {@link #multi}, каждый не длиннее max-transcript-chars. */
+    public List<String> transcriptChunks(String transcript) {
+        List<String> chunks = split(transcript, maxTranscriptChars);
+        chunksPerTranscript.record(chunks.size());
+        return chunks;
+    }
+
+    /** Кусок длинного текста, обычно расшифровки голосового, с несколькими тратами. */
+    public Prompt multi(String chunk) {
+        String text = clipInput(chunk, maxTranscriptChars);
+        return new Prompt("multi", MULTI_SYSTEM, today() + "Текст: " + text, budget(expectedExpenses(text)));
+    }
+
+    /** Фразы разных пользователей одним запросом, по одной трате на фразу. */
+    public Prompt batch(List<String> userTexts) {
+        StringBuilder user = new StringBuilder(today()).append("Фразы:\n");
+        for (int i = 0; i < userTexts.size(); i++) {
+            user.append(i).append(": ").append(clipInput(userTexts.get(i), maxInputChars)).append('\n');
+        }
+        return new Prompt("batch", BATCH_SYSTEM, user.toString(), budget(userTexts.size()));
+    }
+
+    public Prompt followUp(String userText, ConversationContext context) {
+        StringBuilder user = new StringBuilder(today()).append("Недавние траты:\n");
+        List<ConversationContext.Entry> entries = context.expenses();
+        for (int i = 0; i < entries.size(); i++) {
+            ConversationContext.Entry e = entries.get(i);
+            user.append(i).append(": ")
+                    .append(e.amount()).append(' ').append(e.currency())
+                    .append(", ").append(e.category())
+                    .append(", ").append(clip(e.description(), CONTEXT_FIELD_CHARS))
+                    .append(", ").append(clip(e.place(), CONTEXT_FIELD_CHARS))
+                    .append(", ").append(e.date())
+                    .append('\n');
+        }
+        user.append("Прошлые реплики:\n");
+        // первое сообщение в контексте — самое свежее, в промпте идём по порядку
+        for (int i = context.turns().size() - 1; i >= 0; i--) {
+            user.append("- ").append(context.turns().get(i)).append('\n');
+        }
+        user.append("Новое сообщение: ").append(clipInput(userText, maxInputChars));
+        return new Prompt("follow_up", FOLLOW_UP_SYSTEM, user.toString(), budget(1));
+    }
+
+    private String today() {
+        return "Сегодня " + LocalDate.now(zone) + ".\n";
+    }
+
+    private int budget(int expenses) {
+        return Math.min(maxResponseTokens, RESPONSE_OVERHEAD_TOKENS + tokensPerExpense * expenses);
+    }
+
+    /**
+     * Сколько трат ждать в тексте: по числу чисел в нём, но не меньше одной на
+     * каждые 150 символов — Whisper иногда пишет суммы словами.
+     */
+    static int expectedExpenses(String text) {
+        int numbers = 0;
+        boolean inNumber = false;
+        for (int i = 0; i < text.length(); i++) {
+            boolean digit = Character.isDigit(text.charAt(i));
+            if (digit && !inNumber) {
+                numbers++;
+            }
+            inNumber = digit || (inNumber && (text.charAt(i) == ',' || text.charAt(i) == '.'));
+        }
+        return Math.max(1, Math.max(numbers, text.length() / 150));
+    }
+
+    /**
+     * Режет текст на куски не длиннее {@code maxChars}: по концу последнего предложения
+     * во второй половине окна, иначе по последнему пробелу, иначе посреди слова.
+     */
+    static List<String> split(String text, int maxChars) {
+        List<String> chunks = new ArrayList<>();
+        int start = 0;
+        while (text.length() - start > maxChars) {
+            int cut = cutPoint(text, start, start + maxChars);
+            addChunk(chunks, text.substring(start, cut));
+            start = cut;
+        }
+        addChunk(chunks, text.substring(start));
+        if (chunks.isEmpty()) {
+            chunks.add("");
+        }
+        return chunks;
+    }
+
+    private static int cutPoint(String text, int start, int end) {
+        int half = start + (end - start) / 2;
+        for (int i = end; i > half; i--) {
+            // точка перед пробелом — конец предложения, а не дробная часть суммы
+            if (".!?\n".indexOf(text.charAt(i - 1)) >= 0 && Character.isWhitespace(text.charAt(i))) {
+                return i;
+            }
+        }
+        int space = text.lastIndexOf(' ', end);
+        return space > half ? space : end;
+    }
+
+    private static void addChunk(List<String> chunks, String chunk) {
+        String trimmed = chunk.trim();
+        if (!trimmed.isEmpty()) {
+            chunks.add(trimmed);
+        }
+    }
+
+    /** Текст пользователя: обрезка считается в метрике. */
+    private String clipInput(String text, int maxChars) {
+        if (text.length() > maxChars) {
+            truncated.increment();
+        }
+        return clip(text, maxChars);
+    }
+
+    /** Обрезка по последнему пробелу до лимита, чтобы не рвать слово или число. */
+    static String clip(String text, int maxChars) {
+        if (text == null) {
+            return "";
+        }
+        if (text.length() <= maxChars) {
+            return text;
+        }
+        int cut = text.lastIndexOf(' ', maxChars);
+        return text.substring(0, cut > maxChars / 2 ? cut : maxChars) + "…";
+    }
+}
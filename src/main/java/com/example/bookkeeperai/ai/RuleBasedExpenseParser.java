@@ -0,0 +1,434 @@
+package com.example.bookkeeperai.ai;
+
+import com.example.bookkeeperai.dto.ParsedExpense;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Локальный детерминированный парсер для простых сообщений вида "кофе 250" или "taxi 12 usd".
+ *
+ * Не пытается понять всё подряд: если во фразе есть незнакомые слова, несколько чисел
+ * или непонятная категория, уверенность падает и разбор уходит в LLM.
+ */
+@Component
+public class RuleBasedExpenseParser {
+
+    /** Число забирает приклеенные буквы: "5к", "250р", "2кг" — отдельным словом их не понять. */
+    private static final Pattern TOKEN = Pattern.compile("\\d+(?:[.,]\\d+)?\\p{L}*|\\p{L}+|[₽$€£]");
+    private static final Pattern AMOUNT = Pattern.compile("(\\d+(?:[.,]\\d+)?)(\\p{L}*)");
+    private static final BigDecimal THOUSAND = BigDecimal.valueOf(1000);
+
+    private static final double AMOUNT_WEIGHT = 0.5;
+    private static final double CATEGORY_WEIGHT = 0.3;
+    private static final double AMBIGUOUS_CATEGORY_WEIGHT = 0.1;
+    private static final double CURRENCY_WEIGHT = 0.1;
+    private static final double SHORT_MESSAGE_WEIGHT = 0.1;
+    private static final double UNKNOWN_WORD_PENALTY = 0.15;
+    private static final int SHORT_MESSAGE_TOKENS = 4;
+
+    /**
+     * Окончания, которые допускаются после стема: "магните", "продукты", "buses".
+     * Слово целиком должно быть стемом с одним из них — "business" не автобус, "europe" не евро.
+     */
+    private static final Set<String> ENDINGS = Set.of(
+            "", "а", "я", "у", "ю", "е", "и", "ы", "о", "ь",
+            "ой", "ей", "ом", "ем", "ам", "ям", "ах", "ях", "ами", "ями", "ов", "ев",
+            "ые", "ых", "ым", "ая", "ую", "ое", "ого", "ому",
+            "s", "es", "ies", "y"
+    );
+
+    private record Entry(String stem, String value, String place) {
+        boolean matches(String token) {
+            return stem.length() < 3
+                    ? token.equals(stem)
+                    : token.startsWith(stem) && ENDINGS.contains(token.substring(stem.length()));
+        }
+    }
+
+    /** Множитель тысяч: "5к", "5k", "2 тыс", "3 тысячи". */
+    private static final Set<String> THOUSANDS = Set.of(
+            "к", "k", "тыс", "тысяч", "тысяча", "тысячи", "thousand"
+    );
+
+    private static final List<Entry> CURRENCIES = List.of(
+            new Entry("руб", "RUB", null),
+            new Entry("рубл", "RUB", null),
+            new Entry("р", "RUB", null),
+            new Entry("₽", "RUB", null),
+            new Entry("rub", "RUB", null),
+            new Entry("rur", "RUB", null),
+            new Entry("usd", "USD", null),
+            new Entry("$", "USD", null),
+            new Entry("доллар", "USD", null),
+            new Entry("бакс", "USD", null),
+            new Entry("dollar", "USD", null),
+            new Entry("buck", "USD", null),
+            new Entry("eur", "EUR", null),
+            new Entry("euro", "EUR", null),
+            new Entry("€", "EUR", null),
+            new Entry("евро", "EUR", null),
+            new Entry("gbp", "GBP", null),
+            new Entry("£", "GBP", null),
+            new Entry("фунт", "GBP", null)
+    );
+
+    private static final List<Entry> CATEGORIES = List.of(
+            // groceries
+            new Entry("продукт", "groceries", null),
+            new Entry("магнит", "groceries", "Магнит"),
+            new Entry("пятерочк", "groceries", "Пятёрочка"),
+            new Entry("пятёрочк", "groceries", "Пятёрочка"),
+            new Entry("перекресток", "groceries", "Перекрёсток"),
+            new Entry("перекрёсток", "groceries", "Перекрёсток"),
+            new Entry("перекрестк", "groceries", "Перекрёсток"),
+            new Entry("перекрёстк", "groceries", "Перекрёсток"),
+            new Entry("ашан", "groceries", "Ашан"),
+            new Entry("вкусвилл", "groceries", "ВкусВилл"),
+            new Entry("grocer", "groceries", null),
+            new Entry("supermarket", "groceries", null),
+            new Entry("супермаркет", "groceries", null),
+            // transport
+            new Entry("такси", "transport", null),
+            new Entry("taxi", "transport", null),
+            new Entry("uber", "transport", "Uber"),
+            new Entry("метро", "transport", null),
+            new Entry("metro", "transport", null),
+            new Entry("subway", "transport", null),
+            new Entry("автобус", "transport", null),
+            new Entry("bus", "transport", null),
+            new Entry("электричк", "transport", null),
+            new Entry("train", "transport", null),
+            new Entry("бензин", "transport", null),
+            new Entry("заправк", "transport", null),
+            new Entry("fuel", "transport", null),
+            new Entry("parking", "transport", null),
+            new Entry("парковк", "transport", null),
+            // cafe
+            new Entry("кофе", "cafe", null),
+            new Entry("coffee", "cafe", null),
+            new Entry("обед", "cafe", null),
+            new Entry("ужин", "cafe", null),
+            new Entry("завтрак", "cafe", null),
+            new Entry("lunch", "cafe", null),
+            new Entry("dinner", "cafe", null),
+            new Entry("breakfast", "cafe", null),
+            new Entry("кафе", "cafe", null),
+            new Entry("cafe", "cafe", null),
+            new Entry("ресторан", "cafe", null),
+            new Entry("restaurant", "cafe", null),
+            new Entry("kfc", "cafe", "KFC"),
+            new Entry("макдональдс", "cafe", "McDonald's"),
+            new Entry("бургер", "cafe", null),
+            new Entry("burger", "cafe", null),
+            new Entry("пицц", "cafe", null),
+            new Entry("pizza", "cafe", null),
+            // entertainment
+            new Entry("кино", "entertainment", null),
+            new Entry("cinema", "entertainment", null),
+            new Entry("movie", "entertainment", null),
+            new Entry("концерт", "entertainment", null),
+            new Entry("concert", "entertainment", null),
+            new Entry("театр", "entertainment", null),
+            new Entry("theatre", "entertainment", null),
+            new Entry("netflix", "entertainment", "Netflix"),
+            // bills
+            new Entry("коммуналк", "bills", null),
+            new Entry("коммунальн", "bills", null),
+            new Entry("квартплат", "bills", null),
+            new Entry("интернет", "bills", null),
+            new Entry("internet", "bills", null),
+            new Entry("телефон", "bills", null),
+            new Entry("phone", "bills", null),
+            new Entry("электричеств", "bills", null),
+            new Entry("аренд", "bills", null),
+            new Entry("rent", "bills", null),
+            new Entry("bill", "bills", null)
+    );
+
+    private static final Set<String> STOP_WORDS = Set.of(
+            "в", "во", "на", "за", "и", "с", "со", "у", "к", "по", "из", "от",
+            "for", "on", "at", "in", "the", "a", "an", "of", "to"
+    );
+
+    private static final List<String> STOP_STEMS = List.of(
+            "потрат", "купил", "оплат", "заплат", "spent", "paid", "bought"
+    );
+
+    /**
+     * Начало исправления прошлой траты: "нет, это было 600", "исправь на такси".
+     * Маркеры — целые слова (или фразы) в самом начале сообщения, "ё" записана как "е".
+     */
+    private static final List<String> CORRECTION_MARKERS = List.of(
+            "нет", "не", "исправь", "исправить", "исправление", "поправь", "поправка",
+            "измени", "поменяй", "ошибка", "ошибся", "ошиблась", "точнее",
+            "no", "not", "fix", "correction", "correct", "change", "actually", "wrong"
+    );
+
+    /** Начало траты, которая опирается на предыдущие: "и ещё такси 300", "туда же 200". */
+    private static final List<String> ADDITION_MARKERS = List.of(
+            "еще", "тоже", "также", "добавь", "добавить", "плюс", "туда же", "там же",
+            "also", "another", "more", "add", "plus", "same", "too"
+    );
+
+    /** Союзы и междометия перед маркером: "и ещё такси", "ой, нет, 600". */
+    private static final Set<String> LEAD_FILLERS = Set.of("и", "а", "ну", "ой", "and", "oh", "oops");
+
+    /** Сдвиг в днях относительно сегодняшнего дня. */
+    private record RelativeDay(String word, int shift) {
+    }
+
+    private static final List<RelativeDay> RELATIVE_DAYS = List.of(
+            new RelativeDay("сегодня", 0),
+            new RelativeDay("today", 0),
+            new RelativeDay("вчера", -1),
+            new RelativeDay("yesterday", -1),
+            new RelativeDay("позавчера", -2)
+    );
+
+    /**
+     * Разбирает фразу без обращения к LLM.
+     * Результат всегда не null; доверять ему можно только при достаточном {@code confidence}.
+     */
+    public ParsedExpense parse(String text) {
+        List<String> tokens = tokenize(text);
+
+        List<BigDecimal> amounts = new ArrayList<>();
+        String currency = null;
+        String category = null;
+        String place = null;
+        boolean ambiguousCategory = false;
+        Integer dayShift = null;
+        int unknownWords = 0;
+        int meaningfulTokens = 0;
+        List<String> descriptionWords = new ArrayList<>();
+
+        boolean gluedSuffix = false;
+        boolean afterNumber = false;
+
+        for (String token : tokens) {
+            String lower = token.toLowerCase(Locale.ROOT);
+
+            Matcher number = AMOUNT.matcher(lower);
+            if (number.matches()) {
+                String suffix = number.group(2);
+                Entry suffixCurrency = suffix.isEmpty() ? null : lookup(CURRENCIES, suffix);
+                if (suffixCurrency != null) {
+                    currency = suffixCurrency.value();
+                } else if (!suffix.isEmpty() && !THOUSANDS.contains(suffix)) {
+                    // "2кг", "3шт": число не сумма или сумма не в рублях — пусть решает LLM
+                    gluedSuffix = true;
+                }
+                amounts.add(withSuffix(toAmount(number.group(1)), suffix));
+                meaningfulTokens++;
+                afterNumber = true;
+                continue;
+            }
+            boolean previousWasNumber = afterNumber;
+            afterNumber = false;
+            if (previousWasNumber && THOUSANDS.contains(lower) && !lower.equals("к")) {
+                amounts.set(amounts.size() - 1, amounts.get(amounts.size() - 1).multiply(THOUSAND));
+                continue;
+            }
+            if (previousWasNumber && lower.equals("к")) {
+                // "5 к": тысячи или предлог — не угадываем
+                gluedSuffix = true;
+            }
+            if (isStopWord(lower)) {
+                continue;
+            }
+            meaningfulTokens++;
+
+            Integer shift = relativeDayShift(lower);
+            if (shift != null) {
+                dayShift = shift;
+                continue;
+            }
+
+            Entry currencyEntry = lookup(CURRENCIES, lower);
+            if (currencyEntry != null) {
+                currency = currencyEntry.value();
+                continue;
+            }
+
+            Entry categoryEntry = lookup(CATEGORIES, lower);
+            if (categoryEntry != null) {
+                if (category != null && !category.equals(categoryEntry.value())) {
+                    ambiguousCategory = true;
+                }
+                category = category == null ? categoryEntry.value() : category;
+                if (categoryEntry.place() != null) {
+                    place = categoryEntry.place();
+                } else {
+                    descriptionWords.add(token);
+                }
+                continue;
+            }
+
+            unknownWords++;
+            descriptionWords.add(token);
+        }
+
+        double confidence = 0;
+        if (amounts.size() == 1 && !gluedSuffix) {
+            confidence += AMOUNT_WEIGHT;
+        }
+        if (category != null) {
+            confidence += ambiguousCategory ? AMBIGUOUS_CATEGORY_WEIGHT : CATEGORY_WEIGHT;
+        }
+        if (currency != null) {
+            confidence += CURRENCY_WEIGHT;
+        }
+        if (meaningfulTokens <= SHORT_MESSAGE_TOKENS) {
+            confidence += SHORT_MESSAGE_WEIGHT;
+        }
+        confidence -= unknownWords * UNKNOWN_WORD_PENALTY;
+
+        return ParsedExpense.builder()
+                .amount(amounts.size() == 1 ? amounts.get(0) : null)
+                .currency(currency)
+                .category(category != null ? category : "other")
+                .description(descriptionWords.isEmpty() ? null : String.join(" ", descriptionWords))
+                .place(place)
+                .date(OffsetDateTime.now().plusDays(dayShift != null ? dayShift : 0))
+                .confidence(Math.max(0, Math.min(1, confidence)))
+                .build();
+    }
+
+    /**
+     * Единственная сумма во фразе с учётом тысяч ("5к", "2 тыс") или null, если чисел нет,
+     * их несколько или к числу приклеено непонятное слово.
+     */
+    public BigDecimal extractAmount(String text) {
+        BigDecimal amount = null;
+        boolean afterNumber = false;
+        for (String token : tokenize(text)) {
+            String lower = token.toLowerCase(Locale.ROOT);
+            Matcher number = AMOUNT.matcher(lower);
+            if (number.matches()) {
+                String suffix = number.group(2);
+                if (amount != null
+                        || !suffix.isEmpty() && !THOUSANDS.contains(suffix) && lookup(CURRENCIES, suffix) == null) {
+                    return null;
+                }
+                amount = withSuffix(toAmount(number.group(1)), suffix);
+                afterNumber = true;
+                continue;
+            }
+            if (afterNumber && THOUSANDS.contains(lower)) {
+                if (lower.equals("к")) {
+                    return null;
+                }
+                amount = amount.multiply(THOUSAND);
+            }
+            afterNumber = false;
+        }
+        return amount;
+    }
+
+    private static BigDecimal withSuffix(BigDecimal amount, String suffix) {
+        return THOUSANDS.contains(suffix) ? amount.multiply(THOUSAND) : amount;
+    }
+
+    /**
+     * Дата по относительным словам ("вчера", "yesterday"), иначе текущий момент.
+     */
+    public OffsetDateTime resolveDate(String text) {
+        for (String token : tokenize(text)) {
+            Integer shift = relativeDayShift(token.toLowerCase(Locale.ROOT));
+            if (shift != null) {
+                return OffsetDateTime.now().plusDays(shift);
+            }
+        }
+        return OffsetDateTime.now();
+    }
+
+    /** Сообщение похоже на исправление прошлой траты. */
+    public boolean isCorrection(String text) {
+        return leadsWith(text, CORRECTION_MARKERS);
+    }
+
+    /** Сообщение похоже на трату, которая ссылается на предыдущие ("туда же", "ещё"). */
+    public boolean isAddition(String text) {
+        return leadsWith(text, ADDITION_MARKERS);
+    }
+
+    private static boolean leadsWith(String text, List<String> markers) {
+        List<String> tokens = tokenize(text);
+        int start = 0;
+        while (start < tokens.size() && LEAD_FILLERS.contains(word(tokens.get(start)))) {
+            start++;
+        }
+        for (String marker : markers) {
+            String[] words = marker.split(" ");
+            if (start + words.length > tokens.size()) {
+                continue;
+            }
+            boolean matches = true;
+            for (int i = 0; i < words.length && matches; i++) {
+                matches = words[i].equals(word(tokens.get(start + i)));
+            }
+            if (matches) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String word(String token) {
+        return token.toLowerCase(Locale.ROOT).replace('ё', 'е');
+    }
+
+    private static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+        Matcher m = TOKEN.matcher(text);
+        while (m.find()) {
+            tokens.add(m.group());
+        }
+        return tokens;
+    }
+
+    private static BigDecimal toAmount(String token) {
+        return new BigDecimal(token.replace(',', '.'));
+    }
+
+    private static boolean isStopWord(String lower) {
+        if (STOP_WORDS.contains(lower)) {
+            return true;
+        }
+        for (String stem : STOP_STEMS) {
+            if (lower.startsWith(stem)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Integer relativeDayShift(String lower) {
+        for (RelativeDay day : RELATIVE_DAYS) {
+            if (day.word().equals(lower)) {
+                return day.shift();
+            }
+        }
+        return null;
+    }
+
+    private static Entry lookup(List<Entry> dictionary, String lower) {
+        for (Entry entry : dictionary) {
+            if (entry.matches(lower)) {
+                return entry;
+            }
+        }
+        return null;
+    }
+}
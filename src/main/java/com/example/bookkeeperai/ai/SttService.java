@@ -1,16 +1,155 @@
 package com.example.bookkeeperai.ai;
 
-import lombok.RequiredArgsConstructor;
+import com.example.bookkeeperai.metrics.PipelineMetrics;
+import com.example.bookkeeperai.metrics.Stage;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+
 @Service
-@RequiredArgsConstructor
+@Slf4j
 public class SttService {
 
-    private final HuggingFaceClient hfClient;
+    private final InferenceRouter inference;
+    private final boolean chunkingEnabled;
+    private final Duration chunkingMinDuration;
+    private final int chunkParallelism;
+    private final OggOpusChunker chunker;
+    private final DistributionSummary chunksPerVoice;
+    private final TranscriptCache cache;
+    private final long hashMaxBytes;
+    private final PipelineMetrics pipelineMetrics;
+
+    public SttService(InferenceRouter inference,
+                      @Value("${stt.chunking.enabled}") boolean chunkingEnabled,
+                      @Value("${stt.chunking.min-duration}") Duration chunkingMinDuration,
+                      @Value("${stt.chunking.chunk-target}") Duration chunkTarget,
+                      @Value("${stt.chunking.chunk-max}") Duration chunkMax,
+                      @Value("${stt.chunking.silence-packet-bytes}") int silencePacketBytes,
+                      @Value("${stt.chunking.parallelism}") int chunkParallelism,
+                      TranscriptCache cache,
+                      @Value("${stt.cache.hash-max-bytes}") long hashMaxBytes,
+                      PipelineMetrics pipelineMetrics,
+                      MeterRegistry meterRegistry) {
+        this.inference = inference;
+        this.chunkingEnabled = chunkingEnabled;
+        this.chunkingMinDuration = chunkingMinDuration;
+        this.chunkParallelism = chunkParallelism;
+        this.chunker = new OggOpusChunker(chunkTarget, chunkMax, silencePacketBytes);
+        this.cache = cache;
+        this.hashMaxBytes = hashMaxBytes;
+        this.pipelineMetrics = pipelineMetrics;
+        this.chunksPerVoice = DistributionSummary.builder("bookkeeper.stt.chunks")
+                .description("Число кусков, на которые разрезано длинное голосовое")
+                .register(meterRegistry);
+    }
 
     public String transcribe(byte[] audioBytes) throws Exception {
-        return hfClient.speechToText(audioBytes);
+        return Futures.await(transcribeAsync(audioBytes));
     }
-}
 
+    public CompletableFuture<String> transcribeAsync(byte[] audioBytes) {
+        return inference.speechToTextAsync(audioBytes);
+    }
+
+    public String transcribe(AudioSource audio) throws Exception {
+        return Futures.await(transcribeAsync(audio));
+    }
+
+    public CompletableFuture<String> transcribeAsync(AudioSource audio) {
+        return inference.speechToTextAsync(audio);
+    }
+
+    /** Длинное ли голосовое: такие режутся на куски и могут содержать несколько трат. */
+    public boolean isLong(int durationSeconds) {
+        return chunkingEnabled && durationSeconds >= chunkingMinDuration.toSeconds();
+    }
+
+    /**
+     * Голосовое из Telegram через {@link TranscriptCache}. Сначала ищем по {@code file_unique_id} —
+     * при попадании {@code audio} не вызывается, и к Telegram не обращаемся. Короткое голосовое
+     * известного размера (до {@code hash-max-bytes}) скачивается целиком и ищется по хэшу —
+     * при попадании не нужен STT. Длинные идут потоком и кэшируются только по {@code file_unique_id}.
+     */
+    public String transcribe(String fileUniqueId, Callable<AudioSource> audio, int durationSeconds) throws Exception {
+        String uniqueKey = TranscriptCache.uniqueIdKey(fileUniqueId);
+        String cached = cache.get(uniqueKey);
+        if (cached != null) {
+            return cached;
+        }
+
+        AudioSource source = audio.call();
+        long size = source.contentLength();
+        if (isLong(durationSeconds) || size < 0 || size > hashMaxBytes) {
+            String transcript = transcribe(source, durationSeconds);
+            cache.put(transcript, uniqueKey);
+            return transcript;
+        }
+
+        byte[] bytes = pipelineMetrics.time(Stage.TELEGRAM_FETCH, () -> {
+            try (InputStream in = source.open()) {
+                return in.readAllBytes();
+            }
+        });
+        String hashKey = TranscriptCache.hashKey(bytes);
+        String transcript = cache.get(hashKey);
+        if (transcript == null) {
+            transcript = pipelineMetrics.time(Stage.STT, () -> transcribe(bytes));
+        }
+        cache.put(transcript, uniqueKey, hashKey);
+        return transcript;
+    }
+
+    /**
+     * Расшифровка с учётом длительности: длинные голосовые режутся на куски,
+     * которые распознаются параллельно (не больше {@code parallelism} одновременно),
+     * а тексты склеиваются в исходном порядке.
+     */
+    public String transcribe(AudioSource audio, int durationSeconds) throws Exception {
+        return pipelineMetrics.time(Stage.STT, () -> transcribeByDuration(audio, durationSeconds));
+    }
+
+    private String transcribeByDuration(AudioSource audio, int durationSeconds) throws Exception {
+        if (!isLong(durationSeconds)) {
+            return transcribe(audio);
+        }
+
+        Semaphore inFlight = new Semaphore(chunkParallelism);
+        List<CompletableFuture<String>> parts = new ArrayList<>();
+        try (InputStream in = audio.open()) {
+            // Пока все слоты заняты, чтение потока приостанавливается
+            chunker.split(in, chunk -> {
+                inFlight.acquire();
+                parts.add(inference.speechToTextAsync(chunk)
+                        .whenComplete((text, error) -> inFlight.release()));
+            });
+        } catch (Exception e) {
+            parts.forEach(part -> part.cancel(true));
+            throw e;
+        }
+        chunksPerVoice.record(parts.size());
+        log.debug("Голосовое {} с разрезано на {} кусков", durationSeconds, parts.size());
+
+        StringBuilder transcript = new StringBuilder();
+        for (CompletableFuture<String> part : parts) {
+            String text = Futures.await(part).trim();
+            if (!text.isEmpty()) {
+                if (transcript.length() > 0) {
+                    transcript.append(' ');
+                }
+                transcript.append(text);
+            }
+        }
+        return transcript.toString();
+    }
+}
@@ -0,0 +1,201 @@
+package com.example.bookkeeperai.ai;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Расшифровки голосовых по содержимому. Ключ — {@code file_unique_id} Telegram
+ * (одинаков у пересланного и повторно отправленного голосового) или SHA-256 самого аудио.
+ * Попадание по {@code file_unique_id} обходится без getFile, скачивания и STT.
+ *
+ * Два уровня: LRU в памяти на {@code max-entries} записей и каталог на диске рядом
+ * с базой H2, который переживает рестарт. Файл на ключ, старые удаляются по TTL.
+ * Кэш best-effort: ошибка диска — промах, а не ошибка обработки.
+ */
+@Component
+@Slf4j
+public class TranscriptCache {
+
+    /** file_unique_id — base64url; другие символы в имя файла не пускаем. */
+    private static final Pattern SAFE_ID = Pattern.compile("[A-Za-z0-9_-]{1,128}");
+
+    private final boolean enabled;
+    private final int maxEntries;
+    private final Path dir;
+    private final Duration ttl;
+
+    private final LinkedHashMap<String, String> memory = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final AtomicLong memoryHits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public TranscriptCache(@Value("${stt.cache.enabled}") boolean enabled,
+                           @Value("${stt.cache.max-entries}") int maxEntries,
+                           @Value("${stt.cache.dir}") Path dir,
+                           @Value("${stt.cache.ttl}") Duration ttl,
+                           MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.maxEntries = maxEntries;
+        this.dir = dir;
+        this.ttl = ttl;
+        if (enabled) {
+            try {
+                Files.createDirectories(dir);
+            } catch (IOException e) {
+                throw new IllegalStateException("Не удалось создать каталог кэша расшифровок " + dir, e);
+            }
+        }
+
+        FunctionCounter.builder("bookkeeper.stt.cache.requests", memoryHits, AtomicLong::get)
+                .tag("result", "hit")
+                .tag("tier", "memory")
+                .register(meterRegistry);
+        FunctionCounter.builder("bookkeeper.stt.cache.requests", diskHits, AtomicLong::get)
+                .tag("result", "hit")
+                .tag("tier", "disk")
+                .register(meterRegistry);
+        FunctionCounter.builder("bookkeeper.stt.cache.requests", misses, AtomicLong::get)
+                .tag("result", "miss")
+                .tag("tier", "none")
+                .register(meterRegistry);
+        Gauge.builder("bookkeeper.stt.cache.entries", this, TranscriptCache::size)
+                .register(meterRegistry);
+    }
+
+    /** Ключ по file_unique_id; null, если id нет или он не годится в имя файла. */
+    public static String uniqueIdKey(String fileUniqueId) {
+        return fileUniqueId != null && SAFE_ID.matcher(fileUniqueId).matches() ? "u-" + fileUniqueId : null;
+    }
+
+    public static String hashKey(byte[] audio) {
+        try {
+            return "h-" + HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(audio));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** Расшифровка по ключу или null. */
+    public String get(String key) {
+        if (!enabled || key == null) {
+            return null;
+        }
+        synchronized (this) {
+            String transcript = memory.get(key);
+            if (transcript != null) {
+                memoryHits.incrementAndGet();
+                return transcript;
+            }
+        }
+        try {
+            String transcript = Files.readString(file(key));
+            remember(key, transcript);
+            diskHits.incrementAndGet();
+            return transcript;
+        } catch (NoSuchFileException e) {
+            misses.incrementAndGet();
+            return null;
+        } catch (IOException e) {
+            log.warn("Не удалось прочитать расшифровку {} из кэша: {}", key, e.getMessage());
+            misses.incrementAndGet();
+            return null;
+        }
+    }
+
+    /** Пустые расшифровки не кэшируются — это может быть и сбой распознавания. */
+    public void put(String transcript, String... keys) {
+        if (!enabled || transcript == null || transcript.isBlank()) {
+            return;
+        }
+        for (String key : keys) {
+            if (key == null) {
+                continue;
+            }
+            remember(key, transcript);
+            write(key, transcript);
+        }
+    }
+
+    public synchronized int size() {
+        return memory.size();
+    }
+
+    /** Файлы старше TTL удаляются; в памяти запись живёт, пока её не вытеснит LRU. */
+    @Scheduled(fixedDelayString = "${stt.cache.cleanup-interval}")
+    public void cleanup() {
+        if (!enabled) {
+            return;
+        }
+        FileTime expiredBefore = FileTime.from(Instant.now().minus(ttl));
+        int removed = 0;
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Iterator<Path> it = files.iterator(); it.hasNext(); ) {
+                Path file = it.next();
+                if (Files.getLastModifiedTime(file).compareTo(expiredBefore) < 0 && Files.deleteIfExists(file)) {
+                    removed++;
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Очистка кэша расшифровок прервана: {}", e.getMessage());
+        }
+        if (removed > 0) {
+            log.debug("Удалено старых расшифровок: {}", removed);
+        }
+    }
+
+    private synchronized void remember(String key, String transcript) {
+        memory.put(key, transcript);
+        Iterator<Map.Entry<String, String>> it = memory.entrySet().iterator();
+        while (memory.size() > maxEntries && it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+    }
+
+    /** Через временный файл и rename — читатель не увидит недописанный текст. */
+    private void write(String key, String transcript) {
+        Path tmp = null;
+        try {
+            tmp = Files.createTempFile(dir, key, ".tmp");
+            Files.writeString(tmp, transcript);
+            Files.move(tmp, file(key), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("Не удалось записать расшифровку {} в кэш: {}", key, e.getMessage());
+            if (tmp != null) {
+                try {
+                    Files.deleteIfExists(tmp);
+                } catch (IOException ignored) {
+                    // останется до очистки по TTL
+                }
+            }
+        }
+    }
+
+    private Path file(String key) {
+        return dir.resolve(key + ".txt");
+    }
+}
@@ -0,0 +1,27 @@
+package com.example.bookkeeperai.dto;
+
+import java.math.BigDecimal;
+import java.time.OffsetDateTime;
+
+/**
+ * Строка банковской выписки после разбора CSV.
+ *
+ * @param amount   сумма списания, всегда положительная
+ * @param income   зачисление (пополнение, возврат) — в расходы не попадает
+ * @param category категория из выписки, если банк её выгружает
+ * @param error    почему строку не удалось разобрать; остальные поля тогда могут быть null
+ */
+public record BankStatementRow(long lineNumber,
+                               OffsetDateTime date,
+                               BigDecimal amount,
+                               String currency,
+                               String category,
+                               String description,
+                               boolean income,
+                               String rawLine,
+                               String error) {
+
+    public static BankStatementRow invalid(long lineNumber, String rawLine, String error) {
+        return new BankStatementRow(lineNumber, null, null, null, null, null, false, rawLine, error);
+    }
+}
@@ -0,0 +1,19 @@
+package com.example.bookkeeperai.dto;
+
+import java.math.BigDecimal;
+
+public interface CategoryTotal {
+
+    String getCategory();
+
+    String getCurrency();
+
+    BigDecimal getTotal();
+
+    BigDecimal getTotalBase();
+
+    /** Часть {@link #getTotal()}, для которой нет курса, — в {@link #getTotalBase()} не входит. */
+    BigDecimal getUnconverted();
+
+    Long getExpenseCount();
+}
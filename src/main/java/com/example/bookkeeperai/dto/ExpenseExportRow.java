@@ -0,0 +1,9 @@
+package com.example.bookkeeperai.dto;
+
+/**
+ * Строка выгрузки: всё из {@link ExpenseSummary} плюс исходный текст.
+ */
+public interface ExpenseExportRow extends ExpenseSummary {
+
+    String getRawText();
+}
@@ -0,0 +1,30 @@
+package com.example.bookkeeperai.dto;
+
+import java.math.BigDecimal;
+import java.time.OffsetDateTime;
+
+/**
+ * Проекция расхода для списков: всё, кроме {@code rawText}, который хранится как LOB
+ * и для вывода не нужен.
+ */
+public interface ExpenseSummary {
+
+    Long getId();
+
+    BigDecimal getAmount();
+
+    String getCurrency();
+
+    /** Сумма в {@code fx.base-currency}; null, если курса на дату траты нет. */
+    BigDecimal getAmountInBaseCurrency();
+
+    String getCategory();
+
+    String getDescription();
+
+    String getPlace();
+
+    OffsetDateTime getExpenseDate();
+
+    String getSourceType();
+}
@@ -0,0 +1,24 @@
+package com.example.bookkeeperai.dto;
+
+/**
+ * Ход и итог импорта выписки.
+ *
+ * @param rowsRead   строк выписки прочитано
+ * @param imported   записано новых расходов
+ * @param duplicates уже были в базе (повторный импорт той же выписки)
+ * @param skipped    зачисления и нулевые суммы
+ * @param invalid    строки, которые не удалось разобрать
+ * @param finished   импорт завершён
+ */
+public record ImportReport(long rowsRead,
+                           long imported,
+                           long duplicates,
+                           long skipped,
+                           long invalid,
+                           long elapsedMillis,
+                           boolean finished) {
+
+    public long rowsPerSecond() {
+        return elapsedMillis > 0 ? rowsRead * 1000 / elapsedMillis : rowsRead;
+    }
+}
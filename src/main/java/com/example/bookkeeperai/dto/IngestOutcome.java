@@ -0,0 +1,22 @@
+package com.example.bookkeeperai.dto;
+
+import com.example.bookkeeperai.entity.Expense;
+
+import java.util.List;
+
+/**
+ * Итог разбора одного сообщения.
+ *
+ * @param expenses записанные расходы или один исправленный
+ * @param edited   сообщение исправило уже записанный расход
+ */
+public record IngestOutcome(List<Expense> expenses, boolean edited) {
+
+    public static IngestOutcome saved(List<Expense> expenses) {
+        return new IngestOutcome(expenses, false);
+    }
+
+    public static IngestOutcome edited(Expense expense) {
+        return new IngestOutcome(List.of(expense), true);
+    }
+}
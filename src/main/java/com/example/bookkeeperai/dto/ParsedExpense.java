@@ -7,7 +7,7 @@ import java.time.OffsetDateTime;
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
-@Builder
+@Builder(toBuilder = true)
 public class ParsedExpense {
 
     private BigDecimal amount;
@@ -16,5 +16,6 @@ public class ParsedExpense {
     private String description;
     private String place;
     private OffsetDateTime date;
+    private Double confidence;    // уверенность локального парсера 0..1, для ответа LLM — null
 }
 
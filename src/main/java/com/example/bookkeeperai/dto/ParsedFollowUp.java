@@ -0,0 +1,19 @@
+package com.example.bookkeeperai.dto;
+
+/**
+ * Разбор сообщения, продолжающего разговор.
+ *
+ * @param edit    правка одной из недавних трат, иначе — новая трата
+ * @param target  номер исправляемой траты в {@code ConversationContext#expenses()}
+ * @param expense для правки — только изменённые поля (остальные null), для новой — трата целиком
+ */
+public record ParsedFollowUp(boolean edit, int target, ParsedExpense expense) {
+
+    public static ParsedFollowUp add(ParsedExpense expense) {
+        return new ParsedFollowUp(false, -1, expense);
+    }
+
+    public static ParsedFollowUp edit(int target, ParsedExpense changes) {
+        return new ParsedFollowUp(true, target, changes);
+    }
+}
@@ -0,0 +1,14 @@
+package com.example.bookkeeperai.dto;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+public interface PeriodTotal {
+
+    LocalDate getPeriodStart();
+
+    /** Сумма в {@code fx.base-currency}; расходы без курса не входят, см. {@link UnconvertedTotal}. */
+    BigDecimal getTotalBase();
+
+    Long getExpenseCount();
+}
@@ -0,0 +1,14 @@
+package com.example.bookkeeperai.dto;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/** Расходы за период, которые не пересчитаны в базовую валюту: курса на их дату нет. */
+public interface UnconvertedTotal {
+
+    LocalDate getPeriodStart();
+
+    String getCurrency();
+
+    BigDecimal getUnconverted();
+}
@@ -10,11 +10,14 @@ import java.time.OffsetDateTime;
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
-@Builder
+@Builder(toBuilder = true)
 public class Expense {
 
+    // pooled-последовательность: id выдаются без запроса к БД на каждую строку,
+    // поэтому Hibernate может слать вставки JDBC-батчами (с IDENTITY батчинг отключается)
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "expenses_seq")
+    @SequenceGenerator(name = "expenses_seq", sequenceName = "expenses_seq", allocationSize = 50)
     private Long id;
 
     private Long telegramUserId;
@@ -23,6 +26,8 @@ public class Expense {
 
     private String currency;      // "RUB", "USD", "EUR"...
 
+    private BigDecimal amountInBaseCurrency;  // по курсу на дату траты; null — курса нет
+
     private String category;      // "groceries", "transport", ...
 
     private String description;   // произвольный комментарий
@@ -31,9 +36,11 @@ public class Expense {
 
     private OffsetDateTime expenseDate;
 
-    @Lob
-    private String rawText;       // исходный текст/расшифровка голоса
+    private String rawText;       // исходный текст/расшифровка голоса; TEXT без @Lob — на PostgreSQL @Lob это oid
+
+    private String sourceType;    // "TEXT", "VOICE" или "IMPORT"
 
-    private String sourceType;    // "TEXT" или "VOICE"
+    @Column(length = 64)
+    private String importKey;     // отпечаток строки выписки или tg:<update_id>:<номер траты>
 }
 
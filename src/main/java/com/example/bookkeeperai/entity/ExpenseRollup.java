@@ -0,0 +1,50 @@
+package com.example.bookkeeperai.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Предагрегированная сумма трат пользователя за день или месяц
+ * в разрезе категории и валюты. Обновляется при каждой записи расхода.
+ */
+@Entity
+@Table(name = "expense_rollups")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ExpenseRollup {
+
+    @EmbeddedId
+    private Key id;
+
+    private BigDecimal total;
+
+    private BigDecimal totalBase;    // в fx.base-currency; расходы без курса не входят
+
+    private BigDecimal unconverted;  // расходы без курса, в валюте бакета
+
+    private long expenseCount;
+
+    @Embeddable
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+
+        private Long telegramUserId;
+
+        @Enumerated(EnumType.STRING)
+        private RollupGranularity granularity;
+
+        private LocalDate periodStart;   // день или первое число месяца
+
+        private String category;
+
+        private String currency;
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.bookkeeperai.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Курс валюты на дату: сколько единиц базовой валюты ({@code fx.base-currency})
+ * стоит одна единица {@code currency}. Действует до следующей даты в таблице.
+ */
+@Entity
+@Table(name = "fx_rates")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class FxRate {
+
+    @EmbeddedId
+    private Key id;
+
+    private BigDecimal rate;
+
+    public FxRate(String currency, LocalDate rateDate, BigDecimal rate) {
+        this(new Key(currency, rateDate), rate);
+    }
+
+    @Embeddable
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+
+        private String currency;
+
+        private LocalDate rateDate;
+    }
+}
@@ -0,0 +1,8 @@
+package com.example.bookkeeperai.entity;
+
+public enum IngestStatus {
+    PENDING,      // ждёт воркера (в том числе повторной попытки)
+    PROCESSING,   // взята воркером
+    DONE,
+    FAILED        // попытки исчерпаны
+}
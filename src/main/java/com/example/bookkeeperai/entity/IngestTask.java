@@ -0,0 +1,58 @@
+package com.example.bookkeeperai.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+import java.time.OffsetDateTime;
+
+/**
+ * Сырое входящее сообщение, принятое ботом до разбора ИИ.
+ * Запись появляется до ответа пользователю, поэтому рестарт JVM сообщение не теряет.
+ */
+@Entity
+@Table(name = "ingest_tasks")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class IngestTask {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    private Long chatId;
+
+    private Long telegramUserId;
+
+    private Integer messageId;
+
+    private Integer updateId;         // update_id Telegram — для сквозных логов и метрик
+
+    private Integer replyMessageId;   // сообщение "принято", которое потом редактируется
+
+    private String sourceType;        // "TEXT" или "VOICE"
+
+    private String text;              // TEXT, без @Lob — как Expense.rawText
+
+    private String voiceFileId;
+
+    private String voiceFileUniqueId; // ключ кэша расшифровок, одинаков у пересланных копий
+
+    private Long voiceFileSize;
+
+    private Integer voiceDuration;    // секунды
+
+    @Enumerated(EnumType.STRING)
+    private IngestStatus status;
+
+    private int attempts;
+
+    @Column(length = 1000)
+    private String lastError;
+
+    private OffsetDateTime createdAt;
+
+    private OffsetDateTime updatedAt;
+
+    private OffsetDateTime availableAt;   // не раньше этого момента воркер возьмёт задачу
+}
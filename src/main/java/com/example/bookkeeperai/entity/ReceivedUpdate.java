@@ -0,0 +1,22 @@
+package com.example.bookkeeperai.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.OffsetDateTime;
+
+/**
+ * Отметка о принятом апдейте Telegram — по ней отсеиваются повторные доставки.
+ */
+@Entity
+@Table(name = "telegram_updates")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReceivedUpdate {
+
+    @Id
+    private Long updateId;
+
+    private OffsetDateTime receivedAt;
+}
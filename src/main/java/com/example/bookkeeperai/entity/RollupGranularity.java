@@ -0,0 +1,6 @@
+package com.example.bookkeeperai.entity;
+
+public enum RollupGranularity {
+    DAY,
+    MONTH
+}
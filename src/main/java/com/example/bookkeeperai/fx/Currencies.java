@@ -0,0 +1,39 @@
+package com.example.bookkeeperai.fx;
+
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Приведение валюты к коду ISO 4217: в сообщениях и выписках встречаются
+ * "руб", "rur", "$" и т.п.
+ */
+public final class Currencies {
+
+    private static final Map<String, String> ALIASES = Map.ofEntries(
+            Map.entry("RUR", "RUB"),
+            Map.entry("РУБ", "RUB"),
+            Map.entry("РУБ.", "RUB"),
+            Map.entry("Р", "RUB"),
+            Map.entry("Р.", "RUB"),
+            Map.entry("РУБЛЬ", "RUB"),
+            Map.entry("РУБЛЯ", "RUB"),
+            Map.entry("РУБЛЕЙ", "RUB"),
+            Map.entry("ЕВРО", "EUR"),
+            Map.entry("₽", "RUB"),
+            Map.entry("$", "USD"),
+            Map.entry("€", "EUR"),
+            Map.entry("£", "GBP")
+    );
+
+    private Currencies() {
+    }
+
+    /** Код валюты в верхнем регистре или null для пустого значения. */
+    public static String normalize(String currency) {
+        if (currency == null || currency.isBlank()) {
+            return null;
+        }
+        String upper = currency.trim().toUpperCase(Locale.ROOT);
+        return ALIASES.getOrDefault(upper, upper);
+    }
+}
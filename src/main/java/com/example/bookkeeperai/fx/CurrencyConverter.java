@@ -0,0 +1,100 @@
+package com.example.bookkeeperai.fx;
+
+import com.example.bookkeeperai.entity.Expense;
+import com.example.bookkeeperai.repository.FxRateRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+
+/**
+ * Пересчёт сумм в базовую валюту {@code fx.base-currency} по курсу на дату траты.
+ *
+ * Курсы держатся в памяти ({@link FxRateTable}) и подменяются целиком при синхронизации,
+ * поэтому пересчёт на пути записи и отчётов не ходит ни в БД, ни в файл.
+ */
+@Service
+@Slf4j
+public class CurrencyConverter {
+
+    private final FxRateRepository rateRepo;
+    private final String baseCurrency;
+    private final ZoneId zone;
+    private volatile FxRateTable rates = FxRateTable.EMPTY;
+
+    private final Counter unconverted;
+
+    public CurrencyConverter(FxRateRepository rateRepo,
+                             @Value("${fx.base-currency}") String baseCurrency,
+                             @Value("${reports.zone}") ZoneId zone,
+                             MeterRegistry meterRegistry) {
+        this.rateRepo = rateRepo;
+        this.baseCurrency = Currencies.normalize(baseCurrency);
+        this.zone = zone;
+
+        this.unconverted = Counter.builder("bookkeeper.fx.unconverted")
+                .description("Суммы, для которых не нашлось курса")
+                .register(meterRegistry);
+        Gauge.builder("bookkeeper.fx.rates", this, c -> c.rates.size())
+                .register(meterRegistry);
+    }
+
+    /** Стартуем с курсов, сохранённых в БД; свежие подтянет {@link FxRateSync}. */
+    @PostConstruct
+    public void loadSavedRates() {
+        rates = FxRateTable.of(rateRepo.findAll());
+        log.info("Загружено курсов валют: {}", rates.size());
+    }
+
+    public String baseCurrency() {
+        return baseCurrency;
+    }
+
+    public FxRateTable rates() {
+        return rates;
+    }
+
+    void replaceRates(FxRateTable fresh) {
+        rates = fresh;
+    }
+
+    /**
+     * Приводит валюту расхода к коду ISO (пустая — базовая валюта) и заполняет
+     * {@link Expense#getAmountInBaseCurrency()}. Вызывается перед записью.
+     */
+    public Expense normalize(Expense expense) {
+        String currency = Currencies.normalize(expense.getCurrency());
+        expense.setCurrency(currency != null ? currency : baseCurrency);
+        expense.setAmountInBaseCurrency(toBase(expense.getAmount(), expense.getCurrency(), expense.getExpenseDate()));
+        return expense;
+    }
+
+    /**
+     * Сумма в базовой валюте или null, если курса для валюты на эту дату нет.
+     * {@code currency} должна быть уже нормализована ({@link Currencies#normalize}).
+     */
+    public BigDecimal toBase(BigDecimal amount, String currency, OffsetDateTime date) {
+        if (amount == null) {
+            return null;
+        }
+        if (baseCurrency.equals(currency)) {
+            return amount;
+        }
+        BigDecimal rate = currency != null && date != null
+                ? rates.rate(currency, date.atZoneSameInstant(zone).toLocalDate())
+                : null;
+        if (rate == null) {
+            unconverted.increment();
+            return null;
+        }
+        return amount.multiply(rate).setScale(2, RoundingMode.HALF_UP);
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.bookkeeperai.fx;
+
+import com.example.bookkeeperai.entity.FxRate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Курсы из CSV-файла {@code fx.file}: {@code date,currency,rate}, строки с "#" — комментарии.
+ */
+@Component
+@ConditionalOnProperty(name = "fx.provider", havingValue = "file", matchIfMissing = true)
+public class FileFxRateProvider implements FxRateProvider {
+
+    private final Resource file;
+
+    public FileFxRateProvider(@Value("${fx.file}") Resource file) {
+        this.file = file;
+    }
+
+    @Override
+    public List<FxRate> load() throws IOException {
+        if (!file.exists()) {
+            throw new FileNotFoundException("Файл курсов " + file + " не найден");
+        }
+
+        List<FxRate> rates = new ArrayList<>();
+
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(file.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                String trimmed = line.trim();
+                if (trimmed.isEmpty() || trimmed.startsWith("#") || trimmed.startsWith("date")) {
+                    continue;
+                }
+                String[] parts = trimmed.split("[,;]");
+                if (parts.length != 3) {
+                    throw new IllegalStateException("Файл курсов, строка " + lineNumber + ": ожидается date,currency,rate");
+                }
+                rates.add(new FxRate(
+                        Currencies.normalize(parts[1]),
+                        LocalDate.parse(parts[0].trim()),
+                        new BigDecimal(parts[2].trim())));
+            }
+        }
+        return rates;
+    }
+}
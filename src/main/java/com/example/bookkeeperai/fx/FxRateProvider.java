@@ -0,0 +1,15 @@
+package com.example.bookkeeperai.fx;
+
+import com.example.bookkeeperai.entity.FxRate;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Источник курсов. Возвращает полную таблицу: что изменилось относительно
+ * сохранённых курсов, определяет {@link FxRateSync}.
+ */
+public interface FxRateProvider {
+
+    List<FxRate> load() throws IOException;
+}
@@ -0,0 +1,176 @@
+package com.example.bookkeeperai.fx;
+
+import com.example.bookkeeperai.entity.FxRate;
+import com.example.bookkeeperai.repository.ExpenseRepository;
+import com.example.bookkeeperai.repository.FxRateRepository;
+import com.example.bookkeeperai.service.RollupService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Синхронизация курсов с {@link FxRateProvider} и пересчёт истории.
+ *
+ * Свежие курсы сравниваются с текущими ({@link FxRateTable#changesSince}); по каждой
+ * изменившейся валюте с первой затронутой даты курсы в {@code fx_rates} заменяются,
+ * а {@code amount_in_base_currency} пересчитывается одним UPDATE на интервал действия
+ * курса. Затем пересобираются суммы затронутых пользователей.
+ *
+ * Пустой или недоступный источник — сбой загрузки, а не "курсов больше нет": прежние
+ * курсы остаются. Пустой источник, когда курсов ещё не было, — пересчёт просто не настроен. Валюта, пропавшая из источника, тоже сохраняет прежние курсы —
+ * убрать курсы можно только заменой значений, а не удалением строк.
+ */
+@Component
+@Slf4j
+public class FxRateSync {
+
+    /** Правая граница последнего интервала курса, у которого нет конца. */
+    private static final LocalDate OPEN_END = LocalDate.of(9999, 12, 31);
+
+    private final FxRateProvider provider;
+    private final FxRateRepository rateRepo;
+    private final ExpenseRepository expenseRepo;
+    private final CurrencyConverter converter;
+    private final RollupService rollupService;
+    private final TransactionTemplate tx;
+    private final ZoneId zone;
+    private final Timer renormalizeTimer;
+    /** Пустой источник без сохранённых курсов — пересчёт не настроен; сообщаем один раз. */
+    private boolean notConfiguredLogged;
+
+    public FxRateSync(FxRateProvider provider,
+                      FxRateRepository rateRepo,
+                      ExpenseRepository expenseRepo,
+                      CurrencyConverter converter,
+                      RollupService rollupService,
+                      PlatformTransactionManager transactionManager,
+                      @Value("${reports.zone}") ZoneId zone,
+                      MeterRegistry meterRegistry) {
+        this.provider = provider;
+        this.rateRepo = rateRepo;
+        this.expenseRepo = expenseRepo;
+        this.converter = converter;
+        this.rollupService = rollupService;
+        this.tx = new TransactionTemplate(transactionManager);
+        this.zone = zone;
+        this.renormalizeTimer = Timer.builder("bookkeeper.fx.renormalize")
+                .register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void syncOnStartup() {
+        sync();
+    }
+
+    @Scheduled(fixedDelayString = "${fx.refresh-interval}", initialDelayString = "${fx.refresh-interval}")
+    public void scheduledSync() {
+        sync();
+    }
+
+    public synchronized void sync() {
+        List<FxRate> loaded;
+        try {
+            loaded = provider.load();
+        } catch (IOException | RuntimeException e) {
+            log.warn("Не удалось загрузить курсы валют, остаются прежние: {}", e.getMessage());
+            return;
+        }
+        if (loaded.isEmpty()) {
+            if (!converter.rates().currencies().isEmpty()) {
+                log.warn("Источник курсов валют пуст, остаются прежние");
+            } else if (!notConfiguredLogged) {
+                notConfiguredLogged = true;
+                log.info("Курсы валют не заданы, траты в других валютах учитываются без пересчёта в {}",
+                        converter.baseCurrency());
+            }
+            return;
+        }
+        String base = converter.baseCurrency();
+        List<FxRate> rates = new ArrayList<>(loaded.stream()
+                .filter(r -> !base.equals(r.getId().getCurrency()))
+                .toList());
+        FxRateTable previous = converter.rates();
+        Set<String> present = FxRateTable.of(rates).currencies();
+        for (String currency : previous.currencies()) {
+            if (!present.contains(currency)) {
+                log.warn("В источнике нет курсов {}, остаются прежние", currency);
+                rates.addAll(previous.rates(currency, LocalDate.MIN));
+            }
+        }
+        FxRateTable fresh = FxRateTable.of(rates);
+
+        Map<String, LocalDate> changes = fresh.changesSince(converter.rates());
+        if (changes.isEmpty()) {
+            return;
+        }
+        log.info("Курсы валют изменились: {}", changes);
+        try {
+            renormalizeTimer.record(() -> renormalize(fresh, changes));
+        } catch (RuntimeException e) {
+            log.error("Пересчёт расходов по новым курсам не удался", e);
+        }
+    }
+
+    private void renormalize(FxRateTable fresh, Map<String, LocalDate> changes) {
+        Set<Long> users = new TreeSet<>();
+        FxRateTable previous = converter.rates();
+        // Под блокировкой записи расходов: пачка, записанная после смены курсов,
+        // уже посчитана по новым, записанная до — попадёт в UPDATE ниже.
+        int updated = rollupService.locked(() -> {
+            converter.replaceRates(fresh);
+            try {
+                return tx.execute(status -> updateHistory(fresh, changes, users));
+            } catch (RuntimeException e) {
+                // в БД остались старые курсы — следующая синхронизация найдёт те же изменения
+                converter.replaceRates(previous);
+                throw e;
+            }
+        });
+
+        users.forEach(rollupService::rebuildUser);
+        log.info("Пересчитано в базовую валюту расходов: {}, пересобраны суммы пользователей: {}",
+                updated, users.size());
+    }
+
+    private int updateHistory(FxRateTable fresh, Map<String, LocalDate> changes, Set<Long> users) {
+        int rows = 0;
+        for (Map.Entry<String, LocalDate> change : changes.entrySet()) {
+            String currency = change.getKey();
+            LocalDate from = change.getValue();
+
+            rateRepo.deleteFrom(currency, from);
+            rateRepo.saveAll(fresh.rates(currency, from));
+
+            for (FxRateTable.Segment segment : fresh.segments(currency, from)) {
+                OffsetDateTime start = startOfDay(segment.start());
+                OffsetDateTime end = startOfDay(segment.end() != null ? segment.end() : OPEN_END);
+                rows += segment.rate() != null
+                        ? expenseRepo.convertRange(currency, segment.rate(), start, end)
+                        : expenseRepo.clearRange(currency, start, end);
+            }
+            users.addAll(expenseRepo.findUserIdsByCurrencySince(currency, startOfDay(from)));
+        }
+        return rows;
+    }
+
+    private OffsetDateTime startOfDay(LocalDate date) {
+        return date.atStartOfDay(zone).toOffsetDateTime();
+    }
+}
@@ -0,0 +1,162 @@
+package com.example.bookkeeperai.fx;
+
+import com.example.bookkeeperai.entity.FxRate;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Неизменяемый снимок курсов, индексированный по дате.
+ *
+ * Для каждой валюты — отсортированный массив дней (epoch day) и параллельный массив
+ * курсов; поиск курса — бинарный поиск без I/O и без аллокаций. Курс действует
+ * со своей даты до следующей; до первой даты курса нет.
+ */
+public final class FxRateTable {
+
+    public static final FxRateTable EMPTY = new FxRateTable(Map.of());
+
+    /** Интервал дат с одним курсом; {@code end} не включается, null — открытый конец. */
+    public record Segment(LocalDate start, LocalDate end, BigDecimal rate) {
+    }
+
+    private record Series(int[] days, BigDecimal[] rates) {
+
+        int floorIndex(int day) {
+            int i = Arrays.binarySearch(days, day);
+            return i >= 0 ? i : -i - 2;
+        }
+    }
+
+    private final Map<String, Series> series;
+
+    private FxRateTable(Map<String, Series> series) {
+        this.series = series;
+    }
+
+    public static FxRateTable of(List<FxRate> rates) {
+        Map<String, TreeMap<Integer, BigDecimal>> byCurrency = new HashMap<>();
+        for (FxRate rate : rates) {
+            byCurrency.computeIfAbsent(rate.getId().getCurrency(), c -> new TreeMap<>())
+                    .put((int) rate.getId().getRateDate().toEpochDay(), rate.getRate());
+        }
+
+        Map<String, Series> series = new HashMap<>();
+        byCurrency.forEach((currency, points) -> {
+            int[] days = new int[points.size()];
+            BigDecimal[] values = new BigDecimal[points.size()];
+            int i = 0;
+            for (Map.Entry<Integer, BigDecimal> point : points.entrySet()) {
+                days[i] = point.getKey();
+                values[i] = point.getValue();
+                i++;
+            }
+            series.put(currency, new Series(days, values));
+        });
+        return new FxRateTable(Map.copyOf(series));
+    }
+
+    /** Курс на дату или null, если курса для валюты на эту дату нет. */
+    public BigDecimal rate(String currency, LocalDate date) {
+        Series s = series.get(currency);
+        if (s == null) {
+            return null;
+        }
+        int i = s.floorIndex((int) date.toEpochDay());
+        return i >= 0 ? s.rates()[i] : null;
+    }
+
+    public Set<String> currencies() {
+        return series.keySet();
+    }
+
+    public int size() {
+        return series.values().stream().mapToInt(s -> s.days().length).sum();
+    }
+
+    public List<FxRate> rates(String currency, LocalDate from) {
+        Series s = series.get(currency);
+        List<FxRate> result = new ArrayList<>();
+        if (s == null) {
+            return result;
+        }
+        for (int i = 0; i < s.days().length; i++) {
+            LocalDate date = LocalDate.ofEpochDay(s.days()[i]);
+            if (!date.isBefore(from)) {
+                result.add(new FxRate(currency, date, s.rates()[i]));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Интервалы курсов, покрывающие даты начиная с {@code from}. Если {@code from}
+     * раньше первого курса, первый интервал — без курса (rate == null).
+     */
+    public List<Segment> segments(String currency, LocalDate from) {
+        Series s = series.get(currency);
+        if (s == null) {
+            return List.of(new Segment(from, null, null));
+        }
+
+        List<Segment> result = new ArrayList<>();
+        int[] days = s.days();
+        int i = s.floorIndex((int) from.toEpochDay());
+        if (i < 0) {
+            result.add(new Segment(from, LocalDate.ofEpochDay(days[0]), null));
+            i = 0;
+        }
+        for (; i < days.length; i++) {
+            LocalDate start = LocalDate.ofEpochDay(days[i]);
+            result.add(new Segment(
+                    start.isBefore(from) ? from : start,
+                    i + 1 < days.length ? LocalDate.ofEpochDay(days[i + 1]) : null,
+                    s.rates()[i]));
+        }
+        return result;
+    }
+
+    /**
+     * Для каждой валюты, где курсы отличаются от {@code previous}, — самая ранняя
+     * дата, с которой пересчитанные суммы могут измениться.
+     */
+    public Map<String, LocalDate> changesSince(FxRateTable previous) {
+        Set<String> all = new HashSet<>(series.keySet());
+        all.addAll(previous.series.keySet());
+
+        Map<String, LocalDate> changes = new TreeMap<>();
+        for (String currency : all) {
+            LocalDate from = firstDifference(series.get(currency), previous.series.get(currency));
+            if (from != null) {
+                changes.put(currency, from);
+            }
+        }
+        return changes;
+    }
+
+    private static LocalDate firstDifference(Series a, Series b) {
+        if (a == null || b == null) {
+            Series present = a != null ? a : b;
+            return LocalDate.ofEpochDay(present.days()[0]);
+        }
+        int n = Math.min(a.days().length, b.days().length);
+        for (int i = 0; i < n; i++) {
+            if (a.days()[i] != b.days()[i] || a.rates()[i].compareTo(b.rates()[i]) != 0) {
+                return LocalDate.ofEpochDay(Math.min(a.days()[i], b.days()[i]));
+            }
+        }
+        if (a.days().length != b.days().length) {
+            Series longer = a.days().length > n ? a : b;
+            return LocalDate.ofEpochDay(longer.days()[n]);
+        }
+        return null;
+    }
+}
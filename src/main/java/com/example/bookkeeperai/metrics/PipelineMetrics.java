@@ -0,0 +1,130 @@
+package com.example.bookkeeperai.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Метрики этапов обработки сообщения ({@link Stage}): гистограмма времени
+ * {@code bookkeeper.pipeline.stage}, число выполняющихся сейчас вызовов
+ * {@code bookkeeper.pipeline.inflight} и ошибки {@code bookkeeper.pipeline.failures}.
+ *
+ * Время этапа добавляется и в {@link UpdateTrace} текущего апдейта. Апдейт дольше
+ * {@code metrics.slow-update-threshold} пишется в лог с разбивкой по этапам — так
+ * хвост p99 на гистограмме можно связать с конкретными update_id.
+ */
+@Component
+@Slf4j
+public class PipelineMetrics {
+
+    /** Действие этапа; {@code E} — проверяемое исключение, которое оно пробрасывает. */
+    @FunctionalInterface
+    public interface Action<T, E extends Exception> {
+        T run() throws E;
+    }
+
+    private record StageMeters(Timer timer, AtomicInteger inFlight, Counter failures) {
+    }
+
+    private final Map<Stage, StageMeters> meters = new EnumMap<>(Stage.class);
+    private final long slowUpdateNanos;
+
+    public PipelineMetrics(@Value("${metrics.slow-update-threshold}") Duration slowUpdateThreshold,
+                           MeterRegistry meterRegistry) {
+        this.slowUpdateNanos = slowUpdateThreshold.toNanos();
+        for (Stage stage : Stage.values()) {
+            AtomicInteger inFlight = new AtomicInteger();
+            Gauge.builder("bookkeeper.pipeline.inflight", inFlight, AtomicInteger::get)
+                    .tag("stage", stage.tag())
+                    .register(meterRegistry);
+            meters.put(stage, new StageMeters(
+                    Timer.builder("bookkeeper.pipeline.stage")
+                            .tag("stage", stage.tag())
+                            .publishPercentileHistogram()
+                            .register(meterRegistry),
+                    inFlight,
+                    Counter.builder("bookkeeper.pipeline.failures")
+                            .tag("stage", stage.tag())
+                            .register(meterRegistry)));
+        }
+    }
+
+    /**
+     * Выполняет обработку апдейта в его трассе: update_id в MDC, время этапов
+     * копится в трассе, медленный апдейт попадает в лог.
+     */
+    public void traced(Integer updateId, Runnable work) {
+        UpdateTrace trace = new UpdateTrace(updateId);
+        try (UpdateTrace.Scope ignored = trace.attach()) {
+            work.run();
+        } finally {
+            long elapsed = trace.elapsedNanos();
+            if (elapsed >= slowUpdateNanos) {
+                log.warn("Медленный апдейт {}: {} мс ({})",
+                        updateId, TimeUnit.NANOSECONDS.toMillis(elapsed), trace.describe());
+            }
+        }
+    }
+
+    public <T, E extends Exception> T time(Stage stage, Action<T, E> action) throws E {
+        StageMeters m = meters.get(stage);
+        UpdateTrace trace = UpdateTrace.current();
+        m.inFlight().incrementAndGet();
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            T result = action.run();
+            failed = false;
+            return result;
+        } finally {
+            m.inFlight().decrementAndGet();
+            record(m, stage, trace, System.nanoTime() - start, failed);
+        }
+    }
+
+    /**
+     * Замер асинхронного вызова: от запуска до завершения future. Возвращается
+     * исходный future, поэтому его отмена по-прежнему доходит до вызова.
+     */
+    public <T> CompletableFuture<T> timeAsync(Stage stage, Supplier<CompletableFuture<T>> call) {
+        StageMeters m = meters.get(stage);
+        UpdateTrace trace = UpdateTrace.current();
+        m.inFlight().incrementAndGet();
+        long start = System.nanoTime();
+        CompletableFuture<T> future;
+        try {
+            future = call.get();
+        } catch (RuntimeException e) {
+            m.inFlight().decrementAndGet();
+            record(m, stage, trace, System.nanoTime() - start, true);
+            throw e;
+        }
+        future.whenComplete((result, error) -> {
+            m.inFlight().decrementAndGet();
+            record(m, stage, trace, System.nanoTime() - start, error != null);
+        });
+        return future;
+    }
+
+    private static void record(StageMeters m, Stage stage, UpdateTrace trace, long nanos, boolean failed) {
+        m.timer().record(nanos, TimeUnit.NANOSECONDS);
+        if (failed) {
+            m.failures().increment();
+        }
+        if (trace != null) {
+            trace.add(stage, nanos);
+        }
+    }
+}
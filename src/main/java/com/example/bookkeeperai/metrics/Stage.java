@@ -0,0 +1,30 @@
+package com.example.bookkeeperai.metrics;
+
+/**
+ * Этапы обработки сообщения; имя этапа — тег {@code stage} метрик {@link PipelineMetrics}.
+ */
+public enum Stage {
+
+    /** getFile и открытие потока файла с серверов Telegram. */
+    TELEGRAM_FETCH("telegram.fetch"),
+    /** Расшифровка голосового целиком, с нарезкой на куски. */
+    STT("stt"),
+    /** Один HTTP-вызов LLM, включая повторы. */
+    LLM("llm"),
+    /** Извлечение JSON из ответа LLM и разбор полей. */
+    JSON_EXTRACT("json.extract"),
+    /** От передачи расхода в буфер записи до коммита пачки. */
+    DB_SAVE("db.save"),
+    /** Отправка или правка ответа пользователю, с ожиданием в очереди отправки. */
+    REPLY_SEND("reply.send");
+
+    private final String tag;
+
+    Stage(String tag) {
+        this.tag = tag;
+    }
+
+    public String tag() {
+        return tag;
+    }
+}
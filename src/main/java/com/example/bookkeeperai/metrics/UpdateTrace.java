@@ -0,0 +1,115 @@
+package com.example.bookkeeperai.metrics;
+
+import org.slf4j.MDC;
+
+import java.util.StringJoiner;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Function;
+
+/**
+ * Трасса обработки одного апдейта Telegram: {@code update_id} в MDC (попадает в каждую
+ * строку лога, см. {@code logging.pattern.level}) и суммарное время по этапам {@link Stage}.
+ *
+ * Трасса привязана к потоку, который ведёт апдейт. Колбэки async-клиентов выполняются
+ * в чужих потоках — их оборачивают в {@link #wrap}, чтобы логи и этапы попали в ту же трассу.
+ */
+public final class UpdateTrace {
+
+    public static final String MDC_KEY = "updateId";
+
+    private static final ThreadLocal<UpdateTrace> CURRENT = new ThreadLocal<>();
+
+    private final Integer updateId;
+    private final long startedAt = System.nanoTime();
+    private final AtomicLongArray stageNanos = new AtomicLongArray(Stage.values().length);
+
+    UpdateTrace(Integer updateId) {
+        this.updateId = updateId;
+    }
+
+    /** Трасса текущего потока или null вне обработки апдейта. */
+    public static UpdateTrace current() {
+        return CURRENT.get();
+    }
+
+    /** update_id апдейта, который обрабатывает текущий поток, или null. */
+    public static Integer currentUpdateId() {
+        UpdateTrace trace = CURRENT.get();
+        return trace != null ? trace.updateId : null;
+    }
+
+    /** Функция, которая выполнится в трассе текущего потока, в каком бы потоке её ни вызвали. */
+    public static <A, R> Function<A, R> wrap(Function<A, R> fn) {
+        UpdateTrace trace = CURRENT.get();
+        if (trace == null) {
+            return fn;
+        }
+        return arg -> {
+            try (Scope ignored = trace.attach()) {
+                return fn.apply(arg);
+            }
+        };
+    }
+
+    public Integer updateId() {
+        return updateId;
+    }
+
+    /** Привязывает трассу к текущему потоку до {@link Scope#close()}. */
+    public Scope attach() {
+        return new Scope(this);
+    }
+
+    void add(Stage stage, long nanos) {
+        stageNanos.addAndGet(stage.ordinal(), nanos);
+    }
+
+    long elapsedNanos() {
+        return System.nanoTime() - startedAt;
+    }
+
+    /** Разбивка по этапам для лога: {@code stt=5200 мс, llm=1800 мс}. */
+    String describe() {
+        StringJoiner joiner = new StringJoiner(", ");
+        for (Stage stage : Stage.values()) {
+            long nanos = stageNanos.get(stage.ordinal());
+            if (nanos > 0) {
+                joiner.add(stage.tag() + "=" + TimeUnit.NANOSECONDS.toMillis(nanos) + " мс");
+            }
+        }
+        return joiner.length() > 0 ? joiner.toString() : "этапы не замерены";
+    }
+
+    /** Восстанавливает трассу и MDC, которые были у потока до {@link #attach()}. */
+    public static final class Scope implements AutoCloseable {
+
+        private final UpdateTrace previous;
+        private final String previousMdc;
+
+        private Scope(UpdateTrace trace) {
+            this.previous = CURRENT.get();
+            this.previousMdc = MDC.get(MDC_KEY);
+            CURRENT.set(trace);
+            if (trace.updateId != null) {
+                MDC.put(MDC_KEY, trace.updateId.toString());
+            } else {
+                MDC.remove(MDC_KEY);
+            }
+        }
+
+        @Override
+        public void close() {
+            if (previous != null) {
+                CURRENT.set(previous);
+            } else {
+                CURRENT.remove();
+            }
+            if (previousMdc != null) {
+                MDC.put(MDC_KEY, previousMdc);
+            } else {
+                MDC.remove(MDC_KEY);
+            }
+        }
+    }
+}
@@ -1,19 +1,138 @@
 package com.example.bookkeeperai.repository;
 
+import com.example.bookkeeperai.dto.ExpenseExportRow;
+import com.example.bookkeeperai.dto.ExpenseSummary;
 import com.example.bookkeeperai.entity.Expense;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 
+import java.math.BigDecimal;
 import java.time.OffsetDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
 
 public interface ExpenseRepository extends JpaRepository<Expense, Long> {
 
     List<Expense> findTop10ByTelegramUserIdOrderByExpenseDateDesc(Long userId);
 
+    Optional<Expense> findByIdAndTelegramUserId(Long id, Long userId);
+
     List<Expense> findByTelegramUserIdAndExpenseDateBetween(
             Long userId,
             OffsetDateTime from,
             OffsetDateTime to
     );
-}
 
+    /**
+     * Первая страница истории. Порядок совпадает с индексом
+     * {@code idx_expenses_user_date}, размер страницы — из {@code pageable}.
+     */
+    @Query("""
+            select e.id as id, e.amount as amount, e.currency as currency,
+                   e.amountInBaseCurrency as amountInBaseCurrency, e.category as category,
+                   e.description as description, e.place as place,
+                   e.expenseDate as expenseDate, e.sourceType as sourceType
+              from Expense e
+             where e.telegramUserId = :userId
+             order by e.expenseDate desc, e.id desc
+            """)
+    List<ExpenseSummary> findRecent(@Param("userId") Long userId, Pageable pageable);
+
+    /**
+     * Следующая страница после курсора (дата и id последней показанной записи).
+     * Keyset вместо offset: стоимость не растёт с глубиной листания.
+     */
+    @Query("""
+            select e.id as id, e.amount as amount, e.currency as currency,
+                   e.amountInBaseCurrency as amountInBaseCurrency, e.category as category,
+                   e.description as description, e.place as place,
+                   e.expenseDate as expenseDate, e.sourceType as sourceType
+              from Expense e
+             where e.telegramUserId = :userId
+               and (e.expenseDate < :beforeDate
+                    or (e.expenseDate = :beforeDate and e.id < :beforeId))
+             order by e.expenseDate desc, e.id desc
+            """)
+    List<ExpenseSummary> findRecentBefore(@Param("userId") Long userId,
+                                          @Param("beforeDate") OffsetDateTime beforeDate,
+                                          @Param("beforeId") Long beforeId,
+                                          Pageable pageable);
+
+    /**
+     * Вся история пользователя курсором: строки приходят из БД порциями по fetch size
+     * и не попадают в persistence context. Читать только внутри транзакции
+     * и обязательно закрывать стрим.
+     */
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("""
+            select e.id as id, e.amount as amount, e.currency as currency,
+                   e.amountInBaseCurrency as amountInBaseCurrency, e.category as category,
+                   e.description as description, e.place as place,
+                   e.expenseDate as expenseDate, e.sourceType as sourceType, e.rawText as rawText
+              from Expense e
+             where e.telegramUserId = :userId
+             order by e.expenseDate, e.id
+            """)
+    Stream<ExpenseExportRow> streamForExport(@Param("userId") Long userId);
+
+    @Query("select distinct e.telegramUserId from Expense e where e.telegramUserId is not null")
+    List<Long> findAllUserIds();
+
+    @Query("""
+            select e.importKey from Expense e
+             where e.telegramUserId = :userId
+               and e.importKey in :keys
+            """)
+    Set<String> findImportKeys(@Param("userId") Long userId, @Param("keys") Collection<String> keys);
+
+    Optional<Expense> findByTelegramUserIdAndImportKey(Long telegramUserId, String importKey);
+
+    /**
+     * Пересчёт в базовую валюту одним UPDATE на интервал действия курса
+     * (индекс {@code idx_expenses_currency_date}).
+     */
+    @Modifying
+    @Query("""
+            update Expense e
+               set e.amountInBaseCurrency = round(e.amount * :rate, 2)
+             where e.currency = :currency
+               and e.expenseDate >= :from and e.expenseDate < :to
+            """)
+    int convertRange(@Param("currency") String currency,
+                     @Param("rate") BigDecimal rate,
+                     @Param("from") OffsetDateTime from,
+                     @Param("to") OffsetDateTime to);
+
+    /** Курса на эти даты больше нет — сумма в базовой валюте неизвестна. */
+    @Modifying
+    @Query("""
+            update Expense e
+               set e.amountInBaseCurrency = null
+             where e.currency = :currency
+               and e.expenseDate >= :from and e.expenseDate < :to
+            """)
+    int clearRange(@Param("currency") String currency,
+                   @Param("from") OffsetDateTime from,
+                   @Param("to") OffsetDateTime to);
+
+    @Query("""
+            select distinct e.telegramUserId from Expense e
+             where e.currency = :currency
+               and e.expenseDate >= :from
+               and e.telegramUserId is not null
+            """)
+    List<Long> findUserIdsByCurrencySince(@Param("currency") String currency,
+                                          @Param("from") OffsetDateTime from);
+}
@@ -0,0 +1,100 @@
+package com.example.bookkeeperai.repository;
+
+import com.example.bookkeeperai.dto.CategoryTotal;
+import com.example.bookkeeperai.dto.PeriodTotal;
+import com.example.bookkeeperai.dto.UnconvertedTotal;
+import com.example.bookkeeperai.entity.ExpenseRollup;
+import com.example.bookkeeperai.entity.RollupGranularity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+public interface ExpenseRollupRepository extends JpaRepository<ExpenseRollup, ExpenseRollup.Key> {
+
+    /**
+     * Берёт строку-замок {@code rollup_write_lock} до конца транзакции — общий для всех
+     * экземпляров бота замок записи сумм. Вызывается только внутри транзакции.
+     */
+    @Query(value = "select id from rollup_write_lock where id = 1 for update", nativeQuery = true)
+    Integer lockForWrite();
+
+    /**
+     * Прибавляет к существующему бакету. 0 — бакета ещё нет, его нужно создать.
+     */
+    @Modifying
+    @Query("""
+            update ExpenseRollup r
+               set r.total = r.total + :amount,
+                   r.totalBase = r.totalBase + :amountBase,
+                   r.unconverted = r.unconverted + :unconverted,
+                   r.expenseCount = r.expenseCount + :count
+             where r.id = :key
+            """)
+    int increment(@Param("key") ExpenseRollup.Key key,
+                  @Param("amount") BigDecimal amount,
+                  @Param("amountBase") BigDecimal amountBase,
+                  @Param("unconverted") BigDecimal unconverted,
+                  @Param("count") long count);
+
+    /** Удаляет бакет, из которого ушёл последний расход (после правки). */
+    @Modifying
+    @Query("delete from ExpenseRollup r where r.id = :key and r.expenseCount <= 0")
+    int deleteIfEmpty(@Param("key") ExpenseRollup.Key key);
+
+    @Modifying
+    @Query("delete from ExpenseRollup r where r.id.telegramUserId = :userId")
+    int deleteByUser(@Param("userId") Long userId);
+
+    @Query("""
+            select r.id.category as category, r.id.currency as currency,
+                   sum(r.total) as total, sum(r.totalBase) as totalBase,
+                   sum(r.unconverted) as unconverted, sum(r.expenseCount) as expenseCount
+              from ExpenseRollup r
+             where r.id.telegramUserId = :userId
+               and r.id.granularity = :granularity
+               and r.id.periodStart between :from and :to
+             group by r.id.category, r.id.currency
+             order by sum(r.total) desc
+            """)
+    List<CategoryTotal> sumByCategory(@Param("userId") Long userId,
+                                      @Param("granularity") RollupGranularity granularity,
+                                      @Param("from") LocalDate from,
+                                      @Param("to") LocalDate to);
+
+    /** Суммы за периоды в базовой валюте — валюты расходов сложены после пересчёта. */
+    @Query("""
+            select r.id.periodStart as periodStart,
+                   sum(r.totalBase) as totalBase, sum(r.expenseCount) as expenseCount
+              from ExpenseRollup r
+             where r.id.telegramUserId = :userId
+               and r.id.granularity = :granularity
+               and r.id.periodStart between :from and :to
+             group by r.id.periodStart
+             order by r.id.periodStart desc
+            """)
+    List<PeriodTotal> sumByPeriod(@Param("userId") Long userId,
+                                  @Param("granularity") RollupGranularity granularity,
+                                  @Param("from") LocalDate from,
+                                  @Param("to") LocalDate to);
+
+    @Query("""
+            select r.id.periodStart as periodStart, r.id.currency as currency,
+                   sum(r.unconverted) as unconverted
+              from ExpenseRollup r
+             where r.id.telegramUserId = :userId
+               and r.id.granularity = :granularity
+               and r.id.periodStart between :from and :to
+               and r.unconverted <> 0
+             group by r.id.periodStart, r.id.currency
+             order by r.id.periodStart desc
+            """)
+    List<UnconvertedTotal> sumUnconverted(@Param("userId") Long userId,
+                                          @Param("granularity") RollupGranularity granularity,
+                                          @Param("from") LocalDate from,
+                                          @Param("to") LocalDate to);
+}
@@ -0,0 +1,16 @@
+package com.example.bookkeeperai.repository;
+
+import com.example.bookkeeperai.entity.FxRate;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDate;
+
+public interface FxRateRepository extends JpaRepository<FxRate, FxRate.Key> {
+
+    @Modifying
+    @Query("delete from FxRate r where r.id.currency = :currency and r.id.rateDate >= :from")
+    int deleteFrom(@Param("currency") String currency, @Param("from") LocalDate from);
+}
@@ -0,0 +1,109 @@
+package com.example.bookkeeperai.repository;
+
+import com.example.bookkeeperai.entity.IngestStatus;
+import com.example.bookkeeperai.entity.IngestTask;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.Optional;
+
+public interface IngestTaskRepository extends JpaRepository<IngestTask, Long> {
+
+    /**
+     * Задачи, готовые к разбору: по одной на пользователя — самая старая из ожидающих,
+     * и только если у пользователя нет задачи в обработке. Сообщения одного чата
+     * разбираются по порядку: правка "нет, 500" не обгонит трату, которую правит.
+     */
+    @Query("""
+            select t from IngestTask t
+             where t.status = com.example.bookkeeperai.entity.IngestStatus.PENDING
+               and t.availableAt <= :now
+               and not exists (
+                   select o.id from IngestTask o
+                    where o.telegramUserId = t.telegramUserId
+                      and (o.status = com.example.bookkeeperai.entity.IngestStatus.PROCESSING
+                           or (o.status = com.example.bookkeeperai.entity.IngestStatus.PENDING and o.id < t.id)))
+             order by t.id
+            """)
+    List<IngestTask> findReady(@Param("now") OffsetDateTime now, Pageable pageable);
+
+    Optional<IngestTask> findFirstByStatusOrderByIdAsc(IngestStatus status);
+
+    long countByStatus(IngestStatus status);
+
+    /**
+     * Захват задачи воркером. 0 — задачу уже забрал другой воркер.
+     */
+    @Transactional
+    @Modifying
+    @Query("""
+            update IngestTask t
+               set t.status = com.example.bookkeeperai.entity.IngestStatus.PROCESSING,
+                   t.updatedAt = :now
+             where t.id = :id
+               and t.status = com.example.bookkeeperai.entity.IngestStatus.PENDING
+            """)
+    int claim(@Param("id") Long id, @Param("now") OffsetDateTime now);
+
+    /**
+     * Возвращает в очередь задачи, зависшие в обработке (воркер упал вместе с JVM).
+     */
+    @Transactional
+    @Modifying
+    @Query("""
+            update IngestTask t
+               set t.status = com.example.bookkeeperai.entity.IngestStatus.PENDING,
+                   t.updatedAt = :now
+             where t.status = com.example.bookkeeperai.entity.IngestStatus.PROCESSING
+               and t.updatedAt < :staleBefore
+            """)
+    int requeueStale(@Param("staleBefore") OffsetDateTime staleBefore, @Param("now") OffsetDateTime now);
+
+    @Transactional
+    @Modifying
+    @Query("update IngestTask t set t.replyMessageId = :replyMessageId where t.id = :id")
+    int attachReply(@Param("id") Long id, @Param("replyMessageId") Integer replyMessageId);
+
+    /**
+     * Снимает задержку новой задачи, когда бот ответил "принято".
+     * Задачу, которую уже брали в работу, не трогает.
+     */
+    @Transactional
+    @Modifying
+    @Query("""
+            update IngestTask t
+               set t.availableAt = :now
+             where t.id = :id
+               and t.status = com.example.bookkeeperai.entity.IngestStatus.PENDING
+               and t.attempts = 0
+            """)
+    int release(@Param("id") Long id, @Param("now") OffsetDateTime now);
+
+    /**
+     * Итог обработки. Пишет только поля воркера, чтобы не затереть
+     * id сообщения "принято", дописанный ботом параллельно.
+     */
+    @Transactional
+    @Modifying
+    @Query("""
+            update IngestTask t
+               set t.status = :status,
+                   t.attempts = :attempts,
+                   t.availableAt = :availableAt,
+                   t.lastError = :lastError,
+                   t.updatedAt = :now
+             where t.id = :id
+            """)
+    int finish(@Param("id") Long id,
+               @Param("status") IngestStatus status,
+               @Param("attempts") int attempts,
+               @Param("availableAt") OffsetDateTime availableAt,
+               @Param("lastError") String lastError,
+               @Param("now") OffsetDateTime now);
+}
@@ -0,0 +1,75 @@
+package com.example.bookkeeperai.repository;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+
+/**
+ * Разделение чтения и записи. Транзакции {@code readOnly} (/last, листание истории, отчёты,
+ * выгрузка) берут соединение из пула {@code storage.read}, остальные — из основного пула.
+ * Записи не ждут в очереди за длинными чтениями, а чтение можно увести на реплику.
+ *
+ * Выбирает пул {@link LazyConnectionDataSourceProxy}: физическое соединение берётся на первом
+ * запросе, когда флаг read-only транзакции уже известен. Реплика может отставать, поэтому
+ * read-only методы не должны рассчитывать увидеть только что записанное.
+ * Без {@code storage.read-split.enabled} остаётся один пул из автоконфигурации Spring Boot.
+ */
+@Configuration
+@ConditionalOnProperty(name = "storage.read-split.enabled", havingValue = "true")
+public class ReadWriteDataSourceConfig {
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource writeDataSource(DataSourceProperties properties) {
+        return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    /**
+     * Таймауты, простой, autocommit и свойства драйвера (кэш prepared statements) — как у основного
+     * пула: Hibernate с {@code provider_disables_autocommit} сам autocommit не выключает, а без
+     * транзакции PostgreSQL не читает выгрузку курсором по {@code fetchSize}.
+     */
+    @Bean
+    public HikariDataSource readDataSource(@Qualifier("writeDataSource") HikariDataSource write,
+                                           @Value("${storage.read.url}") String url,
+                                           @Value("${storage.read.username}") String username,
+                                           @Value("${storage.read.password}") String password,
+                                           @Value("${storage.read.pool-size}") int poolSize) {
+        HikariDataSource read = new HikariDataSource();
+        read.setPoolName("read");
+        read.setJdbcUrl(url);
+        read.setUsername(username);
+        read.setPassword(password);
+        read.setMaximumPoolSize(poolSize);
+        if (write.getMinimumIdle() >= 0) {   // -1 — не задан, Hikari возьмёт размер пула
+            read.setMinimumIdle(Math.min(write.getMinimumIdle(), poolSize));
+        }
+        read.setConnectionTimeout(write.getConnectionTimeout());
+        read.setIdleTimeout(write.getIdleTimeout());
+        read.setKeepaliveTime(write.getKeepaliveTime());
+        read.setValidationTimeout(write.getValidationTimeout());
+        read.setMaxLifetime(write.getMaxLifetime());
+        read.setAutoCommit(write.isAutoCommit());
+        read.setDataSourceProperties(write.getDataSourceProperties());
+        read.setReadOnly(true);
+        return read;
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(@Qualifier("writeDataSource") DataSource write,
+                                 @Qualifier("readDataSource") DataSource read) {
+        LazyConnectionDataSourceProxy proxy = new LazyConnectionDataSourceProxy(write);
+        proxy.setReadOnlyDataSource(read);
+        return proxy;
+    }
+}
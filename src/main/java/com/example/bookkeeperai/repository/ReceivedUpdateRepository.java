@@ -0,0 +1,36 @@
+package com.example.bookkeeperai.repository;
+
+import com.example.bookkeeperai.entity.ReceivedUpdate;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.OffsetDateTime;
+
+public interface ReceivedUpdateRepository extends JpaRepository<ReceivedUpdate, Long> {
+
+    /**
+     * Отмечает апдейт принятым. 0 — он уже был принят раньше. Если два экземпляра
+     * вставляют один апдейт одновременно, второй получит нарушение первичного ключа.
+     */
+    @Transactional
+    @Modifying
+    @Query(value = """
+            insert into telegram_updates (update_id, received_at)
+            select :updateId, :now
+             where not exists (select 1 from telegram_updates where update_id = :updateId)
+            """, nativeQuery = true)
+    int markReceived(@Param("updateId") Long updateId, @Param("now") OffsetDateTime now);
+
+    @Transactional
+    @Modifying
+    @Query("delete from ReceivedUpdate u where u.updateId = :updateId")
+    int unmark(@Param("updateId") Long updateId);
+
+    @Transactional
+    @Modifying
+    @Query("delete from ReceivedUpdate u where u.receivedAt < :before")
+    int deleteReceivedBefore(@Param("before") OffsetDateTime before);
+}
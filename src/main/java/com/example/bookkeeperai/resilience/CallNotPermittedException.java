@@ -0,0 +1,12 @@
+package com.example.bookkeeperai.resilience;
+
+/**
+ * Вызов не выполнялся: открыт circuit breaker или исчерпан лимит запросов.
+ * Вызывающий код может перейти на локальный запасной вариант.
+ */
+public class CallNotPermittedException extends IllegalStateException {
+
+    public CallNotPermittedException(String message) {
+        super(message);
+    }
+}
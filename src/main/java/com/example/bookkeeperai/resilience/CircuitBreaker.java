@@ -0,0 +1,133 @@
+package com.example.bookkeeperai.resilience;
+
+import java.time.Duration;
+
+/**
+ * Circuit breaker со скользящим окном последних {@code windowSize} вызовов.
+ *
+ * CLOSED → OPEN, когда доля ошибок в окне (при минимум {@code minimumCalls} вызовах)
+ * достигает порога. Через {@code openDuration} пропускается {@code halfOpenCalls}
+ * пробных вызовов: все успешны — CLOSED, любая ошибка — снова OPEN.
+ */
+public class CircuitBreaker {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final int minimumCalls;
+    private final double failureRateThreshold;
+    private final long openNanos;
+    private final int halfOpenCalls;
+
+    private final boolean[] window;
+    private int windowIndex;
+    private int windowCount;
+    private int windowFailures;
+
+    private State state = State.CLOSED;
+    private long openedAt;
+    private int halfOpenStarted;
+    private int halfOpenSucceeded;
+
+    public CircuitBreaker(int windowSize,
+                          int minimumCalls,
+                          double failureRateThreshold,
+                          Duration openDuration,
+                          int halfOpenCalls) {
+        this.window = new boolean[windowSize];
+        this.minimumCalls = minimumCalls;
+        this.failureRateThreshold = failureRateThreshold;
+        this.openNanos = openDuration.toNanos();
+        this.halfOpenCalls = halfOpenCalls;
+    }
+
+    public synchronized boolean tryAcquirePermission() {
+        if (state == State.OPEN) {
+            if (System.nanoTime() - openedAt < openNanos) {
+                return false;
+            }
+            state = State.HALF_OPEN;
+            halfOpenStarted = 0;
+            halfOpenSucceeded = 0;
+        }
+        if (state == State.HALF_OPEN) {
+            if (halfOpenStarted >= halfOpenCalls) {
+                return false;
+            }
+            halfOpenStarted++;
+        }
+        return true;
+    }
+
+    /** Пропустит ли breaker вызов сейчас; состояние не меняется и пробный вызов не занимается. */
+    public synchronized boolean isCallPermitted() {
+        return switch (state) {
+            case CLOSED -> true;
+            case OPEN -> System.nanoTime() - openedAt >= openNanos;
+            case HALF_OPEN -> halfOpenStarted < halfOpenCalls;
+        };
+    }
+
+    /**
+     * Вызов, получивший разрешение, не состоялся или завершился ошибкой запроса (не сервиса):
+     * на окно он не влияет, а в HALF_OPEN освобождает место пробного вызова.
+     */
+    public synchronized void releasePermission() {
+        if (state == State.HALF_OPEN && halfOpenStarted > 0) {
+            halfOpenStarted--;
+        }
+    }
+
+    public synchronized void onSuccess() {
+        if (state == State.HALF_OPEN) {
+            if (++halfOpenSucceeded >= halfOpenCalls) {
+                close();
+            }
+            return;
+        }
+        record(false);
+    }
+
+    public synchronized void onFailure() {
+        if (state == State.HALF_OPEN) {
+            open();
+            return;
+        }
+        record(true);
+        if (state == State.CLOSED
+                && windowCount >= minimumCalls
+                && (double) windowFailures / windowCount >= failureRateThreshold) {
+            open();
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    private void record(boolean failure) {
+        if (windowCount == window.length) {
+            if (window[windowIndex]) {
+                windowFailures--;
+            }
+        } else {
+            windowCount++;
+        }
+        window[windowIndex] = failure;
+        if (failure) {
+            windowFailures++;
+        }
+        windowIndex = (windowIndex + 1) % window.length;
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAt = System.nanoTime();
+    }
+
+    private void close() {
+        state = State.CLOSED;
+        windowIndex = 0;
+        windowCount = 0;
+        windowFailures = 0;
+    }
+}
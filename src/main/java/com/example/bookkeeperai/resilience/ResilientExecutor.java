@@ -0,0 +1,184 @@
+package com.example.bookkeeperai.resilience;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Обвязка асинхронного вызова внешнего сервиса: circuit breaker → rate limiter →
+ * (опционально) hedged-запрос → повтор с backoff. Breaker проверяется первым, чтобы
+ * при открытой цепи не расходовать лимит запросов.
+ *
+ * Ожидание не занимает потоки: задержки выдерживаются через
+ * {@link CompletableFuture#delayedExecutor}.
+ */
+@Slf4j
+public class ResilientExecutor {
+
+    private final String name;
+    private final RetryPolicy retryPolicy;
+    private final TokenBucket rateLimiter;
+    private final long rateLimitMaxWaitNanos;
+    private final CircuitBreaker circuitBreaker;
+    private final Duration hedgeDelay;
+
+    private final Counter retries;
+    private final Counter hedges;
+    private final Counter rateLimited;
+    private final Counter circuitRejected;
+
+    public ResilientExecutor(String name,
+                             RetryPolicy retryPolicy,
+                             TokenBucket rateLimiter,
+                             Duration rateLimitMaxWait,
+                             CircuitBreaker circuitBreaker,
+                             Duration hedgeDelay,
+                             MeterRegistry meterRegistry) {
+        this.name = name;
+        this.retryPolicy = retryPolicy;
+        this.rateLimiter = rateLimiter;
+        this.rateLimitMaxWaitNanos = rateLimitMaxWait.toNanos();
+        this.circuitBreaker = circuitBreaker;
+        this.hedgeDelay = hedgeDelay;
+
+        this.retries = Counter.builder("bookkeeper.resilience.retries")
+                .tag("endpoint", name)
+                .register(meterRegistry);
+        this.hedges = Counter.builder("bookkeeper.resilience.hedges")
+                .tag("endpoint", name)
+                .register(meterRegistry);
+        this.rateLimited = Counter.builder("bookkeeper.resilience.rejected")
+                .tag("endpoint", name)
+                .tag("reason", "rate_limit")
+                .register(meterRegistry);
+        this.circuitRejected = Counter.builder("bookkeeper.resilience.rejected")
+                .tag("endpoint", name)
+                .tag("reason", "circuit_open")
+                .register(meterRegistry);
+        Gauge.builder("bookkeeper.resilience.circuit.state", circuitBreaker, cb -> cb.getState().ordinal())
+                .tag("endpoint", name)
+                .description("0 — closed, 1 — open, 2 — half-open")
+                .register(meterRegistry);
+    }
+
+    public <T> CompletableFuture<T> execute(Supplier<CompletableFuture<T>> call) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        attempt(call, 1, result);
+        return result;
+    }
+
+    /** false, пока circuit breaker не пропускает вызовы. */
+    public boolean isAvailable() {
+        return circuitBreaker.isCallPermitted();
+    }
+
+    private <T> void attempt(Supplier<CompletableFuture<T>> call, int attempt, CompletableFuture<T> result) {
+        if (!circuitBreaker.tryAcquirePermission()) {
+            circuitRejected.increment();
+            result.completeExceptionally(
+                    new CallNotPermittedException(name + ": сервис временно недоступен (circuit open)"));
+            return;
+        }
+
+        long wait = rateLimiter.reserve(rateLimitMaxWaitNanos);
+        if (wait < 0) {
+            circuitBreaker.releasePermission();
+            rateLimited.increment();
+            result.completeExceptionally(
+                    new CallNotPermittedException(name + ": превышен лимит запросов"));
+            return;
+        }
+
+        after(wait).execute(() -> hedged(call).whenComplete((value, error) -> {
+            if (error == null) {
+                circuitBreaker.onSuccess();
+                result.complete(value);
+                return;
+            }
+
+            Throwable cause = unwrap(error);
+            if (retryPolicy.isRetryable(cause)) {
+                circuitBreaker.onFailure();
+            } else {
+                // ошибка запроса, а не сервиса — на состояние breaker не влияет
+                circuitBreaker.releasePermission();
+            }
+
+            Duration delay = retryPolicy.nextDelay(attempt, cause);
+            if (delay == null) {
+                result.completeExceptionally(cause);
+                return;
+            }
+            retries.increment();
+            log.warn("{}: попытка {} не удалась ({}), повтор через {} мс",
+                    name, attempt, cause.getMessage(), delay.toMillis());
+            after(delay.toNanos()).execute(() -> attempt(call, attempt + 1, result));
+        }));
+    }
+
+    /**
+     * Если основной запрос не ответил за {@code hedgeDelay}, отправляется дублирующий;
+     * берётся первый успешный ответ. Ошибка — только когда упали оба.
+     */
+    private <T> CompletableFuture<T> hedged(Supplier<CompletableFuture<T>> call) {
+        CompletableFuture<T> primary = start(call);
+        if (hedgeDelay.isZero()) {
+            return primary;
+        }
+
+        CompletableFuture<T> result = new CompletableFuture<>();
+        AtomicInteger outstanding = new AtomicInteger(1);
+        primary.whenComplete((value, error) -> completeFirst(result, outstanding, value, error));
+
+        after(hedgeDelay.toNanos()).execute(() -> {
+            // дубликат тоже расходует лимит; если лимита нет — просто ждём основной
+            if (result.isDone() || !rateLimiter.tryAcquire()) {
+                return;
+            }
+            outstanding.incrementAndGet();
+            hedges.increment();
+            start(call).whenComplete((value, error) -> completeFirst(result, outstanding, value, error));
+        });
+        return result;
+    }
+
+    private static <T> void completeFirst(CompletableFuture<T> result, AtomicInteger outstanding,
+                                          T value, Throwable error) {
+        if (error == null) {
+            result.complete(value);
+        } else if (outstanding.decrementAndGet() == 0) {
+            result.completeExceptionally(error);
+        }
+    }
+
+    private static <T> CompletableFuture<T> start(Supplier<CompletableFuture<T>> call) {
+        try {
+            return call.get();
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private static Executor after(long nanos) {
+        return nanos > 0
+                ? CompletableFuture.delayedExecutor(nanos, TimeUnit.NANOSECONDS)
+                : Runnable::run;
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        Throwable cause = error;
+        while (cause instanceof CompletionException && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause;
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.bookkeeperai.resilience;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Экспоненциальный backoff с джиттером: задержка попытки n случайна в
+ * [base·2ⁿ⁻¹ / 2, base·2ⁿ⁻¹], но не больше {@code maxDelay}.
+ * Если сервер указал Retry-After, ждём не меньше него; если он дольше
+ * {@code maxDelay} — не повторяем вовсе.
+ */
+public class RetryPolicy {
+
+    private final int maxAttempts;
+    private final long baseDelayNanos;
+    private final long maxDelayNanos;
+    private final Predicate<Throwable> retryable;
+    private final Function<Throwable, Duration> retryAfter;
+
+    public RetryPolicy(int maxAttempts,
+                       Duration baseDelay,
+                       Duration maxDelay,
+                       Predicate<Throwable> retryable,
+                       Function<Throwable, Duration> retryAfter) {
+        this.maxAttempts = maxAttempts;
+        this.baseDelayNanos = baseDelay.toNanos();
+        this.maxDelayNanos = maxDelay.toNanos();
+        this.retryable = retryable;
+        this.retryAfter = retryAfter;
+    }
+
+    public boolean isRetryable(Throwable error) {
+        return retryable.test(error);
+    }
+
+    /**
+     * Задержка перед попыткой {@code attempt + 1} или null, если повторять не нужно.
+     */
+    public Duration nextDelay(int attempt, Throwable error) {
+        if (attempt >= maxAttempts || !isRetryable(error)) {
+            return null;
+        }
+
+        long exp = baseDelayNanos << Math.min(attempt - 1, 30);
+        long backoff = exp <= 0 ? maxDelayNanos : Math.min(maxDelayNanos, exp);
+        long delay = ThreadLocalRandom.current().nextLong(backoff / 2, backoff + 1);
+
+        Duration serverDelay = retryAfter.apply(error);
+        if (serverDelay != null) {
+            if (serverDelay.toNanos() > maxDelayNanos) {
+                return null;
+            }
+            delay = Math.max(delay, serverDelay.toNanos());
+        }
+        return Duration.ofNanos(delay);
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.bookkeeperai.resilience;
+
+/**
+ * Token bucket: {@code permitsPerSecond} в среднем, всплески до {@code burst}.
+ *
+ * Разрешения резервируются заранее: вызывающий получает задержку, после которой
+ * может выполнить запрос, и сам решает, как её выждать (не блокируя поток).
+ */
+public class TokenBucket {
+
+    private final double capacity;
+    private final double permitsPerNano;
+    private double tokens;
+    private long lastRefill;
+
+    public TokenBucket(double permitsPerSecond, int burst) {
+        this.capacity = burst;
+        this.permitsPerNano = permitsPerSecond / 1_000_000_000d;
+        this.tokens = burst;
+        this.lastRefill = System.nanoTime();
+    }
+
+    /**
+     * Резервирует одно разрешение.
+     *
+     * @return задержка в наносекундах (0 — можно сразу) или -1, если ждать пришлось бы
+     *         дольше {@code maxWaitNanos}; в этом случае разрешение не расходуется
+     */
+    public synchronized long reserve(long maxWaitNanos) {
+        refill();
+        if (tokens >= 1) {
+            tokens -= 1;
+            return 0;
+        }
+        long wait = (long) Math.ceil((1 - tokens) / permitsPerNano);
+        if (wait > maxWaitNanos) {
+            return -1;
+        }
+        tokens -= 1;
+        return wait;
+    }
+
+    public boolean tryAcquire() {
+        return reserve(0) == 0;
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (now - lastRefill) * permitsPerNano);
+        lastRefill = now;
+    }
+}
@@ -0,0 +1,328 @@
+package com.example.bookkeeperai.service;
+
+import com.example.bookkeeperai.dto.BankStatementRow;
+import com.example.bookkeeperai.fx.Currencies;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Потоковый разбор CSV-выписки банка: строки читаются по одной, файл целиком
+ * в память не попадает.
+ *
+ * Колонки находятся по заголовку (русские и английские названия), разделитель
+ * (";", "," или табуляция) — по первой строке. Кодировка — UTF-8, если первые
+ * 64 КБ в ней валидны, иначе windows-1251 (её до сих пор отдают многие банки).
+ *
+ * Направление операции: если в выписке есть колонка типа операции, зачисления
+ * определяются по ней, иначе по знаку: "-500" — списание, "+500" — зачисление.
+ * Сумму без знака и без типа не угадываем — такая строка возвращается с ошибкой.
+ *
+ * Десятичный разделитель — последний из "." и ",": "1 234,50", "1,234.50" и
+ * "1.234,50" дают 1234.50. Если же разделитель встречается несколько раз
+ * ("1,234,567"), это разделитель тысяч.
+ */
+public class BankStatementReader implements Closeable {
+
+    private static final int SNIFF_BYTES = 64 * 1024;
+    /** Поле в кавычках может содержать перевод строки, но не бесконечно. */
+    private static final int MAX_LINES_PER_RECORD = 20;
+    private static final Charset WINDOWS_1251 = Charset.forName("windows-1251");
+
+    private static final List<String> DATE_COLUMNS = List.of("дата операции", "дата", "date", "transaction date");
+    private static final List<String> AMOUNT_COLUMNS = List.of("сумма операции", "сумма", "amount");
+    private static final List<String> CURRENCY_COLUMNS = List.of("валюта операции", "валюта", "currency");
+    private static final List<String> CATEGORY_COLUMNS = List.of("категория", "category");
+    private static final List<String> DESCRIPTION_COLUMNS = List.of(
+            "описание", "назначение платежа", "назначение", "description", "merchant", "details");
+    private static final List<String> TYPE_COLUMNS = List.of("тип операции", "тип", "type");
+    private static final List<String> INCOME_MARKERS = List.of(
+            "пополн", "зачисл", "поступл", "приход", "возврат", "income", "credit", "refund");
+
+    private static final List<DateTimeFormatter> DATE_TIME_FORMATS = List.of(
+            DateTimeFormatter.ofPattern("dd.MM.yyyy HH:mm:ss"),
+            DateTimeFormatter.ofPattern("dd.MM.yyyy HH:mm"),
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"),
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm"),
+            DateTimeFormatter.ISO_LOCAL_DATE_TIME);
+    private static final List<DateTimeFormatter> DATE_FORMATS = List.of(
+            DateTimeFormatter.ofPattern("dd.MM.yyyy"),
+            DateTimeFormatter.ofPattern("dd.MM.yy"),
+            DateTimeFormatter.ISO_LOCAL_DATE);
+
+    private final BufferedReader reader;
+    private final ZoneId zone;
+    private final char delimiter;
+    private final int dateColumn;
+    private final int amountColumn;
+    private final int currencyColumn;
+    private final int categoryColumn;
+    private final int descriptionColumn;
+    private final int typeColumn;
+    private long lineNumber;
+
+    /**
+     * Читает заголовок. Без колонок даты и суммы выписку не разобрать —
+     * тогда {@link IllegalArgumentException}.
+     */
+    public BankStatementReader(InputStream in, ZoneId zone) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(in, SNIFF_BYTES);
+        this.reader = new BufferedReader(new InputStreamReader(buffered, detectCharset(buffered)));
+        this.zone = zone;
+
+        String header = reader.readLine();
+        lineNumber = 1;
+        if (header == null) {
+            throw new IllegalArgumentException("Файл пустой");
+        }
+        header = header.replace("\uFEFF", "");
+        this.delimiter = detectDelimiter(header);
+
+        List<String> columns = split(header, delimiter);
+        for (int i = 0; i < columns.size(); i++) {
+            columns.set(i, columns.get(i).trim().toLowerCase(Locale.ROOT));
+        }
+        this.dateColumn = find(columns, DATE_COLUMNS);
+        this.amountColumn = find(columns, AMOUNT_COLUMNS);
+        this.currencyColumn = find(columns, CURRENCY_COLUMNS);
+        this.categoryColumn = find(columns, CATEGORY_COLUMNS);
+        this.descriptionColumn = find(columns, DESCRIPTION_COLUMNS);
+        this.typeColumn = find(columns, TYPE_COLUMNS);
+
+        if (dateColumn < 0 || amountColumn < 0) {
+            throw new IllegalArgumentException("В заголовке выписки нет колонок даты и суммы");
+        }
+    }
+
+    /**
+     * Следующая строка выписки или null в конце файла. Строки, которые не удалось
+     * разобрать, возвращаются с заполненным {@link BankStatementRow#error()}.
+     */
+    public BankStatementRow next() throws IOException {
+        String line;
+        do {
+            line = reader.readLine();
+            lineNumber++;
+            if (line == null) {
+                return null;
+            }
+        } while (line.isBlank());
+
+        long recordLine = lineNumber;
+        StringBuilder record = new StringBuilder(line);
+        for (int extra = 0; hasOpenQuote(record) && extra < MAX_LINES_PER_RECORD; extra++) {
+            String continuation = reader.readLine();
+            if (continuation == null) {
+                break;
+            }
+            lineNumber++;
+            record.append('\n').append(continuation);
+        }
+        String raw = record.toString();
+
+        List<String> fields = split(raw, delimiter);
+        try {
+            String amountText = field(fields, amountColumn);
+            if (amountText == null) {
+                return BankStatementRow.invalid(recordLine, raw, "нет суммы");
+            }
+            // пробелы-разделители тысяч и символ валюты: "-1 234,50 ₽" → "-1234,50"
+            String compact = amountText.replaceAll("[^0-9+\\-.,]", "");
+            BigDecimal signed = parseAmount(compact);
+            String type = field(fields, typeColumn);
+            boolean income;
+            if (type != null) {
+                income = isIncome(type) || compact.startsWith("+");
+            } else if (compact.startsWith("+") || compact.startsWith("-")) {
+                income = compact.startsWith("+");
+            } else {
+                return BankStatementRow.invalid(recordLine, raw, "сумма без знака и без типа операции");
+            }
+
+            return new BankStatementRow(
+                    recordLine,
+                    parseDate(field(fields, dateColumn)),
+                    signed.abs(),
+                    Currencies.normalize(field(fields, currencyColumn)),
+                    field(fields, categoryColumn),
+                    field(fields, descriptionColumn),
+                    income,
+                    raw,
+                    null);
+        } catch (NumberFormatException | DateTimeParseException e) {
+            return BankStatementRow.invalid(recordLine, raw, e.getMessage());
+        }
+    }
+
+    private OffsetDateTime parseDate(String text) {
+        if (text == null) {
+            throw new DateTimeParseException("нет даты", "", 0);
+        }
+        try {
+            return OffsetDateTime.parse(text);
+        } catch (DateTimeParseException ignored) {
+            // не ISO со смещением — пробуем локальные форматы
+        }
+        for (DateTimeFormatter format : DATE_TIME_FORMATS) {
+            try {
+                return LocalDateTime.parse(text, format).atZone(zone).toOffsetDateTime();
+            } catch (DateTimeParseException ignored) {
+                // следующий формат
+            }
+        }
+        for (DateTimeFormatter format : DATE_FORMATS) {
+            try {
+                return LocalDate.parse(text, format).atStartOfDay(zone).toOffsetDateTime();
+            } catch (DateTimeParseException ignored) {
+                // следующий формат
+            }
+        }
+        throw new DateTimeParseException("Не распознана дата: " + text, text, 0);
+    }
+
+    static BigDecimal parseAmount(String compact) {
+        int decimal = Math.max(compact.lastIndexOf('.'), compact.lastIndexOf(','));
+        if (decimal < 0) {
+            return new BigDecimal(compact);
+        }
+        char separator = compact.charAt(decimal);
+        boolean grouping = compact.indexOf(separator) != decimal;
+        String integer = compact.substring(0, decimal).replaceAll("[.,]", "");
+        String fraction = compact.substring(decimal + 1);
+        return new BigDecimal(grouping ? integer + fraction : integer + "." + fraction);
+    }
+
+    private static boolean isIncome(String type) {
+        String lower = type.toLowerCase(Locale.ROOT);
+        return INCOME_MARKERS.stream().anyMatch(lower::contains);
+    }
+
+    private static String field(List<String> fields, int index) {
+        if (index < 0 || index >= fields.size()) {
+            return null;
+        }
+        String value = fields.get(index).trim();
+        return value.isEmpty() ? null : value;
+    }
+
+    /** Сначала точное совпадение названия колонки, затем вхождение. */
+    private static int find(List<String> columns, List<String> aliases) {
+        for (String alias : aliases) {
+            int index = columns.indexOf(alias);
+            if (index >= 0) {
+                return index;
+            }
+        }
+        for (String alias : aliases) {
+            for (int i = 0; i < columns.size(); i++) {
+                if (columns.get(i).contains(alias)) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /** Разбивка строки CSV с учётом кавычек ("" внутри кавычек — сама кавычка). */
+    static List<String> split(String line, char delimiter) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    current.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    current.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == delimiter) {
+                fields.add(current.toString());
+                current.setLength(0);
+            } else {
+                current.append(c);
+            }
+        }
+        fields.add(current.toString());
+        return fields;
+    }
+
+    private static boolean hasOpenQuote(CharSequence record) {
+        int quotes = 0;
+        for (int i = 0; i < record.length(); i++) {
+            if (record.charAt(i) == '"') {
+                quotes++;
+            }
+        }
+        return quotes % 2 != 0;
+    }
+
+    private static char detectDelimiter(String header) {
+        char best = ',';
+        long bestCount = -1;
+        for (char candidate : new char[]{';', ',', '\t'}) {
+            long count = split(header, candidate).size();
+            if (count > bestCount) {
+                best = candidate;
+                bestCount = count;
+            }
+        }
+        return best;
+    }
+
+    private static Charset detectCharset(BufferedInputStream in) throws IOException {
+        in.mark(SNIFF_BYTES);
+        byte[] head = in.readNBytes(SNIFF_BYTES);
+        in.reset();
+
+        CharsetDecoder utf8 = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        int length = head.length;
+        if (length == SNIFF_BYTES) {
+            // последний символ мог обрезаться границей буфера — его не проверяем
+            for (int i = 0; i < 3 && length > 0 && (head[length - 1] & 0xC0) == 0x80; i++) {
+                length--;
+            }
+            if (length > 0 && (head[length - 1] & 0xC0) == 0xC0) {
+                length--;
+            }
+        }
+        try {
+            utf8.decode(ByteBuffer.wrap(head, 0, length));
+            return StandardCharsets.UTF_8;
+        } catch (CharacterCodingException e) {
+            return WINDOWS_1251;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
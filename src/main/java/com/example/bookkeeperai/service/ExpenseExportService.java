@@ -0,0 +1,142 @@
+package com.example.bookkeeperai.service;
+
+import com.example.bookkeeperai.dto.ExpenseExportRow;
+import com.example.bookkeeperai.repository.ExpenseRepository;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Выгрузка всей истории пользователя в CSV или NDJSON.
+ *
+ * Строки читаются курсором и пишутся в поток по одной, список расходов
+ * в памяти не собирается — память не зависит от объёма истории.
+ */
+@Service
+@RequiredArgsConstructor
+public class ExpenseExportService {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final String CSV_HEADER = "id,date,amount,currency,category,description,place,source,raw_text\n";
+
+    private final ExpenseRepository repo;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * Пишет выгрузку в {@code out}. Поток не закрывается — только дописывается
+     * (и завершается gzip). Возвращает число выгруженных расходов.
+     */
+    @Transactional(readOnly = true)
+    public long export(Long userId, ExportFormat format, boolean gzip, OutputStream out) throws IOException {
+        Timer.Sample sample = Timer.start(meterRegistry);
+
+        GZIPOutputStream gz = gzip ? new GZIPOutputStream(out, BUFFER_SIZE) : null;
+        Writer writer = new BufferedWriter(
+                new OutputStreamWriter(gz != null ? gz : out, StandardCharsets.UTF_8), BUFFER_SIZE);
+
+        long rows;
+        try (Stream<ExpenseExportRow> stream = repo.streamForExport(userId)) {
+            rows = format == ExportFormat.CSV
+                    ? writeCsv(stream.iterator(), writer)
+                    : writeNdjson(stream.iterator(), writer);
+        }
+        writer.flush();
+        if (gz != null) {
+            gz.finish();
+        }
+
+        sample.stop(Timer.builder("bookkeeper.export")
+                .tag("format", format.name().toLowerCase())
+                .register(meterRegistry));
+        return rows;
+    }
+
+    private static long writeCsv(Iterator<ExpenseExportRow> rows, Writer writer) throws IOException {
+        writer.write(CSV_HEADER);
+        long count = 0;
+        while (rows.hasNext()) {
+            ExpenseExportRow e = rows.next();
+            writer.write(String.valueOf(e.getId()));
+            writer.write(',');
+            writer.write(e.getExpenseDate() != null ? e.getExpenseDate().toString() : "");
+            writer.write(',');
+            writer.write(e.getAmount() != null ? e.getAmount().toPlainString() : "");
+            writer.write(',');
+            writeCsvField(writer, e.getCurrency());
+            writer.write(',');
+            writeCsvField(writer, e.getCategory());
+            writer.write(',');
+            writeCsvField(writer, e.getDescription());
+            writer.write(',');
+            writeCsvField(writer, e.getPlace());
+            writer.write(',');
+            writeCsvField(writer, e.getSourceType());
+            writer.write(',');
+            writeCsvField(writer, e.getRawText());
+            writer.write('\n');
+            count++;
+        }
+        return count;
+    }
+
+    /** RFC 4180: поле в кавычках, если в нём есть разделитель, кавычка или перевод строки. */
+    static void writeCsvField(Writer writer, String value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        boolean quote = value.indexOf(',') >= 0 || value.indexOf('"') >= 0
+                || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0;
+        if (!quote) {
+            writer.write(value);
+            return;
+        }
+        writer.write('"');
+        writer.write(value.replace("\"", "\"\""));
+        writer.write('"');
+    }
+
+    private long writeNdjson(Iterator<ExpenseExportRow> rows, Writer writer) throws IOException {
+        JsonGenerator json = objectMapper.getFactory().createGenerator(writer);
+        json.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        json.setRootValueSeparator(null);
+
+        long count = 0;
+        while (rows.hasNext()) {
+            ExpenseExportRow e = rows.next();
+            json.writeStartObject();
+            json.writeNumberField("id", e.getId());
+            json.writeStringField("date", e.getExpenseDate() != null ? e.getExpenseDate().toString() : null);
+            if (e.getAmount() != null) {
+                json.writeNumberField("amount", e.getAmount());
+            } else {
+                json.writeNullField("amount");
+            }
+            json.writeStringField("currency", e.getCurrency());
+            json.writeStringField("category", e.getCategory());
+            json.writeStringField("description", e.getDescription());
+            json.writeStringField("place", e.getPlace());
+            json.writeStringField("source", e.getSourceType());
+            json.writeStringField("rawText", e.getRawText());
+            json.writeEndObject();
+            json.writeRaw('\n');
+            count++;
+        }
+        json.flush();
+        return count;
+    }
+}
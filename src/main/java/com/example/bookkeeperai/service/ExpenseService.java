@@ -1,63 +1,238 @@
 package com.example.bookkeeperai.service;
 
+import com.example.bookkeeperai.ai.AudioSource;
+import com.example.bookkeeperai.ai.ConversationContext;
+import com.example.bookkeeperai.ai.ConversationStore;
+import com.example.bookkeeperai.ai.Futures;
 import com.example.bookkeeperai.ai.NlpParserService;
 import com.example.bookkeeperai.ai.SttService;
+import com.example.bookkeeperai.dto.ExpenseSummary;
+import com.example.bookkeeperai.dto.IngestOutcome;
 import com.example.bookkeeperai.dto.ParsedExpense;
+import com.example.bookkeeperai.dto.ParsedFollowUp;
 import com.example.bookkeeperai.entity.Expense;
+import com.example.bookkeeperai.entity.IngestStatus;
+import com.example.bookkeeperai.entity.IngestTask;
+import com.example.bookkeeperai.metrics.PipelineMetrics;
+import com.example.bookkeeperai.metrics.Stage;
+import com.example.bookkeeperai.metrics.UpdateTrace;
 import com.example.bookkeeperai.repository.ExpenseRepository;
+import com.example.bookkeeperai.repository.IngestTaskRepository;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import org.telegram.telegrambots.meta.api.objects.Message;
+import org.telegram.telegrambots.meta.api.objects.Voice;
 
 import java.math.BigDecimal;
+import java.time.Duration;
 import java.time.OffsetDateTime;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 
 @Service
 @RequiredArgsConstructor
 public class ExpenseService {
 
     private final ExpenseRepository repo;
+    private final IngestTaskRepository ingestRepo;
     private final NlpParserService nlpParser;
     private final SttService sttService;
+    private final ApplicationEventPublisher events;
+    private final ExpenseWriteBuffer writeBuffer;
+    private final PipelineMetrics pipelineMetrics;
+    private final ConversationStore conversations;
 
-    public Expense handleTextExpense(Message message) throws Exception {
-        Long userId = message.getFrom().getId();
-        String text = message.getText();
+    @Value("${ingest.ack-hold}")
+    private Duration ackHold;
 
-        ParsedExpense parsed = nlpParser.parse(text);
-        return saveParsedExpense(parsed, userId, text, "TEXT");
+    /**
+     * Сохраняет текст в очередь на разбор. Сам разбор выполнит {@link IngestWorker},
+     * но не раньше {@link #attachReply}: результат должен прийти правкой ответа "принято".
+     * Если бот так и не ответил, задача станет доступна через {@code ingest.ack-hold}.
+     */
+    public IngestTask acceptText(Message message) {
+        return ingestRepo.save(newTask(message, "TEXT")
+                .text(message.getText())
+                .build());
     }
 
-    public Expense handleVoiceExpense(Message message, byte[] audioBytes) throws Exception {
-        Long userId = message.getFrom().getId();
-        String transcript = sttService.transcribe(audioBytes);
+    /** Текстовое сообщение разбирается целиком, без обрезки, — длиннее лимита не принимается. */
+    public boolean fitsTextMessage(String text) {
+        return nlpParser.fitsSingle(text);
+    }
+
+    public IngestTask acceptVoice(Message message) {
+        Voice voice = message.getVoice();
+        return ingestRepo.save(newTask(message, "VOICE")
+                .voiceFileId(voice.getFileId())
+                .voiceFileUniqueId(voice.getFileUniqueId())
+                .voiceFileSize(voice.getFileSize())
+                .voiceDuration(voice.getDuration())
+                .build());
+    }
+
+    /**
+     * Запоминает сообщение "принято", чтобы потом отредактировать его результатом,
+     * и отдаёт задачу воркеру. {@code replyMessageId} null — ответ не отправился,
+     * результат придёт отдельным сообщением.
+     */
+    public void attachReply(Long taskId, Integer replyMessageId) {
+        if (replyMessageId != null) {
+            ingestRepo.attachReply(taskId, replyMessageId);
+        }
+        if (ingestRepo.release(taskId, OffsetDateTime.now()) == 1) {
+            events.publishEvent(new IngestTaskCreatedEvent(taskId));
+        }
+    }
+
+    private IngestTask.IngestTaskBuilder newTask(Message message, String sourceType) {
+        OffsetDateTime now = OffsetDateTime.now();
+        return IngestTask.builder()
+                .chatId(message.getChatId())
+                .telegramUserId(message.getFrom().getId())
+                .messageId(message.getMessageId())
+                .updateId(UpdateTrace.currentUpdateId())   // апдейт, который сейчас обрабатывает бот
+                .sourceType(sourceType)
+                .status(IngestStatus.PENDING)
+                .createdAt(now)
+                .updatedAt(now)
+                .availableAt(now.plus(ackHold));
+    }
+
+    public IngestOutcome processText(Long userId, String text) throws Exception {
+        return processMessage(userId, text, "TEXT");
+    }
+
+    /**
+     * Голосовое может содержать несколько трат — каждая сохраняется отдельной записью.
+     * Короткое голосовое разбирается как текст, в том числе как правка, если расшифровка
+     * помещается в промпт одной траты.
+     */
+    public IngestOutcome processVoice(Long userId, String fileUniqueId, Callable<AudioSource> audio,
+                                      int durationSeconds) throws Exception {
+        String transcript = sttService.transcribe(fileUniqueId, audio, durationSeconds);
+        if (!sttService.isLong(durationSeconds) && nlpParser.fitsSingle(transcript)) {
+            return processMessage(userId, transcript, "VOICE");
+        }
+
+        List<ParsedExpense> parsed = nlpParser.parseAll(transcript);
+
+        // все траты уходят в буфер сразу и попадают в одну пачку
+        List<CompletableFuture<Expense>> pending = new ArrayList<>(parsed.size());
+        for (int i = 0; i < parsed.size(); i++) {
+            pending.add(saveParsedExpense(parsed.get(i), userId, transcript, "VOICE", i));
+        }
+        List<Expense> saved = new ArrayList<>(pending.size());
+        for (CompletableFuture<Expense> f : pending) {
+            saved.add(Futures.await(f));
+        }
+        conversations.record(userId, transcript, saved);
+        return IngestOutcome.saved(saved);
+    }
+
+    /**
+     * Сообщение разбирается с контекстом разговора, только если он есть и сообщение
+     * похоже на продолжение; правка меняет уже записанный расход, а не добавляет новый.
+     */
+    private IngestOutcome processMessage(Long userId, String text, String sourceType) throws Exception {
+        ConversationContext context = conversations.get(userId);
+        if (context == null || context.expenses().isEmpty() || !nlpParser.isFollowUp(text)) {
+            Expense saved = Futures.await(saveParsedExpense(nlpParser.parse(text), userId, text, sourceType, 0));
+            conversations.record(userId, text, List.of(saved));
+            return IngestOutcome.saved(List.of(saved));
+        }
+
+        ParsedFollowUp followUp = nlpParser.parseFollowUp(text, context);
+        if (!followUp.edit()) {
+            Expense saved = Futures.await(saveParsedExpense(followUp.expense(), userId, text, sourceType, 0));
+            conversations.record(userId, text, List.of(saved));
+            return IngestOutcome.saved(List.of(saved));
+        }
 
-        ParsedExpense parsed = nlpParser.parse(transcript);
-        return saveParsedExpense(parsed, userId, transcript, "VOICE");
+        Long expenseId = context.expenses().get(followUp.target()).id();
+        Expense edited = pipelineMetrics.time(Stage.DB_SAVE, () ->
+                writeBuffer.update(userId, expenseId, e -> applyChanges(e, followUp.expense(), text)));
+        conversations.record(userId, text, List.of(edited));
+        return IngestOutcome.edited(edited);
     }
 
-    private Expense saveParsedExpense(ParsedExpense parsed,
+    /** Меняются только поля, которые LLM вернул; текст правки дописывается к исходному. */
+    private static void applyChanges(Expense expense, ParsedExpense changes, String text) {
+        if (changes.getAmount() != null) {
+            expense.setAmount(changes.getAmount());
+        }
+        if (changes.getCurrency() != null) {
+            expense.setCurrency(changes.getCurrency());
+        }
+        if (changes.getCategory() != null) {
+            expense.setCategory(changes.getCategory());
+        }
+        if (changes.getDescription() != null) {
+            expense.setDescription(changes.getDescription());
+        }
+        if (changes.getPlace() != null) {
+            expense.setPlace(changes.getPlace());
+        }
+        if (changes.getDate() != null) {
+            expense.setExpenseDate(changes.getDate());
+        }
+        expense.setRawText(expense.getRawText() != null ? expense.getRawText() + "\n" + text : text);
+    }
+
+    /**
+     * Запись идёт через {@link ExpenseWriteBuffer}: расход сохраняется пачкой
+     * вместе с соседними, future завершается после коммита.
+     *
+     * Расход из апдейта Telegram получает ключ {@code tg:<update_id>:<index>}: если тот же апдейт
+     * обработается ещё раз (повтор задачи, повторная доставка), вернётся уже записанный расход.
+     * Ключ, занятый расходом из другого сообщения, {@link ExpenseWriteBuffer} не считает повтором.
+     */
+    CompletableFuture<Expense> saveParsedExpense(ParsedExpense parsed,
                                       Long userId,
                                       String rawText,
-                                      String sourceType) {
+                                      String sourceType,
+                                      int index) {
 
         Expense.ExpenseBuilder builder = Expense.builder()
                 .telegramUserId(userId)
                 .amount(parsed.getAmount() != null ? parsed.getAmount() : BigDecimal.ZERO)
-                .currency(parsed.getCurrency() != null ? parsed.getCurrency() : "RUB")
+                .currency(parsed.getCurrency())   // пустая станет базовой валютой при записи
                 .category(parsed.getCategory() != null ? parsed.getCategory() : "other")
                 .description(parsed.getDescription())
                 .place(parsed.getPlace())
                 .expenseDate(parsed.getDate() != null ? parsed.getDate() : OffsetDateTime.now())
                 .rawText(rawText)
-                .sourceType(sourceType);
+                .sourceType(sourceType)
+                .importKey(updateKey(index));
 
-        return repo.save(builder.build());
+        Expense expense = builder.build();
+        return pipelineMetrics.timeAsync(Stage.DB_SAVE, () -> writeBuffer.submit(expense));
     }
 
-    public List<Expense> getLastExpenses(Long userId) {
-        return repo.findTop10ByTelegramUserIdOrderByExpenseDateDesc(userId);
+    private static String updateKey(int index) {
+        Integer updateId = UpdateTrace.currentUpdateId();
+        return updateId != null ? "tg:" + updateId + ":" + index : null;
     }
-}
 
+    /** Следующие сообщения разбираются без контекста — после /start. */
+    public void resetConversation(Long userId) {
+        conversations.clear(userId);
+    }
+
+    @Transactional(readOnly = true)
+    public List<ExpenseSummary> getLastExpenses(Long userId, int limit) {
+        return repo.findRecent(userId, PageRequest.of(0, limit));
+    }
+
+    /** Страница истории, идущая сразу за записью {@code (beforeDate, beforeId)}. */
+    @Transactional(readOnly = true)
+    public List<ExpenseSummary> getExpensesBefore(Long userId, OffsetDateTime beforeDate, Long beforeId, int limit) {
+        return repo.findRecentBefore(userId, beforeDate, beforeId, PageRequest.of(0, limit));
+    }
+}
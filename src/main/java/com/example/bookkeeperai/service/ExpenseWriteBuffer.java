@@ -0,0 +1,276 @@
+package com.example.bookkeeperai.service;
+
+import com.example.bookkeeperai.entity.Expense;
+import com.example.bookkeeperai.fx.CurrencyConverter;
+import com.example.bookkeeperai.repository.ExpenseRepository;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Копит расходы и пишет их пачками в одной транзакции — Hibernate отправляет
+ * их JDBC-батчем (id берутся из pooled-последовательности, без round-trip на строку).
+ *
+ * Пачка уходит, когда набралось {@code batch-size} записей или прошло
+ * {@code flush-interval} с первой записи пачки. Запись идёт в отдельном потоке,
+ * вызывающий получает future.
+ */
+@Component
+@Slf4j
+public class ExpenseWriteBuffer {
+
+    private record Pending(Expense expense, CompletableFuture<Expense> result) {
+    }
+
+    /** Насколько может разойтись дата траты у повторной обработки того же сообщения. */
+    private static final Duration SAME_MESSAGE_DATE_DRIFT = Duration.ofDays(2);
+
+    private final ExpenseRepository repo;
+    private final RollupService rollups;
+    private final CurrencyConverter converter;
+    private final TransactionTemplate tx;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final Duration offerTimeout;
+    private final BlockingQueue<Pending> queue;
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    private final DistributionSummary batchSizes;
+    private final Timer flushTimer;
+
+    public ExpenseWriteBuffer(ExpenseRepository repo,
+                              RollupService rollups,
+                              CurrencyConverter converter,
+                              PlatformTransactionManager transactionManager,
+                              @Value("${expenses.write-buffer.batch-size}") int batchSize,
+                              @Value("${expenses.write-buffer.flush-interval}") Duration flushInterval,
+                              @Value("${expenses.write-buffer.capacity}") int capacity,
+                              @Value("${expenses.write-buffer.offer-timeout}") Duration offerTimeout,
+                              MeterRegistry meterRegistry) {
+        this.repo = repo;
+        this.rollups = rollups;
+        this.converter = converter;
+        this.tx = new TransactionTemplate(transactionManager);
+        this.batchSize = batchSize;
+        this.flushIntervalNanos = flushInterval.toNanos();
+        this.offerTimeout = offerTimeout;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+
+        Gauge.builder("bookkeeper.expenses.write.queue", queue, BlockingQueue::size)
+                .description("Расходы, ожидающие записи в БД")
+                .register(meterRegistry);
+        this.batchSizes = DistributionSummary.builder("bookkeeper.expenses.write.batch")
+                .description("Размер пачки записи расходов")
+                .register(meterRegistry);
+        this.flushTimer = Timer.builder("bookkeeper.expenses.write.flush")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+
+        this.writer = new Thread(this::run, "expense-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    public CompletableFuture<Expense> submit(Expense expense) {
+        CompletableFuture<Expense> result = new CompletableFuture<>();
+        try {
+            if (!running || !queue.offer(new Pending(expense, result), offerTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                result.completeExceptionally(new IllegalStateException("Очередь записи расходов переполнена"));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    private void run() {
+        List<Pending> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                Pending first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+
+                long deadline = System.nanoTime() + flushIntervalNanos;
+                while (batch.size() < batchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    Pending next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                // остановка: дописываем то, что уже набрано
+                running = false;
+            }
+
+            if (!batch.isEmpty()) {
+                flush(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(List<Pending> batch) {
+        batchSizes.record(batch.size());
+        List<Expense> expenses = new ArrayList<>(batch.size());
+        batch.forEach(p -> expenses.add(p.expense()));
+
+        try {
+            List<Expense> saved = flushTimer.recordCallable(() -> save(expenses));
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).result().complete(saved.get(i));
+            }
+        } catch (Exception e) {
+            // Одна битая запись не должна ронять всю пачку — дописываем поштучно
+            log.warn("Пачка из {} расходов не записана, пишу поштучно", batch.size(), e);
+            for (Pending p : batch) {
+                try {
+                    p.result().complete(saveOne(p.expense()));
+                } catch (Exception single) {
+                    p.result().completeExceptionally(single);
+                }
+            }
+        }
+    }
+
+    /**
+     * Откатившаяся пачка уже раздала расходам id из последовательности: с id Spring Data
+     * сделал бы merge вместо persist, поэтому запись идёт копией без id.
+     */
+    private Expense saveOne(Expense expense) throws Exception {
+        try {
+            return save(List.of(unsaved(expense))).get(0);
+        } catch (Exception e) {
+            return resolveConflict(expense, e);
+        }
+    }
+
+    private static Expense unsaved(Expense expense) {
+        return expense.toBuilder().id(null).build();
+    }
+
+    /**
+     * Запись не прошла. Если у пользователя уже есть расход с тем же {@code importKey} из того же
+     * сообщения — это повторная обработка апдейта, возвращается записанный. Если ключ занят
+     * другим сообщением — Telegram выдал уже использованный update_id (он переиспользуется после
+     * недели без апдейтов), и расход пишется без ключа.
+     */
+    private Expense resolveConflict(Expense expense, Exception error) throws Exception {
+        if (expense.getImportKey() == null) {
+            throw error;
+        }
+        Expense existing = repo.findByTelegramUserIdAndImportKey(expense.getTelegramUserId(), expense.getImportKey())
+                .orElseThrow(() -> error);
+        if (sameMessage(existing, expense)) {
+            return existing;
+        }
+        log.warn("Ключ {} занят расходом {} из другого сообщения, пишу без ключа", expense.getImportKey(),
+                existing.getId());
+        return save(List.of(expense.toBuilder().id(null).importKey(null).build())).get(0);
+    }
+
+    /**
+     * Повтор того же сообщения: тот же источник, записанный текст начинается с этого
+     * (правка дописывает свой текст к исходному), дата траты почти та же —
+     * при повторе через сутки "вчера" сдвинется на день.
+     */
+    private static boolean sameMessage(Expense existing, Expense expense) {
+        return Objects.equals(existing.getSourceType(), expense.getSourceType())
+                && existing.getRawText() != null && expense.getRawText() != null
+                && existing.getRawText().startsWith(expense.getRawText())
+                && existing.getExpenseDate() != null && expense.getExpenseDate() != null
+                && Duration.between(existing.getExpenseDate(), expense.getExpenseDate()).abs()
+                        .compareTo(SAME_MESSAGE_DATE_DRIFT) <= 0;
+    }
+
+    /**
+     * Синхронная запись большой пачки в обход очереди (импорт выписки).
+     * Расходы, чей {@code importKey} у пользователя уже есть, пропускаются;
+     * проверка и запись идут под той же блокировкой, что и обычные пачки.
+     *
+     * @return реально записанные расходы
+     */
+    public List<Expense> saveImported(Long userId, List<Expense> expenses) {
+        if (expenses.isEmpty()) {
+            return List.of();
+        }
+        return rollups.locked(() -> tx.execute(status -> {
+            List<String> keys = expenses.stream()
+                    .map(Expense::getImportKey)
+                    .filter(Objects::nonNull)
+                    .toList();
+            Set<String> existing = keys.isEmpty() ? Set.of() : repo.findImportKeys(userId, keys);
+            List<Expense> fresh = existing.isEmpty()
+                    ? expenses
+                    : expenses.stream().filter(e -> !existing.contains(e.getImportKey())).toList();
+
+            fresh.forEach(converter::normalize);
+            List<Expense> saved = repo.saveAll(fresh);
+            rollups.add(saved);
+            return saved;
+        }));
+    }
+
+    /**
+     * Правка записанного расхода в обход очереди. Расход ищется только среди расходов
+     * пользователя; пересчёт в базовую валюту и перенос вклада в суммы — в той же
+     * транзакции и под той же блокировкой, что и обычные пачки.
+     */
+    public Expense update(Long userId, Long expenseId, Consumer<Expense> change) {
+        return rollups.locked(() -> tx.execute(status -> {
+            Expense expense = repo.findByIdAndTelegramUserId(expenseId, userId)
+                    .orElseThrow(() -> new IllegalStateException("Расход для исправления не найден"));
+            Expense before = expense.toBuilder().build();
+
+            change.accept(expense);
+            converter.normalize(expense);
+            Expense saved = repo.save(expense);
+            rollups.replace(before, saved);
+            return saved;
+        }));
+    }
+
+    /**
+     * Расходы и их вклад в суммы {@link RollupService} коммитятся вместе.
+     * Пересчёт в базовую валюту — под той же блокировкой, что и смена курсов
+     * в {@link com.example.bookkeeperai.fx.FxRateSync}, поэтому старый курс в БД не попадёт.
+     */
+    private List<Expense> save(List<Expense> expenses) {
+        return rollups.locked(() -> tx.execute(status -> {
+            expenses.forEach(converter::normalize);
+            List<Expense> saved = repo.saveAll(expenses);
+            rollups.add(saved);
+            return saved;
+        }));
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        writer.join(TimeUnit.SECONDS.toMillis(30));
+    }
+}
@@ -0,0 +1,32 @@
+package com.example.bookkeeperai.service;
+
+public enum ExportFormat {
+
+    CSV("csv", "text/csv"),
+    NDJSON("ndjson", "application/x-ndjson");
+
+    private final String extension;
+    private final String contentType;
+
+    ExportFormat(String extension, String contentType) {
+        this.extension = extension;
+        this.contentType = contentType;
+    }
+
+    public String contentType(boolean gzip) {
+        return gzip ? "application/gzip" : contentType + "; charset=UTF-8";
+    }
+
+    public String fileName(String baseName, boolean gzip) {
+        return baseName + "." + extension + (gzip ? ".gz" : "");
+    }
+
+    /** "csv", "json" или "ndjson" без учёта регистра. */
+    public static ExportFormat parse(String value) {
+        return switch (value.trim().toLowerCase()) {
+            case "csv" -> CSV;
+            case "json", "ndjson" -> NDJSON;
+            default -> throw new IllegalArgumentException("Неизвестный формат выгрузки: " + value);
+        };
+    }
+}
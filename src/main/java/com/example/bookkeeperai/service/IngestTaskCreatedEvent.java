@@ -0,0 +1,5 @@
+package com.example.bookkeeperai.service;
+
+/** Задача в очереди готова к разбору — будит {@link IngestWorker}, не дожидаясь планового опроса. */
+public record IngestTaskCreatedEvent(Long taskId) {
+}
@@ -0,0 +1,223 @@
+package com.example.bookkeeperai.service;
+
+import com.example.bookkeeperai.dto.IngestOutcome;
+import com.example.bookkeeperai.entity.IngestStatus;
+import com.example.bookkeeperai.entity.IngestTask;
+import com.example.bookkeeperai.metrics.PipelineMetrics;
+import com.example.bookkeeperai.repository.IngestTaskRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Разбирает задачи из очереди {@code ingest_tasks}: STT, LLM, сохранение расхода
+ * и правка сообщения "принято" результатом.
+ *
+ * Задачи захватываются условным update (PENDING → PROCESSING), поэтому опрос
+ * можно безопасно запускать из нескольких потоков. У одного пользователя в работе
+ * не больше одной задачи, задачи берутся по порядку поступления. Задачи, зависшие в PROCESSING
+ * дольше {@code processing-timeout} (упала JVM), возвращаются в очередь при старте
+ * и при каждом опросе.
+ */
+@Component
+@Slf4j
+public class IngestWorker {
+
+    private final IngestTaskRepository repo;
+    private final ExpenseService expenseService;
+    private final TelegramGateway telegram;
+    private final PipelineMetrics pipelineMetrics;
+
+    private final int workers;
+    private final int maxAttempts;
+    private final Duration retryDelay;
+    private final Duration processingTimeout;
+    private final ThreadPoolExecutor pool;
+
+    /** Взятые задачи: в пуле или ещё в его очереди. */
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong pendingCount = new AtomicLong();
+    private final AtomicLong lagMillis = new AtomicLong();
+    private final Timer processingTimer;
+    private final Counter done;
+    private final Counter retried;
+    private final Counter failed;
+
+    public IngestWorker(IngestTaskRepository repo,
+                        ExpenseService expenseService,
+                        TelegramGateway telegram,
+                        PipelineMetrics pipelineMetrics,
+                        @Value("${ingest.workers}") int workers,
+                        @Value("${ingest.max-attempts}") int maxAttempts,
+                        @Value("${ingest.retry-delay}") Duration retryDelay,
+                        @Value("${ingest.processing-timeout}") Duration processingTimeout,
+                        MeterRegistry meterRegistry) {
+        this.repo = repo;
+        this.expenseService = expenseService;
+        this.telegram = telegram;
+        this.pipelineMetrics = pipelineMetrics;
+        this.workers = workers;
+        this.maxAttempts = maxAttempts;
+        this.retryDelay = retryDelay;
+        this.processingTimeout = processingTimeout;
+        // поток сверх workers — под опрос, чтобы он не ждал за задачами и не занимал их поток
+        this.pool = new ThreadPoolExecutor(workers + 1, workers + 1, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), new CustomizableThreadFactory("ingest-worker-"));
+
+        Gauge.builder("bookkeeper.ingest.pending", pendingCount, AtomicLong::get)
+                .description("Задачи в очереди на разбор")
+                .register(meterRegistry);
+        TimeGauge.builder("bookkeeper.ingest.lag", lagMillis, TimeUnit.MILLISECONDS, AtomicLong::get)
+                .description("Возраст самой старой необработанной задачи")
+                .register(meterRegistry);
+        this.processingTimer = Timer.builder("bookkeeper.ingest.processing")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.done = outcome(meterRegistry, "done");
+        this.retried = outcome(meterRegistry, "retry");
+        this.failed = outcome(meterRegistry, "failed");
+    }
+
+    private static Counter outcome(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("bookkeeper.ingest.tasks")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void recoverOnStartup() {
+        int requeued = requeueStale();
+        if (requeued > 0) {
+            log.warn("После рестарта возвращено в очередь задач: {}", requeued);
+        }
+        pool.execute(this::poll);
+    }
+
+    @EventListener
+    public void onTaskCreated(IngestTaskCreatedEvent event) {
+        pool.execute(this::poll);
+    }
+
+    @Scheduled(fixedDelayString = "${ingest.poll-interval}")
+    public void scheduledPoll() {
+        requeueStale();
+        poll();
+        refreshMetrics();
+    }
+
+    /**
+     * Свободные слоты считаются по взятым задачам, а не по занятым потокам пула:
+     * сам опрос тоже идёт в пуле и слот задачи занимать не должен.
+     */
+    private synchronized void poll() {
+        int free = workers - inFlight.get();
+        if (free <= 0) {
+            return;
+        }
+
+        OffsetDateTime now = OffsetDateTime.now();
+        List<IngestTask> tasks = repo.findReady(now, PageRequest.of(0, free));
+        for (IngestTask task : tasks) {
+            if (repo.claim(task.getId(), now) == 1) {
+                inFlight.incrementAndGet();
+                pool.execute(() -> {
+                    try {
+                        pipelineMetrics.traced(task.getUpdateId(), () -> process(task));
+                    } finally {
+                        inFlight.decrementAndGet();
+                    }
+                });
+            }
+        }
+    }
+
+    private void process(IngestTask task) {
+        Timer.Sample sample = Timer.start();
+        try {
+            IngestOutcome outcome = switch (task.getSourceType()) {
+                case "VOICE" -> expenseService.processVoice(
+                        task.getTelegramUserId(),
+                        task.getVoiceFileUniqueId(),
+                        () -> telegram.openVoice(task.getVoiceFileId(), task.getVoiceFileSize()),
+                        task.getVoiceDuration() != null ? task.getVoiceDuration() : 0);
+                default -> expenseService.processText(task.getTelegramUserId(), task.getText());
+            };
+            IngestTask finished = finish(task, IngestStatus.DONE, null);
+            done.increment();
+            telegram.reportDone(finished, outcome);
+        } catch (Exception e) {
+            handleFailure(task, e);
+        } finally {
+            sample.stop(processingTimer);
+        }
+    }
+
+    private void handleFailure(IngestTask task, Exception e) {
+        int attempts = task.getAttempts() + 1;
+        String reason = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+
+        if (attempts < maxAttempts) {
+            log.warn("Задача {} не обработана (попытка {}), повторим: {}", task.getId(), attempts, reason);
+            retried.increment();
+            task.setAttempts(attempts);
+            task.setAvailableAt(OffsetDateTime.now().plus(retryDelay.multipliedBy(attempts)));
+            finish(task, IngestStatus.PENDING, reason);
+            return;
+        }
+
+        log.error("Задача {} не обработана после {} попыток", task.getId(), attempts, e);
+        failed.increment();
+        task.setAttempts(attempts);
+        IngestTask finished = finish(task, IngestStatus.FAILED, reason);
+        telegram.reportFailed(finished, reason);
+    }
+
+    /**
+     * Сохраняет итог точечным update и перечитывает задачу: пока шла обработка,
+     * бот мог дописать в неё id сообщения "принято".
+     */
+    private IngestTask finish(IngestTask task, IngestStatus status, String error) {
+        String lastError = error != null && error.length() > 1000 ? error.substring(0, 1000) : error;
+        repo.finish(task.getId(), status, task.getAttempts(), task.getAvailableAt(), lastError, OffsetDateTime.now());
+        return repo.findById(task.getId()).orElse(task);
+    }
+
+    private int requeueStale() {
+        OffsetDateTime now = OffsetDateTime.now();
+        return repo.requeueStale(now.minus(processingTimeout), now);
+    }
+
+    private void refreshMetrics() {
+        pendingCount.set(repo.countByStatus(IngestStatus.PENDING));
+        lagMillis.set(repo.findFirstByStatusOrderByIdAsc(IngestStatus.PENDING)
+                .map(t -> Duration.between(t.getCreatedAt(), OffsetDateTime.now()).toMillis())
+                .orElse(0L));
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        pool.shutdown();
+        // незавершённые задачи останутся в PROCESSING и вернутся в очередь после рестарта
+        pool.awaitTermination(30, TimeUnit.SECONDS);
+    }
+}
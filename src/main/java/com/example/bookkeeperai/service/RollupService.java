@@ -0,0 +1,283 @@
+package com.example.bookkeeperai.service;
+
+import com.example.bookkeeperai.dto.CategoryTotal;
+import com.example.bookkeeperai.dto.ExpenseSummary;
+import com.example.bookkeeperai.dto.PeriodTotal;
+import com.example.bookkeeperai.dto.UnconvertedTotal;
+import com.example.bookkeeperai.entity.Expense;
+import com.example.bookkeeperai.entity.ExpenseRollup;
+import com.example.bookkeeperai.entity.RollupGranularity;
+import com.example.bookkeeperai.repository.ExpenseRepository;
+import com.example.bookkeeperai.repository.ExpenseRollupRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Pageable;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Суммы трат по дням и месяцам (таблица {@code expense_rollups}).
+ *
+ * Бакет хранит сумму в валюте расходов и в базовой валюте ({@code fx.base-currency});
+ * расходы, для которых нет курса, в базовую не входят и учитываются отдельно —
+ * отчёт показывает их в исходной валюте, а не занижает итог.
+ * Бакеты обновляются в той же транзакции, что и запись расходов, поэтому отчёты
+ * читают O(бакетов), а не O(расходов). Границы дней считаются в зоне {@code reports.zone}.
+ *
+ * Запись расходов и пересборка сериализуются через {@link #locked}: пересборка
+ * пользователя не пересечётся с незакоммиченной пачкой его расходов. Замок — строка
+ * в БД, поэтому он действует и между экземплярами бота; локальная блокировка
+ * только избавляет потоки одного экземпляра от ожидания на строке.
+ */
+@Service
+@Slf4j
+public class RollupService {
+
+    private record Totals(BigDecimal amount, BigDecimal amountBase, BigDecimal unconverted, long count) {
+
+        static Totals sum(Totals a, Totals b) {
+            return new Totals(a.amount().add(b.amount()), a.amountBase().add(b.amountBase()),
+                    a.unconverted().add(b.unconverted()), a.count() + b.count());
+        }
+
+        boolean isZero() {
+            return count == 0 && amount.signum() == 0 && amountBase.signum() == 0 && unconverted.signum() == 0;
+        }
+
+        Totals negate() {
+            return new Totals(amount.negate(), amountBase.negate(), unconverted.negate(), -count);
+        }
+
+        ExpenseRollup toRollup(ExpenseRollup.Key key) {
+            return new ExpenseRollup(key, amount, amountBase, unconverted, count);
+        }
+    }
+
+    private final ExpenseRepository expenseRepo;
+    private final ExpenseRollupRepository rollupRepo;
+    private final TransactionTemplate tx;
+    private final ZoneId zone;
+    private final String baseCurrency;
+    private final boolean backfillOnStartup;
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final AtomicBoolean rebuilding = new AtomicBoolean();
+    private final Timer rebuildTimer;
+
+    public RollupService(ExpenseRepository expenseRepo,
+                         ExpenseRollupRepository rollupRepo,
+                         PlatformTransactionManager transactionManager,
+                         @Value("${reports.zone}") ZoneId zone,
+                         @Value("${fx.base-currency}") String baseCurrency,
+                         @Value("${reports.rollup-rebuild.backfill-on-startup}") boolean backfillOnStartup,
+                         MeterRegistry meterRegistry) {
+        this.expenseRepo = expenseRepo;
+        this.rollupRepo = rollupRepo;
+        this.tx = new TransactionTemplate(transactionManager);
+        this.zone = zone;
+        this.baseCurrency = baseCurrency;
+        this.backfillOnStartup = backfillOnStartup;
+        this.rebuildTimer = Timer.builder("bookkeeper.rollups.rebuild")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Выполняет запись расходов под общей блокировкой с пересборкой. Транзакция открывается
+     * здесь и первой берёт строку-замок в БД; транзакции внутри {@code action}
+     * присоединяются к ней, замок держится до её коммита.
+     */
+    public <T> T locked(Supplier<T> action) {
+        writeLock.lock();
+        try {
+            return tx.execute(status -> {
+                rollupRepo.lockForWrite();
+                return action.get();
+            });
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Добавляет сохранённые расходы в бакеты. Вызывается внутри транзакции записи;
+     * одинаковые бакеты пачки сначала складываются в памяти — один update на бакет.
+     */
+    public void add(List<Expense> expenses) {
+        Map<ExpenseRollup.Key, Totals> buckets = new HashMap<>();
+        expenses.forEach(e -> accumulate(buckets, e));
+        buckets.forEach((key, totals) -> {
+            if (rollupRepo.increment(key, totals.amount(), totals.amountBase(), totals.unconverted(), totals.count()) == 0) {
+                rollupRepo.save(totals.toRollup(key));
+            }
+        });
+    }
+
+    /**
+     * Переносит вклад исправленного расхода: {@code before} — его копия до правки.
+     * Вызывается внутри транзакции правки. Разница считается в памяти — если
+     * поменялась только сумма, это один update на бакет; опустевшие бакеты удаляются.
+     */
+    public void replace(Expense before, Expense after) {
+        Map<ExpenseRollup.Key, Totals> removed = new HashMap<>();
+        accumulate(removed, before);
+        Map<ExpenseRollup.Key, Totals> buckets = new HashMap<>();
+        accumulate(buckets, after);
+        removed.forEach((key, totals) -> buckets.merge(key, totals.negate(), Totals::sum));
+
+        buckets.forEach((key, delta) -> {
+            if (delta.isZero()) {
+                return;
+            }
+            if (rollupRepo.increment(key, delta.amount(), delta.amountBase(), delta.unconverted(), delta.count()) == 0) {
+                if (delta.count() > 0) {
+                    rollupRepo.save(delta.toRollup(key));
+                } else {
+                    // бакета нет — суммы и так разошлись с расходами, их поправит пересборка
+                    log.warn("Бакет {} не найден при правке расхода {}", key, after.getId());
+                }
+            } else if (delta.count() < 0) {
+                rollupRepo.deleteIfEmpty(key);
+            }
+        });
+    }
+
+    /** Валюта, в которой считаются {@link PeriodTotal#getTotalBase()}. */
+    public String baseCurrency() {
+        return baseCurrency;
+    }
+
+    public YearMonth currentMonth() {
+        return YearMonth.now(zone);
+    }
+
+    @Transactional(readOnly = true)
+    public List<CategoryTotal> monthByCategory(Long userId, YearMonth month) {
+        LocalDate start = month.atDay(1);
+        return rollupRepo.sumByCategory(userId, RollupGranularity.MONTH, start, start);
+    }
+
+    /** Суммы по месяцам, начиная с текущего и на {@code months} назад. */
+    @Transactional(readOnly = true)
+    public List<PeriodTotal> monthlyTotals(Long userId, int months) {
+        YearMonth current = currentMonth();
+        return rollupRepo.sumByPeriod(userId, RollupGranularity.MONTH,
+                current.minusMonths(months - 1).atDay(1), current.atDay(1));
+    }
+
+    @Transactional(readOnly = true)
+    public List<PeriodTotal> dailyTotals(Long userId, int days) {
+        LocalDate today = LocalDate.now(zone);
+        return rollupRepo.sumByPeriod(userId, RollupGranularity.DAY, today.minusDays(days - 1), today);
+    }
+
+    /** Суммы без курса за те же месяцы, что {@link #monthlyTotals}, по валютам. */
+    @Transactional(readOnly = true)
+    public List<UnconvertedTotal> monthlyUnconverted(Long userId, int months) {
+        YearMonth current = currentMonth();
+        return rollupRepo.sumUnconverted(userId, RollupGranularity.MONTH,
+                current.minusMonths(months - 1).atDay(1), current.atDay(1));
+    }
+
+    /** Суммы без курса за те же дни, что {@link #dailyTotals}, по валютам. */
+    @Transactional(readOnly = true)
+    public List<UnconvertedTotal> dailyUnconverted(Long userId, int days) {
+        LocalDate today = LocalDate.now(zone);
+        return rollupRepo.sumUnconverted(userId, RollupGranularity.DAY, today.minusDays(days - 1), today);
+    }
+
+    /**
+     * Первый старт после появления таблицы: бакеты пусты, а расходы уже есть — заполняем.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillOnStartup() {
+        if (backfillOnStartup && rollupRepo.count() == 0 && expenseRepo.count() > 0) {
+            Thread backfill = new Thread(this::rebuildAll, "rollup-backfill");
+            backfill.setDaemon(true);
+            backfill.start();
+        }
+    }
+
+    @Scheduled(cron = "${reports.rollup-rebuild.cron}", zone = "${reports.zone}")
+    public void scheduledRebuild() {
+        rebuildAll();
+    }
+
+    /**
+     * Пересчитывает бакеты всех пользователей из таблицы расходов. Каждый пользователь —
+     * отдельная короткая транзакция, запись новых расходов между ними не блокируется.
+     */
+    public void rebuildAll() {
+        if (!rebuilding.compareAndSet(false, true)) {
+            log.info("Пересборка сумм уже идёт");
+            return;
+        }
+        try {
+            rebuildTimer.record(() -> {
+                List<Long> users = expenseRepo.findAllUserIds();
+                log.info("Пересборка сумм расходов: пользователей {}", users.size());
+                users.forEach(this::rebuildUser);
+                log.info("Пересборка сумм расходов завершена");
+            });
+        } catch (RuntimeException e) {
+            log.error("Пересборка сумм расходов не удалась", e);
+        } finally {
+            rebuilding.set(false);
+        }
+    }
+
+    public void rebuildUser(Long userId) {
+        locked(() -> tx.execute(status -> {
+            rollupRepo.deleteByUser(userId);
+
+            Map<ExpenseRollup.Key, Totals> buckets = new HashMap<>();
+            for (ExpenseSummary e : expenseRepo.findRecent(userId, Pageable.unpaged())) {
+                accumulate(buckets, userId, e.getAmount(), e.getAmountInBaseCurrency(),
+                        e.getCurrency(), e.getCategory(), e.getExpenseDate());
+            }
+            buckets.forEach((key, totals) -> rollupRepo.save(totals.toRollup(key)));
+            return buckets.size();
+        }));
+    }
+
+    private void accumulate(Map<ExpenseRollup.Key, Totals> buckets, Expense e) {
+        accumulate(buckets, e.getTelegramUserId(), e.getAmount(), e.getAmountInBaseCurrency(),
+                e.getCurrency(), e.getCategory(), e.getExpenseDate());
+    }
+
+    private void accumulate(Map<ExpenseRollup.Key, Totals> buckets, Long userId, BigDecimal amount,
+                            BigDecimal amountBase, String currency, String category, OffsetDateTime date) {
+        if (userId == null || amount == null || date == null) {
+            return;
+        }
+        LocalDate day = date.atZoneSameInstant(zone).toLocalDate();
+        String cur = currency != null ? currency : baseCurrency;
+        String cat = category != null ? category : "other";
+        // без курса сумма не входит в базовую, а копится отдельно в своей валюте
+        Totals totals = amountBase != null
+                ? new Totals(amount, amountBase, BigDecimal.ZERO, 1)
+                : new Totals(amount, BigDecimal.ZERO, amount, 1);
+
+        buckets.merge(new ExpenseRollup.Key(userId, RollupGranularity.DAY, day, cat, cur),
+                totals, Totals::sum);
+        buckets.merge(new ExpenseRollup.Key(userId, RollupGranularity.MONTH, day.withDayOfMonth(1), cat, cur),
+                totals, Totals::sum);
+    }
+}
@@ -0,0 +1,322 @@
+package com.example.bookkeeperai.service;
+
+import com.example.bookkeeperai.ai.NlpParserService;
+import com.example.bookkeeperai.ai.ParseResultCache;
+import com.example.bookkeeperai.ai.RuleBasedExpenseParser;
+import com.example.bookkeeperai.dto.BankStatementRow;
+import com.example.bookkeeperai.dto.ImportReport;
+import com.example.bookkeeperai.dto.ParsedExpense;
+import com.example.bookkeeperai.entity.Expense;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Импорт банковской выписки (CSV).
+ *
+ * Файл читается потоком. Строки с категорией из выписки разбираются локальным
+ * парсером, без LLM; строки только с описанием классифицируются через
+ * {@link NlpParserService} параллельно, не больше {@code import.parallelism} запросов
+ * одновременно. Одинаковые описания внутри выписки классифицируются один раз.
+ * Расходы пишутся пачками по {@code import.batch-size} с отсевом уже импортированных.
+ */
+@Service
+@Slf4j
+public class StatementImportService {
+
+    /** Сколько разных описаний помнить за один импорт. */
+    private static final int MAX_MEMOIZED_DESCRIPTIONS = 50_000;
+    private static final String BUSY = "Сейчас уже идёт импорт, попробуйте чуть позже";
+
+    private record Pending(BankStatementRow row, String importKey, CompletableFuture<ParsedExpense> classification) {
+    }
+
+    /** Счётчики одного импорта; меняются только потоком импорта. */
+    private static final class Progress {
+        final long startedAt = System.nanoTime();
+        long rowsRead;
+        long imported;
+        long duplicates;
+        long skipped;
+        long invalid;
+
+        ImportReport snapshot(boolean finished) {
+            long elapsed = Duration.ofNanos(System.nanoTime() - startedAt).toMillis();
+            return new ImportReport(rowsRead, imported, duplicates, skipped, invalid, elapsed, finished);
+        }
+    }
+
+    private final RuleBasedExpenseParser ruleParser;
+    private final NlpParserService nlpParser;
+    private final ExpenseWriteBuffer writeBuffer;
+    private final ZoneId zone;
+    private final int batchSize;
+    private final int parallelism;
+    private final long progressIntervalNanos;
+    private final Semaphore runningImports;
+    private final ExecutorService importers;
+
+    private final Timer importTimer;
+    private final Counter importedRows;
+    private final Counter duplicateRows;
+    private final Counter skippedRows;
+    private final Counter invalidRows;
+    private final Counter classificationFailures;
+
+    public StatementImportService(RuleBasedExpenseParser ruleParser,
+                                  NlpParserService nlpParser,
+                                  ExpenseWriteBuffer writeBuffer,
+                                  @Value("${reports.zone}") ZoneId zone,
+                                  @Value("${import.batch-size}") int batchSize,
+                                  @Value("${import.parallelism}") int parallelism,
+                                  @Value("${import.progress-interval}") Duration progressInterval,
+                                  @Value("${import.max-concurrent}") int maxConcurrent,
+                                  MeterRegistry meterRegistry) {
+        this.ruleParser = ruleParser;
+        this.nlpParser = nlpParser;
+        this.writeBuffer = writeBuffer;
+        this.zone = zone;
+        this.batchSize = batchSize;
+        this.parallelism = parallelism;
+        this.progressIntervalNanos = progressInterval.toNanos();
+        this.runningImports = new Semaphore(maxConcurrent);
+        this.importers = Executors.newFixedThreadPool(maxConcurrent, new CustomizableThreadFactory("statement-import-"));
+
+        this.importTimer = Timer.builder("bookkeeper.import")
+                .register(meterRegistry);
+        this.importedRows = rows(meterRegistry, "imported");
+        this.duplicateRows = rows(meterRegistry, "duplicate");
+        this.skippedRows = rows(meterRegistry, "skipped");
+        this.invalidRows = rows(meterRegistry, "invalid");
+        this.classificationFailures = Counter.builder("bookkeeper.import.classification.failures")
+                .register(meterRegistry);
+    }
+
+    private static Counter rows(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("bookkeeper.import.rows")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Импортирует выписку из {@code in} (поток не закрывает). {@code progress} вызывается
+     * не чаще раза в {@code import.progress-interval} и один раз в конце.
+     *
+     * @throws IllegalStateException    уже идёт {@code import.max-concurrent} импортов
+     * @throws IllegalArgumentException файл не похож на выписку
+     */
+    public ImportReport importStatement(Long userId, InputStream in, Consumer<ImportReport> progress) throws IOException {
+        if (!runningImports.tryAcquire()) {
+            throw new IllegalStateException(BUSY);
+        }
+        try {
+            return timedRun(userId, in, progress);
+        } finally {
+            runningImports.release();
+        }
+    }
+
+    /**
+     * То же в отдельном потоке импорта: поток бота на время импорта не занимается.
+     * {@code source} открывается и закрывается уже в потоке импорта. Ошибки —
+     * те же, что у {@link #importStatement}, внутри future.
+     */
+    public CompletableFuture<ImportReport> importStatementAsync(Long userId,
+                                                                Callable<InputStream> source,
+                                                                Consumer<ImportReport> progress) {
+        if (!runningImports.tryAcquire()) {
+            return CompletableFuture.failedFuture(new IllegalStateException(BUSY));
+        }
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                try (InputStream in = source.call()) {
+                    return timedRun(userId, in, progress);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                } catch (RuntimeException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new CompletionException(e);
+                }
+            }, importers).whenComplete((report, error) -> runningImports.release());
+        } catch (RejectedExecutionException e) {
+            runningImports.release();
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private ImportReport timedRun(Long userId, InputStream in, Consumer<ImportReport> progress) throws IOException {
+        Timer.Sample sample = Timer.start();
+        try {
+            ImportReport report = run(userId, in, progress);
+            log.info("Импорт выписки пользователя {}: {} строк, записано {}, дублей {}, пропущено {}, ошибок {}, {} строк/с",
+                    userId, report.rowsRead(), report.imported(), report.duplicates(),
+                    report.skipped(), report.invalid(), report.rowsPerSecond());
+            return report;
+        } finally {
+            sample.stop(importTimer);
+        }
+    }
+
+    private ImportReport run(Long userId, InputStream in, Consumer<ImportReport> progress) throws IOException {
+        Progress state = new Progress();
+        Semaphore permits = new Semaphore(parallelism);
+        Map<String, CompletableFuture<ParsedExpense>> memo = new HashMap<>();
+        Map<String, Integer> occurrences = new HashMap<>();
+        List<Pending> batch = new ArrayList<>(batchSize);
+        long nextProgressAt = System.nanoTime() + progressIntervalNanos;
+
+        BankStatementReader reader = new BankStatementReader(in, zone);
+        BankStatementRow row;
+        while ((row = reader.next()) != null) {
+            state.rowsRead++;
+            if (row.error() != null) {
+                state.invalid++;
+                invalidRows.increment();
+                log.debug("Строка {} выписки пропущена: {}", row.lineNumber(), row.error());
+            } else if (row.income() || row.amount().signum() == 0) {
+                state.skipped++;
+                skippedRows.increment();
+            } else {
+                batch.add(new Pending(row, importKey(row, occurrences), classify(row, memo, permits)));
+                if (batch.size() >= batchSize) {
+                    persist(userId, batch, state);
+                    batch.clear();
+                }
+            }
+
+            if (System.nanoTime() >= nextProgressAt) {
+                progress.accept(state.snapshot(false));
+                nextProgressAt = System.nanoTime() + progressIntervalNanos;
+            }
+        }
+        persist(userId, batch, state);
+
+        ImportReport report = state.snapshot(true);
+        progress.accept(report);
+        return report;
+    }
+
+    /**
+     * Категория из выписки → локальный словарь. Только описание → {@link NlpParserService}
+     * (сумма дописывается к тексту, чтобы уверенный локальный разбор срабатывал
+     * так же, как на сообщениях пользователей).
+     */
+    private CompletableFuture<ParsedExpense> classify(BankStatementRow row,
+                                                      Map<String, CompletableFuture<ParsedExpense>> memo,
+                                                      Semaphore permits) {
+        if (row.category() != null || row.description() == null) {
+            String text = (row.category() != null ? row.category() : "")
+                    + (row.description() != null ? " " + row.description() : "");
+            return CompletableFuture.completedFuture(ruleParser.parse(text));
+        }
+
+        String key = ParseResultCache.normalize(row.description());
+        CompletableFuture<ParsedExpense> known = memo.get(key);
+        if (known != null) {
+            return known;
+        }
+
+        String text = row.description() + " " + row.amount().toPlainString()
+                + (row.currency() != null ? " " + row.currency() : "");
+        permits.acquireUninterruptibly();
+        CompletableFuture<ParsedExpense> classification;
+        try {
+            classification = nlpParser.parseAsync(text);
+        } catch (RuntimeException e) {
+            classification = CompletableFuture.failedFuture(e);
+        }
+        classification = classification
+                .whenComplete((parsed, error) -> permits.release())
+                .exceptionally(error -> {
+                    classificationFailures.increment();
+                    log.debug("Не удалось классифицировать \"{}\": {}", row.description(), error.getMessage());
+                    return ruleParser.parse(text);
+                });
+        if (memo.size() < MAX_MEMOIZED_DESCRIPTIONS) {
+            memo.put(key, classification);
+        }
+        return classification;
+    }
+
+    private void persist(Long userId, List<Pending> batch, Progress state) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        List<Expense> expenses = new ArrayList<>(batch.size());
+        for (Pending p : batch) {
+            ParsedExpense parsed = p.classification().join();
+            BankStatementRow row = p.row();
+            expenses.add(Expense.builder()
+                    .telegramUserId(userId)
+                    .amount(row.amount())
+                    .currency(row.currency())
+                    .category(parsed.getCategory() != null ? parsed.getCategory() : "other")
+                    .description(row.description())
+                    .place(parsed.getPlace())
+                    .expenseDate(row.date())
+                    .rawText(row.rawLine())
+                    .sourceType("IMPORT")
+                    .importKey(p.importKey())
+                    .build());
+        }
+
+        int saved = writeBuffer.saveImported(userId, expenses).size();
+        state.imported += saved;
+        state.duplicates += expenses.size() - saved;
+        importedRows.increment(saved);
+        duplicateRows.increment(expenses.size() - saved);
+    }
+
+    /**
+     * Отпечаток операции: дата, сумма, валюта, описание и номер повтора такой же
+     * строки в этой выписке — две одинаковые покупки подряд не склеятся,
+     * а повторный импорт даст те же ключи.
+     */
+    static String importKey(BankStatementRow row, Map<String, Integer> occurrences) {
+        String base = row.date().toInstant() + "|" + row.amount().stripTrailingZeros().toPlainString()
+                + "|" + row.currency() + "|" + row.description();
+        int occurrence = occurrences.merge(base, 1, Integer::sum);
+        try {
+            MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+            byte[] hash = sha256.digest((base + "#" + occurrence).getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        importers.shutdown();
+        importers.awaitTermination(30, TimeUnit.SECONDS);
+    }
+}
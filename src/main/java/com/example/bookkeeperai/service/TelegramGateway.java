@@ -0,0 +1,18 @@
+package com.example.bookkeeperai.service;
+
+import com.example.bookkeeperai.ai.AudioSource;
+import com.example.bookkeeperai.dto.IngestOutcome;
+import com.example.bookkeeperai.entity.IngestTask;
+
+/**
+ * То, что воркерам очереди нужно от Telegram. Реализуется ботом.
+ */
+public interface TelegramGateway {
+
+    /** Голосовое по file_id, читается потоком при открытии. */
+    AudioSource openVoice(String fileId, Long fileSize) throws Exception;
+
+    void reportDone(IngestTask task, IngestOutcome outcome);
+
+    void reportFailed(IngestTask task, String reason);
+}
@@ -0,0 +1,85 @@
+package com.example.bookkeeperai.telegram;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.meta.TelegramBotsApi;
+import org.telegram.telegrambots.meta.api.methods.updates.SetWebhook;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.updatesreceivers.DefaultBotSession;
+
+import java.util.List;
+
+/**
+ * Подключает бота к Telegram после старта приложения в режиме {@code telegram.mode}.
+ *
+ * В режиме webhook регистрация адреса идемпотентна, её можно делать с каждого
+ * экземпляра или только с одного ({@code telegram.webhook.register}).
+ * Возврат к long polling — смена режима: при старте polling webhook снимается.
+ */
+@Component
+@Slf4j
+public class BotRegistration {
+
+    private final ExpenseBot bot;
+    private final TelegramMode mode;
+    private final String webhookUrl;
+    private final String secretToken;
+    private final int maxConnections;
+    private final boolean registerWebhook;
+
+    public BotRegistration(ExpenseBot bot,
+                           @Value("${telegram.mode}") String mode,
+                           @Value("${telegram.webhook.url}") String webhookUrl,
+                           @Value("${telegram.webhook.secret}") String secretToken,
+                           @Value("${telegram.webhook.max-connections}") int maxConnections,
+                           @Value("${telegram.webhook.register}") boolean registerWebhook) {
+        this.bot = bot;
+        this.mode = TelegramMode.parse(mode);
+        this.webhookUrl = webhookUrl;
+        this.secretToken = secretToken;
+        this.maxConnections = maxConnections;
+        this.registerWebhook = registerWebhook;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void register() {
+        try {
+            switch (mode) {
+                case POLLING -> {
+                    new TelegramBotsApi(DefaultBotSession.class).registerBot(bot);
+                    log.info("Бот {} принимает апдейты через long polling", bot.getBotUsername());
+                }
+                case WEBHOOK -> registerWebhook();
+                case NONE -> log.info("Приём апдейтов Telegram выключен (telegram.mode=none)");
+            }
+        } catch (TelegramApiException e) {
+            log.error("Не удалось подключить бота к Telegram", e);
+        }
+    }
+
+    private void registerWebhook() throws TelegramApiException {
+        if (secretToken.isBlank()) {
+            log.warn("telegram.webhook.secret не задан — webhook примет запрос от кого угодно");
+        }
+        if (!registerWebhook) {
+            log.info("Бот {} принимает апдейты через webhook, адрес регистрирует другой экземпляр",
+                    bot.getBotUsername());
+            return;
+        }
+        if (webhookUrl.isBlank()) {
+            throw new IllegalStateException("Для telegram.mode=webhook нужен telegram.webhook.url");
+        }
+
+        SetWebhook setWebhook = SetWebhook.builder()
+                .url(webhookUrl)
+                .maxConnections(maxConnections)
+                .allowedUpdates(List.of("message", "callback_query"))
+                .secretToken(secretToken.isBlank() ? null : secretToken)
+                .build();
+        bot.execute(setWebhook);
+        log.info("Бот {} принимает апдейты через webhook {}", bot.getBotUsername(), webhookUrl);
+    }
+}
@@ -1,33 +1,111 @@
 package com.example.bookkeeperai.telegram;
 
+import com.example.bookkeeperai.ai.AudioSource;
+import com.example.bookkeeperai.ai.Futures;
+import com.example.bookkeeperai.dto.CategoryTotal;
+import com.example.bookkeeperai.dto.ExpenseSummary;
+import com.example.bookkeeperai.dto.ImportReport;
+import com.example.bookkeeperai.dto.IngestOutcome;
+import com.example.bookkeeperai.dto.PeriodTotal;
+import com.example.bookkeeperai.dto.UnconvertedTotal;
 import com.example.bookkeeperai.entity.Expense;
+import com.example.bookkeeperai.entity.IngestTask;
+import com.example.bookkeeperai.metrics.PipelineMetrics;
+import com.example.bookkeeperai.metrics.Stage;
+import com.example.bookkeeperai.service.ExpenseExportService;
 import com.example.bookkeeperai.service.ExpenseService;
+import com.example.bookkeeperai.service.ExportFormat;
+import com.example.bookkeeperai.service.RollupService;
+import com.example.bookkeeperai.service.StatementImportService;
+import com.example.bookkeeperai.service.TelegramGateway;
+import com.example.bookkeeperai.web.ApiToken;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.bots.DefaultBotOptions;
 import org.telegram.telegrambots.bots.TelegramLongPollingBot;
+import org.telegram.telegrambots.meta.api.methods.AnswerCallbackQuery;
 import org.telegram.telegrambots.meta.api.methods.GetFile;
+import org.telegram.telegrambots.meta.api.methods.send.SendDocument;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
 import org.telegram.telegrambots.meta.api.objects.*;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardButton;
 
-import java.io.InputStream;
-import java.net.URL;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 @Component
 @Slf4j
-public class ExpenseBot extends TelegramLongPollingBot {
+public class ExpenseBot extends TelegramLongPollingBot implements TelegramGateway {
+
+    private static final int HISTORY_PAGE_SIZE = 10;
+    /** callback_data кнопки "Ранее": {@code last|<дата последней записи>|<её id>}. */
+    private static final String HISTORY_CALLBACK = "last|";
+    private static final int STATS_MONTHS = 6;
+    private static final int STATS_DAYS = 7;
+    /** Лимит Bot API на загрузку файла ботом. */
+    private static final long TELEGRAM_UPLOAD_LIMIT = 50L * 1024 * 1024;
 
     private final String username;
     private final String token;
     private final ExpenseService expenseService;
+    private final RollupService rollupService;
+    private final ExpenseExportService exportService;
+    private final StatementImportService importService;
+    private final UpdateDispatcher dispatcher;
+    private final UpdateDeduplicator deduplicator;
+    private final TelegramFileDownloader fileDownloader;
+    private final ReplySender replies;
+    private final ApiToken apiToken;
+    private final PipelineMetrics pipelineMetrics;
 
     public ExpenseBot(@Value("${telegram.bot.username}") String username,
                       @Value("${telegram.bot.token}") String token,
-                      ExpenseService expenseService) {
+                      ExpenseService expenseService,
+                      RollupService rollupService,
+                      ExpenseExportService exportService,
+                      StatementImportService importService,
+                      UpdateDispatcher dispatcher,
+                      UpdateDeduplicator deduplicator,
+                      TelegramFileDownloader fileDownloader,
+                      ReplySender replies,
+                      @Value("${telegram.replies.sender-threads}") int senderThreads,
+                      ApiToken apiToken,
+                      PipelineMetrics pipelineMetrics) {
+        super(botOptions(senderThreads), token);
         this.username = username;
         this.token = token;
         this.expenseService = expenseService;
+        this.rollupService = rollupService;
+        this.exportService = exportService;
+        this.importService = importService;
+        this.dispatcher = dispatcher;
+        this.deduplicator = deduplicator;
+        this.fileDownloader = fileDownloader;
+        this.replies = replies;
+        this.apiToken = apiToken;
+        this.pipelineMetrics = pipelineMetrics;
+        replies.bind(this);
+    }
+
+    /** Потоки executeAsync: по умолчанию он один, и медленный запрос задерживал бы все ответы. */
+    private static DefaultBotOptions botOptions(int senderThreads) {
+        DefaultBotOptions options = new DefaultBotOptions();
+        options.setMaxThreads(senderThreads);
+        return options;
     }
 
     @Override
@@ -40,8 +118,34 @@ public class ExpenseBot extends TelegramLongPollingBot {
         return token;
     }
 
+    /** Апдейт из long polling. Повторить его Telegram не сможет — о перегрузке говорим в чат. */
     @Override
     public void onUpdateReceived(Update update) {
+        if (!accept(update)) {
+            sendSimpleMessage(chatIdOf(update), "Бот сейчас перегружен, попробуйте повторить чуть позже.");
+        }
+    }
+
+    /**
+     * Принимает апдейт в обработку и сразу возвращает управление: поток long polling
+     * или запрос webhook только раздаёт апдейты, вся работа — в диспетчере.
+     * Повторная доставка того же {@code update_id} отбрасывается.
+     *
+     * @return false, если диспетчер переполнен и апдейт не принят
+     */
+    public boolean accept(Update update) {
+        Long chatId = chatIdOf(update);
+        if (chatId == null || !deduplicator.firstDelivery(update.getUpdateId())) {
+            return true;
+        }
+        if (!dispatcher.dispatch(chatId, update.getUpdateId(), () -> processUpdate(update))) {
+            deduplicator.forget(update.getUpdateId());
+            return false;
+        }
+        return true;
+    }
+
+    private void processUpdate(Update update) {
         try {
             if (update.hasMessage()) {
                 Message msg = update.getMessage();
@@ -52,99 +156,429 @@ public class ExpenseBot extends TelegramLongPollingBot {
                     handleText(msg);
                 } else if (msg.hasVoice()) {
                     handleVoice(msg);
+                } else if (msg.hasDocument()) {
+                    handleDocument(msg);
                 }
+            } else if (update.hasCallbackQuery()) {
+                handleCallback(update.getCallbackQuery());
             }
         } catch (Exception e) {
             log.error("Error while processing update", e);
-            if (update.hasMessage()) {
-                sendSimpleMessage(update.getMessage().getChatId(),
-                        "Произошла ошибка: " + e.getMessage());
-            }
+            sendSimpleMessage(chatIdOf(update), "Произошла ошибка: " + e.getMessage());
+        }
+    }
+
+    private static Long chatIdOf(Update update) {
+        if (update.hasMessage()) {
+            return update.getMessage().getChatId();
         }
+        if (update.hasCallbackQuery() && update.getCallbackQuery().getMessage() != null) {
+            return update.getCallbackQuery().getMessage().getChatId();
+        }
+        return null;
     }
 
     private void handleCommand(Message msg) throws Exception {
-        String text = msg.getText();
+        String[] parts = msg.getText().trim().split("\\s+", 2);
+        String argument = parts.length > 1 ? parts[1] : null;
         Long chatId = msg.getChatId();
         Long userId = msg.getFrom().getId();
 
-        switch (text) {
-            case "/start" -> sendSimpleMessage(chatId,
-                    """
-                    Привет! Я бот для учета расходов.
-                    Просто напиши: "вчера в магните потратил 500 руб на продукты"
-                    или отправь голосовое, а я сам распарсю и запишу.
+        switch (parts[0]) {
+            case "/start" -> {
+                expenseService.resetConversation(userId);
+                sendSimpleMessage(chatId,
+                        """
+                        Привет! Я бот для учета расходов.
+                        Просто напиши: "вчера в магните потратил 500 руб на продукты"
+                        или отправь голосовое, а я сам распарсю и запишу.
+                        Ошибся — напиши "нет, это было 600", и я исправлю последнюю запись.
+
+                        Команды:
+                        /last - показать последние 10 расходов
+                        /month - расходы за текущий месяц по категориям (/month 2025-11 — за другой)
+                        /stats - суммы по месяцам и за последние дни (в базовой валюте)
+                        /export - вся история файлом CSV (/export json — NDJSON, добавьте gz для сжатия)
+                        /apitoken - токен HTTP API для выгрузки и импорта
 
-                    Команды:
-                    /last - показать последние 10 расходов
-                    """);
+                        Чтобы загрузить расходы из банка, пришлите выписку файлом .csv.
+                        """);
+            }
             case "/last" -> {
-                List<Expense> last = expenseService.getLastExpenses(userId);
+                List<ExpenseSummary> last = expenseService.getLastExpenses(userId, HISTORY_PAGE_SIZE + 1);
                 if (last.isEmpty()) {
                     sendSimpleMessage(chatId, "Пока расходов нет.");
                 } else {
-                    StringBuilder sb = new StringBuilder("Последние расходы:\n");
-                    last.forEach(e -> sb.append("- ")
-                            .append(e.getExpenseDate() != null ? e.getExpenseDate().toLocalDate() : "")
-                            .append(" | ")
-                            .append(e.getAmount()).append(" ").append(e.getCurrency())
-                            .append(" | ").append(e.getCategory())
-                            .append(" | ").append(
-                                    e.getDescription() != null ? e.getDescription() : "")
-                            .append(" | ").append(
-                                    e.getPlace() != null ? e.getPlace() : "")
-                            .append("\n"));
-                    sendSimpleMessage(chatId, sb.toString());
+                    sendExpensePage(chatId, "Последние расходы:\n", last);
                 }
             }
+            case "/month" -> handleMonth(chatId, userId, argument);
+            case "/stats" -> handleStats(chatId, userId);
+            case "/export" -> handleExport(chatId, userId, argument);
+            case "/apitoken" -> handleApiToken(chatId, userId);
             default -> sendSimpleMessage(chatId, "Неизвестная команда.");
         }
     }
 
-    private void handleText(Message msg) throws Exception {
-        Long chatId = msg.getChatId();
-        Expense expense = expenseService.handleTextExpense(msg);
-        sendSimpleMessage(chatId,
-                "Записал расход: " + expense.getAmount() + " " + expense.getCurrency()
-                        + " (" + expense.getCategory()
-                        + (expense.getPlace() != null ? ", место: " + expense.getPlace() : "")
-                        + ")");
+    private void handleMonth(Long chatId, Long userId, String argument) {
+        YearMonth month;
+        try {
+            month = argument != null ? YearMonth.parse(argument.trim()) : rollupService.currentMonth();
+        } catch (DateTimeParseException e) {
+            sendSimpleMessage(chatId, "Не понял месяц, нужен формат ГГГГ-ММ, например /month 2025-11");
+            return;
+        }
+
+        List<CategoryTotal> totals = rollupService.monthByCategory(userId, month);
+        if (totals.isEmpty()) {
+            sendSimpleMessage(chatId, "За " + month + " расходов нет.");
+            return;
+        }
+
+        StringBuilder sb = new StringBuilder("Расходы за ").append(month).append(":\n");
+        Map<String, BigDecimal> byCurrency = new LinkedHashMap<>();
+        totals.forEach(t -> {
+            sb.append("- ").append(t.getCategory()).append(": ")
+                    .append(t.getTotal()).append(" ").append(t.getCurrency())
+                    .append(" (").append(t.getExpenseCount()).append(")\n");
+            byCurrency.merge(t.getCurrency(), t.getTotal(), BigDecimal::add);
+        });
+        byCurrency.forEach((currency, total) ->
+                sb.append("Итого: ").append(total).append(" ").append(currency).append("\n"));
+        if (byCurrency.size() > 1) {
+            BigDecimal totalBase = totals.stream()
+                    .map(CategoryTotal::getTotalBase)
+                    .reduce(BigDecimal.ZERO, BigDecimal::add);
+            Map<String, BigDecimal> unconverted = new LinkedHashMap<>();
+            totals.stream()
+                    .filter(t -> t.getUnconverted().signum() != 0)
+                    .forEach(t -> unconverted.merge(t.getCurrency(), t.getUnconverted(), BigDecimal::add));
+            sb.append("Всего в ").append(rollupService.baseCurrency()).append(": ").append(totalBase);
+            unconverted.forEach((currency, amount) ->
+                    sb.append(" + ").append(amount).append(" ").append(currency));
+            sb.append(unconverted.isEmpty() ? "\n" : " (нет курса)\n");
+        }
+        sendSimpleMessage(chatId, sb.toString());
     }
 
-    private void handleVoice(Message msg) throws Exception {
-        Long chatId = msg.getChatId();
+    private void handleStats(Long chatId, Long userId) {
+        List<PeriodTotal> months = rollupService.monthlyTotals(userId, STATS_MONTHS);
+        if (months.isEmpty()) {
+            sendSimpleMessage(chatId, "Пока расходов нет.");
+            return;
+        }
+
+        StringBuilder sb = new StringBuilder("По месяцам:\n");
+        Map<LocalDate, String> monthsUnconverted = unconvertedByPeriod(
+                rollupService.monthlyUnconverted(userId, STATS_MONTHS));
+        months.forEach(t -> appendPeriod(sb, YearMonth.from(t.getPeriodStart()).toString(), t,
+                monthsUnconverted.get(t.getPeriodStart())));
+
+        List<PeriodTotal> days = rollupService.dailyTotals(userId, STATS_DAYS);
+        if (!days.isEmpty()) {
+            Map<LocalDate, String> daysUnconverted = unconvertedByPeriod(
+                    rollupService.dailyUnconverted(userId, STATS_DAYS));
+            sb.append("\nЗа последние ").append(STATS_DAYS).append(" дней:\n");
+            days.forEach(t -> appendPeriod(sb, t.getPeriodStart().toString(), t,
+                    daysUnconverted.get(t.getPeriodStart())));
+        }
+        sendSimpleMessage(chatId, sb.toString());
+    }
+
+    /** Строка периода: сумма в базовой валюте и, если есть, расходы без курса в своих валютах. */
+    private void appendPeriod(StringBuilder sb, String period, PeriodTotal total, String unconverted) {
+        sb.append("- ").append(period).append(": ")
+                .append(total.getTotalBase()).append(" ").append(rollupService.baseCurrency());
+        if (unconverted != null) {
+            sb.append(" + ").append(unconverted).append(" (нет курса)");
+        }
+        sb.append("\n");
+    }
+
+    private static Map<LocalDate, String> unconvertedByPeriod(List<UnconvertedTotal> totals) {
+        Map<LocalDate, String> byPeriod = new LinkedHashMap<>();
+        totals.forEach(t -> byPeriod.merge(t.getPeriodStart(), t.getUnconverted() + " " + t.getCurrency(),
+                (a, b) -> a + " + " + b));
+        return byPeriod;
+    }
+
+    /**
+     * Выгрузка пишется потоком во временный файл (память не растёт с историей)
+     * и отправляется документом.
+     */
+    /** Токен действует только для путей {@code /api/users/<свой id>/...}. */
+    private void handleApiToken(Long chatId, Long userId) {
+        if (!apiToken.enabled()) {
+            sendSimpleMessage(chatId, "HTTP API выключено.");
+            return;
+        }
+        sendSimpleMessage(chatId, "Ваш id: " + userId + "\nТокен: " + apiToken.tokenFor(userId)
+                + "\nЗаголовок: Authorization: Bearer <токен>, адрес: /api/users/" + userId + "/expenses/export"
+                + "\nНикому его не пересылайте — по нему доступна вся ваша история расходов.");
+    }
+
+    private void handleExport(Long chatId, Long userId, String argument) throws Exception {
+        ExportFormat format = ExportFormat.CSV;
+        boolean gzip = false;
+        if (argument != null) {
+            for (String option : argument.trim().split("\\s+")) {
+                if (option.equalsIgnoreCase("gz") || option.equalsIgnoreCase("gzip")) {
+                    gzip = true;
+                    continue;
+                }
+                try {
+                    format = ExportFormat.parse(option);
+                } catch (IllegalArgumentException e) {
+                    sendSimpleMessage(chatId, "Формат: /export [csv|json] [gz]");
+                    return;
+                }
+            }
+        }
+
+        Path file = Files.createTempFile("expenses-export-", null);
+        try {
+            long rows;
+            try (OutputStream out = Files.newOutputStream(file)) {
+                rows = exportService.export(userId, format, gzip, out);
+            }
+            if (rows == 0) {
+                sendSimpleMessage(chatId, "Пока расходов нет.");
+                return;
+            }
+            if (Files.size(file) > TELEGRAM_UPLOAD_LIMIT) {
+                sendSimpleMessage(chatId, gzip
+                        ? "Выгрузка больше 50 МБ даже в сжатом виде — воспользуйтесь HTTP-выгрузкой."
+                        : "Выгрузка больше 50 МБ — попробуйте сжатую: /export "
+                                + (format == ExportFormat.CSV ? "csv" : "json") + " gz");
+                return;
+            }
+
+            SendDocument document = new SendDocument(chatId.toString(),
+                    new InputFile(file.toFile(), format.fileName("expenses", gzip)));
+            document.setCaption("Расходов в выгрузке: " + rows);
+            // файл уходит из очереди отправки позже — удаляем его, когда она закончит
+            Path sending = file;
+            file = null;
+            replies.send(document).whenComplete((sent, error) -> deleteQuietly(sending));
+        } finally {
+            if (file != null) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    /** Кнопка "Ранее" под списком расходов — следующая страница истории. */
+    private void handleCallback(CallbackQuery query) throws Exception {
+        String data = query.getData();
+        if (data != null && data.startsWith(HISTORY_CALLBACK)) {
+            String[] cursor = data.substring(HISTORY_CALLBACK.length()).split("\\|");
+            OffsetDateTime beforeDate = OffsetDateTime.ofInstant(Instant.parse(cursor[0]), ZoneOffset.UTC);
+            Long beforeId = Long.parseLong(cursor[1]);
+
+            Long chatId = query.getMessage().getChatId();
+            List<ExpenseSummary> page = expenseService.getExpensesBefore(
+                    query.getFrom().getId(), beforeDate, beforeId, HISTORY_PAGE_SIZE + 1);
+            if (page.isEmpty()) {
+                sendSimpleMessage(chatId, "Более ранних расходов нет.");
+            } else {
+                sendExpensePage(chatId, "Ранее:\n", page);
+            }
+        }
+        executeAsync(new AnswerCallbackQuery(query.getId()));
+    }
+
+    /**
+     * {@code page} запрашивается на одну запись больше страницы: если лишняя есть,
+     * под списком появляется кнопка "Ранее" с курсором на последнюю показанную.
+     */
+    private void sendExpensePage(Long chatId, String header, List<ExpenseSummary> page) {
+        boolean hasMore = page.size() > HISTORY_PAGE_SIZE;
+        List<ExpenseSummary> shown = hasMore ? page.subList(0, HISTORY_PAGE_SIZE) : page;
+
+        SendMessage sm = new SendMessage(chatId.toString(), formatExpenses(header, shown));
+        if (hasMore) {
+            ExpenseSummary lastShown = shown.get(shown.size() - 1);
+            InlineKeyboardButton more = new InlineKeyboardButton("Ранее →");
+            more.setCallbackData(HISTORY_CALLBACK + lastShown.getExpenseDate().toInstant() + "|" + lastShown.getId());
+            sm.setReplyMarkup(new InlineKeyboardMarkup(List.of(List.of(more))));
+        }
+        replies.send(sm);
+    }
+
+    static String formatExpenses(String header, List<ExpenseSummary> expenses) {
+        StringBuilder sb = new StringBuilder(header);
+        expenses.forEach(e -> sb.append("- ")
+                .append(e.getExpenseDate() != null ? e.getExpenseDate().toLocalDate() : "")
+                .append(" | ")
+                .append(e.getAmount()).append(" ").append(e.getCurrency())
+                .append(" | ").append(e.getCategory())
+                .append(" | ").append(
+                        e.getDescription() != null ? e.getDescription() : "")
+                .append(" | ").append(
+                        e.getPlace() != null ? e.getPlace() : "")
+                .append("\n"));
+        return sb.toString();
+    }
+
+    private void handleText(Message msg) {
+        if (!expenseService.fitsTextMessage(msg.getText())) {
+            sendSimpleMessage(msg.getChatId(), "Сообщение слишком длинное, опишите трату покороче.");
+            return;
+        }
+
+        IngestTask task = expenseService.acceptText(msg);
+        acknowledge(task);
+    }
 
+    private void handleVoice(Message msg) {
         Voice voice = msg.getVoice();
-        String fileId = voice.getFileId();
+        if (voice.getFileSize() != null && voice.getFileSize() > fileDownloader.maxBytes()) {
+            sendSimpleMessage(msg.getChatId(), "Голосовое слишком большое, попробуйте записать покороче.");
+            return;
+        }
+
+        IngestTask task = expenseService.acceptVoice(msg);
+        acknowledge(task);
+    }
+
+    /**
+     * CSV-выписка банка. Импорт идёт в потоке {@link StatementImportService}, а не в потоке
+     * чата: файл читается потоком из Telegram, ход импорта показывается правкой одного сообщения.
+     */
+    private void handleDocument(Message msg) {
+        Document document = msg.getDocument();
+        Long chatId = msg.getChatId();
+        Long userId = msg.getFrom().getId();
+        String name = document.getFileName() != null ? document.getFileName().toLowerCase() : "";
+        if (!name.endsWith(".csv")) {
+            sendSimpleMessage(chatId, "Пришлите выписку банка в формате CSV.");
+            return;
+        }
+        if (document.getFileSize() != null && document.getFileSize() > fileDownloader.maxBytes()) {
+            sendSimpleMessage(chatId, "Файл слишком большой для загрузки через Telegram.");
+            return;
+        }
+
+        replies.send(new SendMessage(chatId.toString(), "Импортирую выписку…"))
+                .handle((status, error) -> status != null ? status.getMessageId() : null)
+                .thenCompose(statusId -> importService.importStatementAsync(userId,
+                                () -> fileDownloader.open(fileUrl(document.getFileId())),
+                                progress -> editOrSend(chatId, statusId, describeImport(progress)))
+                        .whenComplete((report, error) -> {
+                            if (error == null) {
+                                log.debug("Импорт завершён: {}", report);
+                                return;
+                            }
+                            Exception cause = Futures.unwrap(error);
+                            if (!(cause instanceof IllegalArgumentException || cause instanceof IllegalStateException)) {
+                                log.error("Импорт выписки в чате {} не удался", chatId, cause);
+                            }
+                            editOrSend(chatId, statusId, "Не получилось импортировать выписку: " + cause.getMessage());
+                        }));
+    }
 
+    private static String describeImport(ImportReport report) {
+        StringBuilder sb = new StringBuilder(report.finished() ? "Импорт завершён.\n" : "Импортирую выписку…\n")
+                .append("Строк прочитано: ").append(report.rowsRead())
+                .append(" (").append(report.rowsPerSecond()).append("/с)\n")
+                .append("Записано расходов: ").append(report.imported()).append("\n");
+        if (report.duplicates() > 0) {
+            sb.append("Уже были в базе: ").append(report.duplicates()).append("\n");
+        }
+        if (report.skipped() > 0) {
+            sb.append("Пропущено зачислений: ").append(report.skipped()).append("\n");
+        }
+        if (report.invalid() > 0) {
+            sb.append("Не разобрано строк: ").append(report.invalid()).append("\n");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Сообщение уже в очереди — отвечаем, не дожидаясь отправки: результат придёт правкой
+     * этого ответа. Воркер возьмёт задачу только после {@code attachReply} (или по истечении
+     * {@code ingest.ack-hold}), поэтому обработка не начнётся, пока ответ ждёт лимита чата.
+     */
+    private void acknowledge(IngestTask task) {
+        replies.send(new SendMessage(task.getChatId().toString(), "Принято, обрабатываю…"))
+                .whenComplete((reply, error) ->
+                        expenseService.attachReply(task.getId(), reply != null ? reply.getMessageId() : null));
+    }
+
+    @Override
+    public AudioSource openVoice(String fileId, Long fileSize) throws Exception {
         // 1. Получаем файл от Telegram
         GetFile getFile = new GetFile();
         getFile.setFileId(fileId);
-        org.telegram.telegrambots.meta.api.objects.File file = execute(getFile);
+        org.telegram.telegrambots.meta.api.objects.File file =
+                pipelineMetrics.time(Stage.TELEGRAM_FETCH, () -> execute(getFile));
 
         String fileUrl = file.getFileUrl(getBotToken());
 
-        // 2. Скачиваем байты
-        try (InputStream in = new URL(fileUrl).openStream()) {
-            byte[] audioBytes = in.readAllBytes();
+        // 2. Скачивание идёт потоком прямо в тело запроса STT, без буфера в памяти
+        Long size = file.getFileSize() != null ? file.getFileSize() : fileSize;
+        return new AudioSource(() -> fileDownloader.open(fileUrl), size != null ? size : -1);
+    }
+
+    @Override
+    public void reportDone(IngestTask task, IngestOutcome outcome) {
+        List<Expense> expenses = outcome.expenses();
+        if (outcome.edited()) {
+            replyToTask(task, "Исправил расход: " + describe(expenses.get(0)));
+            return;
+        }
+        String prefix = "VOICE".equals(task.getSourceType()) ? "Распознал и записал " : "Записал ";
+        String text;
+        if (expenses.size() == 1) {
+            text = prefix + "расход: " + describe(expenses.get(0));
+        } else {
+            StringBuilder sb = new StringBuilder(prefix).append("расходы (")
+                    .append(expenses.size()).append("):\n");
+            expenses.forEach(e -> sb.append("- ").append(describe(e)).append("\n"));
+            text = sb.toString();
+        }
+        replyToTask(task, text);
+    }
+
+    @Override
+    public void reportFailed(IngestTask task, String reason) {
+        replyToTask(task, "Не получилось обработать сообщение: " + reason);
+    }
 
-            // 3. Обрабатываем
-            Expense expense = expenseService.handleVoiceExpense(msg, audioBytes);
+    private void replyToTask(IngestTask task, String text) {
+        editOrSend(task.getChatId(), task.getReplyMessageId(), text);
+    }
 
-            sendSimpleMessage(chatId,
-                    "Распознал и записал расход: " + expense.getAmount() + " " + expense.getCurrency()
-                            + " (" + expense.getCategory()
-                            + (expense.getPlace() != null ? ", место: " + expense.getPlace() : "")
-                            + ")");
+    private void editOrSend(Long chatId, Integer messageId, String text) {
+        if (messageId == null) {
+            sendSimpleMessage(chatId, text);
+            return;
         }
+        replies.edit(chatId, messageId, text);
+    }
+
+    private String fileUrl(String fileId) throws Exception {
+        GetFile getFile = new GetFile();
+        getFile.setFileId(fileId);
+        return pipelineMetrics.time(Stage.TELEGRAM_FETCH, () -> execute(getFile)).getFileUrl(getBotToken());
+    }
+
+    private static String describe(Expense expense) {
+        return expense.getAmount() + " " + expense.getCurrency()
+                + " (" + expense.getCategory()
+                + (expense.getPlace() != null ? ", место: " + expense.getPlace() : "")
+                + ")";
     }
 
     private void sendSimpleMessage(Long chatId, String text) {
+        replies.reply(chatId, text);
+    }
+
+    private static void deleteQuietly(Path file) {
         try {
-            SendMessage sm = new SendMessage(chatId.toString(), text);
-            execute(sm);
+            Files.deleteIfExists(file);
         } catch (Exception e) {
-            log.error("Error while sending message", e);
+            log.warn("Не удалось удалить временный файл {}", file, e);
         }
     }
 }
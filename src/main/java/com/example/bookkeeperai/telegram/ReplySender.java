@@ -0,0 +1,428 @@
+package com.example.bookkeeperai.telegram;
+
+import com.example.bookkeeperai.ai.Futures;
+import com.example.bookkeeperai.metrics.PipelineMetrics;
+import com.example.bookkeeperai.metrics.Stage;
+import com.example.bookkeeperai.resilience.TokenBucket;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.meta.api.methods.send.SendDocument;
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.methods.updatingmessages.EditMessageText;
+import org.telegram.telegrambots.meta.api.objects.Message;
+import org.telegram.telegrambots.meta.bots.AbsSender;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
+
+import java.io.Serializable;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Исходящие сообщения бота. Обработчик ставит ответ в очередь и идёт дальше,
+ * отправка — через {@code executeAsync} в темпе, который допускает Bot API:
+ * общий лимит на бота и свой на каждый чат (token bucket'ы).
+ *
+ * Сообщения одного чата уходят строго по порядку, по одному в полёте. Пока чат ждёт
+ * своей очереди, подряд идущие простые тексты склеиваются в одно сообщение, а новая
+ * правка сообщения заменяет ещё не отправленную. На 429 чат ставится на паузу
+ * по {@code retry_after}, 5xx повторяются с backoff. Сетевые ошибки не повторяются:
+ * неизвестно, дошло ли сообщение, а дубль в чате хуже пропущенного ответа.
+ *
+ * Отправитель — сам бот: он привязывается через {@link #bind} в своём конструкторе,
+ * иначе бин бота и бин очереди зависели бы друг от друга.
+ */
+@Component
+@Slf4j
+public class ReplySender {
+
+    /** Лимит Bot API на длину текста сообщения. */
+    static final int MAX_TEXT_LENGTH = 4096;
+    private static final String COALESCE_SEPARATOR = "\n\n";
+    private static final Duration RETRY_BASE_DELAY = Duration.ofSeconds(1);
+
+    private final TokenBucket globalBucket;
+    private final double perChatPerSecond;
+    private final int perChatBurst;
+    private final int maxAttempts;
+    private final PipelineMetrics pipelineMetrics;
+    private final ScheduledExecutorService scheduler;
+
+    private final ConcurrentHashMap<Long, ChatQueue> chats = new ConcurrentHashMap<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private volatile AbsSender sender;
+
+    private final Counter sent;
+    private final Counter coalesced;
+    private final Counter rateLimited;
+    private final Counter retried;
+    private final Counter failed;
+
+    public ReplySender(@Value("${telegram.replies.global-per-second}") double globalPerSecond,
+                       @Value("${telegram.replies.per-chat-per-second}") double perChatPerSecond,
+                       @Value("${telegram.replies.per-chat-burst}") int perChatBurst,
+                       @Value("${telegram.replies.max-attempts}") int maxAttempts,
+                       PipelineMetrics pipelineMetrics,
+                       MeterRegistry meterRegistry) {
+        this.globalBucket = new TokenBucket(globalPerSecond, (int) Math.ceil(globalPerSecond));
+        this.perChatPerSecond = perChatPerSecond;
+        this.perChatBurst = perChatBurst;
+        this.maxAttempts = maxAttempts;
+        this.pipelineMetrics = pipelineMetrics;
+        // поток только раздаёт отправки: сами запросы идут в пуле executeAsync бота
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("reply-sender-"));
+
+        Gauge.builder("bookkeeper.telegram.replies.queued", queued, AtomicInteger::get)
+                .description("Сообщения, ожидающие отправки")
+                .register(meterRegistry);
+        this.sent = Counter.builder("bookkeeper.telegram.replies.sent")
+                .register(meterRegistry);
+        this.coalesced = Counter.builder("bookkeeper.telegram.replies.coalesced")
+                .description("Ответы, склеенные с соседними или заменённые более новой правкой")
+                .register(meterRegistry);
+        this.rateLimited = Counter.builder("bookkeeper.telegram.replies.retries")
+                .tag("reason", "rate_limit")
+                .register(meterRegistry);
+        this.retried = Counter.builder("bookkeeper.telegram.replies.retries")
+                .tag("reason", "error")
+                .register(meterRegistry);
+        this.failed = Counter.builder("bookkeeper.telegram.replies.failed")
+                .register(meterRegistry);
+    }
+
+    public void bind(AbsSender sender) {
+        this.sender = sender;
+    }
+
+    /**
+     * Текст без кнопок, результат отправки не нужен: может склеиться с соседними ответами,
+     * длинный режется на части.
+     */
+    public void reply(Long chatId, String text) {
+        for (String part : split(text, MAX_TEXT_LENGTH)) {
+            enqueue(chatId, Outgoing.text(part));
+        }
+    }
+
+    /**
+     * Сообщение отправляется как есть, без склейки. Длинный текст режется на части,
+     * кнопки остаются у последней; future завершается последней частью.
+     */
+    public CompletableFuture<Message> send(SendMessage message) {
+        Long chatId = Long.valueOf(message.getChatId());
+        List<String> parts = split(message.getText(), MAX_TEXT_LENGTH);
+        if (parts.size() == 1) {
+            return enqueue(chatId, Outgoing.message(message)).thenApply(Message.class::cast);
+        }
+        CompletableFuture<Object> last = null;
+        for (int i = 0; i < parts.size(); i++) {
+            SendMessage part = new SendMessage(message.getChatId(), parts.get(i));
+            if (i == parts.size() - 1) {
+                part.setReplyMarkup(message.getReplyMarkup());
+            }
+            last = enqueue(chatId, Outgoing.message(part));
+        }
+        return last.thenApply(Message.class::cast);
+    }
+
+    public CompletableFuture<Message> send(SendDocument document) {
+        return enqueue(Long.valueOf(document.getChatId()), Outgoing.document(document))
+                .thenApply(Message.class::cast);
+    }
+
+    /** Правка текста; ещё не отправленная правка того же сообщения заменяется этой. */
+    public void edit(Long chatId, Integer messageId, String text) {
+        String clipped = text.length() > MAX_TEXT_LENGTH ? text.substring(0, MAX_TEXT_LENGTH - 1) + "…" : text;
+        enqueue(chatId, Outgoing.edit(messageId, clipped));
+    }
+
+    /** Отправка замеряется стадией REPLY_SEND в трассе апдейта — вместе с ожиданием очереди. */
+    private CompletableFuture<Object> enqueue(Long chatId, Outgoing item) {
+        return pipelineMetrics.timeAsync(Stage.REPLY_SEND, () -> {
+            CompletableFuture<Object> result = new CompletableFuture<>();
+            while (true) {
+                ChatQueue q = chats.computeIfAbsent(chatId, ChatQueue::new);
+                boolean start;
+                synchronized (q) {
+                    if (q.closed) {
+                        continue;
+                    }
+                    Outgoing pendingEdit = item.editOf != null ? q.pendingEdit(item.editOf) : null;
+                    if (pendingEdit != null) {
+                        pendingEdit.text = item.text;
+                        pendingEdit.waiters.add(result);
+                        coalesced.increment();
+                    } else {
+                        item.waiters.add(result);
+                        q.pending.addLast(item);
+                        queued.incrementAndGet();
+                    }
+                    start = !q.busy;
+                    q.busy = true;
+                }
+                if (start) {
+                    schedule(q);
+                }
+                return result;
+            }
+        });
+    }
+
+    /**
+     * Следующая отправка чата — после паузы по retry_after и по лимиту чата. Общий токен
+     * берётся только в {@link #sendNext}, когда чат уже готов: иначе чаты, ждущие своей паузы,
+     * расходовали бы общий лимит заранее и потом срабатывали разом поверх свежих токенов.
+     */
+    private void schedule(ChatQueue q) {
+        long pause;
+        synchronized (q) {
+            pause = q.notBefore - System.nanoTime();
+        }
+        if (pause > 0) {
+            scheduler.schedule(() -> schedule(q), pause, TimeUnit.NANOSECONDS);
+            return;
+        }
+        long wait = q.bucket.reserve(Long.MAX_VALUE);
+        scheduler.schedule(() -> sendNext(q), wait, TimeUnit.NANOSECONDS);
+    }
+
+    private void sendNext(ChatQueue q) {
+        long wait = globalBucket.reserve(Long.MAX_VALUE);
+        if (wait > 0) {
+            scheduler.schedule(() -> dispatch(q), wait, TimeUnit.NANOSECONDS);
+        } else {
+            dispatch(q);
+        }
+    }
+
+    private void dispatch(ChatQueue q) {
+        Outgoing item;
+        synchronized (q) {
+            item = q.pending.pollFirst();
+            if (item == null) {
+                close(q);
+                return;
+            }
+            queued.decrementAndGet();
+            while (item.coalescable() && !q.pending.isEmpty() && q.pending.peekFirst().coalescable()
+                    && item.text.length() + COALESCE_SEPARATOR.length() + q.pending.peekFirst().text.length()
+                    <= MAX_TEXT_LENGTH) {
+                Outgoing next = q.pending.pollFirst();
+                queued.decrementAndGet();
+                item.text = item.text + COALESCE_SEPARATOR + next.text;
+                item.waiters.addAll(next.waiters);
+                coalesced.increment();
+            }
+        }
+
+        CompletableFuture<? extends Serializable> call;
+        try {
+            call = execute(q.chatId, item);
+        } catch (Exception e) {
+            call = CompletableFuture.failedFuture(e);
+        }
+        call.whenComplete((value, error) -> {
+            if (error == null) {
+                sent.increment();
+                item.waiters.forEach(w -> w.complete(value));
+                next(q);
+            } else {
+                onFailure(q, item, Futures.unwrap(error));
+            }
+        });
+    }
+
+    private CompletableFuture<? extends Serializable> execute(Long chatId, Outgoing item) throws TelegramApiException {
+        if (item.editOf != null) {
+            EditMessageText edit = new EditMessageText();
+            edit.setChatId(chatId.toString());
+            edit.setMessageId(item.editOf);
+            edit.setText(item.text);
+            return sender.executeAsync(edit);
+        }
+        if (item.document != null) {
+            return sender.executeAsync(item.document);
+        }
+        return sender.executeAsync(item.message != null ? item.message : new SendMessage(chatId.toString(), item.text));
+    }
+
+    private void onFailure(ChatQueue q, Outgoing item, Exception error) {
+        item.attempts++;
+        if (error instanceof TelegramApiRequestException api) {
+            Integer code = api.getErrorCode();
+            if (code != null && code == 429) {
+                Integer retryAfter = api.getParameters() != null ? api.getParameters().getRetryAfter() : null;
+                rateLimited.increment();
+                retry(q, item, retryAfter != null ? Duration.ofSeconds(retryAfter) : RETRY_BASE_DELAY, error);
+                return;
+            }
+            if (item.editOf != null && api.getApiResponse() != null
+                    && api.getApiResponse().contains("message is not modified")) {
+                item.waiters.forEach(w -> w.complete(null));
+                next(q);
+                return;
+            }
+            if (code != null && code >= 500) {
+                retried.increment();
+                retry(q, item, RETRY_BASE_DELAY.multipliedBy(1L << Math.min(item.attempts - 1, 5)), error);
+                return;
+            }
+        }
+        // Сетевая ошибка (TelegramApiException без кода ответа) не говорит, дошёл ли запрос:
+        // повтор мог бы продублировать сообщение в чате
+        fail(q, item, error);
+    }
+
+    private void retry(ChatQueue q, Outgoing item, Duration delay, Exception error) {
+        if (item.attempts >= maxAttempts) {
+            fail(q, item, error);
+            return;
+        }
+        log.warn("Ответ в чат {} не отправлен ({}), повтор через {} мс", q.chatId, error.getMessage(), delay.toMillis());
+        synchronized (q) {
+            q.pending.addFirst(item);
+            queued.incrementAndGet();
+            q.notBefore = Math.max(q.notBefore, System.nanoTime() + delay.toNanos());
+        }
+        schedule(q);
+    }
+
+    private void fail(ChatQueue q, Outgoing item, Exception error) {
+        failed.increment();
+        log.error("Error while sending message to chat {}", q.chatId, error);
+        item.waiters.forEach(w -> w.completeExceptionally(error));
+        next(q);
+    }
+
+    private void next(ChatQueue q) {
+        synchronized (q) {
+            if (q.pending.isEmpty()) {
+                close(q);
+                return;
+            }
+        }
+        schedule(q);
+    }
+
+    /** Вызывается под монитором {@code q}: новый ответ чату заведёт новую очередь. */
+    private void close(ChatQueue q) {
+        q.busy = false;
+        q.closed = true;
+        chats.remove(q.chatId, q);
+    }
+
+    /**
+     * Режет текст на части не длиннее {@code limit}: по последнему переводу строки
+     * в пределах лимита, а если его нет — по лимиту, не разрывая суррогатную пару.
+     */
+    static List<String> split(String text, int limit) {
+        if (text.length() <= limit) {
+            return List.of(text);
+        }
+        List<String> parts = new ArrayList<>();
+        int start = 0;
+        while (text.length() - start > limit) {
+            int end = text.lastIndexOf('\n', start + limit);
+            boolean atNewline = end > start;
+            if (!atNewline) {
+                end = start + limit;
+                if (Character.isHighSurrogate(text.charAt(end - 1))) {
+                    end--;
+                }
+            }
+            parts.add(text.substring(start, end));
+            start = atNewline ? end + 1 : end;
+        }
+        parts.add(text.substring(start));
+        return parts;
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        scheduler.shutdown();
+        if (!scheduler.awaitTermination(5, TimeUnit.SECONDS)) {
+            log.warn("Не все ответы отправлены до остановки, осталось в очереди: {}", queued.get());
+            scheduler.shutdownNow();
+        }
+    }
+
+    private final class ChatQueue {
+
+        private final Long chatId;
+        private final TokenBucket bucket;
+        private final Deque<Outgoing> pending = new ArrayDeque<>();
+        /** Отправка запланирована или в полёте — следующую планирует её завершение. */
+        private boolean busy;
+        /** Очередь убрана из карты; ответ, успевший её получить, заводит новую. */
+        private boolean closed;
+        /** System.nanoTime(), раньше которого чату не пишем — пауза по retry_after. */
+        private long notBefore = System.nanoTime();
+
+        ChatQueue(Long chatId) {
+            this.chatId = chatId;
+            this.bucket = new TokenBucket(perChatPerSecond, perChatBurst);
+        }
+
+        Outgoing pendingEdit(Integer messageId) {
+            for (Outgoing o : pending) {
+                if (messageId.equals(o.editOf)) {
+                    return o;
+                }
+            }
+            return null;
+        }
+    }
+
+    private static final class Outgoing {
+
+        private final SendMessage message;
+        private final SendDocument document;
+        private final Integer editOf;
+        /** Текст склеиваемого ответа или правки. */
+        private String text;
+        private final List<CompletableFuture<Object>> waiters = new ArrayList<>(1);
+        private int attempts;
+
+        private Outgoing(SendMessage message, SendDocument document, Integer editOf, String text) {
+            this.message = message;
+            this.document = document;
+            this.editOf = editOf;
+            this.text = text;
+        }
+
+        static Outgoing text(String text) {
+            return new Outgoing(null, null, null, text);
+        }
+
+        static Outgoing message(SendMessage message) {
+            return new Outgoing(message, null, null, null);
+        }
+
+        static Outgoing document(SendDocument document) {
+            return new Outgoing(null, document, null, null);
+        }
+
+        static Outgoing edit(Integer messageId, String text) {
+            return new Outgoing(null, null, messageId, text);
+        }
+
+        boolean coalescable() {
+            return message == null && document == null && editOf == null;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.example.bookkeeperai.telegram;
+
+import com.example.bookkeeperai.metrics.PipelineMetrics;
+import com.example.bookkeeperai.metrics.Stage;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.OptionalLong;
+
+/**
+ * Потоковое скачивание файлов с серверов Telegram.
+ *
+ * Файл не буферизуется: поток отдаётся сразу в тело следующего запроса (например, в STT).
+ * Таймаут ограничивает ожидание заголовков ответа; зависшее тело ограничено таймаутом
+ * запроса-потребителя, который не получит ответ, пока не дочитает поток.
+ */
+@Component
+@Slf4j
+public class TelegramFileDownloader {
+
+    private final HttpClient httpClient;
+    private final Duration downloadTimeout;
+    private final long maxBytes;
+    private final PipelineMetrics pipelineMetrics;
+
+    public TelegramFileDownloader(@Value("${telegram.download.connect-timeout}") Duration connectTimeout,
+                                  @Value("${telegram.download.timeout}") Duration downloadTimeout,
+                                  @Value("${telegram.download.max-bytes}") long maxBytes,
+                                  PipelineMetrics pipelineMetrics) {
+        this.httpClient = HttpClient.newBuilder()
+                .connectTimeout(connectTimeout)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+        this.downloadTimeout = downloadTimeout;
+        this.maxBytes = maxBytes;
+        this.pipelineMetrics = pipelineMetrics;
+    }
+
+    public long maxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Открывает поток файла. URL содержит токен бота, поэтому в логи он не пишется.
+     * В метрику {@link Stage#TELEGRAM_FETCH} попадает время до заголовков ответа,
+     * само тело читает потребитель.
+     */
+    public InputStream open(String fileUrl) throws IOException {
+        return pipelineMetrics.time(Stage.TELEGRAM_FETCH, () -> openStream(fileUrl));
+    }
+
+    private InputStream openStream(String fileUrl) throws IOException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(fileUrl))
+                .timeout(downloadTimeout)
+                .GET()
+                .build();
+
+        HttpResponse<InputStream> response;
+        try {
+            response = httpClient.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Скачивание файла Telegram прервано");
+        }
+
+        int status = response.statusCode();
+        if (status >= 400) {
+            response.body().close();
+            log.error("Telegram file download HTTP error: {}", status);
+            throw new IOException("Telegram file download HTTP error: " + status);
+        }
+
+        OptionalLong length = response.headers().firstValueAsLong("content-length");
+        if (length.isPresent() && length.getAsLong() > maxBytes) {
+            response.body().close();
+            throw new IOException("Файл больше допустимого размера " + maxBytes + " байт");
+        }
+
+        return new LimitedInputStream(response.body(), maxBytes);
+    }
+
+    /** Обрывает чтение, если сервер отдаёт больше, чем заявлено в лимите. */
+    private static final class LimitedInputStream extends FilterInputStream {
+
+        private final long limit;
+        private long read;
+
+        LimitedInputStream(InputStream in, long limit) {
+            super(in);
+            this.limit = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                count(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count(n);
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count(skipped);
+            return skipped;
+        }
+
+        private void count(long n) throws IOException {
+            read += n;
+            if (read > limit) {
+                throw new IOException("Файл больше допустимого размера " + limit + " байт");
+            }
+        }
+    }
+}
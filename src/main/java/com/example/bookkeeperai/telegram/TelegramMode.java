@@ -0,0 +1,22 @@
+package com.example.bookkeeperai.telegram;
+
+/** Как бот получает апдейты ({@code telegram.mode}). */
+public enum TelegramMode {
+
+    /** Long polling из этого процесса; перед стартом webhook снимается. Один экземпляр на бота. */
+    POLLING,
+    /** Telegram шлёт апдейты на {@code telegram.webhook.path}; экземпляров может быть несколько. */
+    WEBHOOK,
+    /** Апдейты не принимаются — только HTTP API и фоновые задачи. */
+    NONE;
+
+    /** "polling", "webhook" или "none" без учёта регистра. */
+    public static TelegramMode parse(String value) {
+        return switch (value.trim().toLowerCase()) {
+            case "polling" -> POLLING;
+            case "webhook" -> WEBHOOK;
+            case "none" -> NONE;
+            default -> throw new IllegalArgumentException("Неизвестный режим telegram.mode: " + value);
+        };
+    }
+}
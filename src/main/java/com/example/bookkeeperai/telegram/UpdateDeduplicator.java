@@ -0,0 +1,69 @@
+package com.example.bookkeeperai.telegram;
+
+import com.example.bookkeeperai.repository.ReceivedUpdateRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+
+/**
+ * Отсев повторных доставок апдейта по {@code update_id}. Отметки хранятся в БД,
+ * поэтому повтор отсеется и на другом экземпляре бота, и после рестарта.
+ */
+@Component
+@Slf4j
+public class UpdateDeduplicator {
+
+    private final ReceivedUpdateRepository repo;
+    private final Duration ttl;
+    private final Counter duplicates;
+
+    public UpdateDeduplicator(ReceivedUpdateRepository repo,
+                              @Value("${telegram.dedup.ttl}") Duration ttl,
+                              MeterRegistry meterRegistry) {
+        this.repo = repo;
+        this.ttl = ttl;
+        this.duplicates = Counter.builder("bookkeeper.telegram.updates.duplicates")
+                .description("Повторные доставки апдейтов, отброшенные по update_id")
+                .register(meterRegistry);
+    }
+
+    /** true — апдейт пришёл впервые и его нужно обработать. */
+    public boolean firstDelivery(Integer updateId) {
+        if (updateId == null) {
+            return true;
+        }
+        boolean first;
+        try {
+            first = repo.markReceived(updateId.longValue(), OffsetDateTime.now()) == 1;
+        } catch (DataIntegrityViolationException e) {
+            first = false;
+        }
+        if (!first) {
+            duplicates.increment();
+            log.debug("Апдейт {} уже принят, повтор отброшен", updateId);
+        }
+        return first;
+    }
+
+    /** Апдейт не удалось принять в обработку — следующая доставка должна пройти. */
+    public void forget(Integer updateId) {
+        if (updateId != null) {
+            repo.unmark(updateId.longValue());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${telegram.dedup.cleanup-interval}")
+    public void cleanup() {
+        int removed = repo.deleteReceivedBefore(OffsetDateTime.now().minus(ttl));
+        if (removed > 0) {
+            log.debug("Удалено старых отметок апдейтов: {}", removed);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.example.bookkeeperai.telegram;
+
+import com.example.bookkeeperai.metrics.PipelineMetrics;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Выполняет обработку апдейтов вне потока long polling.
+ *
+ * Апдейты одного чата выполняются строго по очереди (цепочка future на чат),
+ * разные чаты обрабатываются параллельно на ограниченном пуле.
+ * Общее число ожидающих апдейтов ограничено: при переполнении поток
+ * long polling ждёт до {@code offer-timeout}, после чего апдейт отклоняется.
+ */
+@Component
+@Slf4j
+public class UpdateDispatcher {
+
+    private final ExecutorService workers;
+    private final Semaphore capacity;
+    private final Duration offerTimeout;
+    private final PipelineMetrics pipelineMetrics;
+
+    /** Хвост очереди каждого чата — следующий апдейт выполняется после него. */
+    private final ConcurrentHashMap<Long, CompletableFuture<Void>> chatTails = new ConcurrentHashMap<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger active = new AtomicInteger();
+
+    private final Timer waitTimer;
+    private final Timer processingTimer;
+    private final Counter rejected;
+
+    public UpdateDispatcher(@Value("${telegram.dispatcher.workers}") int workers,
+                            @Value("${telegram.dispatcher.queue-capacity}") int queueCapacity,
+                            @Value("${telegram.dispatcher.offer-timeout}") Duration offerTimeout,
+                            PipelineMetrics pipelineMetrics,
+                            MeterRegistry meterRegistry) {
+        // Java 17: виртуальных потоков нет, поэтому фиксированный пул
+        this.workers = Executors.newFixedThreadPool(workers, new CustomizableThreadFactory("update-worker-"));
+        this.capacity = new Semaphore(queueCapacity);
+        this.offerTimeout = offerTimeout;
+        this.pipelineMetrics = pipelineMetrics;
+
+        Gauge.builder("bookkeeper.dispatcher.queue.depth", queued, AtomicInteger::get)
+                .description("Апдейты, ожидающие обработки")
+                .register(meterRegistry);
+        Gauge.builder("bookkeeper.dispatcher.active", active, AtomicInteger::get)
+                .description("Апдейты в обработке")
+                .register(meterRegistry);
+        Gauge.builder("bookkeeper.dispatcher.chats", chatTails, ConcurrentHashMap::size)
+                .description("Чаты с незавершёнными апдейтами")
+                .register(meterRegistry);
+        this.waitTimer = Timer.builder("bookkeeper.dispatcher.wait")
+                .description("Время ожидания апдейта в очереди")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.processingTimer = Timer.builder("bookkeeper.dispatcher.processing")
+                .description("Время обработки апдейта")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.rejected = Counter.builder("bookkeeper.dispatcher.rejected")
+                .description("Апдейты, отклонённые из-за переполнения очереди")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Ставит задачу в очередь чата. Задача выполняется в трассе апдейта {@code updateId}.
+     *
+     * @return false, если очередь переполнена и задача не принята
+     */
+    public boolean dispatch(Long chatId, Integer updateId, Runnable task) {
+        if (!acquireSlot()) {
+            rejected.increment();
+            log.warn("Очередь апдейтов переполнена, апдейт чата {} отклонён", chatId);
+            return false;
+        }
+
+        long enqueuedAt = System.nanoTime();
+        queued.incrementAndGet();
+
+        CompletableFuture<Void> tail = chatTails.compute(chatId, (id, previous) -> {
+            CompletableFuture<?> after = previous != null ? previous : CompletableFuture.completedFuture(null);
+            // handleAsync: ошибка предыдущего апдейта не должна блокировать следующие
+            return after.handleAsync((ignored, error) -> {
+                run(updateId, task, enqueuedAt);
+                return null;
+            }, workers);
+        });
+        tail.whenComplete((ignored, error) -> chatTails.remove(chatId, tail));
+        return true;
+    }
+
+    private boolean acquireSlot() {
+        try {
+            return capacity.tryAcquire(offerTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void run(Integer updateId, Runnable task, long enqueuedAt) {
+        queued.decrementAndGet();
+        active.incrementAndGet();
+        waitTimer.record(System.nanoTime() - enqueuedAt, TimeUnit.NANOSECONDS);
+        try {
+            pipelineMetrics.traced(updateId, () -> processingTimer.record(task));
+        } catch (Exception e) {
+            log.error("Error while processing update", e);
+        } finally {
+            active.decrementAndGet();
+            capacity.release();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        workers.shutdown();
+        if (!workers.awaitTermination(30, TimeUnit.SECONDS)) {
+            log.warn("Не все апдейты обработаны до остановки, осталось в очереди: {}", queued.get());
+            workers.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.bookkeeperai.web;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Base64;
+
+/**
+ * Токены HTTP API в заголовке {@code Authorization: Bearer ...}. Токен привязан к пользователю:
+ * это HMAC-SHA256 его telegram id на секрете {@code api.secret}, поэтому токены не хранятся,
+ * а с чужим {@code userId} в пути запрос не пройдёт. Свой токен пользователь получает
+ * командой /apitoken. Пустой секрет выключает API целиком.
+ */
+@Component
+public class ApiToken {
+
+    private static final String BEARER = "Bearer ";
+    private static final String HMAC = "HmacSHA256";
+
+    private final byte[] secret;
+
+    public ApiToken(@Value("${api.secret}") String secret) {
+        this.secret = secret.getBytes(StandardCharsets.UTF_8);
+    }
+
+    public boolean enabled() {
+        return secret.length > 0;
+    }
+
+    /** Токен пользователя; API должно быть включено. */
+    public String tokenFor(Long userId) {
+        if (!enabled()) {
+            throw new IllegalStateException("HTTP API выключено: api.secret не задан");
+        }
+        try {
+            Mac mac = Mac.getInstance(HMAC);
+            mac.init(new SecretKeySpec(secret, HMAC));
+            byte[] digest = mac.doFinal(("user:" + userId).getBytes(StandardCharsets.UTF_8));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(digest);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HMAC недоступен", e);
+        }
+    }
+
+    /** Заголовок несёт токен именно этого пользователя. */
+    public boolean matches(String authorization, Long userId) {
+        if (!enabled() || userId == null || authorization == null || !authorization.startsWith(BEARER)) {
+            return false;
+        }
+        byte[] expected = tokenFor(userId).getBytes(StandardCharsets.UTF_8);
+        byte[] presented = authorization.substring(BEARER.length()).getBytes(StandardCharsets.UTF_8);
+        return MessageDigest.isEqual(expected, presented);
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.bookkeeperai.web;
+
+import com.example.bookkeeperai.service.ExpenseExportService;
+import com.example.bookkeeperai.service.ExportFormat;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+/**
+ * HTTP-выгрузка истории расходов. Тело пишется потоком по мере чтения из БД.
+ * Доступ — по {@link ApiToken} этого пользователя: чужую историю с ним не выгрузить.
+ */
+@RestController
+@RequiredArgsConstructor
+public class ExportController {
+
+    private final ExpenseExportService exportService;
+    private final ApiToken apiToken;
+
+    @GetMapping("/api/users/{userId}/expenses/export")
+    public ResponseEntity<StreamingResponseBody> export(@PathVariable Long userId,
+                                                        @RequestParam(defaultValue = "csv") String format,
+                                                        @RequestParam(defaultValue = "false") boolean gzip,
+                                                        @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false)
+                                                        String authorization) {
+        if (!apiToken.matches(authorization, userId)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+
+        ExportFormat exportFormat;
+        try {
+            exportFormat = ExportFormat.parse(format);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        StreamingResponseBody body = out -> exportService.export(userId, exportFormat, gzip, out);
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_TYPE, exportFormat.contentType(gzip))
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                        .filename(exportFormat.fileName("expenses-" + userId, gzip))
+                        .build()
+                        .toString())
+                .body(body);
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.bookkeeperai.web;
+
+import com.example.bookkeeperai.dto.ImportReport;
+import com.example.bookkeeperai.service.StatementImportService;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Импорт банковской выписки: тело запроса — CSV как есть
+ * ({@code curl --data-binary @statement.csv -H 'Content-Type: text/csv'}).
+ * Тело читается потоком, ответ — итоговый {@link ImportReport}.
+ * Доступ — по {@link ApiToken} этого пользователя: в чужой счёт с ним не записать.
+ */
+@RestController
+@RequiredArgsConstructor
+public class ImportController {
+
+    private final StatementImportService importService;
+    private final ApiToken apiToken;
+
+    @PostMapping("/api/users/{userId}/expenses/import")
+    public ResponseEntity<ImportReport> importStatement(@PathVariable Long userId,
+                                                        @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false)
+                                                        String authorization,
+                                                        HttpServletRequest request) throws IOException {
+        if (!apiToken.matches(authorization, userId)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+
+        try (InputStream body = request.getInputStream()) {
+            return ResponseEntity.ok(importService.importStatement(userId, body, report -> { }));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).build();
+        }
+    }
+}
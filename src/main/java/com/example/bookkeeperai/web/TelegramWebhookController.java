@@ -0,0 +1,57 @@
+package com.example.bookkeeperai.web;
+
+import com.example.bookkeeperai.telegram.ExpenseBot;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RestController;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+/**
+ * Приём апдейтов Telegram в режиме {@code telegram.mode=webhook}.
+ *
+ * Ответ уходит сразу после постановки апдейта в очередь диспетчера, обработка
+ * идёт после. Состояния между запросами нет, поэтому экземпляров за балансировщиком
+ * может быть несколько; повторы отсекаются по {@code update_id} в общей БД.
+ * При переполнении очереди — 503: Telegram повторит доставку позже.
+ */
+@RestController
+@ConditionalOnProperty(name = "telegram.mode", havingValue = "webhook")
+public class TelegramWebhookController {
+
+    private static final String SECRET_HEADER = "X-Telegram-Bot-Api-Secret-Token";
+
+    private final ExpenseBot bot;
+    private final byte[] secret;
+
+    public TelegramWebhookController(ExpenseBot bot,
+                                     @Value("${telegram.webhook.secret}") String secret) {
+        this.bot = bot;
+        this.secret = secret.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @PostMapping("${telegram.webhook.path}")
+    public ResponseEntity<Void> receive(@RequestHeader(value = SECRET_HEADER, required = false) String presented,
+                                        @RequestBody Update update) {
+        if (!secretMatches(presented)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        return bot.accept(update)
+                ? ResponseEntity.ok().build()
+                : ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+    }
+
+    private boolean secretMatches(String presented) {
+        if (secret.length == 0) {
+            return true;
+        }
+        return presented != null && MessageDigest.isEqual(secret, presented.getBytes(StandardCharsets.UTF_8));
+    }
+}
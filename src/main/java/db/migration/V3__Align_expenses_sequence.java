@@ -0,0 +1,35 @@
+package db.migration;
+
+import org.flywaydb.core.api.migration.BaseJavaMigration;
+import org.flywaydb.core.api.migration.Context;
+
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+/**
+ * Сдвигает {@code expenses_seq} за уже существующие id.
+ *
+ * Старые базы заполнялись через IDENTITY, а последовательность создавалась с 1 —
+ * первые же выданные Hibernate id совпали бы с существующими строками.
+ * Pooled-оптимизатор трактует значение последовательности как верхнюю границу
+ * блока из {@link #ALLOCATION_SIZE} id, поэтому старт — {@code max(id) + ALLOCATION_SIZE}.
+ */
+public class V3__Align_expenses_sequence extends BaseJavaMigration {
+
+    /** Должен совпадать с allocationSize у {@code Expense.id}. */
+    private static final int ALLOCATION_SIZE = 50;
+
+    @Override
+    public void migrate(Context context) throws Exception {
+        try (Statement st = context.getConnection().createStatement()) {
+            long maxId;
+            try (ResultSet rs = st.executeQuery("SELECT COALESCE(MAX(id), 0) FROM expenses")) {
+                rs.next();
+                maxId = rs.getLong(1);
+            }
+            if (maxId > 0) {
+                st.execute("ALTER SEQUENCE expenses_seq RESTART WITH " + (maxId + ALLOCATION_SIZE));
+            }
+        }
+    }
+}
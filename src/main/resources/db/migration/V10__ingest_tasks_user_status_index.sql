@@ -0,0 +1,4 @@
+-- Воркер берёт по одной задаче на пользователя: проверка "нет задачи в работе
+-- и нет более старой в очереди" идёт по этому индексу.
+CREATE INDEX IF NOT EXISTS idx_ingest_tasks_user_status
+    ON ingest_tasks (telegram_user_id, status, id);
@@ -0,0 +1,30 @@
+-- Расходы без курса: в total_base не входят, копятся отдельно в валюте бакета.
+ALTER TABLE expense_rollups ADD COLUMN IF NOT EXISTS unconverted NUMERIC(38, 2) DEFAULT 0 NOT NULL;
+
+-- Старые записи хранили валюту как её написал пользователь или LLM ("руб", "р", "$").
+-- Курсы валют, к которым приводятся такие записи, удаляются: первая синхронизация
+-- сочтёт их новыми и пересчитает amount_in_base_currency по всей истории.
+DELETE FROM fx_rates
+ WHERE EXISTS (SELECT 1 FROM expenses e
+                WHERE e.currency <> fx_rates.currency
+                  AND (UPPER(TRIM(e.currency)) = fx_rates.currency
+                       OR (fx_rates.currency = 'RUB' AND UPPER(TRIM(e.currency))
+                           IN ('RUR', 'РУБ', 'РУБ.', 'Р', 'Р.', 'РУБЛЬ', 'РУБЛЯ', 'РУБЛЕЙ', '₽'))
+                       OR (fx_rates.currency = 'USD' AND TRIM(e.currency) = '$')
+                       OR (fx_rates.currency = 'EUR' AND UPPER(TRIM(e.currency)) IN ('€', 'ЕВРО'))
+                       OR (fx_rates.currency = 'GBP' AND TRIM(e.currency) = '£')));
+
+UPDATE expenses SET currency = 'RUB'
+ WHERE UPPER(TRIM(currency)) IN ('RUR', 'РУБ', 'РУБ.', 'Р', 'Р.', 'РУБЛЬ', 'РУБЛЯ', 'РУБЛЕЙ', '₽');
+UPDATE expenses SET currency = 'USD' WHERE TRIM(currency) = '$';
+UPDATE expenses SET currency = 'EUR' WHERE UPPER(TRIM(currency)) IN ('€', 'ЕВРО');
+UPDATE expenses SET currency = 'GBP' WHERE TRIM(currency) = '£';
+UPDATE expenses SET currency = UPPER(TRIM(currency))
+ WHERE currency IS NOT NULL AND currency <> UPPER(TRIM(currency));
+
+UPDATE expenses SET amount_in_base_currency = amount
+ WHERE currency = '${base_currency}' AND amount_in_base_currency IS NULL;
+
+-- Бакеты со старыми написаниями валют и без разбивки "без курса" пересоберёт
+-- reports.rollup-rebuild.backfill-on-startup: пустая таблица при непустых расходах.
+DELETE FROM expense_rollups;
@@ -0,0 +1,8 @@
+-- Строка-замок для записи сумм: запись расходов, пересборка бакетов и пересчёт
+-- по новым курсам берут её SELECT ... FOR UPDATE в своей транзакции. Так они не
+-- пересекаются и между экземплярами бота за балансировщиком (режим webhook).
+CREATE TABLE IF NOT EXISTS rollup_write_lock (
+    id INT NOT NULL PRIMARY KEY
+);
+
+INSERT INTO rollup_write_lock (id) VALUES (1);
@@ -0,0 +1,36 @@
+-- Исходная схема. IF NOT EXISTS — базы, созданные раньше через ddl-auto,
+-- подхватываются как есть (baseline-version 0).
+
+CREATE TABLE IF NOT EXISTS expenses (
+    id               BIGINT PRIMARY KEY,
+    telegram_user_id BIGINT,
+    amount           NUMERIC(38, 2),
+    currency         VARCHAR(255),
+    category         VARCHAR(255),
+    description      VARCHAR(255),
+    place            VARCHAR(255),
+    expense_date     TIMESTAMP WITH TIME ZONE,
+    raw_text         TEXT,
+    source_type      VARCHAR(255)
+);
+
+CREATE SEQUENCE IF NOT EXISTS expenses_seq START WITH 1 INCREMENT BY 50;
+
+CREATE TABLE IF NOT EXISTS ingest_tasks (
+    id               BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    chat_id          BIGINT,
+    telegram_user_id BIGINT,
+    message_id       INTEGER,
+    reply_message_id INTEGER,
+    source_type      VARCHAR(255),
+    text             TEXT,
+    voice_file_id    VARCHAR(255),
+    voice_file_size  BIGINT,
+    voice_duration   INTEGER,
+    status           VARCHAR(255),
+    attempts         INTEGER NOT NULL,
+    last_error       VARCHAR(1000),
+    created_at       TIMESTAMP WITH TIME ZONE,
+    updated_at       TIMESTAMP WITH TIME ZONE,
+    available_at     TIMESTAMP WITH TIME ZONE
+);
@@ -0,0 +1,4 @@
+-- /last и листание истории: последние траты пользователя читаются из индекса
+-- в нужном порядке, без сортировки. id — тай-брейкер для keyset-пагинации.
+CREATE INDEX IF NOT EXISTS idx_expenses_user_date
+    ON expenses (telegram_user_id, expense_date DESC, id DESC);
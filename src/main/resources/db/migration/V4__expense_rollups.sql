@@ -0,0 +1,12 @@
+-- Суммы трат по дням и месяцам. Первичный ключ заодно служит индексом
+-- для отчётов: пользователь → гранулярность → диапазон дат.
+CREATE TABLE IF NOT EXISTS expense_rollups (
+    telegram_user_id BIGINT         NOT NULL,
+    granularity      VARCHAR(16)    NOT NULL,
+    period_start     DATE           NOT NULL,
+    category         VARCHAR(255)   NOT NULL,
+    currency         VARCHAR(255)   NOT NULL,
+    total            NUMERIC(38, 2) NOT NULL,
+    expense_count    BIGINT         NOT NULL,
+    PRIMARY KEY (telegram_user_id, granularity, period_start, category, currency)
+);
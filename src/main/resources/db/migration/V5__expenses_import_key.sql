@@ -0,0 +1,6 @@
+-- Отпечаток строки банковской выписки: повторный импорт той же выписки
+-- (или пересекающихся периодов) не создаёт дублей.
+ALTER TABLE expenses ADD COLUMN IF NOT EXISTS import_key VARCHAR(64);
+
+CREATE UNIQUE INDEX IF NOT EXISTS uq_expenses_user_import_key
+    ON expenses (telegram_user_id, import_key);
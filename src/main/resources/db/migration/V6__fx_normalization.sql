@@ -0,0 +1,23 @@
+-- Сумма расхода в базовой валюте по курсу на дату траты.
+ALTER TABLE expenses ADD COLUMN IF NOT EXISTS amount_in_base_currency NUMERIC(38, 2);
+
+-- Пересчёт при исправлении курсов идёт диапазонами дат по одной валюте.
+CREATE INDEX IF NOT EXISTS idx_expenses_currency_date
+    ON expenses (currency, expense_date);
+
+ALTER TABLE expense_rollups ADD COLUMN IF NOT EXISTS total_base NUMERIC(38, 2) DEFAULT 0 NOT NULL;
+
+CREATE TABLE IF NOT EXISTS fx_rates (
+    currency  VARCHAR(16)    NOT NULL,
+    rate_date DATE           NOT NULL,
+    rate      NUMERIC(38, 10) NOT NULL,
+    PRIMARY KEY (currency, rate_date)
+);
+
+-- Расходы в базовой валюте пересчитывать не нужно. Остальные валюты заполнит
+-- первая синхронизация курсов: для неё все курсы — новые.
+UPDATE expenses SET amount_in_base_currency = amount
+ WHERE currency = '${base_currency}' AND amount_in_base_currency IS NULL;
+
+UPDATE expense_rollups SET total_base = total
+ WHERE currency = '${base_currency}';
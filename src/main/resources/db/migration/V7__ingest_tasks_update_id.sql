@@ -0,0 +1,3 @@
+-- update_id апдейта Telegram, из которого создана задача: по нему связываются
+-- логи и метрики приёма сообщения и его разбора воркером.
+ALTER TABLE ingest_tasks ADD COLUMN IF NOT EXISTS update_id INTEGER;
@@ -0,0 +1,10 @@
+-- update_id уже принятых апдейтов Telegram. Webhook может прислать апдейт
+-- повторно (таймаут, ретрай, другой экземпляр за балансировщиком) — обработается
+-- только первая доставка. Старые записи удаляются по telegram.dedup.ttl.
+CREATE TABLE IF NOT EXISTS telegram_updates (
+    update_id   BIGINT                   NOT NULL PRIMARY KEY,
+    received_at TIMESTAMP WITH TIME ZONE NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS idx_telegram_updates_received_at
+    ON telegram_updates (received_at);
@@ -0,0 +1,3 @@
+-- file_unique_id голосового: одинаков у пересланного и повторно отправленного
+-- голосового, по нему расшифровка берётся из кэша без скачивания и STT.
+ALTER TABLE ingest_tasks ADD COLUMN IF NOT EXISTS voice_file_unique_id VARCHAR(255);
@@ -0,0 +1,62 @@
+package com.example.bookkeeperai.ai;
+
+import com.example.bookkeeperai.entity.Expense;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ConversationStoreTest {
+
+    private final ConversationStore store = new ConversationStore(true, 2, 1_000_000, Duration.ofMinutes(30),
+            2, 3, 10, new SimpleMeterRegistry());
+
+    @Test
+    void contextStaysBoundedAsConversationGrows() {
+        for (long id = 1; id <= 20; id++) {
+            store.record(1L, "кофе " + id + " в кофейне у дома", List.of(expense(id, "250")));
+        }
+
+        ConversationContext context = store.get(1L);
+        assertThat(context.expenses()).extracting(ConversationContext.Entry::id).containsExactly(20L, 19L);
+        assertThat(context.turns()).hasSize(3).allSatisfy(turn -> assertThat(turn).hasSizeLessThanOrEqualTo(10));
+    }
+
+    @Test
+    void editedExpenseMovesToFrontWithoutDuplicate() {
+        store.record(1L, "кофе 250", List.of(expense(1L, "250")));
+        store.record(1L, "такси 300", List.of(expense(2L, "300")));
+        store.record(1L, "нет, кофе был 600", List.of(expense(1L, "600")));
+
+        ConversationContext context = store.get(1L);
+        assertThat(context.expenses()).extracting(ConversationContext.Entry::id).containsExactly(1L, 2L);
+        assertThat(context.expenses().get(0).amount()).isEqualByComparingTo("600");
+    }
+
+    @Test
+    void leastRecentSessionIsEvicted() {
+        store.record(1L, "кофе 250", List.of(expense(1L, "250")));
+        store.record(2L, "кофе 250", List.of(expense(2L, "250")));
+        store.get(1L);
+        store.record(3L, "кофе 250", List.of(expense(3L, "250")));
+
+        assertThat(store.get(1L)).isNotNull();
+        assertThat(store.get(2L)).isNull();
+        assertThat(store.size()).isEqualTo(2);
+    }
+
+    private static Expense expense(long id, String amount) {
+        return Expense.builder()
+                .id(id)
+                .amount(new BigDecimal(amount))
+                .currency("RUB")
+                .category("cafe")
+                .expenseDate(OffsetDateTime.now())
+                .build();
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.bookkeeperai.ai;
+
+import com.example.bookkeeperai.metrics.PipelineMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class InferenceRouterTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final PipelineMetrics metrics = new PipelineMetrics(Duration.ofMinutes(1), registry);
+
+    private static final Prompt PROMPT = new Prompt("single", "system", "user", 64);
+
+    @Test
+    void failsOverToNextBackendAndPrefersFasterOne() throws Exception {
+        FakeBackend broken = new FakeBackend("broken", 0, true);
+        FakeBackend slow = new FakeBackend("slow", 30, false);
+        InferenceRouter router = new InferenceRouter(List.of(broken, slow), 1.0, 0, metrics, registry);
+
+        assertThat(Futures.await(router.generateTextAsync(PROMPT))).isEqualTo("slow");
+        assertThat(registry.get("bookkeeper.inference.failovers").tag("task", "llm").counter().count())
+                .isEqualTo(1);
+        assertThat(registry.get("bookkeeper.llm.tokens").tags("backend", "slow", "type", "cached")
+                .summary().totalAmount()).isEqualTo(80);
+
+        // сломанный закрыл свой breaker — дальше идём сразу к рабочему
+        broken.available = false;
+        FakeBackend fast = new FakeBackend("fast", 0, false);
+        router = new InferenceRouter(List.of(broken, slow, fast), 1.0, 0, metrics, registry);
+        Futures.await(router.generateTextAsync(PROMPT));
+        Futures.await(router.generateTextAsync(PROMPT));
+
+        assertThat(Futures.await(router.generateTextAsync(PROMPT))).isEqualTo("fast");
+        assertThat(broken.calls.get()).isEqualTo(1);
+    }
+
+    @Test
+    void backendsWithoutWeightOrTaskAreSkipped() throws Exception {
+        FakeBackend disabled = new FakeBackend("disabled", 0, false);
+        disabled.weight = 0;
+        FakeBackend llmOnly = new FakeBackend("llm-only", 0, false);
+        InferenceRouter router = new InferenceRouter(List.of(disabled, llmOnly), 0.2, 0, metrics, registry);
+
+        assertThat(Futures.await(router.generateTextAsync(PROMPT))).isEqualTo("llm-only");
+        assertThat(disabled.calls.get()).isZero();
+        assertThat(router.speechToTextAsync(new byte[0])).isCompletedExceptionally();
+    }
+
+    private static final class FakeBackend implements InferenceBackend {
+
+        private final String name;
+        private final long latencyMs;
+        private final boolean failing;
+        private final AtomicInteger calls = new AtomicInteger();
+        private volatile boolean available = true;
+        private int weight = 1;
+
+        FakeBackend(String name, long latencyMs, boolean failing) {
+            this.name = name;
+            this.latencyMs = latencyMs;
+            this.failing = failing;
+        }
+
+        @Override
+        public String name() {
+            return name;
+        }
+
+        @Override
+        public int weight() {
+            return weight;
+        }
+
+        @Override
+        public boolean supports(Task task) {
+            return task == Task.LLM;
+        }
+
+        @Override
+        public boolean isAvailable(Task task) {
+            return available;
+        }
+
+        @Override
+        public CompletableFuture<String> speechToTextAsync(byte[] audioBytes) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public CompletableFuture<String> speechToTextAsync(AudioSource audio) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public CompletableFuture<Completion> generateTextAsync(Prompt prompt) {
+            calls.incrementAndGet();
+            if (failing) {
+                return CompletableFuture.failedFuture(new InferenceException(name + " down", 503, true, null));
+            }
+            return CompletableFuture.supplyAsync(() -> new Completion(name, 100, 20, 80),
+                    CompletableFuture.delayedExecutor(latencyMs, TimeUnit.MILLISECONDS));
+        }
+    }
+}
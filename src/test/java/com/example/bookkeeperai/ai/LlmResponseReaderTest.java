@@ -0,0 +1,95 @@
+package com.example.bookkeeperai.ai;
+
+import com.example.bookkeeperai.dto.ParsedExpense;
+import com.example.bookkeeperai.dto.ParsedFollowUp;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class LlmResponseReaderTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final LlmResponseReader reader =
+            new LlmResponseReader(new ObjectMapper(), ZoneId.of("Europe/Moscow"), registry);
+
+    @Test
+    void readsObjectSurroundedByProse() {
+        ParsedExpense parsed = reader.readExpense("""
+                Вот трата:
+                ```json
+                {"amount": 1234.50, "currency": "RUB", "category": "groceries", "extra": {"a": [1, 2]},
+                 "place": null, "date": "2025-12-04T10:15:30+03:00"}
+                ```
+                Обращайтесь!""");
+
+        assertThat(parsed.getAmount()).isEqualByComparingTo("1234.50");
+        assertThat(parsed.getCurrency()).isEqualTo("RUB");
+        assertThat(parsed.getCategory()).isEqualTo("groceries");
+        assertThat(parsed.getPlace()).isNull();
+        assertThat(parsed.getDate()).isEqualTo(OffsetDateTime.of(2025, 12, 4, 10, 15, 30, 0, ZoneOffset.ofHours(3)));
+    }
+
+    @Test
+    void acceptsStringAmountAndDateWithoutOffset() {
+        ParsedExpense parsed = reader.readExpense("{\"amount\": \"1 234,5\", \"date\": \"2025-12-04\"}");
+
+        assertThat(parsed.getAmount()).isEqualByComparingTo("1234.5");
+        assertThat(parsed.getDate()).isEqualTo(OffsetDateTime.of(2025, 12, 4, 0, 0, 0, 0, ZoneOffset.ofHours(3)));
+    }
+
+    @Test
+    void batchItemsAreBoundByIndex() {
+        List<ParsedExpense> items = reader.readItems("""
+                {"items": [
+                  {"index": 2, "amount": 30},
+                  {"index": 7, "amount": 1},
+                  {"index": 0, "category": "cafe"},
+                  {"index": 1, "amount": 20, "description": "такси"}
+                ]}""", 3);
+
+        assertThat(items).hasSize(3);
+        assertThat(items.get(0)).isNull();
+        assertThat(items.get(1).getDescription()).isEqualTo("такси");
+        assertThat(items.get(2).getAmount()).isEqualByComparingTo("30");
+    }
+
+    @Test
+    void followUpEditKeepsOnlyChangedFields() {
+        ParsedFollowUp edit = reader.readFollowUp("{\"action\": \"edit\", \"target\": 1, \"amount\": 600}", 2);
+
+        assertThat(edit.edit()).isTrue();
+        assertThat(edit.target()).isEqualTo(1);
+        assertThat(edit.expense().getAmount()).isEqualByComparingTo("600");
+        assertThat(edit.expense().getCategory()).isNull();
+        assertThat(edit.expense().getDate()).isNull();
+
+        assertThatThrownBy(() -> reader.readFollowUp("{\"action\": \"edit\", \"target\": 2}", 2))
+                .isInstanceOf(IllegalStateException.class);
+        assertThat(reader.readFollowUp("{\"action\": \"add\", \"amount\": 300}", 2).expense().getDate())
+                .isNotNull();
+    }
+
+    @Test
+    void failuresAreCountedByCause() {
+        assertThatThrownBy(() -> reader.readExpense("<html>502 Bad Gateway</html>"))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("'<'");
+        assertThatThrownBy(() -> reader.readExpense("{\"amount\": 12,"))
+                .isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> reader.readExpenses("{\"expenses\": []}"))
+                .isInstanceOf(IllegalStateException.class);
+
+        assertThat(registry.get("bookkeeper.nlp.parse.failures").tag("cause", "non_json").counter().count())
+                .isEqualTo(2);
+        assertThat(registry.get("bookkeeper.nlp.parse.failures").tag("cause", "no_expenses").counter().count())
+                .isEqualTo(1);
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.bookkeeperai.ai;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OggOpusChunkerTest {
+
+    private final OggOpusChunker chunker = new OggOpusChunker(Duration.ofSeconds(30), Duration.ofSeconds(45), 20);
+
+    @Test
+    void cutsAtQuietPageAfterTarget() throws Exception {
+        // каждая 10-я секунда — тишина
+        List<byte[]> chunks = split(100, second -> second % 10 == 0);
+
+        assertThat(chunks).hasSize(4);
+        assertThat(lastGranuleSeconds(chunks.get(0))).isEqualTo(30);
+        assertThat(lastGranuleSeconds(chunks.get(3))).isEqualTo(100);
+    }
+
+    @Test
+    void forcesCutAtMaxWithoutSilence() throws Exception {
+        List<byte[]> chunks = split(100, second -> false);
+
+        assertThat(chunks).hasSize(3);
+        assertThat(lastGranuleSeconds(chunks.get(0))).isEqualTo(45);
+        assertThat(lastGranuleSeconds(chunks.get(1))).isEqualTo(90);
+    }
+
+    @Test
+    void everyChunkStartsWithHeadersAndEndsWithEos() throws Exception {
+        List<byte[]> chunks = split(70, second -> false);
+
+        for (byte[] chunk : chunks) {
+            assertThat(new String(chunk, 28, 8)).isEqualTo("OpusHead");
+            int lastPage = lastPageOffset(chunk);
+            assertThat(chunk[lastPage + 5] & 0x04).isEqualTo(0x04);
+        }
+    }
+
+    private List<byte[]> split(int seconds, java.util.function.IntPredicate quiet) throws Exception {
+        ByteArrayOutputStream ogg = new ByteArrayOutputStream();
+        ogg.writeBytes(page(0x02, 0, "OpusHead".getBytes(), 1, 19));
+        ogg.writeBytes(page(0, 0, "OpusTags".getBytes(), 1, 30));
+        for (int s = 1; s <= seconds; s++) {
+            ogg.writeBytes(page(0, s * 48_000L, new byte[0], 50, quiet.test(s) ? 5 : 80));
+        }
+
+        List<byte[]> chunks = new ArrayList<>();
+        chunker.split(new ByteArrayInputStream(ogg.toByteArray()), chunks::add);
+        return chunks;
+    }
+
+    /** Страница с {@code packets} пакетами по {@code packetSize} байт, тело начинается с {@code prefix}. */
+    private static byte[] page(int flags, long granule, byte[] prefix, int packets, int packetSize) {
+        byte[] page = new byte[27 + packets + packets * packetSize];
+        page[0] = 'O';
+        page[1] = 'g';
+        page[2] = 'g';
+        page[3] = 'S';
+        page[5] = (byte) flags;
+        for (int i = 0; i < 8; i++) {
+            page[6 + i] = (byte) (granule >>> (8 * i));
+        }
+        page[26] = (byte) packets;
+        for (int i = 0; i < packets; i++) {
+            page[27 + i] = (byte) packetSize;
+        }
+        System.arraycopy(prefix, 0, page, 27 + packets, prefix.length);
+        return page;
+    }
+
+    private static int lastPageOffset(byte[] chunk) {
+        int offset = 0;
+        int last = 0;
+        while (offset < chunk.length) {
+            last = offset;
+            int segments = chunk[offset + 26] & 0xff;
+            int body = 0;
+            for (int i = 0; i < segments; i++) {
+                body += chunk[offset + 27 + i] & 0xff;
+            }
+            offset += 27 + segments + body;
+        }
+        return last;
+    }
+
+    private static long lastGranuleSeconds(byte[] chunk) {
+        int page = lastPageOffset(chunk);
+        long granule = 0;
+        for (int i = 13; i >= 6; i--) {
+            granule = (granule << 8) | (chunk[page + i] & 0xff);
+        }
+        return granule / 48_000;
+    }
+}
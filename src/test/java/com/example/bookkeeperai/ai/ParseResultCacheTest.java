@@ -0,0 +1,86 @@
+package com.example.bookkeeperai.ai;
+
+import com.example.bookkeeperai.dto.ParsedExpense;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ParseResultCacheTest {
+
+    private final ParseResultCache cache = new ParseResultCache(
+            true, 2, 1_000_000, Duration.ofHours(1), new RuleBasedExpenseParser(), new SimpleMeterRegistry());
+
+    @Test
+    void normalizesCaseWhitespaceAndNumbers() {
+        assertThat(ParseResultCache.normalize("Обед   400"))
+                .isEqualTo(ParseResultCache.normalize("обед 520,50"))
+                .isEqualTo("обед N");
+    }
+
+    @Test
+    void hitReappliesAmountAndDateFromCurrentMessage() {
+        cache.put("обед в столовой 400", expense("400"));
+
+        ParsedExpense hit = cache.get("вчера обед в столовой 520");
+
+        assertThat(hit).isNotNull();
+        assertThat(hit.getAmount()).isEqualByComparingTo("520");
+        assertThat(hit.getCategory()).isEqualTo("cafe");
+        assertThat(hit.getPlace()).isEqualTo("Столовая");
+        assertThat(hit.getDate().toLocalDate()).isEqualTo(LocalDate.now().minusDays(1));
+    }
+
+    @Test
+    void cachedDescriptionKeepsNoAmountOrDayFromFirstMessage() {
+        cache.put("кофе 350", expense("350").toBuilder().description("Кофе 350 ₽ сегодня").build());
+
+        assertThat(cache.get("кофе 420").getDescription()).isEqualTo("Кофе ₽");
+        assertThat(ParseResultCache.stripAmountAndDate("250")).isNull();
+    }
+
+    @Test
+    void evictsLeastRecentlyUsed() {
+        cache.put("обед 1", expense("1"));
+        cache.put("ужин 2", expense("2"));
+        cache.get("обед 3");
+        cache.put("такси 4", expense("4"));
+
+        assertThat(cache.get("обед 5")).isNotNull();
+        assertThat(cache.get("ужин 6")).isNull();
+        assertThat(cache.size()).isEqualTo(2);
+    }
+
+    @Test
+    void doesNotCacheWhenLlmAmountDiffersFromExtractedNumber() {
+        cache.put("такси 2 тыс", expense("2000"));
+        assertThat(cache.get("такси 3 тыс").getAmount()).isEqualByComparingTo("3000");
+
+        cache.put("обед 400 на двоих", expense("800"));
+        assertThat(cache.get("обед 500 на двоих")).isNull();
+    }
+
+    @Test
+    void skipsPhrasesWithDatesRulesCannotResolve() {
+        cache.put("обед в пятницу 400", expense("400"));
+        cache.put("такси 3 мая 700", expense("700"));
+
+        assertThat(cache.size()).isZero();
+        assertThat(cache.get("обед в пятницу 400")).isNull();
+    }
+
+    private static ParsedExpense expense(String amount) {
+        return ParsedExpense.builder()
+                .amount(new BigDecimal(amount))
+                .currency("RUB")
+                .category("cafe")
+                .place("Столовая")
+                .date(OffsetDateTime.now())
+                .build();
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.bookkeeperai.ai;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.ZoneId;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PromptBuilderTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final PromptBuilder prompts = new PromptBuilder(ZoneId.of("Europe/Moscow"), 100, 1000, 40, 400, registry);
+
+    @Test
+    void staticPrefixIsSharedAndInputGoesToUserPart() {
+        Prompt coffee = prompts.single("кофе 250");
+        Prompt taxi = prompts.single("такси 700");
+
+        assertThat(coffee.system()).isSameAs(taxi.system());
+        assertThat(coffee.system()).doesNotContain("кофе");
+        assertThat(coffee.user()).endsWith("кофе 250");
+        assertThat(coffee.maxTokens()).isEqualTo(124);
+    }
+
+    @Test
+    void budgetFollowsExpectedExpensesAndIsCapped() {
+        assertThat(prompts.multi("кофе 250, такси 700 и обед 1200,50").maxTokens()).isEqualTo(24 + 3 * 100);
+        assertThat(prompts.batch(List.of("a 1", "b 2")).maxTokens()).isEqualTo(224);
+        assertThat(prompts.batch(List.of("1", "2", "3", "4", "5", "6", "7", "8", "9", "10")).maxTokens())
+                .isEqualTo(1000);
+    }
+
+    @Test
+    void overlongPhraseIsRejectedNotClipped() {
+        String phrase = "купил продукты в магазине у дома на сумму 2500 рублей";
+
+        assertThat(prompts.fitsSingle(phrase)).isFalse();
+        assertThatThrownBy(() -> prompts.single(phrase)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void longTranscriptIsSplitOnSentencesWithoutLosingText() {
+        String transcript = "Утром кофе 250. Потом такси 700 до офиса. Обед 1200.50 в столовой. "
+                + "Вечером продукты 3400 в магазине у дома.";
+
+        List<String> chunks = PromptBuilder.split(transcript, 45);
+
+        assertThat(chunks).allSatisfy(chunk -> assertThat(chunk.length()).isLessThanOrEqualTo(45));
+        assertThat(chunks).first().isEqualTo("Утром кофе 250. Потом такси 700 до офиса.");
+        assertThat(String.join(" ", chunks)).isEqualTo(transcript);
+        assertThat(PromptBuilder.split("кофе 250", 45)).containsExactly("кофе 250");
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.bookkeeperai.ai;
+
+import com.example.bookkeeperai.dto.ParsedExpense;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RuleBasedExpenseParserTest {
+
+    private static final double THRESHOLD = 0.8;
+
+    private final RuleBasedExpenseParser parser = new RuleBasedExpenseParser();
+
+    @Test
+    void parsesSimpleRussianPhrase() {
+        ParsedExpense parsed = parser.parse("кофе 250");
+
+        assertThat(parsed.getAmount()).isEqualByComparingTo("250");
+        assertThat(parsed.getCategory()).isEqualTo("cafe");
+        assertThat(parsed.getCurrency()).isNull();
+        assertThat(parsed.getConfidence()).isGreaterThanOrEqualTo(THRESHOLD);
+    }
+
+    @Test
+    void parsesCurrencyAndDecimalAmount() {
+        ParsedExpense parsed = parser.parse("taxi 12,50 usd");
+
+        assertThat(parsed.getAmount()).isEqualByComparingTo(new BigDecimal("12.50"));
+        assertThat(parsed.getCurrency()).isEqualTo("USD");
+        assertThat(parsed.getCategory()).isEqualTo("transport");
+        assertThat(parsed.getConfidence()).isGreaterThanOrEqualTo(THRESHOLD);
+    }
+
+    @Test
+    void resolvesRelativeDateAndKnownPlace() {
+        ParsedExpense parsed = parser.parse("вчера в магните потратил 500 руб на продукты");
+
+        assertThat(parsed.getDate().toLocalDate()).isEqualTo(LocalDate.now().minusDays(1));
+        assertThat(parsed.getPlace()).isEqualTo("Магнит");
+        assertThat(parsed.getCurrency()).isEqualTo("RUB");
+        assertThat(parsed.getConfidence()).isGreaterThanOrEqualTo(THRESHOLD);
+    }
+
+    @Test
+    void unknownWordsFallBackToLlm() {
+        ParsedExpense parsed = parser.parse("подарок маме на день рождения 3000");
+
+        assertThat(parsed.getConfidence()).isLessThan(THRESHOLD);
+    }
+
+    @Test
+    void severalNumbersAreAmbiguous() {
+        ParsedExpense parsed = parser.parse("кофе 2 по 150");
+
+        assertThat(parsed.getAmount()).isNull();
+        assertThat(parsed.getConfidence()).isLessThan(THRESHOLD);
+    }
+
+    @Test
+    void thousandsSuffixMultipliesAmount() {
+        assertThat(parser.parse("кофе 5к").getAmount()).isEqualByComparingTo("5000");
+        assertThat(parser.parse("такси 2 тыс").getAmount()).isEqualByComparingTo("2000");
+        assertThat(parser.parse("обед 700р").getCurrency()).isEqualTo("RUB");
+        assertThat(parser.extractAmount("такси 3 тыс")).isEqualByComparingTo("3000");
+    }
+
+    @Test
+    void unknownGluedSuffixGoesToLlm() {
+        ParsedExpense parsed = parser.parse("кофе 2кг");
+
+        assertThat(parsed.getConfidence()).isLessThan(THRESHOLD);
+        assertThat(parser.extractAmount("кофе 2кг")).isNull();
+    }
+
+    @Test
+    void categoryStemsMatchWholeWordsOnly() {
+        assertThat(parser.parse("business 500").getCategory()).isEqualTo("other");
+        assertThat(parser.parse("europe 20").getCurrency()).isNull();
+        assertThat(parser.parse("buses 300").getCategory()).isEqualTo("transport");
+        assertThat(parser.parse("500 рублей в перекрёстке").getPlace()).isEqualTo("Перекрёсток");
+    }
+
+    @Test
+    void followUpMarkersAreWholeWordsAtStart() {
+        assertThat(parser.isCorrection("нет, это было 600")).isTrue();
+        assertThat(parser.isCorrection("ой, не 500, а 600")).isTrue();
+        assertThat(parser.isAddition("и ещё такси 300")).isTrue();
+        assertThat(parser.isAddition("туда же 200")).isTrue();
+
+        assertThat(parser.isAddition("morning coffee 200")).isFalse();
+        assertThat(parser.isAddition("address change fee 50")).isFalse();
+        assertThat(parser.isAddition("тамбур 300")).isFalse();
+        assertThat(parser.isCorrection("кофе не очень 200")).isFalse();
+        assertThat(parser.isCorrection("notebook 900")).isFalse();
+    }
+}
@@ -0,0 +1,43 @@
+package com.example.bookkeeperai.ai;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TranscriptCacheTest {
+
+    @TempDir
+    Path dir;
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @Test
+    void transcriptSurvivesRestartThroughDiskTier() {
+        TranscriptCache cache = new TranscriptCache(true, 1, dir, Duration.ofDays(1), registry);
+        String hash = TranscriptCache.hashKey("ogg".getBytes(StandardCharsets.UTF_8));
+        cache.put("кофе 250", TranscriptCache.uniqueIdKey("AgADx1"), hash);
+
+        assertThat(cache.size()).isEqualTo(1);
+        TranscriptCache restarted = new TranscriptCache(true, 10, dir, Duration.ofDays(1), new SimpleMeterRegistry());
+        assertThat(restarted.get(TranscriptCache.uniqueIdKey("AgADx1"))).isEqualTo("кофе 250");
+        assertThat(restarted.get(hash)).isEqualTo("кофе 250");
+        assertThat(restarted.get(TranscriptCache.uniqueIdKey("AgADx2"))).isNull();
+    }
+
+    @Test
+    void unsafeIdsAndBlankTranscriptsAreNotCached() {
+        TranscriptCache cache = new TranscriptCache(true, 10, dir, Duration.ofDays(1), registry);
+
+        assertThat(TranscriptCache.uniqueIdKey("../etc")).isNull();
+        cache.put(" ", TranscriptCache.uniqueIdKey("AgADx1"));
+        assertThat(cache.get(TranscriptCache.uniqueIdKey("AgADx1"))).isNull();
+        assertThat(registry.get("bookkeeper.stt.cache.requests").tag("result", "miss").functionCounter().count())
+                .isEqualTo(1);
+    }
+}
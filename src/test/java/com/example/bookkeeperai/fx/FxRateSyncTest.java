@@ -0,0 +1,123 @@
+package com.example.bookkeeperai.fx;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import com.example.bookkeeperai.entity.FxRate;
+import com.example.bookkeeperai.repository.ExpenseRepository;
+import com.example.bookkeeperai.repository.FxRateRepository;
+import com.example.bookkeeperai.service.RollupService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class FxRateSyncTest {
+
+    private static final LocalDate DEC_1 = LocalDate.of(2025, 12, 1);
+
+    private final FxRateRepository rateRepo = mock(FxRateRepository.class);
+    private final ExpenseRepository expenseRepo = mock(ExpenseRepository.class);
+    private final RollupService rollupService = mock(RollupService.class);
+    private CurrencyConverter converter;
+
+    @BeforeEach
+    void savedRates() {
+        when(rateRepo.findAll()).thenReturn(List.of(
+                new FxRate("USD", DEC_1, new BigDecimal("80")),
+                new FxRate("EUR", DEC_1, new BigDecimal("90"))));
+        when(rollupService.locked(any())).thenAnswer(inv -> ((Supplier<?>) inv.getArgument(0)).get());
+        converter = new CurrencyConverter(rateRepo, "RUB", ZoneId.of("Europe/Moscow"), new SimpleMeterRegistry());
+        converter.loadSavedRates();
+    }
+
+    @Test
+    void missingFileKeepsRatesAndHistory() {
+        sync(new FileSystemResource("does-not-exist/rates.csv"));
+
+        assertKeptAll();
+    }
+
+    @Test
+    void headerOnlyFileKeepsRatesAndHistory() {
+        sync(csv("date,currency,rate\n"));
+
+        assertKeptAll();
+    }
+
+    @Test
+    void currencyAbsentFromFileKeepsItsRates() {
+        sync(csv("""
+                date,currency,rate
+                2025-12-01,USD,81
+                """));
+
+        verify(rateRepo).deleteFrom("USD", DEC_1);
+        verify(rateRepo, never()).deleteFrom(eq("EUR"), any());
+        verify(expenseRepo, never()).clearRange(eq("EUR"), any(), any());
+        assertThat(converter.rates().rate("EUR", DEC_1)).isEqualByComparingTo("90");
+        assertThat(converter.rates().rate("USD", DEC_1)).isEqualByComparingTo("81");
+    }
+
+    @Test
+    void emptySourceWithoutSavedRatesIsReportedOnceAsNotConfigured() {
+        FxRateRepository emptyRepo = mock(FxRateRepository.class);
+        CurrencyConverter unconfigured = new CurrencyConverter(emptyRepo, "RUB", ZoneId.of("Europe/Moscow"),
+                new SimpleMeterRegistry());
+        unconfigured.loadSavedRates();
+        FxRateSync sync = new FxRateSync(new FileFxRateProvider(csv("date,currency,rate\n")), emptyRepo, expenseRepo,
+                unconfigured, rollupService, mock(PlatformTransactionManager.class), ZoneId.of("Europe/Moscow"),
+                new SimpleMeterRegistry());
+
+        Logger logger = (Logger) LoggerFactory.getLogger(FxRateSync.class);
+        ListAppender<ILoggingEvent> logs = new ListAppender<>();
+        logs.start();
+        logger.addAppender(logs);
+        try {
+            sync.sync();
+            sync.sync();
+        } finally {
+            logger.detachAppender(logs);
+        }
+
+        assertThat(logs.list).extracting(ILoggingEvent::getLevel).containsExactly(Level.INFO);
+        verify(emptyRepo, never()).deleteFrom(anyString(), any());
+    }
+
+    private void assertKeptAll() {
+        verify(rateRepo, never()).deleteFrom(anyString(), any());
+        verify(expenseRepo, never()).clearRange(anyString(), any(), any());
+        assertThat(converter.rates().currencies()).containsExactlyInAnyOrder("USD", "EUR");
+    }
+
+    private void sync(Resource file) {
+        new FxRateSync(new FileFxRateProvider(file), rateRepo, expenseRepo, converter, rollupService,
+                mock(PlatformTransactionManager.class), ZoneId.of("Europe/Moscow"), new SimpleMeterRegistry())
+                .sync();
+    }
+
+    private static Resource csv(String content) {
+        return new ByteArrayResource(content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.bookkeeperai.fx;
+
+import com.example.bookkeeperai.entity.FxRate;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FxRateTableTest {
+
+    private static final LocalDate DEC_1 = LocalDate.of(2025, 12, 1);
+    private static final LocalDate DEC_5 = LocalDate.of(2025, 12, 5);
+
+    private final FxRateTable table = FxRateTable.of(List.of(
+            new FxRate("USD", DEC_5, new BigDecimal("80.5")),
+            new FxRate("USD", DEC_1, new BigDecimal("78.0"))));
+
+    @Test
+    void rateActsFromItsDateUntilTheNext() {
+        assertThat(table.rate("USD", DEC_1.minusDays(1))).isNull();
+        assertThat(table.rate("USD", DEC_1)).isEqualByComparingTo("78.0");
+        assertThat(table.rate("USD", DEC_5.minusDays(1))).isEqualByComparingTo("78.0");
+        assertThat(table.rate("USD", DEC_5.plusYears(1))).isEqualByComparingTo("80.5");
+        assertThat(table.rate("EUR", DEC_5)).isNull();
+    }
+
+    @Test
+    void segmentsCoverDatesWithoutRate() {
+        List<FxRateTable.Segment> segments = table.segments("USD", LocalDate.of(2025, 11, 20));
+
+        assertThat(segments).hasSize(3);
+        assertThat(segments.get(0).rate()).isNull();
+        assertThat(segments.get(0).end()).isEqualTo(DEC_1);
+        assertThat(segments.get(1).start()).isEqualTo(DEC_1);
+        assertThat(segments.get(1).end()).isEqualTo(DEC_5);
+        assertThat(segments.get(2).end()).isNull();
+    }
+
+    @Test
+    void changesStartAtFirstCorrectedDate() {
+        FxRateTable corrected = FxRateTable.of(List.of(
+                new FxRate("USD", DEC_1, new BigDecimal("78.00")),
+                new FxRate("USD", DEC_5, new BigDecimal("81.0")),
+                new FxRate("EUR", DEC_1, new BigDecimal("90.0"))));
+
+        Map<String, LocalDate> changes = corrected.changesSince(table);
+
+        assertThat(changes).containsExactlyInAnyOrderEntriesOf(Map.of("USD", DEC_5, "EUR", DEC_1));
+        assertThat(table.changesSince(table)).isEmpty();
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.bookkeeperai.metrics;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.slf4j.MDC;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PipelineMetricsTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final PipelineMetrics metrics = new PipelineMetrics(Duration.ofMinutes(1), registry);
+
+    @Test
+    void stagesAreRecordedInTimerAndTrace() {
+        AtomicReference<UpdateTrace> seen = new AtomicReference<>();
+        AtomicReference<String> mdc = new AtomicReference<>();
+
+        metrics.traced(42, () -> {
+            seen.set(UpdateTrace.current());
+            mdc.set(MDC.get(UpdateTrace.MDC_KEY));
+            metrics.time(Stage.DB_SAVE, () -> "ok");
+        });
+
+        assertThat(mdc.get()).isEqualTo("42");
+        assertThat(seen.get().describe()).contains("db.save=");
+        assertThat(registry.get("bookkeeper.pipeline.stage").tag("stage", "db.save").timer().count()).isEqualTo(1);
+        assertThat(UpdateTrace.current()).isNull();
+        assertThat(MDC.get(UpdateTrace.MDC_KEY)).isNull();
+    }
+
+    @Test
+    void failuresAreCountedPerStage() {
+        assertThatThrownBy(() -> metrics.time(Stage.TELEGRAM_FETCH, () -> {
+            throw new IOException("timeout");
+        })).isInstanceOf(IOException.class);
+
+        CompletableFuture<String> call = new CompletableFuture<>();
+        CompletableFuture<String> timed = metrics.timeAsync(Stage.LLM, () -> call);
+        assertThat(timed).isSameAs(call);
+        assertThat(registry.get("bookkeeper.pipeline.inflight").tag("stage", "llm").gauge().value()).isEqualTo(1);
+        call.completeExceptionally(new IllegalStateException("503"));
+
+        assertThat(registry.get("bookkeeper.pipeline.failures").tag("stage", "telegram.fetch").counter().count())
+                .isEqualTo(1);
+        assertThat(registry.get("bookkeeper.pipeline.failures").tag("stage", "llm").counter().count()).isEqualTo(1);
+        assertThat(registry.get("bookkeeper.pipeline.inflight").tag("stage", "llm").gauge().value()).isZero();
+    }
+
+    @Test
+    void wrappedCallbackRunsInCallerTrace() throws Exception {
+        AtomicReference<Integer> seen = new AtomicReference<>();
+        metrics.traced(7, () -> {
+            CompletableFuture<Integer> other = CompletableFuture.supplyAsync(() -> 1)
+                    .thenApplyAsync(UpdateTrace.wrap(x -> UpdateTrace.currentUpdateId()));
+            seen.set(other.join());
+        });
+        assertThat(seen.get()).isEqualTo(7);
+    }
+}
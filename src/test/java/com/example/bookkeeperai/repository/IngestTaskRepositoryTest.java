@@ -0,0 +1,80 @@
+package com.example.bookkeeperai.repository;
+
+import com.example.bookkeeperai.entity.IngestStatus;
+import com.example.bookkeeperai.entity.IngestTask;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.OffsetDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class IngestTaskRepositoryTest {
+
+    @Autowired
+    private IngestTaskRepository repo;
+
+    @BeforeEach
+    void clean() {
+        repo.deleteAll();
+    }
+
+    @Test
+    void readyTasksAreOnePerUserOldestFirst() {
+        OffsetDateTime now = OffsetDateTime.now();
+        IngestTask first = repo.save(task(1L, now));
+        repo.save(task(1L, now));
+        IngestTask other = repo.save(task(2L, now));
+
+        assertThat(repo.findReady(now, PageRequest.of(0, 10)))
+                .extracting(IngestTask::getId)
+                .containsExactly(first.getId(), other.getId());
+
+        repo.claim(first.getId(), now);
+        assertThat(repo.findReady(now, PageRequest.of(0, 10)))
+                .extracting(IngestTask::getId)
+                .containsExactly(other.getId());
+    }
+
+    @Test
+    void heldTaskWaitsForReleaseAndFinishKeepsReply() {
+        OffsetDateTime now = OffsetDateTime.now();
+        IngestTask held = repo.save(task(3L, now.plusSeconds(10)));
+        assertThat(repo.findReady(now, PageRequest.of(0, 10))).isEmpty();
+
+        repo.attachReply(held.getId(), 42);
+        assertThat(repo.release(held.getId(), now)).isEqualTo(1);
+        assertThat(repo.findReady(now, PageRequest.of(0, 10)))
+                .extracting(IngestTask::getId)
+                .containsExactly(held.getId());
+
+        repo.claim(held.getId(), now);
+        repo.finish(held.getId(), IngestStatus.DONE, 0, now, null, now);
+        assertThat(repo.findById(held.getId())).get()
+                .satisfies(t -> {
+                    assertThat(t.getStatus()).isEqualTo(IngestStatus.DONE);
+                    assertThat(t.getReplyMessageId()).isEqualTo(42);
+                });
+    }
+
+    private static IngestTask task(Long userId, OffsetDateTime availableAt) {
+        OffsetDateTime now = OffsetDateTime.now();
+        return IngestTask.builder()
+                .chatId(userId)
+                .telegramUserId(userId)
+                .sourceType("TEXT")
+                .text("кофе 250")
+                .status(IngestStatus.PENDING)
+                .createdAt(now)
+                .updatedAt(now)
+                .availableAt(availableAt)
+                .build();
+    }
+}
@@ -0,0 +1,119 @@
+package com.example.bookkeeperai.repository;
+
+import com.example.bookkeeperai.dto.ExpenseSummary;
+import com.example.bookkeeperai.entity.Expense;
+import com.example.bookkeeperai.service.ExpenseExportService;
+import com.example.bookkeeperai.service.ExpenseService;
+import com.example.bookkeeperai.service.ExpenseWriteBuffer;
+import com.example.bookkeeperai.service.ExportFormat;
+import com.example.bookkeeperai.service.RollupService;
+import com.zaxxer.hikari.HikariDataSource;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.OffsetDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Профили prod и postgres на настоящем PostgreSQL (embedded, без Docker):
+ * миграции Flyway, запись пачками, нативный SQL, чтение и выгрузка курсором через отдельный пул.
+ */
+@SpringBootTest(properties = {
+        "telegram.mode=none",
+        "telegram.bot.token=test",
+        "huggingface.token=test",
+        "storage.read-split.enabled=true"})
+@ActiveProfiles({"prod", "postgres"})
+class PostgresProfileTest {
+
+    private static EmbeddedPostgres postgres;
+
+    @Autowired
+    private ExpenseWriteBuffer writeBuffer;
+    @Autowired
+    private ExpenseService expenseService;
+    @Autowired
+    private ExpenseExportService exportService;
+    @Autowired
+    private RollupService rollups;
+    @Autowired
+    private ExpenseRepository expenseRepo;
+    @Autowired
+    private ReceivedUpdateRepository receivedUpdates;
+    @Autowired
+    @Qualifier("readDataSource")
+    private HikariDataSource readDataSource;
+
+    @DynamicPropertySource
+    static void datasource(DynamicPropertyRegistry registry) throws IOException {
+        postgres = EmbeddedPostgres.start();
+        registry.add("spring.datasource.url", () -> postgres.getJdbcUrl("postgres", "postgres"));
+        registry.add("spring.datasource.username", () -> "postgres");
+        registry.add("spring.datasource.password", () -> "");
+    }
+
+    @AfterAll
+    static void stop() throws IOException {
+        postgres.close();
+    }
+
+    @Test
+    void writesAndReadsGoThroughPostgres() {
+        Expense saved = writeBuffer.submit(expense(7L, "tg:100:0")).join();
+        Expense again = writeBuffer.submit(expense(7L, "tg:100:0")).join();
+
+        assertThat(again.getId()).isEqualTo(saved.getId());
+        assertThat(expenseRepo.findById(saved.getId())).get()
+                .extracting(Expense::getRawText).isEqualTo("кофе 250 у дома");
+
+        List<ExpenseSummary> last = expenseService.getLastExpenses(7L, 10);
+        assertThat(last).extracting(ExpenseSummary::getId).containsExactly(saved.getId());
+        assertThat(readDataSource.getHikariPoolMXBean().getTotalConnections()).isPositive();
+        assertThat(rollups.monthByCategory(7L, rollups.currentMonth())).hasSize(1);
+    }
+
+    @Test
+    void exportStreamsThroughReadPoolInTransaction() throws IOException {
+        writeBuffer.submit(expense(8L, "tg:200:0")).join();
+        writeBuffer.submit(expense(8L, "tg:200:1")).join();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long rows = exportService.export(8L, ExportFormat.CSV, false, out);
+
+        assertThat(readDataSource.isAutoCommit()).isFalse();
+        assertThat(rows).isEqualTo(2);
+        assertThat(out.toString(StandardCharsets.UTF_8).lines()).hasSize(3);
+    }
+
+    @Test
+    void updateDedupUsesNativeInsert() {
+        assertThat(receivedUpdates.markReceived(555L, OffsetDateTime.now())).isEqualTo(1);
+        assertThat(receivedUpdates.markReceived(555L, OffsetDateTime.now())).isZero();
+    }
+
+    private static Expense expense(Long userId, String key) {
+        return Expense.builder()
+                .telegramUserId(userId)
+                .amount(new BigDecimal("250.00"))
+                .currency("RUB")
+                .category("cafe")
+                .expenseDate(OffsetDateTime.now())
+                .rawText("кофе 250 у дома")
+                .sourceType("TEXT")
+                .importKey(key)
+                .build();
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.bookkeeperai.resilience;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CircuitBreakerTest {
+
+    @Test
+    void opensWhenFailureRateReachesThreshold() {
+        CircuitBreaker breaker = new CircuitBreaker(10, 4, 0.5, Duration.ofMinutes(1), 1);
+
+        breaker.onSuccess();
+        breaker.onSuccess();
+        breaker.onFailure();
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+
+        breaker.onFailure();
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+        assertThat(breaker.isCallPermitted()).isFalse();
+        assertThat(breaker.tryAcquirePermission()).isFalse();
+    }
+
+    @Test
+    void halfOpenProbeClosesOnSuccessAndReopensOnFailure() {
+        CircuitBreaker breaker = new CircuitBreaker(4, 1, 0.5, Duration.ZERO, 1);
+
+        breaker.onFailure();
+        assertThat(breaker.isCallPermitted()).isTrue();
+        assertThat(breaker.tryAcquirePermission()).isTrue();
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+        // пробный вызов один — второй не пускаем
+        assertThat(breaker.isCallPermitted()).isFalse();
+        assertThat(breaker.tryAcquirePermission()).isFalse();
+
+        breaker.onFailure();
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+
+        assertThat(breaker.tryAcquirePermission()).isTrue();
+        breaker.onSuccess();
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    void releasedProbeNeitherClosesNorReopens() {
+        CircuitBreaker breaker = new CircuitBreaker(4, 1, 0.5, Duration.ZERO, 1);
+        breaker.onFailure();
+
+        assertThat(breaker.tryAcquirePermission()).isTrue();
+        // например, 400 от сервиса: о его здоровье ничего не говорит
+        breaker.releasePermission();
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+
+        assertThat(breaker.tryAcquirePermission()).isTrue();
+        breaker.onSuccess();
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+    }
+}
@@ -0,0 +1,30 @@
+package com.example.bookkeeperai.resilience;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TokenBucketTest {
+
+    @Test
+    void reservesDelayAndRejectsBeyondMaxWait() {
+        TokenBucket bucket = new TokenBucket(10, 1);
+
+        assertThat(bucket.reserve(0)).isZero();
+        long wait = bucket.reserve(Duration.ofSeconds(1).toNanos());
+        assertThat(wait).isPositive().isLessThanOrEqualTo(Duration.ofMillis(100).toNanos());
+        assertThat(bucket.reserve(0)).isEqualTo(-1);
+    }
+
+    @Test
+    void tryAcquireDoesNotReserveAhead() {
+        TokenBucket bucket = new TokenBucket(1, 2);
+
+        assertThat(bucket.tryAcquire()).isTrue();
+        assertThat(bucket.tryAcquire()).isTrue();
+        assertThat(bucket.tryAcquire()).isFalse();
+        assertThat(bucket.reserve(Duration.ofSeconds(2).toNanos())).isPositive();
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.bookkeeperai.service;
+
+import com.example.bookkeeperai.dto.BankStatementRow;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BankStatementReaderTest {
+
+    private static final ZoneId MOSCOW = ZoneId.of("Europe/Moscow");
+
+    @Test
+    void readsWindows1251SemicolonStatement() throws Exception {
+        String csv = """
+                Дата операции;Дата платежа;Статус;Сумма операции;Валюта операции;Категория;Описание
+                04.12.2025 10:15:30;05.12.2025;OK;-1 234,50;RUB;Супермаркеты;Пятёрочка
+                04.12.2025 12:00:00;04.12.2025;OK;+5000,00;RUB;Пополнения;Перевод
+                """;
+
+        try (BankStatementReader reader = reader(csv, Charset.forName("windows-1251"))) {
+            BankStatementRow first = reader.next();
+            assertThat(first.error()).isNull();
+            assertThat(first.date()).isEqualTo(OffsetDateTime.parse("2025-12-04T10:15:30+03:00"));
+            assertThat(first.amount()).isEqualByComparingTo("1234.50");
+            assertThat(first.currency()).isEqualTo("RUB");
+            assertThat(first.category()).isEqualTo("Супермаркеты");
+            assertThat(first.description()).isEqualTo("Пятёрочка");
+            assertThat(first.income()).isFalse();
+
+            assertThat(reader.next().income()).isTrue();
+            assertThat(reader.next()).isNull();
+        }
+    }
+
+    @Test
+    void readsQuotedMultilineFieldsAndReportsBadRows() throws Exception {
+        String csv = """
+                date,amount,currency,description
+                2025-12-04,-12.99,usd,"Coffee, large
+                with milk"
+                yesterday,-10,usd,Tea
+                """;
+
+        try (BankStatementReader reader = reader(csv, StandardCharsets.UTF_8)) {
+            BankStatementRow coffee = reader.next();
+            assertThat(coffee.description()).isEqualTo("Coffee, large\nwith milk");
+            assertThat(coffee.currency()).isEqualTo("USD");
+            assertThat(coffee.category()).isNull();
+
+            BankStatementRow bad = reader.next();
+            assertThat(bad.error()).isNotNull();
+            assertThat(bad.lineNumber()).isEqualTo(4);
+        }
+    }
+
+    @Test
+    void rejectsFileWithoutDateAndAmountColumns() {
+        assertThatThrownBy(() -> reader("name;value\nfoo;bar\n", StandardCharsets.UTF_8))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void lastSeparatorIsDecimal() {
+        assertThat(BankStatementReader.parseAmount("-1234,50")).isEqualByComparingTo("-1234.50");
+        assertThat(BankStatementReader.parseAmount("1,234.50")).isEqualByComparingTo("1234.50");
+        assertThat(BankStatementReader.parseAmount("1.234,50")).isEqualByComparingTo("1234.50");
+        assertThat(BankStatementReader.parseAmount("1,234,567")).isEqualByComparingTo("1234567");
+    }
+
+    @Test
+    void unsignedAmountNeedsTypeColumn() throws Exception {
+        String withoutType = """
+                date;amount;description
+                04.12.2025;250;Кофе
+                """;
+        String withType = """
+                date;amount;type;description
+                04.12.2025;250;Покупка;Кофе
+                05.12.2025;1000;Пополнение;Перевод
+                """;
+
+        try (BankStatementReader reader = reader(withoutType, StandardCharsets.UTF_8)) {
+            assertThat(reader.next().error()).isNotNull();
+        }
+        try (BankStatementReader reader = reader(withType, StandardCharsets.UTF_8)) {
+            assertThat(reader.next().income()).isFalse();
+            assertThat(reader.next().income()).isTrue();
+        }
+    }
+
+    private static BankStatementReader reader(String csv, Charset charset) throws Exception {
+        return new BankStatementReader(new ByteArrayInputStream(csv.getBytes(charset)), MOSCOW);
+    }
+}
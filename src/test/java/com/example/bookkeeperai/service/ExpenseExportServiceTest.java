@@ -0,0 +1,90 @@
+package com.example.bookkeeperai.service;
+
+import com.example.bookkeeperai.dto.ExpenseExportRow;
+import com.example.bookkeeperai.repository.ExpenseRepository;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.OffsetDateTime;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ExpenseExportServiceTest {
+
+    private final ExpenseRepository repo = mock(ExpenseRepository.class);
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ExpenseExportService service =
+            new ExpenseExportService(repo, objectMapper, new SimpleMeterRegistry());
+
+    @Test
+    void quotesCsvFieldsOnlyWhenNeeded() throws Exception {
+        StringWriter out = new StringWriter();
+        ExpenseExportService.writeCsvField(out, "кофе");
+        out.write('|');
+        ExpenseExportService.writeCsvField(out, "кофе, \"большой\"\nс собой");
+        out.write('|');
+        ExpenseExportService.writeCsvField(out, null);
+
+        assertThat(out.toString()).isEqualTo("кофе|\"кофе, \"\"большой\"\"\nс собой\"|");
+    }
+
+    @Test
+    void writesCsvWithHeader() throws Exception {
+        ExpenseExportRow coffee = row(1L, "250.00", "кофе 250");
+        when(repo.streamForExport(42L)).thenReturn(Stream.of(coffee));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        long rows = service.export(42L, ExportFormat.CSV, false, out);
+
+        assertThat(rows).isEqualTo(1);
+        assertThat(out.toString(StandardCharsets.UTF_8)).isEqualTo(
+                "id,date,amount,currency,category,description,place,source,raw_text\n"
+                        + "1,2025-12-04T10:15:30+03:00,250.00,RUB,cafe,,,TEXT,кофе 250\n");
+    }
+
+    @Test
+    void writesGzippedNdjsonOneObjectPerLine() throws Exception {
+        ExpenseExportRow coffee = row(1L, "250.00", "кофе 250");
+        ExpenseExportRow tea = row(2L, "99.90", "чай\n99,90");
+        when(repo.streamForExport(42L)).thenReturn(Stream.of(coffee, tea));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        long rows = service.export(42L, ExportFormat.NDJSON, true, out);
+
+        String text;
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+            text = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        String[] lines = text.split("\n");
+        assertThat(rows).isEqualTo(2);
+        assertThat(lines).hasSize(2);
+
+        JsonNode second = objectMapper.readTree(lines[1]);
+        assertThat(second.get("id").asLong()).isEqualTo(2);
+        assertThat(second.get("amount").decimalValue()).isEqualByComparingTo("99.90");
+        assertThat(second.get("rawText").asText()).isEqualTo("чай\n99,90");
+    }
+
+    private static ExpenseExportRow row(Long id, String amount, String rawText) {
+        ExpenseExportRow row = mock(ExpenseExportRow.class);
+        when(row.getId()).thenReturn(id);
+        when(row.getAmount()).thenReturn(new BigDecimal(amount));
+        when(row.getCurrency()).thenReturn("RUB");
+        when(row.getCategory()).thenReturn("cafe");
+        when(row.getExpenseDate()).thenReturn(OffsetDateTime.parse("2025-12-04T10:15:30+03:00"));
+        when(row.getSourceType()).thenReturn("TEXT");
+        when(row.getRawText()).thenReturn(rawText);
+        return row;
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.bookkeeperai.service;
+
+import com.example.bookkeeperai.entity.Expense;
+import com.example.bookkeeperai.repository.ExpenseRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.math.BigDecimal;
+import java.time.OffsetDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = {
+        "telegram.mode=none",
+        "telegram.bot.token=test",
+        "huggingface.token=test",
+        "spring.datasource.url=jdbc:h2:mem:write-buffer-duplicates;DB_CLOSE_DELAY=-1"})
+class ExpenseWriteBufferDuplicateTest {
+
+    @Autowired
+    private ExpenseWriteBuffer buffer;
+    @Autowired
+    private ExpenseRepository expenseRepo;
+
+    @Test
+    void repeatedUpdateReturnsSavedExpense() {
+        OffsetDateTime now = OffsetDateTime.now();
+        Expense saved = expenseRepo.save(expense(21L, "кофе 250", now));
+
+        Expense repeated = buffer.submit(expense(21L, "кофе 250", now.plusMinutes(3))).join();
+
+        assertThat(repeated.getId()).isEqualTo(saved.getId());
+        assertThat(expensesOf(21L)).isEqualTo(1);
+    }
+
+    @Test
+    void reusedUpdateIdFromAnotherMessageIsSavedWithoutKey() {
+        OffsetDateTime now = OffsetDateTime.now();
+        Expense old = expenseRepo.save(expense(22L, "кофе 250", now.minusDays(10)));
+
+        Expense fresh = buffer.submit(expense(22L, "такси 700", now)).join();
+
+        assertThat(fresh.getId()).isNotEqualTo(old.getId());
+        assertThat(fresh.getImportKey()).isNull();
+        assertThat(expensesOf(22L)).isEqualTo(2);
+    }
+
+    private long expensesOf(Long userId) {
+        return expenseRepo.findAll().stream()
+                .filter(e -> e.getTelegramUserId().equals(userId))
+                .count();
+    }
+
+    private static Expense expense(Long userId, String rawText, OffsetDateTime date) {
+        return Expense.builder()
+                .telegramUserId(userId)
+                .amount(new BigDecimal(rawText.replaceAll("\\D", "")))
+                .currency("RUB")
+                .category("cafe")
+                .expenseDate(date)
+                .rawText(rawText)
+                .sourceType("TEXT")
+                .importKey("tg:100:0")
+                .build();
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.bookkeeperai.service;
+
+import com.example.bookkeeperai.entity.Expense;
+import com.example.bookkeeperai.fx.CurrencyConverter;
+import com.example.bookkeeperai.repository.ExpenseRepository;
+import com.example.bookkeeperai.repository.FxRateRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ExpenseWriteBufferTest {
+
+    private final ExpenseRepository repo = mock(ExpenseRepository.class);
+    private final RollupService rollups = mock(RollupService.class);
+    private ExpenseWriteBuffer buffer;
+
+    @BeforeEach
+    void setUp() {
+        when(rollups.locked(any())).thenAnswer(inv -> ((Supplier<?>) inv.getArgument(0)).get());
+        when(repo.save(any())).thenAnswer(inv -> inv.getArgument(0));
+        CurrencyConverter converter = new CurrencyConverter(mock(FxRateRepository.class), "RUB",
+                ZoneId.of("Europe/Moscow"), new SimpleMeterRegistry());
+        buffer = new ExpenseWriteBuffer(repo, rollups, converter, mock(PlatformTransactionManager.class),
+                10, Duration.ofMillis(10), 100, Duration.ofMillis(100), new SimpleMeterRegistry());
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        buffer.shutdown();
+    }
+
+    @Test
+    void updateMovesRollupContributionFromOldToNewValues() {
+        Expense stored = Expense.builder()
+                .id(5L)
+                .telegramUserId(7L)
+                .amount(new BigDecimal("500"))
+                .currency("RUB")
+                .amountInBaseCurrency(new BigDecimal("500"))
+                .category("cafe")
+                .expenseDate(OffsetDateTime.now())
+                .build();
+        when(repo.findByIdAndTelegramUserId(5L, 7L)).thenReturn(Optional.of(stored));
+
+        Expense updated = buffer.update(7L, 5L, e -> e.setAmount(new BigDecimal("600")));
+
+        assertThat(updated.getAmountInBaseCurrency()).isEqualByComparingTo("600");
+        ArgumentCaptor<Expense> before = ArgumentCaptor.forClass(Expense.class);
+        verify(rollups).replace(before.capture(), any());
+        assertThat(before.getValue().getAmount()).isEqualByComparingTo("500");
+        assertThat(before.getValue().getAmountInBaseCurrency()).isEqualByComparingTo("500");
+    }
+
+    @Test
+    void updateOfAnotherUsersExpenseFails() {
+        when(repo.findByIdAndTelegramUserId(5L, 8L)).thenReturn(Optional.empty());
+
+        assertThatThrownBy(() -> buffer.update(8L, 5L, e -> e.setAmount(BigDecimal.ONE)))
+                .isInstanceOf(IllegalStateException.class);
+        verify(repo, never()).save(any());
+        verify(rollups, never()).replace(any(), any());
+    }
+
+    @Test
+    void rowRetryAfterFailedBatchPersistsCopyWithoutSequenceId() {
+        AtomicInteger calls = new AtomicInteger();
+        when(repo.saveAll(any())).thenAnswer(inv -> {
+            List<Expense> batch = inv.getArgument(0);
+            if (calls.getAndIncrement() == 0) {
+                // пачка успела получить id из последовательности и откатилась
+                batch.forEach(e -> e.setId(99L));
+                throw new DataIntegrityViolationException("batch failed");
+            }
+            return batch;
+        });
+        Expense expense = Expense.builder()
+                .telegramUserId(7L)
+                .amount(new BigDecimal("250"))
+                .currency("RUB")
+                .category("cafe")
+                .expenseDate(OffsetDateTime.now())
+                .build();
+
+        Expense saved = buffer.submit(expense).join();
+
+        assertThat(calls.get()).isEqualTo(2);
+        assertThat(saved.getId()).isNull();
+        assertThat(saved.getAmount()).isEqualByComparingTo("250");
+    }
+}
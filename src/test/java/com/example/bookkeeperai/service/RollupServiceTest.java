@@ -0,0 +1,83 @@
+package com.example.bookkeeperai.service;
+
+import com.example.bookkeeperai.entity.Expense;
+import com.example.bookkeeperai.entity.ExpenseRollup;
+import com.example.bookkeeperai.entity.RollupGranularity;
+import com.example.bookkeeperai.repository.ExpenseRepository;
+import com.example.bookkeeperai.repository.ExpenseRollupRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatcher;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class RollupServiceTest {
+
+    private static final ZoneId MOSCOW = ZoneId.of("Europe/Moscow");
+    private static final OffsetDateTime DATE = OffsetDateTime.parse("2025-12-04T12:00:00+03:00");
+
+    private final ExpenseRollupRepository rollupRepo = mock(ExpenseRollupRepository.class);
+    private final RollupService rollups = new RollupService(mock(ExpenseRepository.class), rollupRepo,
+            mock(PlatformTransactionManager.class), MOSCOW, "RUB", false, new SimpleMeterRegistry());
+
+    @Test
+    void amountChangeIsOneIncrementPerBucket() {
+        when(rollupRepo.increment(any(), any(), any(), any(), anyLong())).thenReturn(1);
+
+        rollups.replace(expense("cafe", "500"), expense("cafe", "600"));
+
+        verify(rollupRepo).increment(eq(key(RollupGranularity.DAY, LocalDate.of(2025, 12, 4), "cafe")),
+                argThat(amountIs("100")), argThat(amountIs("100")), argThat(amountIs("0")), eq(0L));
+        verify(rollupRepo).increment(eq(key(RollupGranularity.MONTH, LocalDate.of(2025, 12, 1), "cafe")),
+                argThat(amountIs("100")), argThat(amountIs("100")), argThat(amountIs("0")), eq(0L));
+        verify(rollupRepo, never()).deleteIfEmpty(any());
+        verify(rollupRepo, never()).save(any());
+    }
+
+    @Test
+    void categoryChangeMovesExpenseBetweenBuckets() {
+        ExpenseRollup.Key oldDay = key(RollupGranularity.DAY, LocalDate.of(2025, 12, 4), "cafe");
+        ExpenseRollup.Key newDay = key(RollupGranularity.DAY, LocalDate.of(2025, 12, 4), "groceries");
+        // старые бакеты есть, новых ещё нет
+        when(rollupRepo.increment(any(), any(), any(), any(), eq(-1L))).thenReturn(1);
+        when(rollupRepo.increment(any(), any(), any(), any(), eq(1L))).thenReturn(0);
+
+        rollups.replace(expense("cafe", "500"), expense("groceries", "500"));
+
+        verify(rollupRepo).deleteIfEmpty(oldDay);
+        verify(rollupRepo).save(argThat(r -> r.getId().equals(newDay) && r.getExpenseCount() == 1));
+    }
+
+    private static Expense expense(String category, String amount) {
+        return Expense.builder()
+                .id(5L)
+                .telegramUserId(7L)
+                .amount(new BigDecimal(amount))
+                .amountInBaseCurrency(new BigDecimal(amount))
+                .currency("RUB")
+                .category(category)
+                .expenseDate(DATE)
+                .build();
+    }
+
+    private static ExpenseRollup.Key key(RollupGranularity granularity, LocalDate periodStart, String category) {
+        return new ExpenseRollup.Key(7L, granularity, periodStart, category, "RUB");
+    }
+
+    private static ArgumentMatcher<BigDecimal> amountIs(String expected) {
+        return actual -> actual != null && actual.compareTo(new BigDecimal(expected)) == 0;
+    }
+}
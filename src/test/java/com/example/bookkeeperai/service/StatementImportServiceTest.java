@@ -0,0 +1,71 @@
+package com.example.bookkeeperai.service;
+
+import com.example.bookkeeperai.dto.ImportReport;
+import com.example.bookkeeperai.repository.ExpenseRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneId;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = {
+        "telegram.mode=none",
+        "telegram.bot.token=test",
+        "huggingface.token=test",
+        "spring.datasource.url=jdbc:h2:mem:statement-import;DB_CLOSE_DELAY=-1"})
+class StatementImportServiceTest {
+
+    private static final String CSV = """
+            date;amount;category;description
+            04.12.2025;-250;Кафе;Кофе
+            04.12.2025;-250;Кафе;Кофе
+            05.12.2025;-1 200,00;Супермаркеты;Пятёрочка
+            """;
+
+    @Autowired
+    private StatementImportService importService;
+    @Autowired
+    private ExpenseRepository expenseRepo;
+
+    @Test
+    void importKeyIsStableAcrossImportsAndDistinguishesRepeats() throws Exception {
+        Map<String, Integer> firstImport = new HashMap<>();
+        Map<String, Integer> secondImport = new HashMap<>();
+        try (BankStatementReader a = reader(); BankStatementReader b = reader()) {
+            String a1 = StatementImportService.importKey(a.next(), firstImport);
+            String a2 = StatementImportService.importKey(a.next(), firstImport);
+            String b1 = StatementImportService.importKey(b.next(), secondImport);
+
+            assertThat(a1).isNotEqualTo(a2);
+            assertThat(a1).isEqualTo(b1);
+        }
+    }
+
+    @Test
+    void secondImportOfSameStatementIsSkippedByImportKey() throws Exception {
+        ImportReport first = importService.importStatement(11L, csv(), report -> { });
+        ImportReport second = importService.importStatement(11L, csv(), report -> { });
+
+        assertThat(first.imported()).isEqualTo(3);
+        assertThat(second.imported()).isZero();
+        assertThat(second.duplicates()).isEqualTo(3);
+        assertThat(expenseRepo.findAll())
+                .filteredOn(e -> e.getTelegramUserId() == 11L)
+                .hasSize(3);
+    }
+
+    private static BankStatementReader reader() throws Exception {
+        return new BankStatementReader(csv(), ZoneId.of("Europe/Moscow"));
+    }
+
+    private static InputStream csv() {
+        return new ByteArrayInputStream(CSV.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,136 @@
+package com.example.bookkeeperai.telegram;
+
+import com.example.bookkeeperai.metrics.PipelineMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.objects.Message;
+import org.telegram.telegrambots.meta.api.objects.ResponseParameters;
+import org.telegram.telegrambots.meta.bots.AbsSender;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ReplySenderTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final ReplySender replies = new ReplySender(30, 50, 1, 3,
+            new PipelineMetrics(Duration.ofMinutes(1), registry), registry);
+
+    @AfterEach
+    void shutdown() throws InterruptedException {
+        replies.shutdown();
+    }
+
+    @Test
+    void repliesQueuedBehindInFlightMessageAreSentAsOne() throws Exception {
+        AbsSender sender = mock(AbsSender.class);
+        CompletableFuture<Message> first = new CompletableFuture<>();
+        when(sender.executeAsync(any(SendMessage.class)))
+                .thenReturn(first, CompletableFuture.completedFuture(new Message()));
+        replies.bind(sender);
+
+        replies.reply(1L, "кофе");
+        verify(sender, timeout(1000)).executeAsync(any(SendMessage.class));
+        replies.reply(1L, "такси");
+        replies.reply(1L, "обед");
+        first.complete(new Message());
+
+        ArgumentCaptor<SendMessage> sent = ArgumentCaptor.forClass(SendMessage.class);
+        verify(sender, timeout(1000).times(2)).executeAsync(sent.capture());
+        assertThat(sent.getAllValues()).extracting(SendMessage::getText)
+                .containsExactly("кофе", "такси\n\nобед");
+        assertThat(registry.get("bookkeeper.telegram.replies.coalesced").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void networkErrorIsNotRetriedButServerErrorIs() throws Exception {
+        AbsSender sender = mock(AbsSender.class);
+        TelegramApiRequestException badGateway = mock(TelegramApiRequestException.class);
+        when(badGateway.getErrorCode()).thenReturn(502);
+        when(sender.executeAsync(any(SendMessage.class))).thenReturn(
+                CompletableFuture.failedFuture(new TelegramApiException("connection reset")),
+                CompletableFuture.failedFuture(badGateway),
+                CompletableFuture.completedFuture(new Message()));
+        replies.bind(sender);
+
+        CompletableFuture<Message> lost = replies.send(new SendMessage("1", "кофе"));
+        assertThatThrownBy(() -> lost.get(1, TimeUnit.SECONDS)).hasCauseInstanceOf(TelegramApiException.class);
+
+        CompletableFuture<Message> delivered = replies.send(new SendMessage("1", "такси"));
+        assertThat(delivered.get(5, TimeUnit.SECONDS)).isNotNull();
+        verify(sender, times(3)).executeAsync(any(SendMessage.class));
+    }
+
+    @Test
+    void chatsResumingAfterRetryAfterStayWithinGlobalRate() throws Exception {
+        ReplySender limited = new ReplySender(5, 50, 1, 3,
+                new PipelineMetrics(Duration.ofMinutes(1), registry), registry);
+        ResponseParameters retryAfter = mock(ResponseParameters.class);
+        when(retryAfter.getRetryAfter()).thenReturn(2);
+        TelegramApiRequestException tooMany = mock(TelegramApiRequestException.class);
+        when(tooMany.getErrorCode()).thenReturn(429);
+        when(tooMany.getParameters()).thenReturn(retryAfter);
+
+        List<Long> sentAt = new CopyOnWriteArrayList<>();
+        Set<String> throttled = ConcurrentHashMap.newKeySet();
+        AbsSender sender = mock(AbsSender.class);
+        when(sender.executeAsync(any(SendMessage.class))).thenAnswer(inv -> {
+            sentAt.add(System.nanoTime());
+            String chatId = inv.<SendMessage>getArgument(0).getChatId();
+            // первые пять чатов получают 429 с паузой в 2 с
+            return Integer.parseInt(chatId) <= 5 && throttled.add(chatId)
+                    ? CompletableFuture.failedFuture(tooMany)
+                    : CompletableFuture.completedFuture(new Message());
+        });
+        limited.bind(sender);
+
+        try {
+            List<CompletableFuture<Message>> replies = new ArrayList<>();
+            for (int chat = 1; chat <= 5; chat++) {
+                replies.add(limited.send(new SendMessage(String.valueOf(chat), "кофе")));
+            }
+            Thread.sleep(1800);
+            for (int chat = 6; chat <= 10; chat++) {
+                replies.add(limited.send(new SendMessage(String.valueOf(chat), "такси")));
+            }
+            CompletableFuture.allOf(replies.toArray(CompletableFuture[]::new)).get(10, TimeUnit.SECONDS);
+        } finally {
+            limited.shutdown();
+        }
+
+        // token bucket 5/с с запасом 5: за полсекунды не больше 5 + 2,5 отправок
+        long window = TimeUnit.MILLISECONDS.toNanos(500);
+        for (long start : sentAt) {
+            assertThat(sentAt.stream().filter(t -> t >= start && t < start + window).count())
+                    .isLessThanOrEqualTo(8);
+        }
+        assertThat(sentAt).hasSize(15);
+    }
+
+    @Test
+    void longTextIsSplitAtLineBreaks() {
+        assertThat(ReplySender.split("a\nbb\nccc", 5)).containsExactly("a\nbb", "ccc");
+        assertThat(ReplySender.split("abcdefgh", 3)).containsExactly("abc", "def", "gh");
+        assertThat(ReplySender.split("коротко", ReplySender.MAX_TEXT_LENGTH)).containsExactly("коротко");
+    }
+}
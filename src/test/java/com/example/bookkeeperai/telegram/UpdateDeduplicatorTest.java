@@ -0,0 +1,47 @@
+package com.example.bookkeeperai.telegram;
+
+import com.example.bookkeeperai.repository.ReceivedUpdateRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class UpdateDeduplicatorTest {
+
+    private final ReceivedUpdateRepository repo = mock(ReceivedUpdateRepository.class);
+    private final UpdateDeduplicator deduplicator =
+            new UpdateDeduplicator(repo, Duration.ofDays(1), new SimpleMeterRegistry());
+
+    @Test
+    void redeliveredUpdateIsDropped() {
+        when(repo.markReceived(eq(42L), any())).thenReturn(1, 0);
+
+        assertThat(deduplicator.firstDelivery(42)).isTrue();
+        assertThat(deduplicator.firstDelivery(42)).isFalse();
+    }
+
+    @Test
+    void concurrentInsertOfSameUpdateCountsAsDuplicate() {
+        when(repo.markReceived(eq(42L), any())).thenThrow(new DataIntegrityViolationException("duplicate key"));
+
+        assertThat(deduplicator.firstDelivery(42)).isFalse();
+    }
+
+    @Test
+    void forgetReleasesMarkForNextDelivery() {
+        when(repo.markReceived(eq(42L), any())).thenReturn(1, 1);
+
+        assertThat(deduplicator.firstDelivery(42)).isTrue();
+        deduplicator.forget(42);
+        verify(repo).unmark(42L);
+        assertThat(deduplicator.firstDelivery(42)).isTrue();
+    }
+}
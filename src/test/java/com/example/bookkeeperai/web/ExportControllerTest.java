@@ -0,0 +1,48 @@
+package com.example.bookkeeperai.web;
+
+import com.example.bookkeeperai.service.ExpenseExportService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@WebMvcTest(controllers = ExportController.class, properties = "api.secret=s3cret")
+@Import(ApiToken.class)
+class ExportControllerTest {
+
+    @Autowired
+    private MockMvc mvc;
+    @Autowired
+    private ApiToken apiToken;
+    @MockBean
+    private ExpenseExportService exportService;
+
+    @Test
+    void tokenOfAnotherUserIsForbidden() throws Exception {
+        mvc.perform(get("/api/users/2/expenses/export")
+                        .header("Authorization", "Bearer " + apiToken.tokenFor(1L)))
+                .andExpect(status().isForbidden());
+        mvc.perform(get("/api/users/2/expenses/export")
+                        .header("Authorization", "Bearer s3cret"))
+                .andExpect(status().isForbidden());
+
+        verify(exportService, never()).export(anyLong(), any(), anyBoolean(), any());
+    }
+
+    @Test
+    void ownTokenIsAccepted() throws Exception {
+        mvc.perform(get("/api/users/1/expenses/export")
+                        .header("Authorization", "Bearer " + apiToken.tokenFor(1L)))
+                .andExpect(status().isOk());
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.bookkeeperai.web;
+
+import com.example.bookkeeperai.dto.ImportReport;
+import com.example.bookkeeperai.service.StatementImportService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@WebMvcTest(controllers = ImportController.class, properties = "api.secret=s3cret")
+@Import(ApiToken.class)
+class ImportControllerTest {
+
+    private static final String CSV = "date;amount\n04.12.2025;-250\n";
+
+    @Autowired
+    private MockMvc mvc;
+    @Autowired
+    private ApiToken apiToken;
+    @MockBean
+    private StatementImportService importService;
+
+    @Test
+    void tokenOfAnotherUserCannotImportIntoTheirAccount() throws Exception {
+        mvc.perform(post("/api/users/2/expenses/import")
+                        .header("Authorization", "Bearer " + apiToken.tokenFor(1L))
+                        .contentType("text/csv")
+                        .content(CSV))
+                .andExpect(status().isForbidden());
+
+        verify(importService, never()).importStatement(anyLong(), any(), any());
+    }
+
+    @Test
+    void ownTokenImportsIntoOwnAccount() throws Exception {
+        when(importService.importStatement(eq(1L), any(), any()))
+                .thenReturn(new ImportReport(1, 1, 0, 0, 0, 5, true));
+
+        mvc.perform(post("/api/users/1/expenses/import")
+                        .header("Authorization", "Bearer " + apiToken.tokenFor(1L))
+                        .contentType("text/csv")
+                        .content(CSV))
+                .andExpect(status().isOk());
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.bookkeeperai.web;
+
+import com.example.bookkeeperai.telegram.ExpenseBot;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@WebMvcTest(controllers = TelegramWebhookController.class, properties = {
+        "telegram.mode=webhook",
+        "telegram.webhook.secret=s3cret"})
+class TelegramWebhookControllerTest {
+
+    private static final String UPDATE = "{\"update_id\": 100}";
+
+    @Autowired
+    private MockMvc mvc;
+    @MockBean
+    private ExpenseBot bot;
+
+    @Test
+    void wrongOrMissingSecretIsForbidden() throws Exception {
+        mvc.perform(post("/telegram/webhook")
+                        .header("X-Telegram-Bot-Api-Secret-Token", "guess")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(UPDATE))
+                .andExpect(status().isForbidden());
+        mvc.perform(post("/telegram/webhook")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(UPDATE))
+                .andExpect(status().isForbidden());
+
+        verify(bot, never()).accept(any());
+    }
+
+    @Test
+    void acceptedUpdateIsOkAndFullDispatcherIsUnavailable() throws Exception {
+        when(bot.accept(any())).thenReturn(true, false);
+
+        mvc.perform(post("/telegram/webhook")
+                        .header("X-Telegram-Bot-Api-Secret-Token", "s3cret")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(UPDATE))
+                .andExpect(status().isOk());
+        mvc.perform(post("/telegram/webhook")
+                        .header("X-Telegram-Bot-Api-Secret-Token", "s3cret")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(UPDATE))
+                .andExpect(status().isServiceUnavailable());
+    }
+}